@@ -31,7 +31,6 @@
 import org.xwiki.eventstream.Event;
 import org.xwiki.eventstream.EventGroup;
 import org.xwiki.eventstream.EventStream;
-import org.xwiki.eventstream.events.EventStreamAddedEvent;
 import org.xwiki.eventstream.events.EventStreamDeletedEvent;
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.query.Query;
@@ -73,8 +72,8 @@ public void addEvent(Event e)
         try {
             XWikiContext context = getXWikiContext();
             ActivityStreamPlugin plugin = getPlugin(context);
+            // The EventStreamAddedEvent is sent by the activity stream once the event is actually saved
             plugin.getActivityStream().addActivityEvent(eventConverter.convertEventToActivity(e), context);
-            this.observationManager.notify(new EventStreamAddedEvent(), e);
         } catch (ActivityStreamException ex) {
             // Unlikely; nothing we can do
         }
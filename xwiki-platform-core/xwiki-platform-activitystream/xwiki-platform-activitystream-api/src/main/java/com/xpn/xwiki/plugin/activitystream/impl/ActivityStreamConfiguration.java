@@ -20,10 +20,12 @@
 package com.xpn.xwiki.plugin.activitystream.impl;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.stability.Unstable;
 
 import com.xpn.xwiki.XWikiContext;
@@ -40,9 +42,15 @@
 @Unstable
 public class ActivityStreamConfiguration
 {
+    private static final String PREFIX = "xwiki.plugin.activitystream.";
+
     @Inject
     private Provider<XWikiContext> contextProvider;
 
+    @Inject
+    @Named("xwikicfg")
+    private ConfigurationSource xwikicfg;
+
     /**
      * This method determine if events must be store in the local wiki. If the activitystream is set not to store events
      * in the main wiki, the method will return true. If events are stored in the main wiki, the method retrieves the
@@ -85,4 +93,29 @@ public boolean useMainStore()
                 (ActivityStreamPlugin) context.getWiki().getPlugin(ActivityStreamPlugin.PLUGIN_NAME, context);
         return Integer.parseInt(plugin.getActivityStreamPreference("usemainstore", "1", context)) == 1;
     }
+
+    /**
+     * Indicate if the events should be saved in a background thread, by batches, instead of being saved in the thread
+     * which produced them. The 'xwiki.plugin.activitystream.asyncrecording' configuration option is used (0 by
+     * default).
+     *
+     * @return true if the events should be saved asynchronously
+     * @since 9.11RC1
+     */
+    public boolean isAsyncRecording()
+    {
+        return this.xwikicfg.getProperty(PREFIX + "asyncrecording", 0) == 1;
+    }
+
+    /**
+     * The 'xwiki.plugin.activitystream.asyncrecording.queuesize' configuration option is used (10000 by default).
+     *
+     * @return the maximum number of events waiting to be saved asynchronously, the events produced when it's reached
+     *         are saved synchronously
+     * @since 9.11RC1
+     */
+    public int getAsyncRecordingQueueSize()
+    {
+        return this.xwikicfg.getProperty(PREFIX + "asyncrecording.queuesize", 10000);
+    }
 }
@@ -42,7 +42,6 @@
 import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.context.Execution;
 import org.xwiki.eventstream.events.AbstractEventStreamEvent;
-import org.xwiki.eventstream.events.EventStreamAddedEvent;
 import org.xwiki.eventstream.events.EventStreamDeletedEvent;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
@@ -74,6 +73,7 @@
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStream;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStreamException;
 import com.xpn.xwiki.plugin.activitystream.eventstreambridge.EventConverter;
+import com.xpn.xwiki.plugin.activitystream.internal.ActivityEventRecorder;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.web.Utils;
 
@@ -301,37 +301,8 @@ public void addActivityEvent(ActivityEvent event, XWikiDocument doc, XWikiContex
     {
         prepareEvent(event, doc, context);
 
-        if (useLocalStore()) {
-            // store event in the local database
-            XWikiHibernateStore localHibernateStore = context.getWiki().getHibernateStore();
-            try {
-                localHibernateStore.beginTransaction(context);
-                Session session = localHibernateStore.getSession(context);
-                session.save(event);
-                localHibernateStore.endTransaction(context, true);
-            } catch (XWikiException e) {
-                localHibernateStore.endTransaction(context, false);
-            }
-        }
-
-        if (useMainStore()) {
-            // store event in the main database
-            String oriDatabase = context.getWikiId();
-            context.setWikiId(context.getMainXWiki());
-            XWikiHibernateStore mainHibernateStore = context.getWiki().getHibernateStore();
-            try {
-                mainHibernateStore.beginTransaction(context);
-                Session session = mainHibernateStore.getSession(context);
-                session.save(event);
-                mainHibernateStore.endTransaction(context, true);
-            } catch (XWikiException e) {
-                mainHibernateStore.endTransaction(context, false);
-            } finally {
-                context.setWikiId(oriDatabase);
-            }
-        }
-
-        this.sendEventStreamEvent(new EventStreamAddedEvent(), event);
+        // The event is saved (and the EventStreamAddedEvent sent) asynchronously, unless configured otherwise
+        Utils.getComponent(ActivityEventRecorder.class).record(event);
     }
 
     @Override
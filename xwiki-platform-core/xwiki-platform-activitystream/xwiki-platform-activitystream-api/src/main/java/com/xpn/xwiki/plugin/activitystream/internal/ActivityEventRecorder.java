@@ -0,0 +1,383 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.activitystream.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.eventstream.events.AbstractEventStreamEvent;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.observation.ObservationManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityEvent;
+import com.xpn.xwiki.plugin.activitystream.eventstreambridge.EventConverter;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityStreamConfiguration;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Save the activity events in the database(s) configured for them and notify the {@link EventStreamAddedEvent}.
+ * <p>
+ * When the asynchronous recording is enabled, the events are queued and saved in a background thread by batches (one
+ * transaction per batch and per database instead of one per event) so that the requests producing a lot of events
+ * (imports, refactoring, etc.) don't spend their time saving them. The events are still saved synchronously when the
+ * asynchronous recording is disabled (the default) or when the queue is full, which slows the producers down to the
+ * pace of the database. The queue is flushed when the component is disposed.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = ActivityEventRecorder.class)
+@Singleton
+public class ActivityEventRecorder implements ActivityEventRecorderMXBean, Initializable, Disposable
+{
+    private static final String MBEAN_NAME = "org.xwiki:type=ActivityEventRecorder";
+
+    /**
+     * The maximum number of events saved in the same transaction.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * How long to wait for the queue to be flushed when disposing the component, in seconds.
+     */
+    private static final long FLUSH_TIMEOUT = 60;
+
+    @Inject
+    private ActivityStreamConfiguration configuration;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private EventConverter eventConverter;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private Logger logger;
+
+    private BlockingQueue<QueuedEvent> queue;
+
+    private Thread thread;
+
+    private volatile boolean disposed;
+
+    private final AtomicLong recordedEvents = new AtomicLong();
+
+    private final AtomicLong failedEvents = new AtomicLong();
+
+    private final AtomicLong overflowEvents = new AtomicLong();
+
+    /**
+     * An event waiting to be saved.
+     */
+    private static final class QueuedEvent
+    {
+        private final ActivityEvent event;
+
+        /**
+         * The wikis in which to save the event, resolved when the event is produced since it depends on the context.
+         */
+        private final List<String> wikis;
+
+        private final long queuedTime = System.currentTimeMillis();
+
+        QueuedEvent(ActivityEvent event, List<String> wikis)
+        {
+            this.event = event;
+            this.wikis = wikis;
+        }
+    }
+
+    /**
+     * Runnable saving the queued events.
+     */
+    private class RecorderRunnable extends AbstractXWikiRunnable
+    {
+        RecorderRunnable()
+        {
+            // Events produced by the listeners of the event stream should not be recorded, as when the events are
+            // saved synchronously
+            super(AbstractEventStreamEvent.EVENT_LOOP_CONTEXT_LOCK_PROPERTY, true);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            List<QueuedEvent> batch = new ArrayList<>(BATCH_SIZE);
+
+            // Continue until the queue is empty when disposed
+            while (!disposed || !queue.isEmpty()) {
+                try {
+                    QueuedEvent first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, BATCH_SIZE - 1);
+
+                        store(batch);
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        if (this.configuration.isAsyncRecording()) {
+            this.queue = new ArrayBlockingQueue<>(this.configuration.getAsyncRecordingQueueSize());
+        }
+
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (mbs.isRegistered(name)) {
+                mbs.unregisterMBean(name);
+            }
+            mbs.registerMBean(this, name);
+        } catch (Exception e) {
+            this.logger.warn("Failed to register the activity event recorder against the JMX Server: {}",
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        Thread recorderThread;
+        synchronized (this) {
+            this.disposed = true;
+            recorderThread = this.thread;
+        }
+
+        if (recorderThread != null) {
+            try {
+                recorderThread.join(TimeUnit.SECONDS.toMillis(FLUSH_TIMEOUT));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!this.queue.isEmpty()) {
+                this.logger.warn("[{}] activity events could not be saved before the shutdown", this.queue.size());
+            }
+        }
+    }
+
+    /**
+     * Save the passed event in the databases configured in the current context.
+     *
+     * @param event the event to save, ready to be saved
+     */
+    public void record(ActivityEvent event)
+    {
+        XWikiContext context = this.contextProvider.get();
+
+        List<String> wikis = new ArrayList<>(2);
+        if (this.configuration.useLocalStore()) {
+            wikis.add(context.getWikiId());
+        }
+        if (this.configuration.useMainStore()) {
+            wikis.add(context.getMainXWiki());
+        }
+
+        QueuedEvent queuedEvent = new QueuedEvent(event, wikis);
+
+        if (!queue(queuedEvent)) {
+            store(Collections.singletonList(queuedEvent));
+        }
+    }
+
+    private synchronized boolean queue(QueuedEvent queuedEvent)
+    {
+        if (this.queue == null || this.disposed) {
+            return false;
+        }
+
+        if (!this.queue.offer(queuedEvent)) {
+            this.overflowEvents.incrementAndGet();
+
+            return false;
+        }
+
+        if (this.thread == null) {
+            // Started on the first event so that the thread context is initialized from a fully initialized wiki
+            this.thread = new Thread(new RecorderRunnable());
+            this.thread.setName("Activity event recorder thread");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        return true;
+    }
+
+    private void store(List<QueuedEvent> queuedEvents)
+    {
+        Map<String, List<ActivityEvent>> eventsByWiki = new LinkedHashMap<>();
+        for (QueuedEvent queuedEvent : queuedEvents) {
+            for (String wiki : queuedEvent.wikis) {
+                eventsByWiki.computeIfAbsent(wiki, key -> new ArrayList<>()).add(queuedEvent.event);
+            }
+        }
+
+        // The events saved in at least one of their wikis
+        Set<ActivityEvent> saved = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        XWikiContext context = this.contextProvider.get();
+        String currentWiki = context.getWikiId();
+        try {
+            for (Map.Entry<String, List<ActivityEvent>> entry : eventsByWiki.entrySet()) {
+                context.setWikiId(entry.getKey());
+
+                if (store(entry.getValue(), context)) {
+                    saved.addAll(entry.getValue());
+                } else if (entry.getValue().size() > 1) {
+                    // Don't lose the whole batch because of a single event
+                    for (ActivityEvent event : entry.getValue()) {
+                        if (store(Collections.singletonList(event), context)) {
+                            saved.add(event);
+                        }
+                    }
+                }
+            }
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        // An event which could not be saved in all its wikis is still available in the other ones
+        List<QueuedEvent> recorded = new ArrayList<>(queuedEvents.size());
+        for (QueuedEvent queuedEvent : queuedEvents) {
+            if (queuedEvent.wikis.isEmpty() || saved.contains(queuedEvent.event)) {
+                recorded.add(queuedEvent);
+            }
+        }
+
+        this.failedEvents.addAndGet(queuedEvents.size() - recorded.size());
+        this.recordedEvents.addAndGet(recorded.size());
+
+        notifyAdded(recorded);
+    }
+
+    private boolean store(List<ActivityEvent> events, XWikiContext context)
+    {
+        XWikiHibernateStore hibernateStore = context.getWiki().getHibernateStore();
+        try {
+            hibernateStore.beginTransaction(context);
+            Session session = hibernateStore.getSession(context);
+            for (ActivityEvent event : events) {
+                session.save(event);
+            }
+            hibernateStore.endTransaction(context, true);
+
+            return true;
+        } catch (XWikiException | HibernateException e) {
+            hibernateStore.endTransaction(context, false);
+
+            this.logger.warn("Failed to save [{}] activity event(s) in wiki [{}]: {}", events.size(),
+                context.getWikiId(), ExceptionUtils.getRootCauseMessage(e));
+
+            return false;
+        }
+    }
+
+    private void notifyAdded(List<QueuedEvent> queuedEvents)
+    {
+        for (QueuedEvent queuedEvent : queuedEvents) {
+            this.observationManager.notify(new EventStreamAddedEvent(),
+                this.eventConverter.convertActivityToEvent(queuedEvent.event));
+        }
+    }
+
+    @Override
+    public boolean isAsynchronous()
+    {
+        return this.queue != null;
+    }
+
+    @Override
+    public int getQueueSize()
+    {
+        return this.queue != null ? this.queue.size() : 0;
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return this.queue != null ? this.queue.size() + this.queue.remainingCapacity() : 0;
+    }
+
+    @Override
+    public long getLag()
+    {
+        QueuedEvent oldest = this.queue != null ? this.queue.peek() : null;
+
+        return oldest != null ? System.currentTimeMillis() - oldest.queuedTime : 0;
+    }
+
+    @Override
+    public long getRecordedEvents()
+    {
+        return this.recordedEvents.get();
+    }
+
+    @Override
+    public long getFailedEvents()
+    {
+        return this.failedEvents.get();
+    }
+
+    @Override
+    public long getOverflowEvents()
+    {
+        return this.overflowEvents.get();
+    }
+}
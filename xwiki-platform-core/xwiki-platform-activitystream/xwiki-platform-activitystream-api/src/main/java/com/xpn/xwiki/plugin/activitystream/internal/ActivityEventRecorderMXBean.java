@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.activitystream.internal;
+
+/**
+ * Expose the state of the asynchronous recording of the activity events over JMX.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public interface ActivityEventRecorderMXBean
+{
+    /**
+     * @return true if the events are saved in a background thread
+     */
+    boolean isAsynchronous();
+
+    /**
+     * @return the number of events waiting to be saved
+     */
+    int getQueueSize();
+
+    /**
+     * @return the maximum number of events waiting to be saved before the events are saved synchronously
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return the number of milliseconds the oldest event waiting to be saved has been waiting, 0 when there is none
+     */
+    long getLag();
+
+    /**
+     * @return the number of events saved since the startup
+     */
+    long getRecordedEvents();
+
+    /**
+     * @return the number of events which could not be saved since the startup
+     */
+    long getFailedEvents();
+
+    /**
+     * @return the number of events saved synchronously because the queue was full
+     */
+    long getOverflowEvents();
+}
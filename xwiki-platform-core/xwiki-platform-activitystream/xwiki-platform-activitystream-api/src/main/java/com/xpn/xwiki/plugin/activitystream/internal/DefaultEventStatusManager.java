@@ -32,7 +32,9 @@
 import org.xwiki.eventstream.Event;
 import org.xwiki.eventstream.EventStatus;
 import org.xwiki.eventstream.EventStatusManager;
+import org.xwiki.eventstream.events.EventStatusSavedEvent;
 import org.xwiki.eventstream.internal.DefaultEventStatus;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryManager;
 import org.xwiki.text.StringUtils;
@@ -42,6 +44,7 @@
 import com.xpn.xwiki.plugin.activitystream.api.ActivityEventStatus;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStreamException;
 import com.xpn.xwiki.plugin.activitystream.eventstreambridge.EventConverter;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityEventStatusImpl;
 import com.xpn.xwiki.plugin.activitystream.impl.ActivityStreamConfiguration;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 
@@ -67,6 +70,9 @@ public class DefaultEventStatusManager implements EventStatusManager
     @Inject
     private Provider<XWikiContext> contextProvider;
 
+    @Inject
+    private ObservationManager observationManager;
+
     @Override
     public List<EventStatus> getEventStatus(List<Event> events, List<String> entityIds) throws Exception
     {
@@ -135,11 +141,32 @@ private boolean isPresent(Event event, String entityId, List<EventStatus> list)
 
     @Override
     public void saveEventStatus(EventStatus eventStatus) throws Exception
+    {
+        saveEventStatus(eventStatus, false);
+
+        this.observationManager.notify(new EventStatusSavedEvent(), eventStatus);
+    }
+
+    @Override
+    public boolean saveEventStatusIfAbsent(EventStatus eventStatus) throws Exception
+    {
+        boolean saved = saveEventStatus(eventStatus, true);
+
+        if (saved) {
+            this.observationManager.notify(new EventStatusSavedEvent(), eventStatus);
+        }
+
+        return saved;
+    }
+
+    private boolean saveEventStatus(EventStatus eventStatus, boolean ifAbsent) throws Exception
     {
         ActivityEventStatus status = eventConverter.convertEventStatusToActivityStatus(eventStatus);
 
+        boolean saved = false;
+
         if (configuration.useLocalStore()) {
-            saveEventStatusInStore(status);
+            saved |= saveEventStatusInStore(status, ifAbsent);
         }
 
         if (configuration.useMainStore()) {
@@ -148,22 +175,41 @@ public void saveEventStatus(EventStatus eventStatus) throws Exception
             String oriDatabase = context.getWikiId();
             context.setWikiId(context.getMainXWiki());
             try {
-                saveEventStatusInStore(status);
+                saved |= saveEventStatusInStore(status, ifAbsent);
             } finally {
                 context.setWikiId(oriDatabase);
             }
         }
+
+        return saved;
     }
 
-    private void saveEventStatusInStore(ActivityEventStatus eventStatus) throws ActivityStreamException
+    private boolean saveEventStatusInStore(ActivityEventStatus eventStatus, boolean ifAbsent)
+        throws ActivityStreamException
     {
         XWikiContext context = contextProvider.get();
         XWikiHibernateStore hibernateStore = context.getWiki().getHibernateStore();
         try {
             hibernateStore.beginTransaction(context);
             Session session = hibernateStore.getSession(context);
-            session.save(eventStatus);
+            // The status might already exist (e.g. when it has been created unread in a notification inbox)
+            ActivityEventStatusImpl existingStatus = (ActivityEventStatusImpl) session
+                .createQuery("from ActivityEventStatusImpl eventStatus "
+                    + "where eventStatus.activityEvent.id = :eventId and eventStatus.entityId = :entityId")
+                .setString("eventId", eventStatus.getActivityEvent().getEventId())
+                .setString("entityId", eventStatus.getEntityId()).uniqueResult();
+            boolean saved;
+            if (existingStatus == null) {
+                session.save(eventStatus);
+                saved = true;
+            } else if (!ifAbsent) {
+                existingStatus.setRead(eventStatus.isRead());
+                saved = true;
+            } else {
+                saved = false;
+            }
             hibernateStore.endTransaction(context, true);
+            return saved;
         } catch (XWikiException e) {
             hibernateStore.endTransaction(context, false);
             throw new ActivityStreamException(e);
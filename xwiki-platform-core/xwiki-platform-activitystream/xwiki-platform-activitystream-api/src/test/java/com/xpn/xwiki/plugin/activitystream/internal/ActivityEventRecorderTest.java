@@ -0,0 +1,257 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.activitystream.internal;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Provider;
+
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityEvent;
+import com.xpn.xwiki.plugin.activitystream.eventstreambridge.EventConverter;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityEventImpl;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityStreamConfiguration;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.web.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link ActivityEventRecorder}.
+ *
+ * @version $Id$
+ */
+public class ActivityEventRecorderTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<ActivityEventRecorder> mocker =
+        new MockitoComponentMockingRule<>(ActivityEventRecorder.class);
+
+    private ActivityStreamConfiguration configuration;
+
+    private ObservationManager observationManager;
+
+    private XWikiHibernateStore hibernateStore;
+
+    private Session session;
+
+    private XWikiContext xcontext;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // Needed by the recorder thread to initialize its execution context
+        Utils.setComponentManager(this.mocker);
+        this.mocker.registerMockComponent(Execution.class);
+        this.mocker.registerMockComponent(ExecutionContextManager.class);
+
+        this.configuration = this.mocker.getInstance(ActivityStreamConfiguration.class);
+        when(this.configuration.useLocalStore()).thenReturn(true);
+        when(this.configuration.getAsyncRecordingQueueSize()).thenReturn(1000);
+
+        this.observationManager = this.mocker.getInstance(ObservationManager.class);
+
+        EventConverter eventConverter = this.mocker.getInstance(EventConverter.class);
+        when(eventConverter.convertActivityToEvent(any())).thenAnswer(invocation -> mock(Event.class));
+
+        this.hibernateStore = mock(XWikiHibernateStore.class);
+        this.session = mock(Session.class);
+        when(this.hibernateStore.getSession(any())).thenReturn(this.session);
+
+        XWiki xwiki = mock(XWiki.class);
+        when(xwiki.getHibernateStore()).thenReturn(this.hibernateStore);
+
+        this.xcontext = new XWikiContext();
+        this.xcontext.setWiki(xwiki);
+        this.xcontext.setMainXWiki("xwiki");
+        this.xcontext.setWikiId("wiki");
+
+        Provider<XWikiContext> contextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(contextProvider.get()).thenReturn(this.xcontext);
+    }
+
+    @After
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    /**
+     * Block the first transaction until the returned latch is released.
+     *
+     * @param started counted down when the first transaction is started
+     */
+    private CountDownLatch blockFirstTransaction(CountDownLatch started) throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        when(this.hibernateStore.beginTransaction(any(XWikiContext.class))).thenAnswer(invocation -> {
+            if (first.getAndSet(false)) {
+                started.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return true;
+        });
+
+        return release;
+    }
+
+    @Test
+    public void recordSynchronously() throws Exception
+    {
+        ActivityEvent event = new ActivityEventImpl();
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        assertFalse(recorder.isAsynchronous());
+
+        recorder.record(event);
+
+        verify(this.hibernateStore).beginTransaction(this.xcontext);
+        verify(this.session).save(event);
+        verify(this.hibernateStore).endTransaction(this.xcontext, true);
+        verify(this.observationManager).notify(any(EventStreamAddedEvent.class), any(Event.class));
+        assertEquals(1, recorder.getRecordedEvents());
+        assertEquals("wiki", this.xcontext.getWikiId());
+    }
+
+    @Test
+    public void recordAsynchronouslyByBatches() throws Exception
+    {
+        when(this.configuration.isAsyncRecording()).thenReturn(true);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = blockFirstTransaction(started);
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        assertTrue(recorder.isAsynchronous());
+
+        recorder.record(new ActivityEventImpl());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Queued while the first event is being saved
+        recorder.record(new ActivityEventImpl());
+        recorder.record(new ActivityEventImpl());
+        assertEquals(2, recorder.getQueueSize());
+
+        release.countDown();
+        recorder.dispose();
+
+        // One transaction for the first event and one for the two others
+        verify(this.hibernateStore, times(2)).beginTransaction(any(XWikiContext.class));
+        verify(this.session, times(3)).save(any(ActivityEvent.class));
+        verify(this.observationManager, times(3)).notify(any(EventStreamAddedEvent.class), any(Event.class));
+        assertEquals(3, recorder.getRecordedEvents());
+        assertEquals(0, recorder.getQueueSize());
+    }
+
+    @Test
+    public void recordWhenQueueIsFull() throws Exception
+    {
+        when(this.configuration.isAsyncRecording()).thenReturn(true);
+        when(this.configuration.getAsyncRecordingQueueSize()).thenReturn(1);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = blockFirstTransaction(started);
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+
+        recorder.record(new ActivityEventImpl());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        recorder.record(new ActivityEventImpl());
+
+        // The queue is full so the event is saved by the producer
+        ActivityEvent overflowEvent = new ActivityEventImpl();
+        recorder.record(overflowEvent);
+
+        verify(this.session).save(overflowEvent);
+        assertEquals(1, recorder.getOverflowEvents());
+        assertEquals(1, recorder.getRecordedEvents());
+
+        release.countDown();
+        recorder.dispose();
+
+        verify(this.session, times(3)).save(any(ActivityEvent.class));
+        verify(this.observationManager, times(3)).notify(any(EventStreamAddedEvent.class), any(Event.class));
+        assertEquals(3, recorder.getRecordedEvents());
+    }
+
+    @Test
+    public void recordWhenOneStoreFails() throws Exception
+    {
+        when(this.configuration.useMainStore()).thenReturn(true);
+        when(this.hibernateStore.beginTransaction(any(XWikiContext.class))).thenAnswer(invocation -> {
+            if ("wiki".equals(invocation.<XWikiContext>getArgument(0).getWikiId())) {
+                throw new XWikiException();
+            }
+            return true;
+        });
+
+        ActivityEvent event = new ActivityEventImpl();
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        recorder.record(event);
+
+        // Saved in the main wiki only, but still available there
+        verify(this.session).save(same(event));
+        verify(this.hibernateStore).endTransaction(this.xcontext, false);
+        verify(this.observationManager).notify(any(EventStreamAddedEvent.class), any(Event.class));
+        assertEquals(1, recorder.getRecordedEvents());
+        assertEquals(0, recorder.getFailedEvents());
+        assertEquals("wiki", this.xcontext.getWikiId());
+    }
+
+    @Test
+    public void recordWhenAllStoresFail() throws Exception
+    {
+        when(this.hibernateStore.beginTransaction(any(XWikiContext.class))).thenThrow(new XWikiException());
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        recorder.record(new ActivityEventImpl());
+
+        verify(this.observationManager, never()).notify(any(), any());
+        assertEquals(0, recorder.getRecordedEvents());
+        assertEquals(1, recorder.getFailedEvents());
+    }
+}
@@ -20,6 +20,8 @@
 package org.xwiki.bridge;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -61,6 +63,25 @@
      */
     DocumentModelBridge getDocument(DocumentReference documentReference) throws Exception;
 
+    /**
+     * Get the document objects associated with the passed document references. Implementations are free to load them
+     * in a more efficient way than calling {@link #getDocument(DocumentReference)} for each of them.
+     * 
+     * @param documentReferences the references of the documents to find
+     * @return the document objects matching the passed references, in the same order
+     * @throws Exception when the storage cannot be accessed
+     * @since 9.11RC1
+     */
+    default List<DocumentModelBridge> getDocuments(Collection<DocumentReference> documentReferences) throws Exception
+    {
+        List<DocumentModelBridge> documents = new ArrayList<>(documentReferences.size());
+        for (DocumentReference documentReference : documentReferences) {
+            documents.add(getDocument(documentReference));
+        }
+
+        return documents;
+    }
+
     /**
      * Get the reference to the current document (found in the Context).
      * 
@@ -51,4 +51,15 @@
      * @throws Exception if an error occurs
      */
     void saveEventStatus(EventStatus eventStatus) throws Exception;
+
+    /**
+     * Save in the storage the given status, unless a status already exists for the same event and entity (in which
+     * case the existing status is left untouched).
+     *
+     * @param eventStatus the status to save
+     * @return {@code true} if the status has been saved, {@code false} if it already existed
+     * @throws Exception if an error occurs
+     * @since 9.11RC1
+     */
+    boolean saveEventStatusIfAbsent(EventStatus eventStatus) throws Exception;
 }
@@ -51,4 +51,14 @@
      * @since 9.6RC1
      */
     int liveNotificationsGraceTime();
+
+    /**
+     * @return true if the notifications of each user should be stored in an inbox when the events are recorded,
+     *         instead of being searched among all the events when they are retrieved
+     * @since 9.11RC1
+     */
+    default boolean isInboxEnabled()
+    {
+        return false;
+    }
 }
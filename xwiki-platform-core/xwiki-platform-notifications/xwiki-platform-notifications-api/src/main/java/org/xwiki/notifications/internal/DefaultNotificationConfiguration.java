@@ -60,4 +60,10 @@ public int liveNotificationsGraceTime()
 
         return (graceTime < 0) ? 0 : graceTime;
     }
+
+    @Override
+    public boolean isInboxEnabled()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "inbox.enabled", false);
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.eventstream.Event;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Position in the notifications of a user, used to get the notifications coming after the ones already retrieved.
+ * The notifications are sorted by descending date and event id, so the cursor is made of the date and the id of the
+ * last event that has been retrieved. Unlike a list of the events already retrieved, it keeps the same size whatever
+ * the number of pages.
+ * <p>
+ * The cursor can be serialized as a string with {@link #toString()} and parsed back with {@link #parse(String)}.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Unstable
+public final class NotificationCursor
+{
+    /**
+     * The order of the events in the notifications (most recent first).
+     */
+    private static final Comparator<Event> ORDER = Comparator.comparing(Event::getDate)
+            .thenComparing(Event::getId, Comparator.nullsFirst(Comparator.naturalOrder())).reversed();
+
+    private static final char SEPARATOR = ':';
+
+    private final Date date;
+
+    private final String eventId;
+
+    /**
+     * @param date the date of the last retrieved event
+     * @param eventId the id of the last retrieved event
+     */
+    public NotificationCursor(Date date, String eventId)
+    {
+        this.date = date;
+        this.eventId = eventId;
+    }
+
+    /**
+     * @param event the last retrieved event
+     * @return the cursor pointing after the given event
+     */
+    public static NotificationCursor after(Event event)
+    {
+        return new NotificationCursor(event.getDate(), event.getId());
+    }
+
+    /**
+     * @param compositeEvents the retrieved notifications
+     * @return the cursor pointing after all the events of the given notifications, or {@code null} if there is none
+     */
+    public static NotificationCursor after(List<CompositeEvent> compositeEvents)
+    {
+        return compositeEvents.stream().flatMap(compositeEvent -> compositeEvent.getEvents().stream())
+                .max(ORDER).map(NotificationCursor::after).orElse(null);
+    }
+
+    /**
+     * @param cursor the cursor serialized with {@link #toString()}
+     * @return the parsed cursor, or {@code null} if the passed string is empty
+     * @throws IllegalArgumentException if the passed string is not a valid cursor
+     */
+    public static NotificationCursor parse(String cursor)
+    {
+        if (StringUtils.isEmpty(cursor)) {
+            return null;
+        }
+
+        int index = cursor.indexOf(SEPARATOR);
+        if (index <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid notification cursor [%s]", cursor));
+        }
+
+        try {
+            return new NotificationCursor(new Date(Long.parseLong(cursor.substring(0, index))),
+                    cursor.substring(index + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid notification cursor [%s]", cursor), e);
+        }
+    }
+
+    /**
+     * @return the date of the last retrieved event
+     */
+    public Date getDate()
+    {
+        return this.date;
+    }
+
+    /**
+     * @return the id of the last retrieved event
+     */
+    public String getEventId()
+    {
+        return this.eventId;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj instanceof NotificationCursor) {
+            NotificationCursor other = (NotificationCursor) obj;
+
+            return Objects.equals(this.date, other.date) && Objects.equals(this.eventId, other.eventId);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.date, this.eventId);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(this.date.getTime()) + SEPARATOR + StringUtils.defaultString(this.eventId);
+    }
+}
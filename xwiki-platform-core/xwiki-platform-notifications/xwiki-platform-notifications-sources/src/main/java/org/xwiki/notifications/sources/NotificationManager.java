@@ -97,6 +97,22 @@ List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int expectedCo
     List<CompositeEvent> getEvents(String userId, NotificationFormat format, boolean onlyUnread, int expectedCount,
             Date untilDate, Date fromDate, List<String> blackList) throws NotificationException;
 
+    /**
+     * Return events to display as notifications concerning the specified user, coming after the given cursor. Use
+     * {@link NotificationCursor#after(List)} on the returned notifications to get the next ones.
+     *
+     * @param userId id of the user
+     * @param format format of the notifications
+     * @param onlyUnread if only unread events should be returned
+     * @param expectedCount the maximum events to return
+     * @param cursor only return the events coming after this cursor, or null to get the most recent events
+     * @return the matching events for the user, could be less than expectedCount but not more
+     * @throws NotificationException if error happens
+     * @since 9.11RC1
+     */
+    List<CompositeEvent> getEvents(String userId, NotificationFormat format, boolean onlyUnread, int expectedCount,
+            NotificationCursor cursor) throws NotificationException;
+
     /**
      * Return the number of events to display as notifications concerning the specified user.
      *
@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import org.xwiki.notifications.filters.expression.generics.AbstractOperatorNode;
+import org.xwiki.notifications.sources.NotificationCursor;
+
+/**
+ * Special node to filter on events coming after the given cursor, i.e. events older than the cursor date or having
+ * the same date and a lower id.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class AfterCursorNode extends AbstractOperatorNode
+{
+    private NotificationCursor cursor;
+
+    /**
+     * Construct an AfterCursorNode.
+     * @param cursor the cursor
+     */
+    public AfterCursorNode(NotificationCursor cursor)
+    {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the cursor
+     */
+    public NotificationCursor getCursor()
+    {
+        return cursor;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("AFTER_CURSOR(%s)", cursor);
+    }
+}
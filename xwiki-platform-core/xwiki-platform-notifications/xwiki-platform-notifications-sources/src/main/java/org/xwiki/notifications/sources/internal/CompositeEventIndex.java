@@ -0,0 +1,310 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+
+/**
+ * Index the events of a list of composite events by the properties used by the {@link SimilarityCalculator} (document,
+ * type and group id) so that the composite event the most similar to a new event is found without computing the
+ * similarity between the new event and all the events already grouped.
+ * <p>
+ * The result is the same as comparing the new event with every event, in the order of the composite events and of
+ * their events: only the composite events containing an event similar to the new one are looked at, and only until
+ * their first event having the best possible similarity.
+ * <p>
+ * The composite events and their events must only be modified through this index.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class CompositeEventIndex
+{
+    /**
+     * The penalty given to the similarity with an event when it's lower than the similarity between the events of its
+     * composite event.
+     */
+    private static final int PENALTY = 5;
+
+    private static final String DOCUMENT_TYPE = "documentType";
+
+    private static final String DOCUMENT_GROUP = "documentGroup";
+
+    private static final String DOCUMENT_GROUP_TYPE = "documentGroupType";
+
+    private static final String TYPE = "type";
+
+    private final List<CompositeEvent> results;
+
+    private final SimilarityCalculator similarityCalculator;
+
+    /**
+     * The position of each composite event in the results.
+     */
+    private final Map<CompositeEvent, Integer> positions = new IdentityHashMap<>();
+
+    /**
+     * For each key, the number of events of each composite event having that key.
+     */
+    private final Map<List<Object>, Map<CompositeEvent, Integer>> counts = new HashMap<>();
+
+    /**
+     * The composite event the most similar to an event.
+     */
+    public static class BestSimilarity
+    {
+        /**
+         * The similarity between the event and the best event of the composite event, penalty included.
+         */
+        public int value;
+
+        /**
+         * The composite event containing the most similar event.
+         */
+        public CompositeEvent compositeEvent;
+
+        /**
+         * The most similar event.
+         */
+        public Event event;
+
+        /**
+         * @param event the event to group
+         * @return true if the event can be added to the composite event even if it lowers the similarity between its
+         *         events
+         */
+        public boolean isCompositeEventCompatibleWith(Event event)
+        {
+            // Here we have a composite event made of A and B.
+            // - if A is a "create" or an "update" event
+            // - if A and B have the same groupId (which means A or B is a "create" or an "update" event basically)
+            // - if B has the same type than E
+            // (or vice versa)
+            // It means the "update" event A has been triggered for technical reason, but the interesting event is
+            // B, which we can group with the event E even if it lowers the similarity between the events.
+            return compositeEvent.getSimilarityBetweenEvents()
+                    >= SimilarityCalculator.SAME_GROUP_ID_AND_DOCUMENT_BUT_DIFFERENT_TYPES
+                    && compositeEvent.getType().equals(event.getType());
+        }
+    }
+
+    /**
+     * @param results the composite events to index, new composite events are added to that list
+     * @param similarityCalculator the calculator used to compare the events
+     */
+    public CompositeEventIndex(List<CompositeEvent> results, SimilarityCalculator similarityCalculator)
+    {
+        this.results = results;
+        this.similarityCalculator = similarityCalculator;
+
+        for (int i = 0; i < results.size(); ++i) {
+            CompositeEvent compositeEvent = results.get(i);
+            this.positions.put(compositeEvent, i);
+            for (Event event : compositeEvent.getEvents()) {
+                index(compositeEvent, event, 1);
+            }
+        }
+    }
+
+    /**
+     * Add a new composite event at the end of the results.
+     *
+     * @param compositeEvent the composite event to add
+     */
+    public void add(CompositeEvent compositeEvent)
+    {
+        this.positions.put(compositeEvent, this.results.size());
+        this.results.add(compositeEvent);
+
+        for (Event event : compositeEvent.getEvents()) {
+            index(compositeEvent, event, 1);
+        }
+    }
+
+    /**
+     * Add an event to a composite event of the results.
+     *
+     * @param compositeEvent the composite event
+     * @param event the event to add
+     * @param similarity the similarity between the event and the other events of the composite event
+     * @throws NotificationException if the similarity is lower than the similarity between the events of the
+     *             composite event
+     * @see CompositeEvent#add(Event, int)
+     */
+    public void add(CompositeEvent compositeEvent, Event event, int similarity) throws NotificationException
+    {
+        compositeEvent.add(event, similarity);
+
+        index(compositeEvent, event, 1);
+    }
+
+    /**
+     * Remove an event from a composite event of the results.
+     *
+     * @param compositeEvent the composite event
+     * @param event the event to remove
+     */
+    public void remove(CompositeEvent compositeEvent, Event event)
+    {
+        compositeEvent.remove(event);
+
+        index(compositeEvent, event, -1);
+    }
+
+    /**
+     * @param event the event to group
+     * @return the composite event containing the event the most similar to the passed event, with a similarity
+     *         greater than 0
+     */
+    public BestSimilarity getBestSimilarity(Event event)
+    {
+        BestSimilarity bestSimilarity = new BestSimilarity();
+
+        // Looking for the most similar event inside the composite events containing similar events
+        for (CompositeEvent compositeEvent : getCandidates(event)) {
+            int similarity = getMaxSimilarity(event, compositeEvent);
+            if (similarity == SimilarityCalculator.NO_SIMILARITY) {
+                continue;
+            }
+
+            int value = similarity;
+            if (value < compositeEvent.getSimilarityBetweenEvents()) {
+                value -= PENALTY;
+            }
+            if (value > bestSimilarity.value) {
+                // The first event of the composite event which has that similarity
+                for (Event existingEvent : compositeEvent.getEvents()) {
+                    if (this.similarityCalculator.computeSimilarity(event, existingEvent) == similarity) {
+                        bestSimilarity.value = value;
+                        bestSimilarity.event = existingEvent;
+                        bestSimilarity.compositeEvent = compositeEvent;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return bestSimilarity;
+    }
+
+    /**
+     * @return the composite events which contain at least one event similar to the passed event, in the order of the
+     *         results
+     */
+    private List<CompositeEvent> getCandidates(Event event)
+    {
+        Set<CompositeEvent> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (event.getDocument() != null) {
+            candidates.addAll(getCounts(DOCUMENT_TYPE, event.getDocument(), event.getType()).keySet());
+            candidates.addAll(getCounts(DOCUMENT_GROUP, event.getDocument(), event.getGroupId()).keySet());
+        } else {
+            candidates.addAll(getCounts(TYPE, event.getType()).keySet());
+        }
+
+        List<CompositeEvent> sortedCandidates = new ArrayList<>(candidates);
+        sortedCandidates.sort((c1, c2) -> this.positions.get(c1).compareTo(this.positions.get(c2)));
+
+        return sortedCandidates;
+    }
+
+    /**
+     * @return the greatest similarity between the passed event and the events of the passed composite event, without
+     *         penalty, computed from the index (see {@link SimilarityCalculator#computeSimilarity(Event, Event)})
+     */
+    private int getMaxSimilarity(Event event, CompositeEvent compositeEvent)
+    {
+        DocumentReference document = event.getDocument();
+        String type = event.getType();
+
+        if (document != null) {
+            // Events of the same document with the same group id but not the same type
+            int sameGroup = getCount(compositeEvent, DOCUMENT_GROUP, document, event.getGroupId());
+            if (sameGroup > getCount(compositeEvent, DOCUMENT_GROUP_TYPE, document, event.getGroupId(), type)) {
+                return SimilarityCalculator.SAME_GROUP_ID_AND_DOCUMENT_BUT_DIFFERENT_TYPES;
+            }
+
+            if (getCount(compositeEvent, DOCUMENT_TYPE, document, type) > 0) {
+                return SimilarityCalculator.SAME_DOCUMENT_AND_TYPE;
+            }
+        } else if (getCount(compositeEvent, TYPE, type) > 0) {
+            return SimilarityCalculator.SAME_TYPE_BUT_NO_DOCUMENT;
+        }
+
+        return SimilarityCalculator.NO_SIMILARITY;
+    }
+
+    private void index(CompositeEvent compositeEvent, Event event, int delta)
+    {
+        DocumentReference document = event.getDocument();
+        String type = event.getType();
+        String groupId = event.getGroupId();
+
+        update(compositeEvent, delta, TYPE, type);
+        if (document != null) {
+            update(compositeEvent, delta, DOCUMENT_TYPE, document, type);
+            update(compositeEvent, delta, DOCUMENT_GROUP, document, groupId);
+            update(compositeEvent, delta, DOCUMENT_GROUP_TYPE, document, groupId, type);
+        }
+    }
+
+    private void update(CompositeEvent compositeEvent, int delta, Object... key)
+    {
+        // Events with missing properties are never similar through them
+        for (Object element : key) {
+            if (element == null) {
+                return;
+            }
+        }
+
+        Map<CompositeEvent, Integer> keyCounts =
+            this.counts.computeIfAbsent(Arrays.asList(key), k -> new IdentityHashMap<>());
+        int count = keyCounts.getOrDefault(compositeEvent, 0) + delta;
+        if (count > 0) {
+            keyCounts.put(compositeEvent, count);
+        } else {
+            keyCounts.remove(compositeEvent);
+        }
+    }
+
+    private Map<CompositeEvent, Integer> getCounts(Object... key)
+    {
+        Map<CompositeEvent, Integer> keyCounts = this.counts.get(Arrays.asList(key));
+
+        return keyCounts != null ? keyCounts : Collections.emptyMap();
+    }
+
+    private int getCount(CompositeEvent compositeEvent, Object... key)
+    {
+        return getCounts(key).getOrDefault(compositeEvent, 0);
+    }
+}
@@ -23,7 +23,6 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -35,6 +34,7 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationConfiguration;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.NotificationFormat;
 import org.xwiki.notifications.filters.NotificationFilter;
@@ -42,7 +42,9 @@
 import org.xwiki.notifications.internal.SimilarityCalculator;
 import org.xwiki.notifications.preferences.NotificationPreference;
 import org.xwiki.notifications.preferences.NotificationPreferenceManager;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.notifications.sources.NotificationManager;
+import org.xwiki.notifications.sources.internal.CompositeEventIndex.BestSimilarity;
 import org.xwiki.query.Query;
 import org.xwiki.security.authorization.AuthorizationManager;
 import org.xwiki.security.authorization.Right;
@@ -81,6 +83,12 @@ public class DefaultNotificationManager implements NotificationManager
     @Inject
     private NotificationFilterManager notificationFilterManager;
 
+    @Inject
+    private NotificationConfiguration configuration;
+
+    @Inject
+    private NotificationCountCache countCache;
+
     /**
      * For internal use, avoid to give more than 7 parameters to methods.
      */
@@ -93,6 +101,8 @@ public class DefaultNotificationManager implements NotificationManager
         public Date endDate;
         public Date fromDate;
         public List<String> blackList;
+        public NotificationCursor cursor;
+        public CompositeEventIndex index;
 
         Parameters(DocumentReference userReference, NotificationFormat format, boolean onlyUnread,
                 int expectedCount,
@@ -176,12 +186,30 @@ public List<CompositeEvent> getEvents(String userId, NotificationFormat format,
         );
     }
 
+    @Override
+    public List<CompositeEvent> getEvents(String userId, NotificationFormat format, boolean onlyUnread,
+            int expectedCount, NotificationCursor cursor) throws NotificationException
+    {
+        Parameters parameters = new Parameters(
+                documentReferenceResolver.resolve(userId),
+                format,
+                onlyUnread,
+                expectedCount,
+                null,
+                null,
+                Collections.emptyList()
+        );
+        parameters.cursor = cursor;
+
+        return getEvents(new ArrayList<>(), parameters);
+    }
+
     @Override
     public long getEventsCount(String userId, boolean onlyUnread, int maxCount) throws NotificationException
     {
         DocumentReference user = documentReferenceResolver.resolve(userId);
 
-        List<CompositeEvent> events = getEvents(new ArrayList<>(),
+        return countCache.getCount(userId, onlyUnread, maxCount, () -> getEvents(new ArrayList<>(),
                 new Parameters(
                         user,
                         NotificationFormat.ALERT,
@@ -191,9 +219,7 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
                         null,
                         new ArrayList<>()
                 )
-        );
-
-        return events.size();
+        ).size());
     }
 
     private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters parameters)
@@ -202,10 +228,20 @@ private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters
         // Because the user might not be able to see all notifications because of the rights, we take from the database
         // more events than expected and we will filter afterwards.
         final int batchSize = parameters.expectedCount * 2;
+        if (parameters.index == null) {
+            parameters.index = new CompositeEventIndex(results, similarityCalculator);
+        }
         try {
             // Create the query
-            Query query = queryGenerator.generateQuery(parameters.userReference, parameters.format,
-                    parameters.onlyUnread, parameters.endDate, parameters.fromDate, parameters.blackList);
+            Query query;
+            if (parameters.format == NotificationFormat.ALERT && configuration.isInboxEnabled()) {
+                query = queryGenerator.generateInboxQuery(parameters.userReference, parameters.onlyUnread,
+                        parameters.endDate, parameters.fromDate, parameters.blackList, parameters.cursor);
+            } else {
+                query = queryGenerator.generateQuery(parameters.userReference, parameters.format,
+                        parameters.onlyUnread, parameters.endDate, parameters.fromDate, parameters.blackList,
+                        parameters.cursor);
+            }
             if (query == null) {
                 return Collections.emptyList();
             }
@@ -228,16 +264,17 @@ private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters
                 }
 
                 // Record this event
-                recordEvent(results, event);
+                recordEvent(parameters.index, event);
                 // If the expected count is reached, stop now
                 if (results.size() >= parameters.expectedCount) {
                     return results;
                 }
             }
 
-            // If we haven't get the expected number of events, perform a new batch
+            // If we haven't get the expected number of events, perform a new batch starting after the last event of
+            // the current one
             if (results.size() < parameters.expectedCount && batch.size() == batchSize) {
-                parameters.blackList.addAll(getEventsIds(batch));
+                parameters.cursor = NotificationCursor.after(batch.get(batch.size() - 1));
                 getEvents(results, parameters);
             }
 
@@ -259,35 +296,9 @@ private boolean filterEvent(Event event, DocumentReference user, NotificationFor
         return false;
     }
 
-    private List<String> getEventsIds(List<Event> events)
-    {
-        return events.stream().map(Event::getId).collect(Collectors.toList());
-    }
-
-    private class BestSimilarity
-    {
-        public int value;
-        public CompositeEvent compositeEvent;
-        public Event event;
-
-        public boolean isCompositeEventCompatibleWith(Event event)
-        {
-            // Here we have a composite event made of A and B.
-            // - if A is a "create" or an "update" event
-            // - if A and B have the same groupId (which means A or B is a "create" or an "update" event basically)
-            // - if B has the same type than E
-            // (or vice versa)
-            // It means the "update" event A has been triggered for technical reason, but the interesting event is
-            // B, which we can group with the event E even if it lowers the similarity between the events.
-            return compositeEvent.getSimilarityBetweenEvents()
-                    >= SimilarityCalculator.SAME_GROUP_ID_AND_DOCUMENT_BUT_DIFFERENT_TYPES
-                    && compositeEvent.getType().equals(event.getType());
-        }
-    }
-
-    private void recordEvent(List<CompositeEvent> results, Event event) throws NotificationException
+    private void recordEvent(CompositeEventIndex index, Event event) throws NotificationException
     {
-        BestSimilarity bestSimilarity = getBestSimilarity(results, event);
+        BestSimilarity bestSimilarity = index.getBestSimilarity(event);
 
         if (bestSimilarity.compositeEvent != null) {
             if (bestSimilarity.value > bestSimilarity.compositeEvent.getSimilarityBetweenEvents()
@@ -297,11 +308,11 @@ private void recordEvent(List<CompositeEvent> results, Event event) throws Notif
                 //
                 // It means we must remove the existing event A from that composite event C1 and create a new composite
                 // event C2 made of A and E.
-                bestSimilarity.compositeEvent.remove(bestSimilarity.event);
+                index.remove(bestSimilarity.compositeEvent, bestSimilarity.event);
 
                 // Instead of creating a new composite event with A and E, we first look if an other composite event can
                 // match with A and E.
-                BestSimilarity bestSecondChoice = getBestSimilarity(results, event);
+                BestSimilarity bestSecondChoice = index.getBestSimilarity(event);
                 if (bestSecondChoice.compositeEvent != null
                         && bestSecondChoice.isCompositeEventCompatibleWith(event)) {
                     // We have found a composite event C2 made of events (X, Y) which have a greater similarity between
@@ -314,14 +325,14 @@ private void recordEvent(List<CompositeEvent> results, Event event) throws Notif
                     // (or vice versa)
                     // It means the "update" event X has been triggered for technical reason, but the interesting event
                     // is Y, which we can group with the event E.
-                    bestSecondChoice.compositeEvent.add(bestSimilarity.event,
+                    index.add(bestSecondChoice.compositeEvent, bestSimilarity.event,
                             bestSecondChoice.compositeEvent.getSimilarityBetweenEvents());
-                    bestSecondChoice.compositeEvent.add(event,
+                    index.add(bestSecondChoice.compositeEvent, event,
                             bestSecondChoice.compositeEvent.getSimilarityBetweenEvents());
                 } else {
                     CompositeEvent newCompositeEvent = new CompositeEvent(event);
                     newCompositeEvent.add(bestSimilarity.event, bestSimilarity.value);
-                    results.add(newCompositeEvent);
+                    index.add(newCompositeEvent);
                 }
 
                 return;
@@ -329,7 +340,7 @@ private void recordEvent(List<CompositeEvent> results, Event event) throws Notif
                 // We have found a composite event C1 made of events (A, B, C) which have the same similarity between
                 // themselves than between A end E.
                 // All we need to do it to add E to C1.
-                bestSimilarity.compositeEvent.add(event, bestSimilarity.value);
+                index.add(bestSimilarity.compositeEvent, event, bestSimilarity.value);
                 return;
             } else if (bestSimilarity.isCompositeEventCompatibleWith(event)) {
                 // We have found a composite event C1 made of events (A, B) which have a greater similarity between
@@ -342,36 +353,13 @@ private void recordEvent(List<CompositeEvent> results, Event event) throws Notif
                 // (or vice versa)
                 // It means the "update" event A has been triggered for technical reason, but the interesting event is
                 // B, which we can group with the event E.
-                bestSimilarity.compositeEvent.add(event,
+                index.add(bestSimilarity.compositeEvent, event,
                         bestSimilarity.compositeEvent.getSimilarityBetweenEvents());
                 return;
             }
         }
         // We haven't found an event that is similar to the current one, so we create a new composite event
-        results.add(new CompositeEvent(event));
-    }
-
-    private BestSimilarity getBestSimilarity(List<CompositeEvent> results, Event event)
-    {
-        BestSimilarity bestSimilarity = new BestSimilarity();
-
-        // Looking for the most similar event inside the existing composite events
-        for (CompositeEvent existingCompositeEvent : results) {
-            for (Event existingEvent : existingCompositeEvent.getEvents()) {
-                int similarity = similarityCalculator.computeSimilarity(event, existingEvent);
-                if (similarity < existingCompositeEvent.getSimilarityBetweenEvents()) {
-                    // Penality
-                    similarity -= 5;
-                }
-                if (similarity > bestSimilarity.value) {
-                    bestSimilarity.value = similarity;
-                    bestSimilarity.event = existingEvent;
-                    bestSimilarity.compositeEvent = existingCompositeEvent;
-                }
-            }
-        }
-
-        return bestSimilarity;
+        index.add(new CompositeEvent(event));
     }
 
     @Override
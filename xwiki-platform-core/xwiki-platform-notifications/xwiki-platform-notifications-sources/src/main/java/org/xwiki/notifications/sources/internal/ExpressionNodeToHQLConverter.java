@@ -46,6 +46,7 @@
 import org.xwiki.notifications.filters.expression.generics.AbstractOperatorNode;
 import org.xwiki.notifications.filters.expression.generics.AbstractUnaryOperatorNode;
 import org.xwiki.notifications.filters.expression.generics.AbstractValueNode;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.text.StringUtils;
 
 import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
@@ -284,7 +285,9 @@ private String parseOtherOperation(AbstractOperatorNode operator, HQLQuery resul
             returnValue = builder.toString();
         } else if (operator instanceof OrderByNode) {
             OrderByNode orderByNode = (OrderByNode) operator;
-            returnValue = String.format("%s ORDER BY %s %s", parseBlock(orderByNode.getQuery(), result),
+            // Ordering an already ordered query adds a secondary ordering
+            returnValue = String.format(orderByNode.getQuery() instanceof OrderByNode ? "%s, %s %s"
+                    : "%s ORDER BY %s %s", parseBlock(orderByNode.getQuery(), result),
                     parseBlock(orderByNode.getProperty(), result), orderByNode.getOrder().name());
         } else if (operator instanceof InListOfReadEventsNode) {
             InListOfReadEventsNode inList = (InListOfReadEventsNode) operator;
@@ -295,6 +298,13 @@ private String parseOtherOperation(AbstractOperatorNode operator, HQLQuery resul
 
             result.getQueryParameters().put("userStatusRead", serializer.serialize(inList.getUser()));
 
+        } else if (operator instanceof AfterCursorNode) {
+            NotificationCursor cursor = ((AfterCursorNode) operator).getCursor();
+
+            returnValue = "(event.date < :cursorDate OR (event.date = :cursorDate AND event.id < :cursorEventId))";
+
+            result.getQueryParameters().put("cursorDate", cursor.getDate());
+            result.getQueryParameters().put("cursorEventId", StringUtils.defaultString(cursor.getEventId()));
         } else {
             returnValue = StringUtils.EMPTY;
         }
@@ -0,0 +1,154 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+/**
+ * Find the users who might be notified about an event, according to the notification data stored in their profile,
+ * so that their preferences and filters don't have to be evaluated for all the users.
+ * <p>
+ * A user is notified about an event only if they enabled the type of the event or if they have a filter preference
+ * forcing the retrieval of some events (an active filter preference). The inclusive filter preferences created when
+ * watching a page, a space or a wiki are not active: they only restrict the events of the enabled types, so the
+ * watchers are already among the users who enabled the type of the event.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = NotificationCandidatesGetter.class)
+@Singleton
+public class NotificationCandidatesGetter
+{
+    private static final int USER_BATCH_SIZE = 100;
+
+    private static final String ENABLED_TYPE_QUERY = "select distinct doc.fullName from Document doc, "
+            + "doc.object(XWiki.XWikiUsers) objUser, doc.object(XWiki.Notifications.Code.NotificationPreferenceClass) "
+            + "pref where pref.eventType = :eventType and pref.notificationEnabled = 1 order by doc.fullName";
+
+    // The filter preferences are active by default so the ones without an explicit isActive value must be counted
+    private static final String ACTIVE_FILTER_QUERY = "select distinct userObj.name from BaseObject userObj, "
+            + "BaseObject filterObj where userObj.className = 'XWiki.XWikiUsers' and filterObj.name = userObj.name "
+            + "and filterObj.className = 'XWiki.Notifications.Code.NotificationFilterPreferenceClass' "
+            + "and not exists (select active.id.id from IntegerProperty active where active.id.id = filterObj.id "
+            + "and active.id.name = 'isActive' and active.value = 0) order by userObj.name";
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    /**
+     * Get the users who might be notified about the given event. The candidates are the global users and the users of
+     * the wiki of the event.
+     *
+     * @param event the event
+     * @return the candidates, in no particular order
+     * @throws QueryException when failing to search the users
+     */
+    public Set<DocumentReference> getCandidates(Event event) throws QueryException
+    {
+        return getCandidates(event, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the users who might be notified about the given event, stopping the search as soon as the given number of
+     * candidates is reached.
+     *
+     * @param event the event
+     * @param limit the maximum number of candidates to return
+     * @return the candidates, in no particular order
+     * @throws QueryException when failing to search the users
+     */
+    public Set<DocumentReference> getCandidates(Event event, int limit) throws QueryException
+    {
+        Set<String> wikis = new LinkedHashSet<>();
+        wikis.add(this.wikiDescriptorManager.getMainWikiId());
+        if (event.getWiki() != null) {
+            wikis.add(event.getWiki().getName());
+        }
+
+        Set<DocumentReference> candidates = new LinkedHashSet<>();
+        for (String wiki : wikis) {
+            if (event.getType() != null) {
+                Query query = this.queryManager.createQuery(ENABLED_TYPE_QUERY, Query.XWQL);
+                query.bindValue("eventType", event.getType());
+                if (!addUsers(query, wiki, candidates, limit)) {
+                    break;
+                }
+            }
+
+            if (!addUsers(this.queryManager.createQuery(ACTIVE_FILTER_QUERY, Query.HQL), wiki, candidates, limit)) {
+                break;
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @return false if the limit has been reached
+     */
+    private boolean addUsers(Query query, String wiki, Set<DocumentReference> candidates, int limit)
+        throws QueryException
+    {
+        WikiReference wikiReference = new WikiReference(wiki);
+
+        query.setWiki(wiki);
+        query.setLimit(USER_BATCH_SIZE);
+
+        int offset = 0;
+        List<String> users;
+        do {
+            query.setOffset(offset);
+            users = query.execute();
+
+            for (String user : users) {
+                candidates.add(this.resolver.resolve(user, wikiReference));
+                if (candidates.size() >= limit) {
+                    return false;
+                }
+            }
+
+            offset += users.size();
+        } while (users.size() == USER_BATCH_SIZE);
+
+        return true;
+    }
+}
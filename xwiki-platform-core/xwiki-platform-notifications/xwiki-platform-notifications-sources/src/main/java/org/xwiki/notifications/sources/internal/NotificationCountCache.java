@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.notifications.NotificationException;
+
+/**
+ * Keep the number of notifications of the users so that displaying the notifications bell doesn't require to run
+ * the notification queries each time. A count is computed the first time it's asked and stays in the cache until
+ * something which might change it happens (see {@link NotificationCountListener}).
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = NotificationCountCache.class)
+@Singleton
+public class NotificationCountCache implements Initializable, Disposable
+{
+    /**
+     * Compute a count which is not in the cache.
+     */
+    @FunctionalInterface
+    public interface Counter
+    {
+        /**
+         * @return the number of notifications
+         * @throws NotificationException if an error happens
+         */
+        long count() throws NotificationException;
+    }
+
+    private static final String NAME = "notifications.count";
+
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * Some changes are not tracked (e.g. a change of access rights or of the members of a group) so the counts are
+     * refreshed from time to time, in seconds.
+     */
+    private static final int LIFESPAN = 300;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * The counts of each user (indexed by serialized user reference) and then by count parameters.
+     */
+    private Cache<Map<String, Long>> cache;
+
+    /**
+     * The counts being computed. An invalidation removes the user from this map so that a count computed before the
+     * invalidation is not put in the cache.
+     */
+    private final Map<String, Object> computing = new HashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId(NAME);
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(MAX_ENTRIES);
+        lru.setLifespan(LIFESPAN);
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.cache = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the notification count cache", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.cache.dispose();
+    }
+
+    /**
+     * @param user the serialized reference of the user
+     * @param onlyUnread if only unread events should be counted
+     * @param maxCount the maximum count to return
+     * @param counter used to compute the count when it's not in the cache
+     * @return the number of notifications of the user
+     * @throws NotificationException if an error happens when computing the count
+     */
+    public long getCount(String user, boolean onlyUnread, int maxCount, Counter counter) throws NotificationException
+    {
+        String key = getKey(onlyUnread, maxCount);
+
+        Map<String, Long> counts = this.cache.get(user);
+        if (counts != null) {
+            Long count = counts.get(key);
+            if (count != null) {
+                return count;
+            }
+        }
+
+        Object token = new Object();
+        synchronized (this) {
+            this.computing.put(user, token);
+        }
+
+        Long count = null;
+        try {
+            count = counter.count();
+        } finally {
+            synchronized (this) {
+                // Don't keep a count computed before an invalidation
+                if (this.computing.remove(user, token) && count != null) {
+                    setCount(user, key, count);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private void setCount(String user, String key, long count)
+    {
+        Map<String, Long> counts = this.cache.get(user);
+        if (counts == null) {
+            counts = new ConcurrentHashMap<>();
+            this.cache.set(user, counts);
+        }
+        counts.put(key, count);
+    }
+
+    private String getKey(boolean onlyUnread, int maxCount)
+    {
+        return String.valueOf(onlyUnread) + '/' + maxCount;
+    }
+
+    /**
+     * Forget the counts of the passed user.
+     *
+     * @param user the serialized reference of the user
+     */
+    public synchronized void invalidate(String user)
+    {
+        this.computing.remove(user);
+        this.cache.remove(user);
+    }
+
+    /**
+     * Forget the counts of all the users.
+     */
+    public synchronized void invalidateAll()
+    {
+        this.computing.clear();
+        this.cache.removeAll();
+    }
+}
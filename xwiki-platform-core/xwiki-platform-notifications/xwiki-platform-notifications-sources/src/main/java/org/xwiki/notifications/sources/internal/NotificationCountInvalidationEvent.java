@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.io.Serializable;
+
+import org.xwiki.observation.event.Event;
+
+/**
+ * Event sent to invalidate the cached notification counts. Unlike the event stream events, it is serializable so
+ * that it's also sent to the other members of the cluster.
+ *
+ * This event also send the following parameters:
+ * source: the serialized references of the users whose counts should be invalidated (a serializable
+ * {@code Collection<String>}), or {@code null} to invalidate the counts of all the users
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class NotificationCountInvalidationEvent implements Event, Serializable
+{
+    /**
+     * The version identifier for this Serializable class. Increment only if the <i>serialized</i> form of the class
+     * changes.
+     */
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof NotificationCountInvalidationEvent;
+    }
+}
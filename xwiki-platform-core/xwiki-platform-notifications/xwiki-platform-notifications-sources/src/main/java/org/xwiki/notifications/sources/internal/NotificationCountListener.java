@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.events.EventStatusSavedEvent;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.query.QueryException;
+
+/**
+ * Invalidate the entries of the {@link NotificationCountCache} which might have been changed by an event.
+ * <ul>
+ * <li>when an event is recorded, the counts of the users who received it in their inbox are invalidated (by the
+ * inbox, once all of them are known), or the counts of the users whose notification data can match the event when the
+ * inboxes are disabled (see {@link NotificationCandidatesGetter})</li>
+ * <li>when an event status is saved (e.g. an event is marked as read), the counts of its user are invalidated</li>
+ * <li>when a document is modified, the counts of the user it might be the profile of are invalidated (the
+ * notification preferences and filters are stored there)</li>
+ * </ul>
+ * The event stream events are only sent on the cluster member which produced them so they are converted to a
+ * {@link NotificationCountInvalidationEvent} which is sent to the whole cluster, once per recorded event.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component
+@Singleton
+@Named(NotificationCountListener.NAME)
+public class NotificationCountListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "NotificationCountListener";
+
+    /**
+     * Above this number of users to invalidate, it's cheaper to invalidate all the counts than to send the list of
+     * users to the cluster.
+     */
+    private static final int MAX_INVALIDATED_USERS = 1000;
+
+    @Inject
+    private NotificationCountCache cache;
+
+    @Inject
+    private NotificationCandidatesGetter candidatesGetter;
+
+    @Inject
+    private NotificationInbox inbox;
+
+    @Inject
+    private NotificationConfiguration configuration;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Setup the listener.
+     */
+    public NotificationCountListener()
+    {
+        super(NAME, Arrays.asList(new EventStreamAddedEvent(), new EventStatusSavedEvent(),
+            new NotificationCountInvalidationEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof NotificationCountInvalidationEvent) {
+            if (source != null) {
+                for (String user : (Collection<String>) source) {
+                    this.cache.invalidate(user);
+                }
+            } else {
+                this.cache.invalidateAll();
+            }
+        } else if (event instanceof EventStatusSavedEvent) {
+            // The inbox invalidates all the recipients of an event at once
+            if (!this.inbox.isInboxThread()) {
+                this.observationManager.notify(new NotificationCountInvalidationEvent(),
+                    Collections.singletonList(((EventStatus) source).getEntityId()));
+            }
+        } else if (event instanceof EventStreamAddedEvent) {
+            // With the inboxes, the users concerned by the event are invalidated when it's dispatched
+            if (!this.configuration.isInboxEnabled()) {
+                invalidateCandidates((org.xwiki.eventstream.Event) source);
+            }
+        } else {
+            // Document events are already sent to the whole cluster
+            this.cache.invalidate(this.serializer.serialize(((DocumentModelBridge) source).getDocumentReference()));
+        }
+    }
+
+    private void invalidateCandidates(org.xwiki.eventstream.Event event)
+    {
+        List<String> users = null;
+        try {
+            // No need to list all the candidates when they are too many to be invalidated one by one
+            Set<DocumentReference> candidates = this.candidatesGetter.getCandidates(event, MAX_INVALIDATED_USERS + 1);
+            if (candidates.isEmpty()) {
+                return;
+            }
+            if (candidates.size() <= MAX_INVALIDATED_USERS) {
+                users = new ArrayList<>(candidates.size());
+                for (DocumentReference candidate : candidates) {
+                    users.add(this.serializer.serialize(candidate));
+                }
+            }
+        } catch (QueryException e) {
+            this.logger.warn("Failed to find the users concerned by the event [{}], invalidating all the counts: {}",
+                event.getId(), e.getMessage());
+        }
+
+        this.observationManager.notify(new NotificationCountInvalidationEvent(), users);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.context.concurrent.ExecutionContextRunnable;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStatusManager;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.eventstream.internal.DefaultEventStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.filters.NotificationFilter;
+import org.xwiki.notifications.filters.NotificationFilterManager;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+/**
+ * Store the recorded events in the inbox of each user who should be notified about them, so that the notifications
+ * of a user can be retrieved without evaluating their preferences and filters against all the events. The inbox of a
+ * user is made of unread statuses, saved with the {@link EventStatusManager}, which are then marked as read like any
+ * other status.
+ * <p>
+ * The events are dispatched in a background thread, since evaluating the preferences of the users can take some
+ * time. Only the users whose notification data can match the event are evaluated (see
+ * {@link NotificationCandidatesGetter}). The number of events waiting to be dispatched is limited: when too many
+ * events are recorded, or when XWiki is restarted, the events recorded after the last dispatched one are read back from
+ * the event stream.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = NotificationInbox.class)
+@Singleton
+public class NotificationInbox implements Disposable
+{
+    private static final int QUEUE_CAPACITY = 10000;
+
+    private static final int EVENT_BATCH_SIZE = 100;
+
+    private static final String DATE = "date";
+
+    private static final String ID = "id";
+
+    // The last event stored in an inbox
+    private static final String LAST_INBOX_EVENT_QUERY = ", ActivityEventStatusImpl inbox "
+            + "where inbox.activityEvent = event order by event.date desc, event.id desc";
+
+    // The events coming after a (date, id) cursor, the id making the order stable for the events of the same date
+    private static final String EVENTS_AFTER_QUERY = "where event.date > :date or (event.date = :date and "
+            + "event.id > :id) order by event.date, event.id";
+
+    @Inject
+    private QueryGenerator queryGenerator;
+
+    @Inject
+    private NotificationCandidatesGetter candidatesGetter;
+
+    @Inject
+    private EventStream eventStream;
+
+    @Inject
+    private EventStatusManager eventStatusManager;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private NotificationFilterManager notificationFilterManager;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    @Named("context")
+    private ComponentManager componentManager;
+
+    @Inject
+    private Logger logger;
+
+    private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Indicate if some recorded events are not in the queue: the ones recorded before a restart or the ones which did
+     * not fit in the queue.
+     */
+    private volatile boolean backlog = true;
+
+    /**
+     * The date of the last event dispatched by {@link #catchUp()}, {@code null} if it's not known yet.
+     */
+    private Date lastDispatchedDate;
+
+    /**
+     * The id of the last event dispatched by {@link #catchUp()}, used with its date as the cursor from which the missed
+     * events are read back. The queued events are not recorded in date order so they never move this cursor.
+     */
+    private String lastDispatchedId;
+
+    private Thread thread;
+
+    /**
+     * Runnable dispatching the queued events to the inboxes.
+     */
+    private class InboxRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (backlog) {
+                    backlog = false;
+                    try {
+                        catchUp();
+                    } catch (Exception e) {
+                        logger.warn("Failed to add the missed events to the notification inboxes: {}",
+                                ExceptionUtils.getRootCauseMessage(e));
+                    }
+                }
+
+                Event event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                dispatchQueuedEvent(event);
+            }
+        }
+    }
+
+    /**
+     * Queue an event to add to the inbox of the users who should be notified about it.
+     *
+     * @param event the event recorded in the event stream
+     */
+    public void addEvent(Event event)
+    {
+        if (!this.queue.offer(event)) {
+            // Don't keep too many events in memory, they will be read back from the event stream
+            this.queue.clear();
+            this.backlog = true;
+        }
+
+        startThread();
+    }
+
+    private synchronized void startThread()
+    {
+        if (this.thread == null) {
+            this.thread = new Thread(new ExecutionContextRunnable(new InboxRunnable(), this.componentManager));
+            this.thread.setName("Notification inbox thread");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Dispatch the events recorded after the last dispatched event (found in the inboxes if not known yet), in the
+     * order they were recorded.
+     *
+     * @throws QueryException when failing to search the events
+     */
+    void catchUp() throws QueryException
+    {
+        if (this.lastDispatchedDate == null) {
+            Query query = this.queryManager.createQuery(LAST_INBOX_EVENT_QUERY, Query.HQL);
+            query.setLimit(1);
+            List<Event> lastEvents = this.eventStream.searchEvents(query);
+            if (lastEvents.isEmpty()) {
+                // Nothing has ever been dispatched, the inboxes start now
+                return;
+            }
+            this.lastDispatchedDate = lastEvents.get(0).getDate();
+            this.lastDispatchedId = lastEvents.get(0).getId();
+        }
+
+        // Page with a strict (date, id) cursor so that the dispatched events are not read again
+        List<Event> events;
+        do {
+            Query query = this.queryManager.createQuery(EVENTS_AFTER_QUERY, Query.HQL);
+            query.bindValue(DATE, this.lastDispatchedDate);
+            query.bindValue(ID, this.lastDispatchedId != null ? this.lastDispatchedId : "");
+            query.setLimit(EVENT_BATCH_SIZE);
+            events = this.eventStream.searchEvents(query);
+
+            for (Event event : events) {
+                dispatchEvent(event);
+
+                // The events are read in the order of the cursor
+                this.lastDispatchedDate = event.getDate();
+                this.lastDispatchedId = event.getId();
+            }
+        } while (events.size() == EVENT_BATCH_SIZE && !Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Dispatch an event taken from the queue, unless it has already been dispatched while catching up.
+     *
+     * @param event the queued event
+     */
+    void dispatchQueuedEvent(Event event)
+    {
+        if (!isCaughtUp(event)) {
+            dispatchEvent(event);
+        }
+    }
+
+    /**
+     * @return {@code true} if the given event is at or before the cursor reached by the last {@link #catchUp()}
+     */
+    private boolean isCaughtUp(Event event)
+    {
+        if (this.lastDispatchedDate == null || event.getDate() == null) {
+            return false;
+        }
+
+        int comparison = event.getDate().compareTo(this.lastDispatchedDate);
+        if (comparison == 0) {
+            // Sending an event again is harmless, the existing inbox entries are left untouched
+            return event.getId() != null && this.lastDispatchedId != null
+                    && event.getId().compareTo(this.lastDispatchedId) <= 0;
+        }
+
+        return comparison < 0;
+    }
+
+    private void dispatchEvent(Event event)
+    {
+        try {
+            dispatch(event);
+        } catch (Exception e) {
+            this.logger.warn("Failed to add the event [{}] to the notification inboxes: {}", event.getId(),
+                    ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * Add the given event to the inbox of the users who should be notified about it.
+     *
+     * @param event the event to dispatch
+     * @throws QueryException when failing to list the users
+     */
+    void dispatch(Event event) throws QueryException
+    {
+        List<String> recipients = new ArrayList<>();
+        for (DocumentReference user : this.candidatesGetter.getCandidates(event)) {
+            dispatch(event, user, recipients);
+        }
+
+        // Invalidate the notification counts of all the recipients at once
+        if (!recipients.isEmpty()) {
+            this.observationManager.notify(new NotificationCountInvalidationEvent(), recipients);
+        }
+    }
+
+    private void dispatch(Event event, DocumentReference user, List<String> recipients)
+    {
+        try {
+            if (isNotified(event, user)) {
+                String entityId = this.serializer.serialize(user);
+                // Never modify an existing entry, the user might have already marked the event as read
+                if (this.eventStatusManager.saveEventStatusIfAbsent(new DefaultEventStatus(event, entityId, false))) {
+                    recipients.add(entityId);
+                }
+            }
+        } catch (Exception e) {
+            this.logger.warn("Failed to add the event [{}] to the notification inbox of [{}]: {}", event.getId(),
+                    user, ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * @return {@code true} if the current thread is the one adding the events to the inboxes
+     */
+    boolean isInboxThread()
+    {
+        return Thread.currentThread() == this.thread;
+    }
+
+    private boolean isNotified(Event event, DocumentReference user) throws Exception
+    {
+        // Use the same query as when the notifications are searched in all the events, restricted to the given event
+        Query query = this.queryGenerator.generateQuery(user, NotificationFormat.ALERT, event);
+        if (query == null) {
+            return false;
+        }
+        query.setLimit(1);
+        if (this.eventStream.searchEvents(query).isEmpty()) {
+            return false;
+        }
+
+        DocumentReference document = event.getDocument();
+        if (document != null && !this.authorizationManager.hasAccess(Right.VIEW, user, document)) {
+            return false;
+        }
+
+        for (NotificationFilter filter : this.notificationFilterManager.getAllFilters(user)) {
+            if (filter.filterEvent(event, user, NotificationFormat.ALERT)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        synchronized (this) {
+            if (this.thread != null) {
+                this.thread.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.remote.RemoteObservationManagerContext;
+
+/**
+ * Add the events recorded in the event stream to the notification inboxes, when they are enabled.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component
+@Singleton
+@Named(NotificationInboxListener.NAME)
+public class NotificationInboxListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "NotificationInboxListener";
+
+    @Inject
+    private NotificationConfiguration configuration;
+
+    @Inject
+    private NotificationInbox inbox;
+
+    @Inject
+    private RemoteObservationManagerContext remoteObservationManagerContext;
+
+    /**
+     * Setup the listener.
+     */
+    public NotificationInboxListener()
+    {
+        super(NAME, new EventStreamAddedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        // The inboxes are filled by the cluster member which recorded the event
+        if (this.remoteObservationManagerContext.isRemoteState()) {
+            return;
+        }
+
+        if (this.configuration.isEnabled() && this.configuration.isInboxEnabled()) {
+            this.inbox.addEvent((org.xwiki.eventstream.Event) source);
+        }
+    }
+}
@@ -51,7 +51,8 @@ public enum Order {
     private Order order;
 
     /**
-     * Construct an ORDER BY node.
+     * Construct an ORDER BY node. If the query to order is itself an ORDER BY node, the property is used as a secondary
+     * ordering.
      * @param query the query to order
      * @param property the property on which to order on
      * @param order the order to use
@@ -91,6 +92,7 @@ public Order getOrder()
     @Override
     public String toString()
     {
-        return String.format("%s ORDER BY %s %s", query, property, order.name());
+        return String.format(query instanceof OrderByNode ? "%s, %s %s" : "%s ORDER BY %s %s", query, property,
+                order.name());
     }
 }
@@ -32,7 +32,10 @@
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.eventstream.Event;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.NotificationConfiguration;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.NotificationFormat;
 import org.xwiki.notifications.filters.NotificationFilter;
@@ -58,6 +61,7 @@
 import org.xwiki.notifications.preferences.NotificationPreference;
 import org.xwiki.notifications.preferences.NotificationPreferenceManager;
 import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
@@ -94,6 +98,9 @@
     @Inject
     private NotificationFilterManager notificationFilterManager;
 
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
     /**
      * Generate the query.
      *
@@ -113,14 +120,122 @@ public Query generateQuery(DocumentReference user, NotificationFormat format, bo
             Date endDate,
             Date startDate, List<String> blackList) throws NotificationException, QueryException
     {
-        ExpressionNodeToHQLConverter.HQLQuery result = hqlConverter.parse(
-                generateQueryExpression(user, format, onlyUnread, endDate, startDate, blackList)
+        return generateQuery(user, format, onlyUnread, endDate, startDate, blackList, null);
+    }
+
+    /**
+     * Generate the query.
+     *
+     * @param user user interested in the notifications
+     * @param format only match notifications enabled for that format
+     * @param onlyUnread if only unread events should be returned
+     * @param endDate do not return events happened after this date
+     * @param startDate do not return events happened before this date
+     * @param blackList list of ids of blacklisted events to not return
+     * @param cursor only return the events coming after this cursor, can be null
+     * @return the query to execute
+     * @throws NotificationException if error happens
+     * @throws QueryException if error happens
+     * @since 9.11RC1
+     */
+    public Query generateQuery(DocumentReference user, NotificationFormat format, boolean onlyUnread,
+            Date endDate, Date startDate, List<String> blackList, NotificationCursor cursor)
+            throws NotificationException, QueryException
+    {
+        return createQuery("where %s",
+                generateQueryExpression(user, format, onlyUnread, endDate, startDate, blackList, cursor));
+    }
+
+    /**
+     * Generate a query returning the given event only if it matches the preferences and the filters of the given
+     * user. The hidden and read statuses of the event are not taken into account since they are evaluated when the
+     * notifications are retrieved.
+     *
+     * @param user user interested in the notifications
+     * @param format only match notifications enabled for that format
+     * @param event the event to match
+     * @return the query to execute, or null if the user is not interested in any notification
+     * @throws NotificationException if error happens
+     * @throws QueryException if error happens
+     * @since 9.11RC1
+     */
+    public Query generateQuery(DocumentReference user, NotificationFormat format, Event event)
+            throws NotificationException, QueryException
+    {
+        AbstractOperatorNode topNode = generatePreferencesExpression(user, format, null);
+        if (topNode == null) {
+            return null;
+        }
+
+        topNode = topNode.and(
+                new EqualsNode(
+                        new PropertyValueNode(EventProperty.ID),
+                        new StringValueNode(event.getId())
+                )
+        );
+        topNode = handleWiki(user, topNode);
+
+        return createQuery("where %s", topNode);
+    }
+
+    /**
+     * Generate a query retrieving the events stored in the inbox of the given user (see
+     * {@link NotificationConfiguration#isInboxEnabled()}). The preferences and the filters of the user have already
+     * been evaluated when the events have been stored in the inbox.
+     *
+     * @param user user interested in the notifications
+     * @param onlyUnread if only unread events should be returned
+     * @param endDate do not return events happened after this date
+     * @param startDate do not return events happened before this date
+     * @param blackList list of ids of blacklisted events to not return
+     * @param cursor only return the events coming after this cursor, can be null
+     * @return the query to execute
+     * @throws QueryException if error happens
+     * @since 9.11RC1
+     */
+    public Query generateInboxQuery(DocumentReference user, boolean onlyUnread, Date endDate, Date startDate,
+            List<String> blackList, NotificationCursor cursor) throws QueryException
+    {
+        AbstractOperatorNode topNode = new NotEqualsNode(
+                new PropertyValueNode(EventProperty.USER),
+                new EntityReferenceNode(user)
         );
+        if (startDate != null) {
+            topNode = topNode.and(
+                    new GreaterThanNode(
+                            new PropertyValueNode(EventProperty.DATE),
+                            new DateValueNode(startDate)
+                    )
+            );
+        }
+        topNode = handleBlackList(blackList, topNode);
+        topNode = handleCursor(cursor, topNode);
+        topNode = handleEndDate(endDate, topNode);
+        topNode = handleHiddenEvents(topNode);
+        topNode = handleOrder(topNode);
+
+        // Join the events with the inbox entries so that the database only reads the events of the user
+        StringBuilder statement = new StringBuilder(", ActivityEventStatusImpl inbox "
+                + "where inbox.activityEvent = event and inbox.entityId = :inboxUser");
+        if (onlyUnread) {
+            statement.append(" and inbox.read = false");
+        }
+        statement.append(" and %s");
+
+        Query query = createQuery(statement.toString(), topNode);
+        query.bindValue("inboxUser", serializer.serialize(user));
+
+        return query;
+    }
+
+    private Query createQuery(String statement, ExpressionNode expression) throws QueryException
+    {
+        ExpressionNodeToHQLConverter.HQLQuery result = hqlConverter.parse(expression);
         if (result.getQuery().isEmpty()) {
             return null;
         }
 
-        Query query = queryManager.createQuery(String.format("where %s", result.getQuery()), Query.HQL);
+        Query query = queryManager.createQuery(String.format(statement, result.getQuery()), Query.HQL);
         for (Map.Entry<String, Object> queryParameter : result.getQueryParameters().entrySet()) {
             query.bindValue(queryParameter.getKey(), queryParameter.getValue());
         }
@@ -148,6 +263,48 @@ public Query generateQuery(DocumentReference user, NotificationFormat format, bo
      */
     public ExpressionNode generateQueryExpression(DocumentReference user, NotificationFormat format, boolean onlyUnread,
             Date endDate, Date startDate, List<String> blackList) throws NotificationException, QueryException
+    {
+        return generateQueryExpression(user, format, onlyUnread, endDate, startDate, blackList, null);
+    }
+
+    /**
+     * Generate the query.
+     *
+     * @param user user interested in the notifications
+     * @param format only match notifications enabled for that format
+     * @param onlyUnread if only unread events should be returned
+     * @param endDate do not return events happened after this date
+     * @param startDate do not return events happened before this date
+     * @param blackList list of ids of blacklisted events to not return
+     * @param cursor only return the events coming after this cursor, can be null
+     * @return the query to execute
+     * @throws NotificationException if error happens
+     * @throws QueryException if error happens
+     * @since 9.11RC1
+     */
+    public ExpressionNode generateQueryExpression(DocumentReference user, NotificationFormat format, boolean onlyUnread,
+            Date endDate, Date startDate, List<String> blackList, NotificationCursor cursor)
+            throws NotificationException, QueryException
+    {
+        AbstractOperatorNode topNode = generatePreferencesExpression(user, format, startDate);
+        if (topNode == null) {
+            return null;
+        }
+
+        // Other basic filters
+        topNode = handleBlackList(blackList, topNode);
+        topNode = handleCursor(cursor, topNode);
+        topNode = handleEndDate(endDate, topNode);
+        topNode = handleHiddenEvents(topNode);
+        topNode = handleEventStatus(onlyUnread, user, topNode);
+        topNode = handleWiki(user, topNode);
+        topNode = handleOrder(topNode);
+
+        return topNode;
+    }
+
+    private AbstractOperatorNode generatePreferencesExpression(DocumentReference user, NotificationFormat format,
+            Date startDate) throws NotificationException
     {
         // First: get the active preferences of the given user
         List<NotificationPreference> preferences = notificationPreferenceManager.getPreferences(
@@ -204,14 +361,6 @@ public ExpressionNode generateQueryExpression(DocumentReference user, Notificati
             topNode = topNode.and(preferencesNode);
         }
 
-        // Other basic filters
-        topNode = handleBlackList(blackList, topNode);
-        topNode = handleEndDate(endDate, topNode);
-        topNode = handleHiddenEvents(topNode);
-        topNode = handleEventStatus(onlyUnread, user, topNode);
-        topNode = handleWiki(user, topNode);
-        topNode = handleOrder(topNode);
-
         return topNode;
     }
 
@@ -357,6 +506,14 @@ private AbstractOperatorNode handleBlackList(List<String> blackList, AbstractOpe
         return topNode;
     }
 
+    private AbstractOperatorNode handleCursor(NotificationCursor cursor, AbstractOperatorNode topNode)
+    {
+        if (cursor != null) {
+            return topNode.and(new AfterCursorNode(cursor));
+        }
+        return topNode;
+    }
+
     private AbstractOperatorNode handleWiki(DocumentReference user, AbstractOperatorNode topNode)
     {
         // If the user is a local user
@@ -373,9 +530,14 @@ private AbstractOperatorNode handleWiki(DocumentReference user, AbstractOperator
 
     private AbstractOperatorNode handleOrder(AbstractOperatorNode topNode)
     {
+        // The id makes the order stable for the events having the same date, which is required by the cursors
         return new OrderByNode(
-                topNode,
-                new PropertyValueNode(EventProperty.DATE),
+                new OrderByNode(
+                        topNode,
+                        new PropertyValueNode(EventProperty.DATE),
+                        OrderByNode.Order.DESC
+                ),
+                new PropertyValueNode(EventProperty.ID),
                 OrderByNode.Order.DESC
         );
     }
@@ -32,6 +32,8 @@
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.notifications.CompositeEvent;
 import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.notifications.sources.NotificationManager;
 import org.xwiki.script.service.ScriptService;
 
@@ -110,6 +112,41 @@ public List<CompositeEvent> getEvents(boolean onyUnread, int expectedCount, Date
         );
     }
 
+    /**
+     * @param onlyUnread either or not to return only unread events
+     * @param expectedCount number of expected events
+     * @param cursor the cursor returned by {@link #getCursor(List)} for the previous page of notifications, or null
+     *            to get the most recent notifications
+     * @return the matching events for the current user coming after the cursor, could be less than expectedCount but
+     *         not more
+     * @throws NotificationException if error happens
+     * @since 9.11RC1
+     */
+    public List<CompositeEvent> getEvents(boolean onlyUnread, int expectedCount, String cursor)
+            throws NotificationException
+    {
+        return notificationManager.getEvents(
+                entityReferenceSerializer.serialize(documentAccessBridge.getCurrentUserReference()),
+                NotificationFormat.ALERT,
+                onlyUnread,
+                expectedCount,
+                NotificationCursor.parse(cursor)
+        );
+    }
+
+    /**
+     * @param events a page of notifications
+     * @return the cursor to pass to {@link #getEvents(boolean, int, String)} to get the next page of notifications,
+     *         or null if the given page is empty
+     * @since 9.11RC1
+     */
+    public String getCursor(List<CompositeEvent> events)
+    {
+        NotificationCursor cursor = NotificationCursor.after(events);
+
+        return cursor != null ? cursor.toString() : null;
+    }
+
     /**
      * Return the number of events to display as notifications concerning the current user.
      *
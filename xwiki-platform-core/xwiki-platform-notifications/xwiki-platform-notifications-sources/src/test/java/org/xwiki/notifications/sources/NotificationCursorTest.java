@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.notifications.CompositeEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationCursor}.
+ *
+ * @version $Id$
+ */
+public class NotificationCursorTest
+{
+    private Event createEvent(long date, String id)
+    {
+        Event event = mock(Event.class);
+        when(event.getDate()).thenReturn(new Date(date));
+        when(event.getId()).thenReturn(id);
+        when(event.getType()).thenReturn("type");
+        return event;
+    }
+
+    @Test
+    public void serialize()
+    {
+        NotificationCursor cursor = new NotificationCursor(new Date(42L), "xwiki:event:1");
+
+        assertEquals("42:xwiki:event:1", cursor.toString());
+        assertEquals(cursor, NotificationCursor.parse(cursor.toString()));
+        assertNull(NotificationCursor.parse(""));
+        assertNull(NotificationCursor.parse(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalid()
+    {
+        NotificationCursor.parse("notadate:event");
+    }
+
+    @Test
+    public void afterOldestEvent() throws Exception
+    {
+        CompositeEvent compositeEvent1 = new CompositeEvent(createEvent(30L, "a"));
+        compositeEvent1.add(createEvent(10L, "b"), 0);
+        CompositeEvent compositeEvent2 = new CompositeEvent(createEvent(20L, "c"));
+        compositeEvent2.add(createEvent(10L, "a"), 0);
+
+        assertEquals(new NotificationCursor(new Date(10L), "a"),
+                NotificationCursor.after(Arrays.asList(compositeEvent1, compositeEvent2)));
+        assertNull(NotificationCursor.after(Collections.emptyList()));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+import org.xwiki.notifications.sources.internal.CompositeEventIndex.BestSimilarity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link CompositeEventIndex}.
+ *
+ * @version $Id$
+ */
+public class CompositeEventIndexTest
+{
+    private static final String[] TYPES = { "update", "create", "addComment", "addAttachment", "custom" };
+
+    private SimilarityCalculator similarityCalculator = new SimilarityCalculator();
+
+    private List<CompositeEvent> results = new ArrayList<>();
+
+    private CompositeEventIndex index = new CompositeEventIndex(this.results, this.similarityCalculator);
+
+    private int eventCount;
+
+    private Event createEvent(String type, DocumentReference document, String groupId)
+    {
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn("event" + this.eventCount);
+        when(event.getDate()).thenReturn(new Date(1000000L - this.eventCount++));
+        when(event.getType()).thenReturn(type);
+        when(event.getDocument()).thenReturn(document);
+        when(event.getGroupId()).thenReturn(groupId);
+        return event;
+    }
+
+    /**
+     * The reference algorithm: compare the event with all the events of all the composite events.
+     */
+    private BestSimilarity getBestSimilarityFromAllEvents(Event event)
+    {
+        BestSimilarity bestSimilarity = new BestSimilarity();
+        for (CompositeEvent compositeEvent : this.results) {
+            for (Event existingEvent : compositeEvent.getEvents()) {
+                int similarity = this.similarityCalculator.computeSimilarity(event, existingEvent);
+                if (similarity < compositeEvent.getSimilarityBetweenEvents()) {
+                    similarity -= 5;
+                }
+                if (similarity > bestSimilarity.value) {
+                    bestSimilarity.value = similarity;
+                    bestSimilarity.event = existingEvent;
+                    bestSimilarity.compositeEvent = compositeEvent;
+                }
+            }
+        }
+        return bestSimilarity;
+    }
+
+    @Test
+    public void getBestSimilarity() throws Exception
+    {
+        DocumentReference document = new DocumentReference("xwiki", "Space", "Page");
+        Event update = createEvent("update", document, "group1");
+        Event comment = createEvent("addComment", document, "group1");
+        Event otherUpdate = createEvent("update", document, "group2");
+        Event noDocument = createEvent("custom", null, "group3");
+
+        assertNull(this.index.getBestSimilarity(update).compositeEvent);
+
+        this.index.add(new CompositeEvent(update));
+        CompositeEvent first = this.results.get(0);
+
+        BestSimilarity bestSimilarity = this.index.getBestSimilarity(comment);
+        assertSame(first, bestSimilarity.compositeEvent);
+        assertSame(update, bestSimilarity.event);
+        assertEquals(SimilarityCalculator.SAME_GROUP_ID_AND_DOCUMENT_BUT_DIFFERENT_TYPES, bestSimilarity.value);
+
+        this.index.add(first, comment, bestSimilarity.value);
+
+        // Same type and document but lower than the similarity between the events of the composite event
+        bestSimilarity = this.index.getBestSimilarity(otherUpdate);
+        assertSame(first, bestSimilarity.compositeEvent);
+        assertSame(update, bestSimilarity.event);
+        assertEquals(SimilarityCalculator.SAME_DOCUMENT_AND_TYPE - 5, bestSimilarity.value);
+
+        this.index.remove(first, update);
+        assertNull(this.index.getBestSimilarity(otherUpdate).compositeEvent);
+
+        assertNull(this.index.getBestSimilarity(noDocument).compositeEvent);
+    }
+
+    @Test
+    public void getBestSimilarityIsTheSameAsComparingAllEvents() throws Exception
+    {
+        Random random = new Random(42);
+        List<DocumentReference> documents = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            documents.add(new DocumentReference("xwiki", "Space", "Page" + i));
+        }
+
+        for (int i = 0; i < 300; ++i) {
+            Event event = createEvent(TYPES[random.nextInt(TYPES.length)],
+                random.nextInt(8) == 0 ? null : documents.get(random.nextInt(documents.size())),
+                random.nextInt(6) == 0 ? null : "group" + random.nextInt(5));
+
+            BestSimilarity expected = getBestSimilarityFromAllEvents(event);
+            BestSimilarity actual = this.index.getBestSimilarity(event);
+            assertEquals(expected.value, actual.value);
+            assertSame(expected.compositeEvent, actual.compositeEvent);
+            assertSame(expected.event, actual.event);
+
+            // Group the events in various ways to cover the modifications of the index
+            if (actual.compositeEvent == null || random.nextInt(5) == 0) {
+                this.index.add(new CompositeEvent(event));
+            } else if (actual.compositeEvent.getEvents().size() > 1 && random.nextInt(4) == 0) {
+                this.index.remove(actual.compositeEvent, actual.event);
+                CompositeEvent compositeEvent = new CompositeEvent(event);
+                compositeEvent.add(actual.event, Math.max(actual.value, 0));
+                this.index.add(compositeEvent);
+            } else {
+                this.index.add(actual.compositeEvent, event,
+                    Math.max(actual.value, actual.compositeEvent.getSimilarityBetweenEvents()));
+            }
+        }
+    }
+}
@@ -33,12 +33,14 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationConfiguration;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.NotificationFormat;
 import org.xwiki.notifications.internal.SimilarityCalculator;
 import org.xwiki.notifications.preferences.NotificationPreference;
 import org.xwiki.notifications.preferences.NotificationPreferenceManager;
 import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.query.Query;
 import org.xwiki.security.authorization.AuthorizationManager;
 import org.xwiki.security.authorization.Right;
@@ -50,10 +52,13 @@
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -73,6 +78,7 @@
     private DocumentReferenceResolver<String> documentReferenceResolver;
     private NotificationPreferenceManager notificationPreferenceManager;
     private AuthorizationManager authorizationManager;
+    private NotificationCountCache countCache;
 
     private DocumentReference userReference = new DocumentReference("xwiki", "XWiki", "UserA");
     private Query query;
@@ -87,19 +93,24 @@ public void setUp() throws Exception
         documentReferenceResolver = mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
         notificationPreferenceManager = mocker.getInstance(NotificationPreferenceManager.class);
         authorizationManager = mocker.getInstance(AuthorizationManager.class);
+        countCache = mocker.getInstance(NotificationCountCache.class);
         startDate = new Date(10);
 
         when(documentReferenceResolver.resolve("xwiki:XWiki.UserA")).thenReturn(userReference);
         query = mock(Query.class);
         when(queryGenerator.generateQuery(any(DocumentReference.class), any(NotificationFormat.class),
                 anyBoolean(), nullable(Date.class),
-                nullable(Date.class), nullable(List.class))).thenReturn(query);
+                nullable(Date.class), nullable(List.class), nullable(NotificationCursor.class))).thenReturn(query);
 
         NotificationPreference pref1 = mock(NotificationPreference.class);
         when(pref1.getProperties()).thenReturn(Collections.singletonMap(NotificationPreferenceProperty.EVENT_TYPE, "create"));
         when(pref1.isNotificationEnabled()).thenReturn(true);
 
         when(notificationPreferenceManager.getAllPreferences(userReference)).thenReturn(Arrays.asList(pref1));
+
+        // Always compute the counts
+        when(countCache.getCount(anyString(), anyBoolean(), anyInt(), any())).thenAnswer(
+            invocation -> invocation.<NotificationCountCache.Counter>getArgument(3).count());
     }
 
     @Test
@@ -129,6 +140,7 @@ public void getEventsWith2Queries() throws Exception
         when(event4.getType()).thenReturn("type4");
         when(event5.getType()).thenReturn("type5");
         when(event6.getType()).thenReturn("type6");
+        when(event4.getId()).thenReturn("event4");
 
         when(eventStream.searchEvents(query)).thenReturn(Arrays.asList(event1, event2, event3, event4),
                 Arrays.asList(event5, event6));
@@ -141,6 +153,56 @@ public void getEventsWith2Queries() throws Exception
         assertEquals(2, results.size());
         assertEquals(event1, results.get(0).getEvents().get(0));
         assertEquals(event5, results.get(1).getEvents().get(0));
+
+        // The second batch starts after the last event of the first one
+        verify(queryGenerator).generateQuery(eq(userReference), eq(NotificationFormat.ALERT), eq(true), isNull(),
+                isNull(), eq(Collections.emptyList()), eq(new NotificationCursor(new Date(1L), "event4")));
+    }
+
+    @Test
+    public void getEventsWithCursor() throws Exception
+    {
+        NotificationCursor cursor = new NotificationCursor(new Date(10L), "event0");
+        Query cursorQuery = mock(Query.class);
+        when(queryGenerator.generateQuery(eq(userReference), eq(NotificationFormat.ALERT), eq(false), isNull(),
+                isNull(), eq(Collections.emptyList()), eq(cursor))).thenReturn(cursorQuery);
+
+        Event event1 = createMockedEvent();
+        when(event1.getId()).thenReturn("event1");
+        when(event1.getType()).thenReturn("type1");
+        when(eventStream.searchEvents(cursorQuery)).thenReturn(Arrays.asList(event1));
+
+        // Test
+        List<CompositeEvent> results = mocker.getComponentUnderTest().getEvents("xwiki:XWiki.UserA",
+                NotificationFormat.ALERT, false, 2, cursor);
+
+        // Verify
+        assertEquals(1, results.size());
+        assertEquals(new NotificationCursor(new Date(1L), "event1"), NotificationCursor.after(results));
+    }
+
+    @Test
+    public void getEventsFromInbox() throws Exception
+    {
+        NotificationConfiguration configuration = mocker.getInstance(NotificationConfiguration.class);
+        when(configuration.isInboxEnabled()).thenReturn(true);
+
+        Query inboxQuery = mock(Query.class);
+        when(queryGenerator.generateInboxQuery(eq(userReference), eq(true), isNull(), isNull(), any(List.class),
+                isNull())).thenReturn(inboxQuery);
+
+        Event event1 = createMockedEvent();
+        when(event1.getType()).thenReturn("type1");
+        when(eventStream.searchEvents(inboxQuery)).thenReturn(Arrays.asList(event1));
+
+        // Test
+        List<CompositeEvent> results
+                = mocker.getComponentUnderTest().getEvents("xwiki:XWiki.UserA", true, 2);
+
+        // Verify
+        assertEquals(1, results.size());
+        assertEquals(event1, results.get(0).getEvents().get(0));
+        verify(inboxQuery).setLimit(4);
     }
 
     private Event createMockedEvent()
@@ -174,7 +236,7 @@ public void getEventsWhenException() throws Exception
         NotificationException exception = new NotificationException("Error");
         when(queryGenerator.generateQuery(eq(userReference), any(NotificationFormat.class),
                 eq(true), isNull(),
-                isNull(), any(List.class))).thenThrow(exception);
+                isNull(), any(List.class), isNull())).thenThrow(exception);
 
         // Test
         NotificationException caughtException = null;
@@ -208,6 +270,7 @@ public void getEventsCount() throws Exception
         // Verify
         assertEquals(5, result);
         verifyZeroInteractions(event3);
+        verify(countCache).getCount(eq("xwiki:XWiki.UserA"), eq(true), eq(5), any());
     }
 
     @Test
@@ -42,6 +42,7 @@
 import org.xwiki.notifications.filters.expression.PropertyValueNode;
 import org.xwiki.notifications.filters.expression.StringValueNode;
 import org.xwiki.notifications.filters.expression.generics.AbstractNode;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 import org.xwiki.text.StringUtils;
 
@@ -258,6 +259,41 @@ public void parseWithOrderBy()
 
     }
 
+    @Test
+    public void parseWithSecondaryOrderBy()
+    {
+        AbstractNode testAST = new OrderByNode(
+                new OrderByNode(
+                        new EqualsNode(
+                                new PropertyValueNode(EventProperty.SPACE),
+                                new PropertyValueNode(EventProperty.PAGE)
+                        ),
+                        new PropertyValueNode(EventProperty.DATE),
+                        OrderByNode.Order.DESC
+                ),
+                new PropertyValueNode(EventProperty.ID),
+                OrderByNode.Order.DESC
+        );
+
+        ExpressionNodeToHQLConverter.HQLQuery result = parser.parse(testAST);
+
+        assertEquals("event.space = event.page ORDER BY event.date DESC, event.id DESC", result.getQuery());
+    }
+
+    @Test
+    public void parseWithAfterCursorNode()
+    {
+        Date date = new Date(1000);
+
+        ExpressionNodeToHQLConverter.HQLQuery result =
+                parser.parse(new AfterCursorNode(new NotificationCursor(date, "event1")));
+
+        assertEquals("(event.date < :cursorDate OR (event.date = :cursorDate AND event.id < :cursorEventId))",
+                result.getQuery());
+        assertEquals(date, result.getQueryParameters().get("cursorDate"));
+        assertEquals("event1", result.getQueryParameters().get("cursorEventId"));
+    }
+
     @Test
     public void parseWithInListOfReadEventsNode()
     {
@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationCandidatesGetter}.
+ *
+ * @version $Id$
+ */
+public class NotificationCandidatesGetterTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<NotificationCandidatesGetter> mocker =
+            new MockitoComponentMockingRule<>(NotificationCandidatesGetter.class);
+
+    private QueryManager queryManager;
+
+    private Query enabledTypeQuery = mock(Query.class);
+
+    private Query activeFilterQuery = mock(Query.class);
+
+    private WikiReference mainWiki = new WikiReference("xwiki");
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private Event event = mock(Event.class);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getMainWikiId()).thenReturn("xwiki");
+
+        this.queryManager = this.mocker.getInstance(QueryManager.class);
+        when(this.queryManager.createQuery(any(), eq(Query.XWQL))).thenReturn(this.enabledTypeQuery);
+        when(this.queryManager.createQuery(startsWith("select distinct userObj.name"), eq(Query.HQL)))
+                .thenReturn(this.activeFilterQuery);
+
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
+        when(resolver.resolve("XWiki.UserA", this.mainWiki)).thenReturn(this.userA);
+        when(resolver.resolve("XWiki.UserB", this.mainWiki)).thenReturn(this.userB);
+
+        when(this.event.getWiki()).thenReturn(this.mainWiki);
+        when(this.event.getType()).thenReturn("update");
+    }
+
+    @Test
+    public void getCandidates() throws Exception
+    {
+        // UserA enabled the type of the event, UserB has an active filter preference and enabled the type too
+        when(this.enabledTypeQuery.execute()).thenReturn(Arrays.asList("XWiki.UserA", "XWiki.UserB"));
+        when(this.activeFilterQuery.execute()).thenReturn(Arrays.asList("XWiki.UserB"));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList(this.userA, this.userB)),
+                this.mocker.getComponentUnderTest().getCandidates(this.event));
+
+        verify(this.enabledTypeQuery).bindValue("eventType", "update");
+        verify(this.enabledTypeQuery).setWiki("xwiki");
+        verify(this.activeFilterQuery).setWiki("xwiki");
+    }
+
+    @Test
+    public void getCandidatesWhenEventHasNoType() throws Exception
+    {
+        when(this.event.getType()).thenReturn(null);
+        when(this.activeFilterQuery.execute()).thenReturn(Collections.emptyList());
+
+        assertEquals(Collections.emptySet(), this.mocker.getComponentUnderTest().getCandidates(this.event));
+
+        verify(this.queryManager, never()).createQuery(any(), eq(Query.XWQL));
+    }
+
+    @Test
+    public void getCandidatesWithLimit() throws Exception
+    {
+        when(this.enabledTypeQuery.execute()).thenReturn(Arrays.asList("XWiki.UserA", "XWiki.UserB"));
+
+        assertEquals(Collections.singleton(this.userA),
+                this.mocker.getComponentUnderTest().getCandidates(this.event, 1));
+
+        // The search stops as soon as the limit is reached
+        verify(this.activeFilterQuery, never()).execute();
+    }
+}
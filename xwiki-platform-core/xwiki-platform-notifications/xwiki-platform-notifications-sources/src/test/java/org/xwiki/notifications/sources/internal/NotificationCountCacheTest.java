@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationCountCache}.
+ *
+ * @version $Id$
+ */
+public class NotificationCountCacheTest
+{
+    private static final String USER_A = "xwiki:XWiki.UserA";
+
+    private static final String USER_B = "xwiki:XWiki.UserB";
+
+    @Rule
+    public final MockitoComponentMockingRule<NotificationCountCache> mocker =
+            new MockitoComponentMockingRule<>(NotificationCountCache.class);
+
+    private Map<String, Map<String, Long>> entries = new HashMap<>();
+
+    private int computations;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Cache<Map<String, Long>> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> this.entries.get(invocation.getArgument(0)));
+        doAnswer(invocation -> this.entries.put(invocation.getArgument(0), invocation.getArgument(1))).when(cache)
+            .set(anyString(), any());
+        doAnswer(invocation -> this.entries.remove(invocation.getArgument(0))).when(cache).remove(anyString());
+        doAnswer(invocation -> {
+            this.entries.clear();
+            return null;
+        }).when(cache).removeAll();
+
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.<Map<String, Long>>createNewCache(any())).thenReturn(cache);
+    }
+
+    private long count(String user, boolean onlyUnread, int maxCount, long count) throws Exception
+    {
+        return this.mocker.getComponentUnderTest().getCount(user, onlyUnread, maxCount, () -> {
+            this.computations++;
+            return count;
+        });
+    }
+
+    @Test
+    public void getCountIsComputedOnce() throws Exception
+    {
+        assertEquals(3, count(USER_A, true, 20, 3));
+        assertEquals(3, count(USER_A, true, 20, 4));
+        assertEquals(1, this.computations);
+
+        // Different parameters
+        assertEquals(5, count(USER_A, false, 20, 5));
+        assertEquals(2, this.computations);
+    }
+
+    @Test
+    public void invalidate() throws Exception
+    {
+        count(USER_A, true, 20, 3);
+        count(USER_B, true, 20, 3);
+
+        this.mocker.getComponentUnderTest().invalidate(USER_A);
+
+        assertEquals(4, count(USER_A, true, 20, 4));
+        assertEquals(3, count(USER_B, true, 20, 4));
+        assertEquals(3, this.computations);
+
+        this.mocker.getComponentUnderTest().invalidateAll();
+
+        assertEquals(5, count(USER_A, true, 20, 5));
+        assertEquals(5, count(USER_B, true, 20, 5));
+        assertEquals(5, this.computations);
+    }
+
+    @Test
+    public void invalidateDuringComputation() throws Exception
+    {
+        NotificationCountCache countCache = this.mocker.getComponentUnderTest();
+
+        // The count is computed before an invalidation happens so it should not be kept
+        assertEquals(3, countCache.getCount(USER_A, true, 20, () -> {
+            countCache.invalidate(USER_A);
+            return 3;
+        }));
+
+        assertEquals(4, count(USER_A, true, 20, 4));
+    }
+}
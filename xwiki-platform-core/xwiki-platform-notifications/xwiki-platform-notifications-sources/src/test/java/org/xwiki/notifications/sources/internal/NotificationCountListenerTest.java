@@ -0,0 +1,161 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.events.EventStatusSavedEvent;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationCountListener}.
+ *
+ * @version $Id$
+ */
+public class NotificationCountListenerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+            new MockitoComponentMockingRule<>(NotificationCountListener.class);
+
+    private NotificationCountCache cache;
+
+    private NotificationConfiguration configuration;
+
+    private NotificationCandidatesGetter candidatesGetter;
+
+    private NotificationInbox inbox;
+
+    private ObservationManager observationManager;
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private Event event = mock(Event.class);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.cache = this.mocker.getInstance(NotificationCountCache.class);
+        this.configuration = this.mocker.getInstance(NotificationConfiguration.class);
+        this.candidatesGetter = this.mocker.getInstance(NotificationCandidatesGetter.class);
+        this.inbox = this.mocker.getInstance(NotificationInbox.class);
+        this.observationManager = this.mocker.getInstance(ObservationManager.class);
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.userA)).thenReturn("xwiki:XWiki.UserA");
+        when(serializer.serialize(this.userB)).thenReturn("xwiki:XWiki.UserB");
+    }
+
+    @Test
+    public void onEventAddedWithoutInbox() throws Exception
+    {
+        when(this.candidatesGetter.getCandidates(this.event, 1001))
+                .thenReturn(new LinkedHashSet<>(Arrays.asList(this.userA, this.userB)));
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStreamAddedEvent(), this.event, null);
+
+        verify(this.observationManager).notify(any(NotificationCountInvalidationEvent.class),
+                eq(Arrays.asList("xwiki:XWiki.UserA", "xwiki:XWiki.UserB")));
+    }
+
+    @Test
+    public void onEventAddedWithTooManyCandidates() throws Exception
+    {
+        Set<DocumentReference> candidates = new LinkedHashSet<>();
+        for (int i = 0; i < 1001; ++i) {
+            candidates.add(new DocumentReference("xwiki", "XWiki", "User" + i));
+        }
+        when(this.candidatesGetter.getCandidates(this.event, 1001)).thenReturn(candidates);
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStreamAddedEvent(), this.event, null);
+
+        verify(this.observationManager).notify(any(NotificationCountInvalidationEvent.class), isNull());
+    }
+
+    @Test
+    public void onEventAddedWithInbox() throws Exception
+    {
+        when(this.configuration.isInboxEnabled()).thenReturn(true);
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStreamAddedEvent(), this.event, null);
+
+        verify(this.candidatesGetter, never()).getCandidates(any(), anyInt());
+        verify(this.observationManager, never()).notify(any(), any());
+    }
+
+    @Test
+    public void onEventStatusSaved() throws Exception
+    {
+        EventStatus status = mock(EventStatus.class);
+        when(status.getEntityId()).thenReturn("xwiki:XWiki.UserA");
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStatusSavedEvent(), status, null);
+
+        verify(this.observationManager).notify(any(NotificationCountInvalidationEvent.class),
+                eq(Collections.singletonList("xwiki:XWiki.UserA")));
+
+        // The statuses saved by the inbox are invalidated by the inbox itself
+        when(this.inbox.isInboxThread()).thenReturn(true);
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStatusSavedEvent(), status, null);
+
+        verify(this.observationManager).notify(any(), any());
+    }
+
+    @Test
+    public void onInvalidation() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new NotificationCountInvalidationEvent(),
+                Arrays.asList("xwiki:XWiki.UserA", "xwiki:XWiki.UserB"), null);
+
+        verify(this.cache).invalidate("xwiki:XWiki.UserA");
+        verify(this.cache).invalidate("xwiki:XWiki.UserB");
+        verify(this.cache, never()).invalidateAll();
+
+        this.mocker.getComponentUnderTest().onEvent(new NotificationCountInvalidationEvent(), null, null);
+
+        verify(this.cache).invalidateAll();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.EventStatusManager;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.eventstream.internal.DefaultEventStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.filters.NotificationFilter;
+import org.xwiki.notifications.filters.NotificationFilterManager;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationInbox}.
+ *
+ * @version $Id$
+ */
+public class NotificationInboxTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<NotificationInbox> mocker =
+            new MockitoComponentMockingRule<>(NotificationInbox.class);
+
+    private QueryGenerator queryGenerator;
+
+    private EventStream eventStream;
+
+    private EventStatusManager eventStatusManager;
+
+    private AuthorizationManager authorizationManager;
+
+    private NotificationFilterManager notificationFilterManager;
+
+    private NotificationCandidatesGetter candidatesGetter;
+
+    private QueryManager queryManager;
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private DocumentReference userC = new DocumentReference("xwiki", "XWiki", "UserC");
+
+    private DocumentReference document = new DocumentReference("xwiki", "Space", "Page");
+
+    private Event event = mock(Event.class);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.queryGenerator = this.mocker.getInstance(QueryGenerator.class);
+        this.eventStream = this.mocker.getInstance(EventStream.class);
+        this.eventStatusManager = this.mocker.getInstance(EventStatusManager.class);
+        when(this.eventStatusManager.saveEventStatusIfAbsent(any())).thenReturn(true);
+        this.authorizationManager = this.mocker.getInstance(AuthorizationManager.class);
+        this.notificationFilterManager = this.mocker.getInstance(NotificationFilterManager.class);
+
+        this.queryManager = this.mocker.getInstance(QueryManager.class);
+
+        this.candidatesGetter = this.mocker.getInstance(NotificationCandidatesGetter.class);
+        when(this.candidatesGetter.getCandidates(this.event))
+                .thenReturn(new LinkedHashSet<>(Arrays.asList(this.userA, this.userB, this.userC)));
+
+        WikiReference wiki = new WikiReference("xwiki");
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.userA)).thenReturn("xwiki:XWiki.UserA");
+        when(serializer.serialize(this.userB)).thenReturn("xwiki:XWiki.UserB");
+
+        when(this.event.getWiki()).thenReturn(wiki);
+        when(this.event.getDocument()).thenReturn(this.document);
+    }
+
+    private void mockMatchingQuery(DocumentReference user, boolean matching) throws Exception
+    {
+        Query query = mock(Query.class);
+        when(this.queryGenerator.generateQuery(user, NotificationFormat.ALERT, this.event)).thenReturn(query);
+        when(this.eventStream.searchEvents(query))
+                .thenReturn(matching ? Arrays.asList(this.event) : Collections.emptyList());
+    }
+
+    @Test
+    public void dispatch() throws Exception
+    {
+        // UserA is interested in the event and can see it
+        mockMatchingQuery(this.userA, true);
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.userA, this.document)).thenReturn(true);
+
+        // UserB is interested in the event but a filter dismisses it
+        mockMatchingQuery(this.userB, true);
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.userB, this.document)).thenReturn(true);
+        NotificationFilter filter = mock(NotificationFilter.class);
+        when(filter.filterEvent(this.event, this.userB, NotificationFormat.ALERT)).thenReturn(true);
+        when(this.notificationFilterManager.getAllFilters(this.userB)).thenReturn(Collections.singleton(filter));
+
+        // UserC is not interested in the event
+        mockMatchingQuery(this.userC, false);
+
+        this.mocker.getComponentUnderTest().dispatch(this.event);
+
+        ArgumentCaptor<EventStatus> captor = ArgumentCaptor.forClass(EventStatus.class);
+        verify(this.eventStatusManager).saveEventStatusIfAbsent(captor.capture());
+        assertEquals(1, captor.getAllValues().size());
+        assertSame(this.event, captor.getValue().getEvent());
+        assertEquals("xwiki:XWiki.UserA", captor.getValue().getEntityId());
+        assertFalse(captor.getValue().isRead());
+
+        // The notification counts of the recipients are invalidated at once
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        verify(observationManager).notify(any(NotificationCountInvalidationEvent.class),
+                eq(Arrays.asList("xwiki:XWiki.UserA")));
+    }
+
+    @Test
+    public void catchUp() throws Exception
+    {
+        Date lastDate = new Date(1000);
+        Event lastEvent = mock(Event.class);
+        when(lastEvent.getDate()).thenReturn(lastDate);
+        when(lastEvent.getId()).thenReturn("last");
+        when(this.event.getDate()).thenReturn(new Date(2000));
+
+        // The last event added to an inbox before the restart
+        Query lastEventQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith(", ActivityEventStatusImpl"), eq(Query.HQL)))
+                .thenReturn(lastEventQuery);
+        when(this.eventStream.searchEvents(lastEventQuery)).thenReturn(Arrays.asList(lastEvent));
+
+        // The events recorded since then
+        Query eventsQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith("where event.date >"), eq(Query.HQL))).thenReturn(eventsQuery);
+        when(this.eventStream.searchEvents(eventsQuery)).thenReturn(Arrays.asList(this.event));
+
+        mockMatchingQuery(this.userA, true);
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.userA, this.document)).thenReturn(true);
+
+        this.mocker.getComponentUnderTest().catchUp();
+
+        // The events are read after the (date, id) cursor of the last dispatched event
+        verify(eventsQuery).bindValue("date", lastDate);
+        verify(eventsQuery).bindValue("id", "last");
+        verify(eventsQuery, never()).setOffset(anyInt());
+        verify(this.candidatesGetter, never()).getCandidates(lastEvent);
+
+        ArgumentCaptor<EventStatus> captor = ArgumentCaptor.forClass(EventStatus.class);
+        verify(this.eventStatusManager).saveEventStatusIfAbsent(captor.capture());
+        assertSame(this.event, captor.getValue().getEvent());
+        assertEquals("xwiki:XWiki.UserA", captor.getValue().getEntityId());
+    }
+
+    @Test
+    public void catchUpWithEmptyInboxes() throws Exception
+    {
+        Query lastEventQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith(", ActivityEventStatusImpl"), eq(Query.HQL)))
+                .thenReturn(lastEventQuery);
+        when(this.eventStream.searchEvents(lastEventQuery)).thenReturn(Collections.emptyList());
+
+        this.mocker.getComponentUnderTest().catchUp();
+
+        verify(this.queryManager, never()).createQuery(startsWith("where event.date >"), any());
+        verify(this.candidatesGetter, never()).getCandidates(any());
+    }
+
+    @Test
+    public void catchUpKeepsReadStatuses() throws Exception
+    {
+        // In-memory storage of the statuses
+        Map<String, EventStatus> statuses = new HashMap<>();
+        doAnswer(invocation -> {
+            EventStatus status = invocation.getArgument(0);
+            statuses.put(status.getEntityId(), status);
+            return null;
+        }).when(this.eventStatusManager).saveEventStatus(any());
+        when(this.eventStatusManager.saveEventStatusIfAbsent(any())).then(invocation -> {
+            EventStatus status = invocation.getArgument(0);
+            return statuses.putIfAbsent(status.getEntityId(), status) == null;
+        });
+
+        when(this.event.getId()).thenReturn("event");
+        when(this.event.getDate()).thenReturn(new Date(1000));
+        mockMatchingQuery(this.userA, true);
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.userA, this.document)).thenReturn(true);
+
+        // The event is added to the inbox of UserA, who then marks it as read
+        this.mocker.getComponentUnderTest().dispatch(this.event);
+        assertFalse(statuses.get("xwiki:XWiki.UserA").isRead());
+        this.eventStatusManager.saveEventStatus(new DefaultEventStatus(this.event, "xwiki:XWiki.UserA", true));
+
+        // After a restart, the event is the last one found in the inboxes and it is read again by the catch up
+        Query lastEventQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith(", ActivityEventStatusImpl"), eq(Query.HQL)))
+                .thenReturn(lastEventQuery);
+        when(this.eventStream.searchEvents(lastEventQuery)).thenReturn(Arrays.asList(this.event));
+        Query eventsQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith("where event.date >"), eq(Query.HQL))).thenReturn(eventsQuery);
+        when(this.eventStream.searchEvents(eventsQuery)).thenReturn(Arrays.asList(this.event));
+
+        this.mocker.getComponentUnderTest().catchUp();
+
+        assertTrue(statuses.get("xwiki:XWiki.UserA").isRead());
+    }
+
+    @Test
+    public void dispatchQueuedEventsRecordedOutOfOrder() throws Exception
+    {
+        // The catch up reached the last event added to an inbox before the restart
+        Event lastEvent = mock(Event.class);
+        when(lastEvent.getDate()).thenReturn(new Date(1000));
+        when(lastEvent.getId()).thenReturn("last");
+        Query lastEventQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith(", ActivityEventStatusImpl"), eq(Query.HQL)))
+                .thenReturn(lastEventQuery);
+        when(this.eventStream.searchEvents(lastEventQuery)).thenReturn(Arrays.asList(lastEvent));
+        Query eventsQuery = mock(Query.class);
+        when(this.queryManager.createQuery(startsWith("where event.date >"), eq(Query.HQL))).thenReturn(eventsQuery);
+        when(this.eventStream.searchEvents(eventsQuery)).thenReturn(Collections.emptyList());
+
+        NotificationInbox inbox = this.mocker.getComponentUnderTest();
+        inbox.catchUp();
+
+        // Two events queued in reverse date order
+        Event newerEvent = mock(Event.class);
+        when(newerEvent.getDate()).thenReturn(new Date(3000));
+        when(newerEvent.getId()).thenReturn("newer");
+        Event olderEvent = mock(Event.class);
+        when(olderEvent.getDate()).thenReturn(new Date(2000));
+        when(olderEvent.getId()).thenReturn("older");
+
+        inbox.dispatchQueuedEvent(newerEvent);
+        inbox.dispatchQueuedEvent(olderEvent);
+        inbox.dispatchQueuedEvent(lastEvent);
+
+        // Both are dispatched, only the event already dispatched by the catch up is skipped
+        verify(this.candidatesGetter).getCandidates(newerEvent);
+        verify(this.candidatesGetter).getCandidates(olderEvent);
+        verify(this.candidatesGetter, never()).getCandidates(lastEvent);
+    }
+}
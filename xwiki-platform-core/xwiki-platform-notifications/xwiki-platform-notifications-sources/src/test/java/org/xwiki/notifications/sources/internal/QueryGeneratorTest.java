@@ -28,6 +28,7 @@
 import org.junit.Test;
 import org.mockito.internal.util.collections.Sets;
 import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.eventstream.Event;
 import org.xwiki.model.internal.reference.DefaultStringEntityReferenceSerializer;
 import org.xwiki.model.internal.reference.DefaultSymbolScheme;
 import org.xwiki.model.reference.DocumentReference;
@@ -46,6 +47,7 @@
 import org.xwiki.notifications.preferences.NotificationPreference;
 import org.xwiki.notifications.preferences.NotificationPreferenceManager;
 import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
+import org.xwiki.notifications.sources.NotificationCursor;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryManager;
 import org.xwiki.test.annotation.ComponentList;
@@ -135,7 +137,7 @@ public void generateQueryExpression() throws Exception
         // Verify
         assertEquals("((((USER <> \"xwiki:XWiki.UserA\" AND DATE >= \"Thu Jan 01 01:00:00 CET 1970\") " +
                 "AND (TYPE = \"create\" AND DATE >= \"Fri Jan 02 04:46:40 CET 1970\")) AND HIDDEN <> true) " +
-                "AND NOT (LIST_OF_READ_EVENTS)) ORDER BY DATE DESC",
+                "AND NOT (LIST_OF_READ_EVENTS)) ORDER BY DATE DESC, ID DESC",
                 node.toString());
 
         // Test 2
@@ -155,7 +157,7 @@ public void generateQueryExpression() throws Exception
                         "AND ( NOT (event IN (select status.activityEvent from ActivityEventStatusImpl status " +
                         "where status.activityEvent = event and status.entityId = :userStatusRead " +
                         "and status.read = true))) " +
-                        "ORDER BY event.date DESC", Query.HQL);
+                        "ORDER BY event.date DESC, event.id DESC", Query.HQL);
         verify(query).bindValue("entity_6359f003e05a9113eed5375aa7e68e2edc0eb97787056f6514681e9ae7bdaead",
                 "xwiki:XWiki.UserA");
         verify(query).bindValue("date_688218ea2b05763819a1e155109e4bf1e8921dd72e8b43d4c89c89133d4a5357", startDate);
@@ -181,7 +183,7 @@ public void generateQueryWhenHiddenDocsAreEnabled() throws Exception
         // Verify
         assertEquals("(((USER <> \"xwiki:XWiki.UserA\" AND DATE >= \"Thu Jan 01 01:00:00 CET 1970\") " +
                 "AND (TYPE = \"create\" AND DATE >= \"Fri Jan 02 04:46:40 CET 1970\")) " +
-                "AND NOT (LIST_OF_READ_EVENTS)) ORDER BY DATE DESC", node.toString());
+                "AND NOT (LIST_OF_READ_EVENTS)) ORDER BY DATE DESC, ID DESC", node.toString());
 
         // Test 2
         mocker.getComponentUnderTest().generateQuery(
@@ -200,7 +202,7 @@ public void generateQueryWhenHiddenDocsAreEnabled() throws Exception
                         "select status.activityEvent from ActivityEventStatusImpl status " +
                         "where status.activityEvent = event " +
                         "and status.entityId = :userStatusRead and status.read = true))) " +
-                        "ORDER BY event.date DESC", Query.HQL);
+                        "ORDER BY event.date DESC, event.id DESC", Query.HQL);
         verify(query).bindValue("entity_6359f003e05a9113eed5375aa7e68e2edc0eb97787056f6514681e9ae7bdaead",
                 "xwiki:XWiki.UserA");
         verify(query).bindValue(eq("date_688218ea2b05763819a1e155109e4bf1e8921dd72e8b43d4c89c89133d4a5357"),
@@ -223,7 +225,7 @@ public void generateQueryWithNotOnlyUnread() throws Exception
         // Verify
         assertEquals("(((USER <> \"xwiki:XWiki.UserA\" AND DATE >= \"Thu Jan 01 01:00:00 CET 1970\") " +
                 "AND (TYPE = \"create\" AND DATE >= \"Fri Jan 02 04:46:40 CET 1970\")) AND HIDDEN <> true) " +
-                "ORDER BY DATE DESC", node.toString());
+                "ORDER BY DATE DESC, ID DESC", node.toString());
 
         // Test 2
         mocker.getComponentUnderTest().generateQuery(
@@ -238,7 +240,7 @@ public void generateQueryWithNotOnlyUnread() throws Exception
                         "AND ((event.type = :value_fa8847b0c33183273f5945508b31c3208a9e4ece58ca47233a05628d8dba3799) " +
                         "AND (event.date >= :date_25db83d7521312b07fa98ca0023df696d1b94ee4fb7c49578c807f5aeb634f7a))) " +
                         "AND (event.hidden <> true) " +
-                        "ORDER BY event.date DESC",
+                        "ORDER BY event.date DESC, event.id DESC",
                 Query.HQL);
     }
 
@@ -257,7 +259,7 @@ public void generateQueryWithUntilDate() throws Exception
         assertEquals("(((((USER <> \"xwiki:XWiki.UserA\" AND DATE >= \"Thu Jan 01 01:00:00 CET 1970\") " +
                 "AND (TYPE = \"create\" AND DATE >= \"Fri Jan 02 04:46:40 CET 1970\")) " +
                 "AND DATE <= \"Sun Sep 09 03:46:40 CEST 2001\") AND HIDDEN <> true) " +
-                "AND NOT (LIST_OF_READ_EVENTS)) ORDER BY DATE DESC", node.toString());
+                "AND NOT (LIST_OF_READ_EVENTS)) ORDER BY DATE DESC, ID DESC", node.toString());
 
         // Test 2
         mocker.getComponentUnderTest().generateQuery(
@@ -277,7 +279,7 @@ public void generateQueryWithUntilDate() throws Exception
                         "select status.activityEvent from ActivityEventStatusImpl status " +
                         "where status.activityEvent = event and status.entityId = :userStatusRead " +
                         "and status.read = true))) " +
-                        "ORDER BY event.date DESC",
+                        "ORDER BY event.date DESC, event.id DESC",
                 Query.HQL);
         verify(query).bindValue("date_688218ea2b05763819a1e155109e4bf1e8921dd72e8b43d4c89c89133d4a5357", startDate);
         verify(query).bindValue("date_25db83d7521312b07fa98ca0023df696d1b94ee4fb7c49578c807f5aeb634f7a", pref1StartDate);
@@ -303,7 +305,7 @@ public void generateQueryWithUntilDateAndBlackList() throws Exception
                 "AND DATE <= \"Sun Sep 09 03:46:40 CEST 2001\") " +
                 "AND HIDDEN <> true) " +
                 "AND NOT (LIST_OF_READ_EVENTS)) " +
-                "ORDER BY DATE DESC",
+                "ORDER BY DATE DESC, ID DESC",
                 node.toString()
         );
     }
@@ -323,7 +325,7 @@ public void generateQueryWithLocalUser() throws Exception
                 + "AND (TYPE = \"create\" AND DATE >= \"Fri Jan 02 04:46:40 CET 1970\")) AND HIDDEN <> true) "
                 + "AND NOT (LIST_OF_READ_EVENTS)) "
                 + "AND WIKI = \"Wiki xwiki\") "
-                + "ORDER BY DATE DESC",
+                + "ORDER BY DATE DESC, ID DESC",
                 node.toString()
         );
     }
@@ -373,7 +375,7 @@ public void generateQueryWithFilters() throws Exception
                 "AND NOT (ID IN (\"event1\", \"event2\"))) " +
                 "AND HIDDEN <> true) " +
                 "AND NOT (LIST_OF_READ_EVENTS)) " +
-                "ORDER BY DATE DESC", node.toString());
+                "ORDER BY DATE DESC, ID DESC", node.toString());
     }
 
     @Test
@@ -401,9 +403,85 @@ public void generateQueryWithNoRelevantFilters() throws Exception
                 "AND NOT (ID IN (\"event1\", \"event2\"))) " +
                 "AND HIDDEN <> true) " +
                 "AND NOT (LIST_OF_READ_EVENTS)) " +
-                "ORDER BY DATE DESC",
+                "ORDER BY DATE DESC, ID DESC",
                 node.toString()
         );
     }
 
+    @Test
+    public void generateQueryForEvent() throws Exception
+    {
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn("event1");
+
+        // Test
+        mocker.getComponentUnderTest().generateQuery(userReference, NotificationFormat.ALERT, event);
+
+        // Verify: neither the hidden nor the read statuses are taken into account
+        verify(queryManager).createQuery(
+                "where ((" +
+                        "event.user <> :entity_6359f003e05a9113eed5375aa7e68e2edc0eb97787056f6514681e9ae7bdaead) " +
+                        "AND ((event.type = :value_fa8847b0c33183273f5945508b31c3208a9e4ece58ca47233a05628d8dba3799) " +
+                        "AND (event.date >= :date_25db83d7521312b07fa98ca0023df696d1b94ee4fb7c49578c807f5aeb634f7a))) " +
+                        "AND (event.id = :value_29663b9a32ee32c2ca5a645117696ce0888c84b39f8fd91c0ec4ebcd09025df4)",
+                Query.HQL);
+        verify(query).bindValue("value_29663b9a32ee32c2ca5a645117696ce0888c84b39f8fd91c0ec4ebcd09025df4", "event1");
+    }
+
+    @Test
+    public void generateInboxQuery() throws Exception
+    {
+        Date untilDate = new Date(1000000000000L);
+
+        // Test
+        mocker.getComponentUnderTest().generateInboxQuery(userReference, true, untilDate, null,
+                Collections.emptyList(), null);
+
+        // Verify
+        verify(queryManager).createQuery(
+                ", ActivityEventStatusImpl inbox where inbox.activityEvent = event " +
+                        "and inbox.entityId = :inboxUser and inbox.read = false and ((" +
+                        "event.user <> :entity_6359f003e05a9113eed5375aa7e68e2edc0eb97787056f6514681e9ae7bdaead) " +
+                        "AND (event.date <= :date_582ce8e50c9ad1782bdd021604912ed119e6ab2ff58a094f23b3be0ce6105306)) " +
+                        "AND (event.hidden <> true) " +
+                        "ORDER BY event.date DESC, event.id DESC",
+                Query.HQL);
+        verify(query).bindValue("inboxUser", "xwiki:XWiki.UserA");
+        verify(query).bindValue("date_582ce8e50c9ad1782bdd021604912ed119e6ab2ff58a094f23b3be0ce6105306", untilDate);
+    }
+
+    @Test
+    public void generateQueryWithCursor() throws Exception
+    {
+        Date cursorDate = new Date(1000000000000L);
+
+        // Test
+        ExpressionNode node = mocker.getComponentUnderTest().generateQueryExpression(userReference,
+                NotificationFormat.ALERT, false, null, null, null, new NotificationCursor(cursorDate, "event1"));
+
+        // Verify
+        assertEquals("(((USER <> \"xwiki:XWiki.UserA\" AND (TYPE = \"create\" " +
+                "AND DATE >= \"Fri Jan 02 04:46:40 CET 1970\")) " +
+                "AND AFTER_CURSOR(1000000000000:event1)) " +
+                "AND HIDDEN <> true) " +
+                "ORDER BY DATE DESC, ID DESC",
+                node.toString());
+
+        // Test 2
+        mocker.getComponentUnderTest().generateQuery(userReference, NotificationFormat.ALERT, false, null, null,
+                null, new NotificationCursor(cursorDate, "event1"));
+
+        verify(queryManager).createQuery(
+                "where (((" +
+                        "event.user <> :entity_6359f003e05a9113eed5375aa7e68e2edc0eb97787056f6514681e9ae7bdaead) " +
+                        "AND ((event.type = :value_fa8847b0c33183273f5945508b31c3208a9e4ece58ca47233a05628d8dba3799) " +
+                        "AND (event.date >= :date_25db83d7521312b07fa98ca0023df696d1b94ee4fb7c49578c807f5aeb634f7a))) " +
+                        "AND ((event.date < :cursorDate OR (event.date = :cursorDate " +
+                        "AND event.id < :cursorEventId)))) " +
+                        "AND (event.hidden <> true) " +
+                        "ORDER BY event.date DESC, event.id DESC",
+                Query.HQL);
+        verify(query).bindValue("cursorDate", cursorDate);
+        verify(query).bindValue("cursorEventId", "event1");
+    }
 }
@@ -37,6 +37,7 @@
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -1894,12 +1895,25 @@ public XWikiDocument getDocument(XWikiDocument document, String revision, XWikiC
      */
     public XWikiDocument getDocument(DocumentReference reference, XWikiContext context) throws XWikiException
     {
-        XWikiDocument doc = new XWikiDocument(
-            reference.getLocale() != null ? new DocumentReference(reference, null) : reference, reference.getLocale());
-
-        doc.setContentDirty(true);
+        return getDocument(XWikiDocument.newDocumentToLoad(reference), context);
+    }
 
-        return getDocument(doc, context);
+    /**
+     * Load several documents at once, which is a lot more efficient than calling
+     * {@link #getDocument(DocumentReference, XWikiContext)} in a loop when most of them are not in the cache.
+     *
+     * @param references the references of the documents, the locale of each reference indicating the translation to
+     *            load
+     * @param context see {@link XWikiContext}
+     * @return the documents, in the same order as the passed references (documents which don't exist are returned as
+     *         new documents)
+     * @throws XWikiException when failing to load the documents
+     * @since 9.11RC1
+     */
+    public List<XWikiDocument> getDocuments(Collection<DocumentReference> references, XWikiContext context)
+        throws XWikiException
+    {
+        return getStore().loadXWikiDocs(references, context);
     }
 
     /**
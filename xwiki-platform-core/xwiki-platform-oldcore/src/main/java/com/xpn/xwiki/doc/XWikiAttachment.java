@@ -20,6 +20,7 @@
 package com.xpn.xwiki.doc;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
@@ -831,6 +832,35 @@ public byte[] getContent(XWikiContext context) throws XWikiException
      * @since 2.3M2
      */
     public InputStream getContentInputStream(XWikiContext context) throws XWikiException
+    {
+        loadVersionContent(context);
+
+        return this.content.getContentInputStream();
+    }
+
+    /**
+     * Retrieve the file holding the content of this attachment, when the content is stored in a file which can be read
+     * directly. This allows copying the content without going through intermediate buffers (using
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} for
+     * example).
+     *
+     * @param context current XWikiContext
+     * @return the file holding the content of this attachment, {@code null} if the content is not available as a
+     *         file, in which case {@link #getContentInputStream(XWikiContext)} should be used
+     * @throws XWikiException when an error occurs during wiki operation
+     * @since 9.11RC1
+     */
+    public File getContentFile(XWikiContext context) throws XWikiException
+    {
+        loadVersionContent(context);
+
+        return this.content.getContentFile();
+    }
+
+    /**
+     * Load the content matching the version of this attachment if it's not already loaded.
+     */
+    private void loadVersionContent(XWikiContext context) throws XWikiException
     {
         if (this.content == null && context != null) {
             if (Objects.equals(getVersion(), getLatestStoredVersion(context))) {
@@ -851,8 +881,6 @@ public InputStream getContentInputStream(XWikiContext context) throws XWikiExcep
                 }
             }
         }
-
-        return this.content.getContentInputStream();
     }
 
     /**
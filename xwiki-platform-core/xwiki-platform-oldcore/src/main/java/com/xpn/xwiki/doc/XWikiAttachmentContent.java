@@ -246,6 +246,20 @@ public InputStream getContentInputStream()
         }
     }
 
+    /**
+     * @return the file holding the content of this attachment, {@code null} if the content is not stored in a file
+     *         (for example because it's small enough to be kept in memory)
+     * @since 9.11RC1
+     */
+    public File getContentFile()
+    {
+        if (this.file instanceof DiskFileItem && !this.file.isInMemory()) {
+            return ((DiskFileItem) this.file).getStoreLocation();
+        }
+
+        return null;
+    }
+
     /**
      * Set the content of the attachment by writing to a provided OutputStream. Content is *not* appended, this method
      * clears the content and creates new content. If you want to append content, you can call
@@ -160,10 +160,12 @@
 import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
 import com.xpn.xwiki.internal.AbstractNotifyOnUpdateList;
 import com.xpn.xwiki.internal.cache.rendering.RenderingCache;
+import com.xpn.xwiki.internal.cache.xdom.XDOMCache;
 import com.xpn.xwiki.internal.filter.XWikiDocumentFilterUtils;
 import com.xpn.xwiki.internal.merge.MergeUtils;
 import com.xpn.xwiki.internal.render.LinkedResourceHelper;
 import com.xpn.xwiki.internal.render.OldRendering;
+import com.xpn.xwiki.internal.store.DocumentElementsLoader;
 import com.xpn.xwiki.internal.xml.DOMXMLWriter;
 import com.xpn.xwiki.internal.xml.XMLWriter;
 import com.xpn.xwiki.objects.BaseCollection;
@@ -512,6 +514,39 @@ protected void added(XWikiAttachment element)
     // Caching
     private boolean fromCache = false;
 
+    /**
+     * @see #isSnapshot()
+     */
+    private boolean snapshot;
+
+    /**
+     * The snapshot document this document has been cloned from and from which the objects, attachments and class are
+     * copied the first time they are accessed. {@code null} when there is nothing left to copy.
+     */
+    private XWikiDocument copyOnWriteSource;
+
+    private boolean xObjectsShared;
+
+    private boolean attachmentsShared;
+
+    /**
+     * The elements ({@link #HAS_OBJECTS}, {@link #HAS_ATTACHMENTS}) which were not loaded with the document and which
+     * are loaded the first time they are accessed.
+     */
+    private volatile int elementsToLoad;
+
+    /**
+     * Used to load the {@link #elementsToLoad}.
+     */
+    private DocumentElementsLoader elementsLoader;
+
+    /**
+     * True while loading elements, to ignore the access to the elements being loaded.
+     */
+    private boolean loadingElements;
+
+    private boolean xClassShared;
+
     private List<BaseObject> xObjectsToRemove = new ArrayList<BaseObject>();
 
     private List<XWikiAttachmentToRemove> attachmentsToRemove = new ArrayList<XWikiAttachmentToRemove>();
@@ -622,6 +657,23 @@ public XWikiDocument(DocumentReference reference, Locale locale)
         this.locale = locale;
     }
 
+    /**
+     * Create the document instance to pass to the store to load the document with the passed reference.
+     *
+     * @param reference the reference of the document, the locale of the reference indicating the translation to load
+     * @return the document to load
+     * @since 9.11RC1
+     */
+    public static XWikiDocument newDocumentToLoad(DocumentReference reference)
+    {
+        XWikiDocument doc = new XWikiDocument(
+            reference.getLocale() != null ? new DocumentReference(reference, null) : reference, reference.getLocale());
+
+        doc.setContentDirty(true);
+
+        return doc;
+    }
+
     /**
      * @deprecated since 2.2M1 use {@link #XWikiDocument(org.xwiki.model.reference.DocumentReference)} instead
      */
@@ -2247,6 +2299,8 @@ public void setMostRecent(boolean mostRecent)
      */
     public BaseClass getXClass()
     {
+        copyXClassFromSnapshot();
+
         if (this.xClass == null) {
             BaseClass emptyClass = new BaseClass();
             // Make sure not to cause any false document versions if this document is saved.
@@ -2262,6 +2316,8 @@ public BaseClass getXClass()
      */
     public void setXClass(BaseClass xwikiClass)
     {
+        this.xClassShared = false;
+
         xwikiClass.setOwnerDocument(this);
 
         this.xClass = xwikiClass;
@@ -2272,6 +2328,9 @@ public void setXClass(BaseClass xwikiClass)
      */
     public Map<DocumentReference, List<BaseObject>> getXObjects()
     {
+        copyXObjectsFromSnapshot();
+        loadElement(HAS_OBJECTS);
+
         return this.xObjects;
     }
 
@@ -2301,6 +2360,8 @@ public void setXObjects(Map<DocumentReference, List<BaseObject>> objects)
 
         // Replace the current objects with the provided ones.
         this.xObjects = objects;
+        this.xObjectsShared = false;
+        this.elementsToLoad &= ~HAS_OBJECTS;
     }
 
     /**
@@ -2364,10 +2425,10 @@ public int createXObject(EntityReference classReference, XWikiContext context) t
         BaseObject object = BaseClass.newCustomClassInstance(absoluteClassReference, context);
         object.setOwnerDocument(this);
         object.setXClassReference(classReference);
-        List<BaseObject> objects = this.xObjects.get(absoluteClassReference);
+        List<BaseObject> objects = getXObjects().get(absoluteClassReference);
         if (objects == null) {
             objects = new ArrayList<BaseObject>();
-            this.xObjects.put(absoluteClassReference, objects);
+            getXObjects().put(absoluteClassReference, objects);
         }
         objects.add(object);
         int nb = objects.size() - 1;
@@ -2451,7 +2512,7 @@ public List<BaseObject> getXObjects(EntityReference reference)
     @Deprecated
     public Vector<BaseObject> getObjects(String className)
     {
-        List<BaseObject> result = this.xObjects.get(resolveClassReference(className));
+        List<BaseObject> result = getXObjects().get(resolveClassReference(className));
         return result == null ? null : new Vector<BaseObject>(result);
     }
 
@@ -2461,7 +2522,7 @@ public Vector<BaseObject> getObjects(String className)
     public void setXObjects(DocumentReference classReference, List<BaseObject> objects)
     {
         // Remove existing objects
-        List<BaseObject> existingbjects = this.xObjects.get(classReference);
+        List<BaseObject> existingbjects = getXObjects().get(classReference);
         if (existingbjects != null) {
             existingbjects.clear();
         }
@@ -2475,7 +2536,7 @@ public void setXObjects(DocumentReference classReference, List<BaseObject> objec
             // Pretty wrong but can't remove that for retro compatibility reasons...
             // Note that it means that someone can put an unmodifiable list here make impossible to add any object of
             // this class.
-            this.xObjects.put(classReference, objects);
+            getXObjects().put(classReference, objects);
         } else {
             for (BaseObject baseObject : objects) {
                 addXObject(classReference, baseObject);
@@ -2726,7 +2787,7 @@ public BaseObject getObject(String className, String key, String value, boolean
     @Deprecated
     public void addXObject(DocumentReference classReference, BaseObject object)
     {
-        List<BaseObject> vobj = this.xObjects.get(classReference);
+        List<BaseObject> vobj = getXObjects().get(classReference);
         if (vobj == null) {
             setXObject(classReference, 0, object);
         } else {
@@ -2746,7 +2807,7 @@ public void addXObject(BaseObject object)
     {
         object.setOwnerDocument(this);
 
-        List<BaseObject> vobj = this.xObjects.get(object.getXClassReference());
+        List<BaseObject> vobj = getXObjects().get(object.getXClassReference());
         if (vobj == null) {
             setXObject(0, object);
         } else {
@@ -2775,10 +2836,10 @@ public void setXObject(DocumentReference classReference, int nb, BaseObject obje
             object.setNumber(nb);
         }
 
-        List<BaseObject> objects = this.xObjects.get(classReference);
+        List<BaseObject> objects = getXObjects().get(classReference);
         if (objects == null) {
             objects = new ArrayList<BaseObject>();
-            this.xObjects.put(classReference, objects);
+            getXObjects().put(classReference, objects);
         }
         while (nb >= objects.size()) {
             objects.add(null);
@@ -2801,10 +2862,10 @@ public void setXObject(int nb, BaseObject object)
         object.setOwnerDocument(this);
         object.setNumber(nb);
 
-        List<BaseObject> objects = this.xObjects.get(object.getXClassReference());
+        List<BaseObject> objects = getXObjects().get(object.getXClassReference());
         if (objects == null) {
             objects = new ArrayList<BaseObject>();
-            this.xObjects.put(object.getXClassReference(), objects);
+            getXObjects().put(object.getXClassReference(), objects);
         }
         while (nb >= objects.size()) {
             objects.add(null);
@@ -2920,7 +2981,7 @@ public void duplicateXObjects(XWikiDocument templatedoc)
     private void cloneXObjects(XWikiDocument templatedoc, boolean keepsIdentity)
     {
         // clean map
-        this.xObjects.clear();
+        getXObjects().clear();
 
         // fill map
         for (Map.Entry<DocumentReference, List<BaseObject>> entry : templatedoc.getXObjects().entrySet()) {
@@ -3516,6 +3577,82 @@ public void setFromCache(boolean fromCache)
         this.fromCache = fromCache;
     }
 
+    /**
+     * A snapshot is a document shared by several threads (typically the instance stored in the document cache) and
+     * which is never modified. Cloning a snapshot is cheap: the objects, attachments and class of the clone are only
+     * copied from the snapshot the first time they are accessed on the clone.
+     *
+     * @return true if this document is a read-only snapshot
+     * @since 9.11RC1
+     */
+    public boolean isSnapshot()
+    {
+        return this.snapshot;
+    }
+
+    /**
+     * @param snapshot true if this document is a read-only snapshot
+     * @see #isSnapshot()
+     * @since 9.11RC1
+     */
+    public void setSnapshot(boolean snapshot)
+    {
+        if (snapshot) {
+            // A snapshot is shared between threads so it cannot lazily copy anything anymore
+            copyXObjectsFromSnapshot();
+            copyAttachmentsFromSnapshot();
+            copyXClassFromSnapshot();
+        }
+
+        this.snapshot = snapshot;
+    }
+
+    private void copyXObjectsFromSnapshot()
+    {
+        if (this.xObjectsShared) {
+            this.xObjectsShared = false;
+
+            // Copying the objects is not a modification of the document
+            boolean metaDataDirty = isMetaDataDirty();
+            cloneXObjects(this.copyOnWriteSource, true);
+            setMetaDataDirty(metaDataDirty);
+
+            releaseCopyOnWriteSource();
+        }
+    }
+
+    private void copyAttachmentsFromSnapshot()
+    {
+        if (this.attachmentsShared) {
+            this.attachmentsShared = false;
+
+            // Copying the attachments is not a modification of the document
+            boolean metaDataDirty = isMetaDataDirty();
+            cloneAttachments(this.copyOnWriteSource);
+            setMetaDataDirty(metaDataDirty);
+
+            releaseCopyOnWriteSource();
+        }
+    }
+
+    private void copyXClassFromSnapshot()
+    {
+        if (this.xClassShared) {
+            this.xClassShared = false;
+
+            setXClass(this.copyOnWriteSource.getXClass().clone());
+
+            releaseCopyOnWriteSource();
+        }
+    }
+
+    private void releaseCopyOnWriteSource()
+    {
+        if (!this.xObjectsShared && !this.attachmentsShared && !this.xClassShared) {
+            this.copyOnWriteSource = null;
+        }
+    }
+
     public void readDocMetaFromForm(EditForm eform, XWikiContext context) throws XWikiException
     {
         String defaultLanguage = eform.getDefaultLanguage();
@@ -3999,15 +4136,39 @@ private XWikiDocument cloneInternal(DocumentReference newDocumentReference, bool
             doc.setSyntax(getSyntax());
             doc.setHidden(isHidden());
 
-            if (this.xClass != null) {
-                doc.setXClass(this.xClass.clone());
-            }
+            // Make sure this.xClass is up to date
+            copyXClassFromSnapshot();
 
-            if (keepsIdentity) {
+            if (keepsIdentity && isSnapshot()) {
+                // The snapshot is never modified so we can delay the (costly) copy of its objects, attachments and
+                // class until the clone actually needs them
                 doc.setXClassXML(getXClassXML());
-                doc.cloneXObjects(this);
-                doc.cloneAttachments(this);
+                doc.copyOnWriteSource = this;
+                doc.xObjectsShared = true;
+                doc.attachmentsShared = true;
+                doc.xClassShared = this.xClass != null;
+            } else if (keepsIdentity) {
+                if (this.xClass != null) {
+                    doc.setXClass(this.xClass.clone());
+                }
+
+                doc.setXClassXML(getXClassXML());
+
+                // The elements not loaded yet are loaded by the clone itself when needed
+                DocumentElementsLoader loader = this.elementsLoader;
+                int notLoaded = this.elementsToLoad;
+                if ((notLoaded & HAS_OBJECTS) == 0) {
+                    doc.cloneXObjects(this);
+                }
+                if ((notLoaded & HAS_ATTACHMENTS) == 0) {
+                    doc.cloneAttachments(this);
+                }
+                doc.setElementsToLoad(notLoaded, loader);
             } else {
+                if (this.xClass != null) {
+                    doc.setXClass(this.xClass.clone());
+                }
+
                 doc.getXClass().setCustomMapping(null);
                 doc.duplicateXObjects(this);
                 doc.copyAttachments(this);
@@ -4704,6 +4865,10 @@ public void setAttachmentList(List<XWikiAttachment> list)
         // For backwards compatibility reasons (and in general), we need to allow callers to do something like
         // setAttachmentList(getAttachmentList())
         if (this.attachmentList != list) {
+            // No need to copy (or load) the attachments since they are going to be replaced anyway
+            this.attachmentsShared = false;
+            this.elementsToLoad &= ~HAS_ATTACHMENTS;
+
             this.attachmentList.clear();
             this.attachmentList.addAll(list);
         }
@@ -4711,6 +4876,9 @@ public void setAttachmentList(List<XWikiAttachment> list)
 
     public List<XWikiAttachment> getAttachmentList()
     {
+        copyAttachmentsFromSnapshot();
+        loadElement(HAS_ATTACHMENTS);
+
         return this.attachmentList;
     }
 
@@ -4730,7 +4898,7 @@ public void saveAllAttachments(XWikiContext context) throws XWikiException
     public void saveAllAttachments(boolean updateParent, boolean transaction, XWikiContext context)
         throws XWikiException
     {
-        for (XWikiAttachment attachment : this.attachmentList) {
+        for (XWikiAttachment attachment : getAttachmentList()) {
             saveAttachmentContent(attachment, false, transaction, context);
         }
 
@@ -5180,7 +5348,7 @@ public List<String> getChildren(int nb, int start, XWikiContext context) throws
      */
     public void renameProperties(DocumentReference classReference, Map<String, String> fieldsToRename)
     {
-        List<BaseObject> objects = this.xObjects.get(classReference);
+        List<BaseObject> objects = getXObjects().get(classReference);
         if (objects == null) {
             return;
         }
@@ -6760,6 +6928,77 @@ public void setElement(int element, boolean toggle)
         }
     }
 
+    /**
+     * Indicate that some elements were not loaded with the document and should be loaded the first time they are
+     * accessed (for example through {@link #getXObjects()} or {@link #getAttachmentList()}).
+     *
+     * @param elements the elements to load later ({@link #HAS_OBJECTS}, {@link #HAS_ATTACHMENTS})
+     * @param loader used to load the elements
+     * @since 9.11RC1
+     */
+    public void setElementsToLoad(int elements, DocumentElementsLoader loader)
+    {
+        this.elementsLoader = elements != 0 ? loader : null;
+        this.elementsToLoad = elements;
+    }
+
+    /**
+     * @param element the element ({@link #HAS_OBJECTS}, {@link #HAS_ATTACHMENTS})
+     * @return true if the passed element is loaded, false if it will be loaded the first time it's accessed
+     * @since 9.11RC1
+     */
+    public boolean isElementLoaded(int element)
+    {
+        return (this.elementsToLoad & element) == 0;
+    }
+
+    private void loadElement(int element)
+    {
+        if ((this.elementsToLoad & element) != 0) {
+            // Documents stored in the cache are shared between threads
+            synchronized (this) {
+                if ((this.elementsToLoad & element) != 0 && !this.loadingElements) {
+                    loadElementSynchronized(element);
+                }
+            }
+        }
+    }
+
+    private void loadElementSynchronized(int element)
+    {
+        this.loadingElements = true;
+
+        // Loading the elements is not a modification of the document
+        boolean metaDataDirty = isMetaDataDirty();
+
+        XWikiContext xcontext = getXWikiContext();
+        String currentWiki = xcontext.getWikiId();
+        try {
+            xcontext.setWikiId(getDocumentReference().getWikiReference().getName());
+
+            if (element == HAS_OBJECTS) {
+                this.elementsLoader.loadXObjects(this, xcontext);
+            } else {
+                this.elementsLoader.loadAttachments(this, xcontext);
+            }
+
+            this.elementsToLoad &= ~element;
+            if (this.elementsToLoad == 0) {
+                this.elementsLoader = null;
+            }
+        } catch (XWikiException e) {
+            // Will be tried again next time, saving the document will fail in the meantime
+            LOGGER.error("Failed to load the elements [{}] of document [{}]", element, getDocumentReferenceWithLocale(),
+                e);
+        } finally {
+            xcontext.setWikiId(currentWiki);
+
+            setMetaDataDirty(metaDataDirty);
+
+            this.loadingElements = false;
+        }
+    }
+
     public boolean hasElement(int element)
     {
         return ((this.elements & element) == element);
@@ -7424,7 +7663,7 @@ public boolean isProgrammaticContent()
      */
     public boolean removeXObject(BaseObject object)
     {
-        List<BaseObject> objects = this.xObjects.get(object.getXClassReference());
+        List<BaseObject> objects = getXObjects().get(object.getXClassReference());
         // No objects at all, nothing to remove
         if (objects == null) {
             return false;
@@ -7481,7 +7720,7 @@ public boolean removeObject(BaseObject object)
      */
     public boolean removeXObjects(DocumentReference classReference)
     {
-        List<BaseObject> objects = this.xObjects.get(classReference);
+        List<BaseObject> objects = getXObjects().get(classReference);
         // No objects at all, nothing to remove
         if (objects == null) {
             return false;
@@ -8275,17 +8514,42 @@ public void convertSyntax(Syntax targetSyntax, XWikiContext context) throws XWik
     public XDOM getXDOM()
     {
         if (this.xdomCache == null) {
-            try {
-                this.xdomCache = parseContent(getContent());
-            } catch (XWikiException e) {
-                ErrorBlockGenerator errorBlockGenerator = Utils.getComponent(ErrorBlockGenerator.class);
-                return new XDOM(errorBlockGenerator.generateErrorBlocks("Failed to render content", e, false));
+            // Share the XDOM of saved contents between document instances (it survives the document cache eviction)
+            XDOMCache sharedCache = !isNew() && !isContentDirty() ? getXDOMCache() : null;
+            if (sharedCache != null) {
+                this.xdomCache = sharedCache.get(this);
+            }
+
+            if (this.xdomCache == null) {
+                try {
+                    this.xdomCache = parseContent(getContent());
+                } catch (XWikiException e) {
+                    ErrorBlockGenerator errorBlockGenerator = Utils.getComponent(ErrorBlockGenerator.class);
+                    return new XDOM(errorBlockGenerator.generateErrorBlocks("Failed to render content", e, false));
+                }
+
+                if (sharedCache != null) {
+                    sharedCache.set(this, this.xdomCache);
+                }
             }
         }
 
         return this.xdomCache.clone();
     }
 
+    private static XDOMCache getXDOMCache()
+    {
+        try {
+            if (Utils.getComponentManager().hasComponent(XDOMCache.class)) {
+                return Utils.getComponent(XDOMCache.class);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to get the XDOM cache: {}", ExceptionUtils.getRootCauseMessage(e));
+        }
+
+        return null;
+    }
+
     /**
      * @return true if the document has a xwiki/1.0 syntax content
      */
@@ -21,9 +21,12 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -48,6 +51,17 @@
  */
 public class XWikiDocumentArchive
 {
+    /**
+     * The configuration property indicating every how many versions a full version is stored instead of a diff.
+     */
+    private static final String NODES_PER_FULL_PROPERTY = "xwiki.store.rcs.nodesPerFull";
+
+    /** Default number of versions between two full versions. */
+    private static final int DEFAULT_NODES_PER_FULL = 5;
+
+    /** Maximum number of reconstructed versions kept in memory for each archive. */
+    private static final int VERSION_XML_CACHE_SIZE = 10;
+
     /** =docId. */
     private long id;
 
@@ -69,6 +83,21 @@
     /** Set of {@link XWikiRCSNodeContent} which need to update. */
     private Set<XWikiRCSNodeContent> updatedNodeContents = new TreeSet<XWikiRCSNodeContent>();
 
+    /**
+     * The XML lines of the most recently reconstructed versions, to avoid applying the same patches again when
+     * navigating the history. The archive itself is only softly referenced by the document so this cache does not
+     * prevent the garbage collector from reclaiming the memory. Indexed by serialized version.
+     */
+    private Map<String, Object[]> versionXmlCache =
+        Collections.synchronizedMap(new LinkedHashMap<String, Object[]>(VERSION_XML_CACHE_SIZE, 0.75F, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest)
+            {
+                return size() > VERSION_XML_CACHE_SIZE;
+            }
+        });
+
     /** @param id = {@link XWikiDocument#getId()} */
     public XWikiDocumentArchive(long id)
     {
@@ -129,11 +158,10 @@ protected XWikiRCSNodeContent makePatch(XWikiRCSNodeInfo newnode, XWikiDocument
         newnode.setContent(result);
         XWikiRCSNodeInfo latestNode = getLatestNode();
         if (latestNode != null) {
-            int nodesCount = getNodes().size();
-            int nodesPerFull =
-                context.getWiki() == null ? 5 : Integer.parseInt(context.getWiki().getConfig()
-                    .getProperty("xwiki.store.rcs.nodesPerFull", "5"));
-            if (nodesPerFull <= 0 || (nodesCount % nodesPerFull) != 0) {
+            // Keep the previous version as a full version when it would otherwise be too far from the nearest full
+            // version (counting the diffs instead of the versions makes it work with removed versions too)
+            int nodesPerFull = getNodesPerFull(context);
+            if (nodesPerFull <= 0 || countOlderDiffs(latestNode.getId().getVersion()) < nodesPerFull - 1) {
                 XWikiRCSNodeContent latestContent = latestNode.getContent(context);
                 latestContent.getPatch().setDiffVersion(latestContent.getPatch().getContent(),
                     doc, context);
@@ -145,6 +173,104 @@ protected XWikiRCSNodeContent makePatch(XWikiRCSNodeInfo newnode, XWikiDocument
         return result;
     }
 
+    /**
+     * @param context the XWiki context used to access the configuration
+     * @return the maximum number of versions between two full versions, 0 or less if all versions except the latest
+     *         one should be diffs
+     * @since 9.11RC1
+     */
+    public static int getNodesPerFull(XWikiContext context)
+    {
+        if (context.getWiki() == null) {
+            return DEFAULT_NODES_PER_FULL;
+        }
+
+        return Integer.parseInt(context.getWiki().getConfig().getProperty(NODES_PER_FULL_PROPERTY,
+            String.valueOf(DEFAULT_NODES_PER_FULL)));
+    }
+
+    /**
+     * @param version the version from which to count
+     * @return the number of consecutive diff versions older than the passed version (i.e. before reaching a full
+     *         version or the first version)
+     */
+    private int countOlderDiffs(Version version)
+    {
+        int count = 0;
+
+        // tailMap is inclusive and iterates toward older versions
+        Iterator<XWikiRCSNodeInfo> it = this.versionToNode.tailMap(version).values().iterator();
+        it.next();
+        while (it.hasNext() && it.next().isDiff()) {
+            ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Make sure there is a full version at least every {@code xwiki.store.rcs.nodesPerFull} versions, so that the
+     * number of patches to apply to get any version is bounded. This is mostly useful for archives created before
+     * versions were counted this way or with a different configuration. The modified nodes need to be saved after.
+     *
+     * @param context used to access the configuration and load the node contents
+     * @return true if some diff versions have been converted to full versions
+     * @throws XWikiException if any error
+     * @since 9.11RC1
+     */
+    public boolean addMissingFullVersions(XWikiContext context) throws XWikiException
+    {
+        int nodesPerFull = getNodesPerFull(context);
+        if (nodesPerFull <= 0 || !hasTooManyConsecutiveDiffs(nodesPerFull)) {
+            // Don't load the content of the versions of an history which is already bounded
+            return false;
+        }
+
+        boolean modified = false;
+
+        int diffs = 0;
+        List<String> text = new ArrayList<String>();
+        for (XWikiRCSNodeInfo nodeInfo : getNodes()) {
+            XWikiRCSNodeContent nodeContent = nodeInfo.getContent(context);
+            nodeContent.getPatch().patch(text);
+
+            if (nodeInfo.isDiff()) {
+                if (++diffs >= nodesPerFull) {
+                    nodeContent.getPatch().setFullVersion(ToString.arrayToString(text.toArray()));
+                    nodeInfo.setContent(nodeContent);
+                    updateNode(nodeInfo);
+                    getUpdatedNodeContents().add(nodeContent);
+
+                    diffs = 0;
+                    modified = true;
+                }
+            } else {
+                diffs = 0;
+            }
+        }
+
+        return modified;
+    }
+
+    /**
+     * @param nodesPerFull the maximum number of consecutive diff versions
+     * @return true if more than {@code nodesPerFull - 1} consecutive diff versions follow a full version, only looking
+     *         at the node infos
+     */
+    private boolean hasTooManyConsecutiveDiffs(int nodesPerFull)
+    {
+        int diffs = 0;
+        for (XWikiRCSNodeInfo nodeInfo : getNodes()) {
+            if (!nodeInfo.isDiff()) {
+                diffs = 0;
+            } else if (++diffs >= nodesPerFull) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /** @return {@link XWikiDocument#getId()} - primary key */
     public long getId()
     {
@@ -252,6 +378,8 @@ public void updateArchive(XWikiDocument doc, String author, Date date, String co
         newNode.setDate(date);
         XWikiRCSNodeContent newContent = makePatch(newNode, doc, context);
 
+        this.versionXmlCache.remove(newVer.toString());
+
         updateNode(newNode);
         this.updatedNodeInfos.add(newNode);
         this.updatedNodeContents.add(newContent);
@@ -307,6 +435,7 @@ public void removeVersions(Version newerVersion, Version olderVersion, XWikiCont
         for (Iterator<XWikiRCSNodeInfo> it = getNodes(upperBound, lowerBound).iterator(); it.hasNext();) {
             XWikiRCSNodeInfo ni = it.next();
             this.fullVersions.remove(ni.getId().getVersion());
+            this.versionXmlCache.remove(ni.getId().getVersion().toString());
             this.deletedNodes.add(ni);
             it.remove();
         }
@@ -350,7 +479,8 @@ public XWikiDocument loadDocument(Version version, XWikiContext context)
 
     /**
      * Return the XML corresponding to a version. If the version node contains just a diff, then restore the complete
-     * XML by applying all patches from the nearest full version to the requested version.
+     * XML by applying all patches from the nearest full version (or the nearest already reconstructed version) to the
+     * requested version.
      *
      * @param version The version to retrieve.
      * @param context The {@link com.xpn.xwiki.XWikiContext context}.
@@ -359,15 +489,42 @@ public XWikiDocument loadDocument(Version version, XWikiContext context)
      */
     public String getVersionXml(Version version, XWikiContext context) throws XWikiException
     {
-        Version nearestFullVersion = getNearestFullVersion(version);
+        Object[] lines = this.versionXmlCache.get(version.toString());
+        if (lines != null) {
+            return ToString.arrayToString(lines);
+        }
+
+        Version startVersion = getNearestFullVersion(version);
+
+        // Start from the closest version already reconstructed, if any
+        Object[] startLines = null;
+        for (XWikiRCSNodeInfo nodeInfo : getNodes(startVersion, version)) {
+            Object[] cachedLines = this.versionXmlCache.get(nodeInfo.getId().getVersion().toString());
+            if (cachedLines != null) {
+                startVersion = nodeInfo.getId().getVersion();
+                startLines = cachedLines;
+            }
+        }
 
-        List<XWikiRCSNodeContent> lstContent = loadRCSNodeContents(nearestFullVersion, version, context);
         List<String> origText = new ArrayList<String>();
+        List<XWikiRCSNodeContent> lstContent = loadRCSNodeContents(startVersion, version, context);
+        if (startLines != null) {
+            for (Object line : startLines) {
+                origText.add((String) line);
+            }
+
+            // The start version is already applied
+            lstContent.remove(0);
+        }
         for (XWikiRCSNodeContent nodeContent : lstContent) {
             nodeContent.getPatch().patch(origText);
         }
 
-        return ToString.arrayToString(origText.toArray());
+        lines = origText.toArray();
+
+        this.versionXmlCache.put(version.toString(), lines);
+
+        return ToString.arrayToString(lines);
     }
 
     /**
@@ -454,6 +611,7 @@ public void resetArchive()
     {
         this.versionToNode.clear();
         this.fullVersions.clear();
+        this.versionXmlCache.clear();
         this.deletedNodes.addAll(this.updatedNodeInfos);
         this.updatedNodeInfos.clear();
         this.updatedNodeContents.clear();
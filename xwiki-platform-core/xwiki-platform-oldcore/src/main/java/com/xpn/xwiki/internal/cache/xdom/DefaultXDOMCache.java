@@ -0,0 +1,140 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.xdom;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.rendering.block.XDOM;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.cache.DocumentCache;
+
+/**
+ * Default implementation of {@link XDOMCache}. The XDOM is associated to the document reference, locale, version,
+ * syntax and content of the document so that a stale XDOM is never returned, even for modified documents which are
+ * not saved yet. The entries of a document are also removed as soon as the document is modified.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component
+@Singleton
+public class DefaultXDOMCache implements XDOMCache, Initializable
+{
+    /**
+     * Identifier of the XDOM cache.
+     */
+    private static final String NAME = "core.xdomcache";
+
+    /**
+     * Name of the property indicating if the cache is enabled or not.
+     */
+    private static final String PROPNAME_ENABLED = NAME + ".enabled";
+
+    /**
+     * Name of the property indicating the size of the cache.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default size of the cache.
+     */
+    private static final int PROPVALUE_SIZE = 500;
+
+    /**
+     * xwiki.properties file configurations.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Actual cache object.
+     */
+    @Inject
+    private DocumentCache<XDOM> cache;
+
+    @Inject
+    private Logger logger;
+
+    private boolean enabled;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty(PROPNAME_ENABLED, true);
+
+        if (this.enabled) {
+            CacheConfiguration cacheConfiguration = new CacheConfiguration();
+            cacheConfiguration.setConfigurationId(NAME);
+            LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+            lru.setMaxEntries(this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE));
+            cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+            try {
+                this.cache.create(cacheConfiguration);
+            } catch (CacheException e) {
+                throw new InitializationException("Failed to initialize core XDOM cache", e);
+            }
+        }
+    }
+
+    @Override
+    public XDOM get(XWikiDocument document)
+    {
+        if (this.enabled) {
+            String content = document.getContent();
+
+            try {
+                return this.cache.get(document.getDocumentReference(), document.getLocale(), document.getVersion(),
+                    document.getSyntax(), content.length(), content.hashCode());
+            } catch (Exception e) {
+                this.logger.error("Failed to get XDOM from the cache", e);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void set(XWikiDocument document, XDOM xdom)
+    {
+        if (this.enabled) {
+            String content = document.getContent();
+
+            try {
+                this.cache.set(xdom, document.getDocumentReference(), document.getLocale(), document.getVersion(),
+                    document.getSyntax(), content.length(), content.hashCode());
+            } catch (Exception e) {
+                this.logger.error("Failed to put XDOM in the cache", e);
+            }
+        }
+    }
+}
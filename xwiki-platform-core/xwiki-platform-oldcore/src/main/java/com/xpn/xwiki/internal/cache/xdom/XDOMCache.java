@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.xdom;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.rendering.block.XDOM;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keep the result of the parsing of the documents content independently of the document instances so that it survives
+ * the eviction of the document from the document cache.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Role
+public interface XDOMCache
+{
+    /**
+     * @param document the document
+     * @return the cached XDOM corresponding to the current content of the passed document, null if there is none. The
+     *         returned XDOM is shared and should never be modified.
+     */
+    XDOM get(XWikiDocument document);
+
+    /**
+     * @param document the document
+     * @param xdom the XDOM corresponding to the current content of the passed document, it should never be modified
+     *            after this call
+     */
+    void set(XWikiDocument document, XDOM xdom);
+}
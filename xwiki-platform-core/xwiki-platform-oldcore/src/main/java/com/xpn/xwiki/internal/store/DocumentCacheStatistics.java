@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of the document cache.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class DocumentCacheStatistics implements DocumentCacheStatisticsMXBean
+{
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong storageLoads = new AtomicLong();
+
+    private final AtomicLong coalescedLoads = new AtomicLong();
+
+    private final AtomicLong weightEvictions = new AtomicLong();
+
+    private final AtomicLong existenceFilterNegatives = new AtomicLong();
+
+    private final AtomicLong existenceFilterFalsePositives = new AtomicLong();
+
+    private DocumentCacheWeightLimiter weightLimiter;
+
+    /**
+     * @param weightLimiter the component bounding the weight of the cache or null if it's not bounded
+     */
+    public void setWeightLimiter(DocumentCacheWeightLimiter weightLimiter)
+    {
+        this.weightLimiter = weightLimiter;
+    }
+
+    /**
+     * A document was found in the cache.
+     */
+    public void hit()
+    {
+        this.hits.incrementAndGet();
+    }
+
+    /**
+     * A document was not found in the cache.
+     */
+    public void miss()
+    {
+        this.misses.incrementAndGet();
+    }
+
+    /**
+     * A document was loaded from the underlying store.
+     */
+    public void storageLoad()
+    {
+        this.storageLoads.incrementAndGet();
+    }
+
+    /**
+     * A document was obtained by waiting for another thread to load it.
+     */
+    public void coalescedLoad()
+    {
+        this.coalescedLoads.incrementAndGet();
+    }
+
+    /**
+     * A document was evicted because the maximum weight was reached.
+     */
+    public void weightEviction()
+    {
+        this.weightEvictions.incrementAndGet();
+    }
+
+    /**
+     * The existence filter was used to find out that a document does not exist.
+     */
+    public void existenceFilterNegative()
+    {
+        this.existenceFilterNegatives.incrementAndGet();
+    }
+
+    /**
+     * The existence filter could not tell that a document does not exist.
+     */
+    public void existenceFilterFalsePositive()
+    {
+        this.existenceFilterFalsePositives.incrementAndGet();
+    }
+
+    @Override
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    @Override
+    public long getStorageLoads()
+    {
+        return this.storageLoads.get();
+    }
+
+    @Override
+    public long getCoalescedLoads()
+    {
+        return this.coalescedLoads.get();
+    }
+
+    @Override
+    public long getWeightEvictions()
+    {
+        return this.weightEvictions.get();
+    }
+
+    @Override
+    public long getWeight()
+    {
+        return this.weightLimiter != null ? this.weightLimiter.getWeight() : 0;
+    }
+
+    @Override
+    public long getMaxWeight()
+    {
+        return this.weightLimiter != null ? this.weightLimiter.getMaxWeight() : 0;
+    }
+
+    @Override
+    public long getExistenceFilterNegatives()
+    {
+        return this.existenceFilterNegatives.get();
+    }
+
+    @Override
+    public long getExistenceFilterFalsePositives()
+    {
+        return this.existenceFilterFalsePositives.get();
+    }
+
+    @Override
+    public double getExistenceFilterFalsePositiveRate()
+    {
+        long falsePositives = getExistenceFilterFalsePositives();
+        long lookups = getExistenceFilterNegatives() + falsePositives;
+
+        return lookups > 0 ? (double) falsePositives / lookups : 0;
+    }
+}
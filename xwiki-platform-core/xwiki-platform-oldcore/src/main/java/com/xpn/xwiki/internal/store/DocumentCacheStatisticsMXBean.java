@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+/**
+ * Expose the statistics of the document cache over JMX.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public interface DocumentCacheStatisticsMXBean
+{
+    /**
+     * @return the number of documents found in the cache
+     */
+    long getHits();
+
+    /**
+     * @return the number of documents not found in the cache
+     */
+    long getMisses();
+
+    /**
+     * @return the number of documents loaded from the underlying store
+     */
+    long getStorageLoads();
+
+    /**
+     * @return the number of documents which were being loaded by another thread and for which the result of that other
+     *         load was reused
+     */
+    long getCoalescedLoads();
+
+    /**
+     * @return the number of documents evicted from the cache because the maximum weight was reached
+     */
+    long getWeightEvictions();
+
+    /**
+     * @return the estimated number of bytes retained by the cached documents, 0 when the weight of the cache is not
+     *         bounded
+     */
+    long getWeight();
+
+    /**
+     * @return the maximum number of bytes the cached documents are allowed to retain, 0 when the weight of the cache is
+     *         not bounded
+     */
+    long getMaxWeight();
+
+    /**
+     * @return the number of documents found not to exist thanks to the existence filter, without asking the store
+     */
+    long getExistenceFilterNegatives();
+
+    /**
+     * @return the number of documents which don't exist but for which the existence filter could not tell it
+     */
+    long getExistenceFilterFalsePositives();
+
+    /**
+     * @return the proportion of the missing documents for which the existence filter could not tell that they don't
+     *         exist
+     */
+    double getExistenceFilterFalsePositiveRate();
+}
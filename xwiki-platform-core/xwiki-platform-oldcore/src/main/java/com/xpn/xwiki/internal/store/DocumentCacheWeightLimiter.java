@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Bound the total estimated weight of the documents stored in a cache by evicting the least recently used ones when
+ * the maximum weight is reached.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class DocumentCacheWeightLimiter implements CacheEntryListener<XWikiDocument>
+{
+    private final Cache<XWikiDocument> cache;
+
+    private final long maxWeight;
+
+    private final DocumentCacheStatistics statistics;
+
+    /**
+     * The weight of each cached document, the least recently accessed first.
+     */
+    private final Map<String, Long> weights = new LinkedHashMap<>(16, 0.75F, true);
+
+    private long weight;
+
+    /**
+     * @param cache the cache to bound
+     * @param maxWeight the maximum estimated number of bytes retained by the cached documents
+     * @param statistics the statistics to update
+     */
+    public DocumentCacheWeightLimiter(Cache<XWikiDocument> cache, long maxWeight, DocumentCacheStatistics statistics)
+    {
+        this.cache = cache;
+        this.maxWeight = maxWeight;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the estimated number of bytes retained by the cached documents
+     */
+    public synchronized long getWeight()
+    {
+        return this.weight;
+    }
+
+    /**
+     * @return the maximum estimated number of bytes retained by the cached documents
+     */
+    public long getMaxWeight()
+    {
+        return this.maxWeight;
+    }
+
+    /**
+     * Indicate that the cached document associated to the passed key was accessed so that it's evicted last.
+     *
+     * @param key the cache key
+     */
+    public synchronized void accessed(String key)
+    {
+        this.weights.get(key);
+    }
+
+    /**
+     * Forget all the weights, to call when the cache is cleared.
+     */
+    public synchronized void clear()
+    {
+        this.weights.clear();
+        this.weight = 0;
+    }
+
+    @Override
+    public void cacheEntryAdded(CacheEntryEvent<XWikiDocument> event)
+    {
+        put(event.getEntry().getKey(), event.getEntry().getValue());
+    }
+
+    @Override
+    public void cacheEntryModified(CacheEntryEvent<XWikiDocument> event)
+    {
+        put(event.getEntry().getKey(), event.getEntry().getValue());
+    }
+
+    @Override
+    public synchronized void cacheEntryRemoved(CacheEntryEvent<XWikiDocument> event)
+    {
+        Long documentWeight = this.weights.remove(event.getEntry().getKey());
+        if (documentWeight != null) {
+            this.weight -= documentWeight;
+        }
+    }
+
+    private void put(String key, XWikiDocument document)
+    {
+        if (document == null) {
+            return;
+        }
+
+        long documentWeight = XWikiDocumentWeigher.weigh(document);
+
+        List<String> evictedKeys = new ArrayList<>();
+        synchronized (this) {
+            Long previousWeight = this.weights.put(key, documentWeight);
+            this.weight += documentWeight - (previousWeight != null ? previousWeight : 0);
+
+            Iterator<Map.Entry<String, Long>> iterator = this.weights.entrySet().iterator();
+            while (this.weight > this.maxWeight && iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+
+                evictedKeys.add(entry.getKey());
+                this.weight -= entry.getValue();
+                iterator.remove();
+            }
+        }
+
+        // Remove the entries outside of the lock since the cache will notify the removal
+        for (String evictedKey : evictedKeys) {
+            this.statistics.weightEviction();
+            this.cache.remove(evictedKey);
+        }
+    }
+}
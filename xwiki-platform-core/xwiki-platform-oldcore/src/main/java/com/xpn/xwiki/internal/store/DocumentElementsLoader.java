@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Load the elements (objects, attachments) of a document which were not loaded with the document itself.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ * @see XWikiDocument#setElementsToLoad(int, DocumentElementsLoader)
+ */
+public interface DocumentElementsLoader
+{
+    /**
+     * Load the objects of the passed document.
+     *
+     * @param document the document for which to load the objects
+     * @param context the XWiki context, its current wiki being the wiki of the document
+     * @throws XWikiException when failing to load the objects
+     */
+    void loadXObjects(XWikiDocument document, XWikiContext context) throws XWikiException;
+
+    /**
+     * Load the attachments (without their content) of the passed document.
+     *
+     * @param document the document for which to load the attachments
+     * @param context the XWiki context, its current wiki being the wiki of the document
+     * @throws XWikiException when failing to load the attachments
+     */
+    void loadAttachments(XWikiDocument document, XWikiContext context) throws XWikiException;
+}
@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * A Bloom filter of the identifiers of the documents existing in a wiki. It can tell for sure that a document does not
+ * exist but it can only tell that a document might exist. Deleted documents are not removed from the filter, which
+ * only increases the false positive rate until the filter is rebuilt.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class DocumentExistenceFilter
+{
+    /**
+     * The target false positive rate.
+     */
+    public static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final BloomFilter<Long> filter;
+
+    private final long expectedDocuments;
+
+    private long documents;
+
+    private volatile boolean ready;
+
+    private final AtomicLong negatives = new AtomicLong();
+
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * @param expectedDocuments the number of documents the filter is sized for
+     */
+    public DocumentExistenceFilter(long expectedDocuments)
+    {
+        this.expectedDocuments = expectedDocuments;
+        this.filter = BloomFilter.create(Funnels.longFunnel(), expectedDocuments, FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * @param documentId the identifier of a document which exists
+     */
+    public synchronized void add(long documentId)
+    {
+        if (this.filter.put(documentId)) {
+            ++this.documents;
+        }
+    }
+
+    /**
+     * @param documentId the identifier of the document
+     * @return false if the document does not exist for sure, true if it might exist or if the filter is not ready yet
+     */
+    public boolean mightExist(long documentId)
+    {
+        if (!this.ready) {
+            return true;
+        }
+
+        synchronized (this) {
+            return this.filter.mightContain(documentId);
+        }
+    }
+
+    /**
+     * Indicate that all the existing documents have been added to the filter and that it can be used.
+     */
+    public void setReady()
+    {
+        this.ready = true;
+    }
+
+    /**
+     * @return true if all the existing documents have been added to the filter
+     */
+    public boolean isReady()
+    {
+        return this.ready;
+    }
+
+    /**
+     * @return true if more documents than expected were added and the false positive rate is too high
+     */
+    public synchronized boolean isOverloaded()
+    {
+        return this.documents > this.expectedDocuments;
+    }
+
+    /**
+     * @return the (approximate) number of documents added to the filter
+     */
+    public synchronized long getDocumentCount()
+    {
+        return this.documents;
+    }
+
+    /**
+     * @return the false positive rate expected from the number of documents added to the filter
+     */
+    public synchronized double getExpectedFalsePositiveRate()
+    {
+        return this.filter.expectedFpp();
+    }
+
+    /**
+     * Indicate that the filter was used to find out that a document does not exist.
+     */
+    public void negative()
+    {
+        this.negatives.incrementAndGet();
+    }
+
+    /**
+     * Indicate that the filter said that a document might exist but that it actually does not exist.
+     */
+    public void falsePositive()
+    {
+        this.falsePositives.incrementAndGet();
+    }
+
+    /**
+     * @return the number of documents which don't exist and were looked up through the filter
+     */
+    public long getMissingDocumentLookups()
+    {
+        return this.negatives.get() + this.falsePositives.get();
+    }
+
+    /**
+     * @return the measured false positive rate, i.e. the proportion of the missing documents for which the filter said
+     *         that they might exist
+     */
+    public double getFalsePositiveRate()
+    {
+        long lookups = getMissingDocumentLookups();
+
+        return lookups > 0 ? (double) this.falsePositives.get() / lookups : 0;
+    }
+}
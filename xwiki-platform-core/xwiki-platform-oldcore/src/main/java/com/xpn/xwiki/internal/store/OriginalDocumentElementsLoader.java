@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Load the elements of a document by copying the ones of its original version, which loads them from the store the
+ * first time they are needed. This way a document, its original version and their clones all get their elements from
+ * the same read of the store, even if the document is modified in the store in between, and the original version
+ * stays a snapshot of the document as it was loaded.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class OriginalDocumentElementsLoader implements DocumentElementsLoader
+{
+    private final XWikiDocument originalDocument;
+
+    /**
+     * @param originalDocument the original version of the loaded document, with its own elements to load
+     */
+    public OriginalDocumentElementsLoader(XWikiDocument originalDocument)
+    {
+        this.originalDocument = originalDocument;
+    }
+
+    @Override
+    public void loadXObjects(XWikiDocument document, XWikiContext context)
+    {
+        // Trigger the loading of the original objects if they are not loaded yet
+        for (Map.Entry<DocumentReference, List<BaseObject>> entry : this.originalDocument.getXObjects().entrySet()) {
+            for (BaseObject object : entry.getValue()) {
+                if (object != null) {
+                    document.setXObject(object.getNumber(), object.clone());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void loadAttachments(XWikiDocument document, XWikiContext context)
+    {
+        // Trigger the loading of the original attachments if they are not loaded yet
+        for (XWikiAttachment attachment : this.originalDocument.getAttachmentList()) {
+            document.setAttachment((XWikiAttachment) attachment.clone());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.List;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+
+/**
+ * Estimate the memory retained by a {@link XWikiDocument}. The estimation is not exact, it's only meant to be good
+ * enough to compare documents between each other and to bound the memory used by a cache of documents.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public final class XWikiDocumentWeigher
+{
+    /**
+     * The base size of a document instance and of its metadata (references, authors, dates, etc.).
+     */
+    private static final long DOCUMENT_OVERHEAD = 2048;
+
+    private static final long OBJECT_OVERHEAD = 256;
+
+    private static final long PROPERTY_OVERHEAD = 96;
+
+    private static final long ATTACHMENT_OVERHEAD = 512;
+
+    private XWikiDocumentWeigher()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param document the document to weigh
+     * @return the estimated number of bytes retained by the document
+     */
+    public static long weigh(XWikiDocument document)
+    {
+        long weight = DOCUMENT_OVERHEAD;
+
+        weight += weigh(document.getContent());
+        weight += weigh(document.getTitle());
+        // The class is kept both as XML and parsed, the parsed version being roughly as big as the XML
+        weight += 2 * weigh(document.getXClassXML());
+
+        // Weighing the document should not trigger the loading of its elements
+        if (document.isElementLoaded(XWikiDocument.HAS_OBJECTS)) {
+            for (List<BaseObject> objects : document.getXObjects().values()) {
+                for (BaseObject object : objects) {
+                    if (object != null) {
+                        weight += weigh(object);
+                    }
+                }
+            }
+        }
+
+        if (document.isElementLoaded(XWikiDocument.HAS_ATTACHMENTS)) {
+            for (XWikiAttachment attachment : document.getAttachmentList()) {
+                weight += ATTACHMENT_OVERHEAD;
+
+                // Only count the content when it's been loaded
+                if (attachment.getAttachment_content() != null) {
+                    weight += attachment.getLongSize();
+                }
+            }
+        }
+
+        return weight;
+    }
+
+    private static long weigh(BaseObject object)
+    {
+        long weight = OBJECT_OVERHEAD;
+
+        for (Object field : object.getFieldList()) {
+            weight += PROPERTY_OVERHEAD;
+
+            Object value = ((BaseProperty) field).getValue();
+            if (value instanceof String) {
+                weight += weigh((String) value);
+            } else if (value instanceof List) {
+                for (Object item : (List<?>) value) {
+                    weight += PROPERTY_OVERHEAD + (item instanceof String ? weigh((String) item) : 0);
+                }
+            }
+        }
+
+        return weight;
+    }
+
+    private static long weigh(String value)
+    {
+        // Java strings use 2 bytes per character
+        return value != null ? 2L * value.length() : 0;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+
+import com.xpn.xwiki.objects.BaseCollection;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.BaseStringProperty;
+import com.xpn.xwiki.objects.DBStringListProperty;
+import com.xpn.xwiki.objects.DateProperty;
+import com.xpn.xwiki.objects.DoubleProperty;
+import com.xpn.xwiki.objects.FloatProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.LargeStringProperty;
+import com.xpn.xwiki.objects.LongProperty;
+import com.xpn.xwiki.objects.StringListProperty;
+import com.xpn.xwiki.objects.StringProperty;
+
+/**
+ * Load the properties of all the objects of a set of documents in a constant number of queries (one to list the
+ * properties and then one per property table) instead of one query per object and one per property.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class BatchedPropertiesLoader
+{
+    /**
+     * The query listing the properties of all the objects of a set of documents.
+     */
+    public static final String PROPERTIES_QUERY = "select prop.id.id, prop.id.name, prop.classType "
+        + "from BaseProperty as prop, BaseObject as obj where obj.name in (:names) and obj.id = prop.id.id";
+
+    private static final String NAMES = "names";
+
+    private static final String CLASSTYPE = "classType";
+
+    private static final String WHERE = " as prop, BaseObject as obj where obj.name in (:names)"
+        + " and obj.id = prop.id.id and prop.classType = :classType";
+
+    /**
+     * The property types supported by the batch loading, associated to the Hibernate property holding the value.
+     */
+    private static final Map<String, String> VALUE_PROPERTIES = new HashMap<>();
+
+    static {
+        VALUE_PROPERTIES.put(IntegerProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(LongProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(FloatProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(DoubleProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(StringProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(DateProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(LargeStringProperty.class.getName(), "value");
+        VALUE_PROPERTIES.put(StringListProperty.class.getName(), "textValue");
+    }
+
+    private final Session session;
+
+    /**
+     * @param session the Hibernate session to use to execute the queries
+     */
+    public BatchedPropertiesLoader(Session session)
+    {
+        this.session = session;
+    }
+
+    /**
+     * @param classType the property type
+     * @return true if the passed property type can be loaded in batch
+     */
+    public static boolean isSupported(String classType)
+    {
+        return VALUE_PROPERTIES.containsKey(classType) || DBStringListProperty.class.getName().equals(classType);
+    }
+
+    /**
+     * Load and set the properties of the passed objects.
+     *
+     * @param <T> the type of the objects
+     * @param documentFullNames the full names of the documents containing the objects (all located in the same wiki)
+     * @param objects the objects to fill, indexed by id
+     * @return the objects for which some properties could not be loaded in batch and which should be loaded the
+     *         standard way
+     * @throws Exception when failing to load the properties
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseCollection> Collection<T> load(Collection<String> documentFullNames, Map<Long, T> objects)
+        throws Exception
+    {
+        Set<T> incompleteObjects = new LinkedHashSet<>();
+
+        // List all the properties and create them (empty)
+        Map<String, Map<PropertyKey, BaseProperty>> propertiesByType = new HashMap<>();
+
+        Query query = this.session.createQuery(PROPERTIES_QUERY);
+        query.setParameterList(NAMES, documentFullNames);
+        for (Object[] result : (List<Object[]>) query.list()) {
+            T object = objects.get(result[0]);
+            if (object == null) {
+                // Not an object we are asked to load (it was excluded or it's not really part of the document)
+                continue;
+            }
+
+            String propertyName = (String) result[1];
+            String classType = (String) result[2];
+
+            if (isSupported(classType)) {
+                BaseProperty property = (BaseProperty) Class.forName(classType).newInstance();
+                property.setObject(object);
+                property.setName(propertyName);
+
+                Map<PropertyKey, BaseProperty> properties = propertiesByType.get(classType);
+                if (properties == null) {
+                    properties = new HashMap<>();
+                    propertiesByType.put(classType, properties);
+                }
+                properties.put(new PropertyKey(object.getId(), propertyName), property);
+            } else {
+                incompleteObjects.add(object);
+            }
+        }
+
+        // Load the values, one query per property type
+        for (Map.Entry<String, Map<PropertyKey, BaseProperty>> entry : propertiesByType.entrySet()) {
+            String classType = entry.getKey();
+            Map<PropertyKey, BaseProperty> properties = entry.getValue();
+
+            Set<PropertyKey> loaded;
+            if (DBStringListProperty.class.getName().equals(classType)) {
+                loaded = loadListValues(documentFullNames, properties);
+            } else {
+                loaded = loadValues(documentFullNames, classType, properties);
+            }
+
+            for (Map.Entry<PropertyKey, BaseProperty> propertyEntry : properties.entrySet()) {
+                BaseProperty property = propertyEntry.getValue();
+                if (loaded.contains(propertyEntry.getKey())) {
+                    property.setValueDirty(false);
+                    property.getObject().addField(property.getName(), property);
+                } else {
+                    // No value found in the expected table (it happens when the property type changed without its
+                    // value being migrated), let the standard loading deal with it
+                    incompleteObjects.add((T) property.getObject());
+                }
+            }
+        }
+
+        return incompleteObjects;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<PropertyKey> loadValues(Collection<String> documentFullNames, String classType,
+        Map<PropertyKey, BaseProperty> properties)
+    {
+        Query query = this.session.createQuery("select prop.id.id, prop.id.name, prop."
+            + VALUE_PROPERTIES.get(classType) + " from " + classType + WHERE);
+        query.setParameterList(NAMES, documentFullNames);
+        query.setString(CLASSTYPE, classType);
+
+        Set<PropertyKey> loaded = new HashSet<>();
+        for (Object[] result : (List<Object[]>) query.list()) {
+            PropertyKey key = new PropertyKey((Long) result[0], (String) result[1]);
+            BaseProperty property = properties.get(key);
+            if (property != null) {
+                loaded.add(key);
+
+                Object value = result[2];
+                if (property instanceof StringListProperty) {
+                    ((StringListProperty) property).setTextValue((String) value);
+                } else if (value == null && property instanceof BaseStringProperty) {
+                    // In Oracle, empty string are converted to NULL. Since an undefined property is not found at all,
+                    // it is safe to assume that a retrieved NULL value should actually be an empty string.
+                    property.setValue("");
+                } else {
+                    property.setValue(value);
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<PropertyKey> loadListValues(Collection<String> documentFullNames,
+        Map<PropertyKey, BaseProperty> properties)
+    {
+        Query query = this.session.createQuery("select prop.id.id, prop.id.name, item from "
+            + DBStringListProperty.class.getName() + " as prop join prop.list as item, BaseObject as obj"
+            + " where obj.name in (:names) and obj.id = prop.id.id and prop.classType = :classType"
+            + " order by prop.id.id, prop.id.name, index(item)");
+        query.setParameterList(NAMES, documentFullNames);
+        query.setString(CLASSTYPE, DBStringListProperty.class.getName());
+
+        Map<PropertyKey, List<String>> lists = new HashMap<>();
+        for (Object[] result : (List<Object[]>) query.list()) {
+            PropertyKey key = new PropertyKey((Long) result[0], (String) result[1]);
+            List<String> list = lists.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                lists.put(key, list);
+            }
+            list.add((String) result[2]);
+        }
+
+        // Empty lists don't have any item but they still need to be set
+        for (Map.Entry<PropertyKey, BaseProperty> entry : properties.entrySet()) {
+            List<String> list = lists.get(entry.getKey());
+            ((DBStringListProperty) entry.getValue()).setList(list != null ? list : new ArrayList<String>());
+        }
+
+        return properties.keySet();
+    }
+
+    private static final class PropertyKey
+    {
+        private final long objectId;
+
+        private final String name;
+
+        PropertyKey(long objectId, String name)
+        {
+            this.objectId = objectId;
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(this.objectId) * 31 + this.name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof PropertyKey) {
+                PropertyKey other = (PropertyKey) obj;
+
+                return this.objectId == other.objectId && this.name.equals(other.name);
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.user;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.RegexEntityReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.XObjectAddedEvent;
+import com.xpn.xwiki.internal.event.XObjectDeletedEvent;
+import com.xpn.xwiki.internal.event.XObjectUpdatedEvent;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseObjectReference;
+import com.xpn.xwiki.user.api.XWikiRightService;
+
+/**
+ * Keep in memory the members of all the groups of a wiki, loaded with a single query the first time the wiki is
+ * accessed and then updated from the modifications of the {@code XWiki.XWikiGroups} objects, and the transitive
+ * closure of the groups of each member.
+ * <p>
+ * The members are resolved the way the group service matches them: relative to the wiki of the group and to the
+ * {@code XWiki} space.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = { GroupClosureIndex.class, EventListener.class })
+@Named(GroupClosureIndex.NAME)
+@Singleton
+public class GroupClosureIndex extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xpn.xwiki.internal.user.GroupClosureIndex";
+
+    private static final String XWIKI_SPACE = "XWiki";
+
+    /**
+     * The reference of the class holding the members of a group.
+     */
+    private static final LocalDocumentReference GROUP_CLASS = new LocalDocumentReference(XWIKI_SPACE, "XWikiGroups");
+
+    private static final RegexEntityReference GROUP_OBJECT = BaseObjectReference.any("XWiki.XWikiGroups");
+
+    private static final String MEMBER = "member";
+
+    private static final String MEMBERS_QUERY = "select obj.name, prop.value from BaseObject as obj, "
+        + "StringProperty as prop where obj.className = 'XWiki.XWikiGroups' and obj.id = prop.id.id "
+        + "and prop.id.name = 'member'";
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    @Named("explicit")
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    private final ConcurrentMap<String, WikiGroups> wikis = new ConcurrentHashMap<>();
+
+    /**
+     * The last updated group document, to ignore the other events generated by the same save (one per object).
+     */
+    private volatile UpdatedGroup lastUpdatedGroup;
+
+    /**
+     * Default constructor.
+     */
+    public GroupClosureIndex()
+    {
+        super(NAME, new XObjectAddedEvent(GROUP_OBJECT), new XObjectDeletedEvent(GROUP_OBJECT),
+            new XObjectUpdatedEvent(GROUP_OBJECT), new WikiDeletedEvent());
+    }
+
+    /**
+     * @param member the user or group
+     * @param wiki the wiki where to look for groups
+     * @return the groups located in the passed wiki which directly contain the passed member
+     * @throws XWikiException when failing to load the members of the groups of the wiki
+     */
+    public Collection<DocumentReference> getGroups(DocumentReference member, WikiReference wiki)
+        throws XWikiException
+    {
+        DocumentReference memberReference = getMemberReference(member, wiki);
+
+        Set<DocumentReference> groups = getWikiGroups(wiki).getGroups(memberReference);
+
+        DocumentReference allGroup = getImplicitGroup(memberReference, wiki);
+        if (allGroup != null) {
+            groups.add(allGroup);
+        }
+
+        return groups;
+    }
+
+    /**
+     * @param member the user or group
+     * @param wiki the wiki where to look for groups
+     * @return the groups located in the passed wiki which contain the passed member, directly or through other groups
+     * @throws XWikiException when failing to load the members of the groups of the wiki
+     */
+    public Collection<DocumentReference> getAllGroups(DocumentReference member, WikiReference wiki)
+        throws XWikiException
+    {
+        DocumentReference memberReference = getMemberReference(member, wiki);
+        WikiGroups wikiGroups = getWikiGroups(wiki);
+
+        Set<DocumentReference> groups = wikiGroups.getAllGroups(memberReference);
+
+        DocumentReference allGroup = getImplicitGroup(memberReference, wiki);
+        if (allGroup != null && groups.add(allGroup)) {
+            groups.addAll(wikiGroups.getAllGroups(allGroup));
+        }
+
+        return groups;
+    }
+
+    /**
+     * Update the members of the passed group from its {@code XWiki.XWikiGroups} objects. It's called by the listeners
+     * which need the index to be up to date before they react to the modification of the group.
+     *
+     * @param groupDocument the group document, as saved
+     */
+    public void update(XWikiDocument groupDocument)
+    {
+        WikiReference wiki = groupDocument.getDocumentReference().getWikiReference();
+
+        // Saving a group generates an event for each of its objects but it needs to be updated only once
+        UpdatedGroup updatedGroup = new UpdatedGroup(groupDocument);
+        if (updatedGroup.equals(this.lastUpdatedGroup)) {
+            return;
+        }
+        this.lastUpdatedGroup = updatedGroup;
+
+        // The index will be up to date when the wiki is loaded (and if it's being loaded the update is replayed once
+        // it's done)
+        WikiGroups wikiGroups = this.wikis.get(wiki.getName());
+        if (wikiGroups != null) {
+            Set<DocumentReference> members = new HashSet<>();
+            List<BaseObject> groupObjects = groupDocument.getXObjects(GROUP_CLASS);
+            if (groupObjects != null) {
+                for (BaseObject groupObject : groupObjects) {
+                    if (groupObject != null) {
+                        addMember(groupObject.getStringValue(MEMBER), wiki, members);
+                    }
+                }
+            }
+
+            wikiGroups.setMembers(groupDocument.getDocumentReference(), members);
+        }
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof WikiDeletedEvent) {
+            this.wikis.remove((String) source);
+        } else {
+            update((XWikiDocument) source);
+        }
+    }
+
+    private WikiGroups getWikiGroups(WikiReference wiki) throws XWikiException
+    {
+        WikiGroups wikiGroups = this.wikis.get(wiki.getName());
+        if (wikiGroups == null) {
+            // Register the groups before loading them so that the modifications made during the loading are not lost
+            WikiGroups newWikiGroups = new WikiGroups();
+            wikiGroups = this.wikis.putIfAbsent(wiki.getName(), newWikiGroups);
+            if (wikiGroups == null) {
+                wikiGroups = newWikiGroups;
+                try {
+                    wikiGroups.load(loadWikiGroups(wiki));
+                } catch (XWikiException | RuntimeException e) {
+                    // Try again next time
+                    this.wikis.remove(wiki.getName(), wikiGroups);
+                    wikiGroups.fail(e);
+
+                    throw e;
+                }
+            }
+        }
+
+        wikiGroups.waitForLoad(wiki);
+
+        return wikiGroups;
+    }
+
+    private Map<DocumentReference, Set<DocumentReference>> loadWikiGroups(WikiReference wiki) throws XWikiException
+    {
+        List<Object[]> results;
+        try {
+            results = this.queryManager.createQuery(MEMBERS_QUERY, Query.HQL).setWiki(wiki.getName()).execute();
+        } catch (QueryException e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_USER, XWikiException.ERROR_XWIKI_UNKNOWN,
+                String.format("Failed to load the members of the groups of wiki [%s]", wiki.getName()), e);
+        }
+
+        Map<DocumentReference, Set<DocumentReference>> members = new HashMap<>();
+        for (Object[] result : results) {
+            DocumentReference group = this.resolver.resolve((String) result[0], wiki);
+            Set<DocumentReference> groupMembers = members.get(group);
+            if (groupMembers == null) {
+                groupMembers = new HashSet<>();
+                members.put(group, groupMembers);
+            }
+            addMember((String) result[1], wiki, groupMembers);
+        }
+
+        return members;
+    }
+
+    private void addMember(String member, WikiReference wiki, Set<DocumentReference> members)
+    {
+        // Empty groups generally contain an object with an empty member
+        if (StringUtils.isNotBlank(member)) {
+            members.add(this.resolver.resolve(member.trim(), new EntityReference(XWIKI_SPACE, EntityType.SPACE, wiki)));
+        }
+    }
+
+    private DocumentReference getMemberReference(DocumentReference member, WikiReference wiki)
+    {
+        // The guest user is not really a document so it's always matched in the wiki of the groups
+        if (XWikiRightService.isGuest(member)) {
+            return new DocumentReference(wiki.getName(), XWIKI_SPACE, XWikiRightService.GUEST_USER);
+        }
+
+        return new DocumentReference(member, (Locale) null);
+    }
+
+    private DocumentReference getImplicitGroup(DocumentReference member, WikiReference wiki)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        // When XWikiAllGroup is implicit, all the users and groups of the wiki are part of it except the guest user
+        if (xcontext != null && xcontext.getWiki().isAllGroupImplicit() && member.getWikiReference().equals(wiki)
+            && !XWikiRightService.isGuest(member)) {
+            DocumentReference allGroup = new DocumentReference(wiki.getName(), XWIKI_SPACE,
+                XWikiRightService.ALLGROUP_GROUP);
+            if (!allGroup.equals(member)) {
+                return allGroup;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Identify a saved version of a group document.
+     */
+    private static final class UpdatedGroup
+    {
+        private final WeakReference<XWikiDocument> document;
+
+        private final String version;
+
+        UpdatedGroup(XWikiDocument document)
+        {
+            this.document = new WeakReference<>(document);
+            this.version = document.getVersion();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof UpdatedGroup) {
+                XWikiDocument otherDocument = ((UpdatedGroup) obj).document.get();
+
+                return otherDocument != null && otherDocument == this.document.get()
+                    && Objects.equals(((UpdatedGroup) obj).version, this.version);
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(this.version);
+        }
+    }
+
+    /**
+     * The members of the groups of a wiki and the transitive closure of the groups of each member.
+     */
+    private static final class WikiGroups
+    {
+        private final Map<DocumentReference, Set<DocumentReference>> members = new HashMap<>();
+
+        private final Map<DocumentReference, Set<DocumentReference>> groups = new HashMap<>();
+
+        private final Map<DocumentReference, Set<DocumentReference>> closures = new HashMap<>();
+
+        /**
+         * The modifications made while the groups are being loaded, replayed once they are loaded, null when loaded.
+         */
+        private Map<DocumentReference, Set<DocumentReference>> pendingMembers = new LinkedHashMap<>();
+
+        private Exception failure;
+
+        synchronized void load(Map<DocumentReference, Set<DocumentReference>> loadedMembers)
+        {
+            for (Map.Entry<DocumentReference, Set<DocumentReference>> entry : loadedMembers.entrySet()) {
+                setMembersInternal(entry.getKey(), entry.getValue());
+            }
+
+            // The modifications made during the loading might not be seen by the loading query
+            for (Map.Entry<DocumentReference, Set<DocumentReference>> entry : this.pendingMembers.entrySet()) {
+                setMembersInternal(entry.getKey(), entry.getValue());
+            }
+            this.pendingMembers = null;
+
+            notifyAll();
+        }
+
+        synchronized void fail(Exception e)
+        {
+            this.failure = e;
+
+            notifyAll();
+        }
+
+        synchronized void waitForLoad(WikiReference wiki) throws XWikiException
+        {
+            while (this.pendingMembers != null) {
+                if (this.failure != null) {
+                    throw new XWikiException(XWikiException.MODULE_XWIKI_USER, XWikiException.ERROR_XWIKI_UNKNOWN,
+                        String.format("Failed to load the members of the groups of wiki [%s]", wiki.getName()),
+                        this.failure);
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new XWikiException(XWikiException.MODULE_XWIKI_USER, XWikiException.ERROR_XWIKI_UNKNOWN,
+                        String.format("Interrupted while waiting for the groups of wiki [%s]", wiki.getName()), e);
+                }
+            }
+        }
+
+        synchronized void setMembers(DocumentReference group, Set<DocumentReference> newMembers)
+        {
+            if (this.pendingMembers != null) {
+                this.pendingMembers.put(group, newMembers);
+            } else {
+                setMembersInternal(group, newMembers);
+            }
+        }
+
+        private void setMembersInternal(DocumentReference group, Set<DocumentReference> newMembers)
+        {
+            Set<DocumentReference> previousMembers = this.members.remove(group);
+            if (previousMembers == null) {
+                previousMembers = Collections.emptySet();
+            }
+
+            for (DocumentReference member : previousMembers) {
+                Set<DocumentReference> memberGroups = this.groups.get(member);
+                memberGroups.remove(group);
+                if (memberGroups.isEmpty()) {
+                    this.groups.remove(member);
+                }
+            }
+
+            if (!newMembers.isEmpty()) {
+                this.members.put(group, newMembers);
+                for (DocumentReference member : newMembers) {
+                    Set<DocumentReference> memberGroups = this.groups.get(member);
+                    if (memberGroups == null) {
+                        memberGroups = new HashSet<>();
+                        this.groups.put(member, memberGroups);
+                    }
+                    memberGroups.add(group);
+                }
+            }
+
+            // Only the closures of the added or removed members, and of the members of these members, are impacted
+            Deque<DocumentReference> impactedMembers = new ArrayDeque<>(previousMembers);
+            impactedMembers.addAll(newMembers);
+            Set<DocumentReference> visitedMembers = new HashSet<>();
+            while (!impactedMembers.isEmpty()) {
+                DocumentReference member = impactedMembers.poll();
+                if (visitedMembers.add(member)) {
+                    this.closures.remove(member);
+
+                    Set<DocumentReference> memberMembers = this.members.get(member);
+                    if (memberMembers != null) {
+                        impactedMembers.addAll(memberMembers);
+                    }
+                }
+            }
+        }
+
+        synchronized Set<DocumentReference> getGroups(DocumentReference member)
+        {
+            Set<DocumentReference> memberGroups = this.groups.get(member);
+
+            return memberGroups != null ? new HashSet<>(memberGroups) : new HashSet<DocumentReference>();
+        }
+
+        synchronized Set<DocumentReference> getAllGroups(DocumentReference member)
+        {
+            Set<DocumentReference> closure = this.closures.get(member);
+            if (closure == null) {
+                closure = new HashSet<>();
+
+                Deque<DocumentReference> queue = new ArrayDeque<>();
+                queue.add(member);
+                while (!queue.isEmpty()) {
+                    Set<DocumentReference> memberGroups = this.groups.get(queue.poll());
+                    if (memberGroups != null) {
+                        for (DocumentReference group : memberGroups) {
+                            if (closure.add(group)) {
+                                queue.add(group);
+                            }
+                        }
+                    }
+                }
+
+                // A group can end up being a member of itself through a cycle
+                closure.remove(member);
+
+                this.closures.put(member, closure);
+            }
+
+            return new HashSet<>(closure);
+        }
+    }
+}
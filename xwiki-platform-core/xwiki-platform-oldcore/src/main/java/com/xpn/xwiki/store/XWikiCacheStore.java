@@ -19,9 +19,26 @@
  */
 package com.xpn.xwiki.store;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.bridge.event.DocumentCreatedEvent;
@@ -38,6 +55,7 @@
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.Event;
 import org.xwiki.observation.remote.RemoteObservationManagerContext;
+import org.xwiki.query.Query;
 import org.xwiki.query.QueryManager;
 
 import com.xpn.xwiki.XWikiContext;
@@ -45,7 +63,11 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.doc.XWikiLink;
 import com.xpn.xwiki.doc.XWikiLock;
+import com.xpn.xwiki.internal.store.DocumentCacheStatistics;
+import com.xpn.xwiki.internal.store.DocumentCacheWeightLimiter;
+import com.xpn.xwiki.internal.store.DocumentExistenceFilter;
 import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
 import com.xpn.xwiki.web.Utils;
 
 /**
@@ -58,12 +80,76 @@ public class XWikiCacheStore implements XWikiCacheStoreInterface, EventListener
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(XWikiCacheStore.class);
 
+    private static final String MBEAN_NAME = "org.xwiki:type=DocumentCache";
+
+    private static final int EXISTENCE_FILTER_BATCH_SIZE = 10000;
+
+    /**
+     * The minimum number of lookups of missing documents before deciding if an existence filter has too many false
+     * positives.
+     */
+    private static final long EXISTENCE_FILTER_MIN_LOOKUPS = 1000;
+
+    /**
+     * How long to wait before trying again to build an existence filter after a failure, doubled after each new
+     * failure until {@link #EXISTENCE_FILTER_MAX_RETRY_DELAY}.
+     */
+    private static final long EXISTENCE_FILTER_RETRY_DELAY = 60000L;
+
+    private static final long EXISTENCE_FILTER_MAX_RETRY_DELAY = 3600000L;
+
+    /**
+     * How long (in milliseconds) to wait for a document being loaded by another thread before loading it directly.
+     */
+    private static final long LOAD_WAIT_TIMEOUT = 30000L;
+
     private XWikiStoreInterface store;
 
     private Cache<XWikiDocument> cache;
 
     private Cache<Boolean> pageExistCache;
 
+    /**
+     * True if the cached documents are marked as read-only snapshots which are lazily copied when cloned.
+     */
+    private boolean copyOnWrite;
+
+    /**
+     * The documents currently being loaded from the underlying store, indexed by cache key.
+     */
+    private final ConcurrentMap<String, CompletableFuture<XWikiDocument>> loadingDocuments =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The keys of the documents being loaded by the current thread, to not wait for itself when loading a document
+     * requires loading the same document again (e.g. through its class).
+     */
+    private final ThreadLocal<Set<String>> threadLoadingKeys = ThreadLocal.withInitial(HashSet::new);
+
+    private final DocumentCacheStatistics statistics = new DocumentCacheStatistics();
+
+    /**
+     * Bound the total weight of the cached documents, null when only the number of cached documents is bounded.
+     */
+    private DocumentCacheWeightLimiter weightLimiter;
+
+    /**
+     * The filters telling which documents don't exist for sure, indexed by wiki, null when disabled.
+     */
+    private ConcurrentMap<String, DocumentExistenceFilter> existenceFilters;
+
+    /**
+     * The filters currently being built, indexed by wiki.
+     */
+    private final ConcurrentMap<String, DocumentExistenceFilter> buildingExistenceFilters = new ConcurrentHashMap<>();
+
+    /**
+     * The delay before trying again to build the existence filter of a wiki after a failure, indexed by wiki.
+     */
+    private final ConcurrentMap<String, ExistenceFilterRetry> existenceFilterRetries = new ConcurrentHashMap<>();
+
+    private long existenceFilterSize;
+
     /**
      * Used to know if a received event is a local or remote one.
      */
@@ -114,10 +200,56 @@ public void initCache(XWikiContext context) throws XWikiException
                 (int) context.getWiki().ParamAsLong("xwiki.store.cache.pageexistcapacity", 10000);
             this.pageExistCache = cacheManager
                 .createNewCache(new LRUCacheConfiguration("xwiki.store.pageexistcache", pageExistCacheCapacity));
+
+            this.copyOnWrite = context.getWiki().ParamAsLong("xwiki.store.cache.copyonwrite", 0) == 1;
+
+            long maxMemory = context.getWiki().ParamAsLong("xwiki.store.cache.maxmemory", 0);
+            if (maxMemory > 0) {
+                this.weightLimiter =
+                    new DocumentCacheWeightLimiter(this.cache, maxMemory * 1024 * 1024, this.statistics);
+                this.cache.addCacheEntryListener(this.weightLimiter);
+            } else {
+                this.weightLimiter = null;
+            }
+            this.statistics.setWeightLimiter(this.weightLimiter);
+
+            if (context.getWiki().ParamAsLong("xwiki.store.cache.existencefilter", 0) == 1) {
+                this.existenceFilters = new ConcurrentHashMap<>();
+                this.existenceFilterSize =
+                    context.getWiki().ParamAsLong("xwiki.store.cache.existencefilter.size", 100000);
+            } else {
+                this.existenceFilters = null;
+            }
         } catch (CacheException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_CACHE, XWikiException.ERROR_CACHE_INITIALIZING,
                 "Failed to initialize cache", e);
         }
+
+        registerStatistics();
+    }
+
+    private void registerStatistics()
+    {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (mbs.isRegistered(name)) {
+                mbs.unregisterMBean(name);
+            }
+            mbs.registerMBean(this.statistics, name);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to register the document cache statistics against the JMX Server: {}",
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * @return the statistics of the document cache
+     * @since 9.11RC1
+     */
+    public DocumentCacheStatistics getStatistics()
+    {
+        return this.statistics;
     }
 
     @Deprecated
@@ -148,13 +280,23 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiEx
     @Override
     public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTransaction) throws XWikiException
     {
+        // Add the document to the existence filter before it's actually saved so that it's never reported as missing
+        addToExistenceFilter(context.getWikiId(), doc);
+
         this.store.saveXWikiDoc(doc, context, bTransaction);
 
+        // And again after it's saved in case a filter build started in between and did not find it in the database
+        addToExistenceFilter(context.getWikiId(), doc);
+
         doc.setStore(this.store);
 
+        // The saved instance is not the cached one anymore (if it ever was)
+        doc.setSnapshot(false);
+
         // We need to flush so that caches
         // on the cluster are informed about the change
         String key = getKey(doc, context);
+        this.loadingDocuments.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
 
@@ -169,8 +311,12 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTrans
     @Override
     public void flushCache()
     {
+        this.loadingDocuments.clear();
         getCache().removeAll();
         getPageExistCache().removeAll();
+        if (this.weightLimiter != null) {
+            this.weightLimiter.clear();
+        }
     }
 
     @Override
@@ -183,8 +329,13 @@ public void onEvent(Event event, Object source, Object data)
             } else {
                 XWikiDocument doc = (XWikiDocument) source;
 
+                if (!(event instanceof DocumentDeletedEvent)) {
+                    addToExistenceFilter(doc.getDocumentReference().getWikiReference().getName(), doc);
+                }
+
                 String key = doc.getKey();
 
+                this.loadingDocuments.remove(key);
                 if (getCache() != null) {
                     getCache().remove(key);
                 }
@@ -193,6 +344,178 @@ public void onEvent(Event event, Object source, Object data)
                 }
             }
         }
+
+        // Forget the existence filter of a deleted wiki, whether it was deleted locally or not
+        if (event instanceof WikiDeletedEvent && this.existenceFilters != null) {
+            this.existenceFilters.remove(((WikiDeletedEvent) event).getWikiId());
+            this.existenceFilterRetries.remove(((WikiDeletedEvent) event).getWikiId());
+        }
+    }
+
+    private void addToExistenceFilter(String wiki, XWikiDocument doc)
+    {
+        if (this.existenceFilters != null) {
+            // Update the filter being built (if any) since the document might not be found by the build query. It's
+            // done before updating the current filter because a built filter is published before it stops being
+            // registered as building: this way the document is added to the new filter whatever happens.
+            DocumentExistenceFilter buildingFilter = this.buildingExistenceFilters.get(wiki);
+            if (buildingFilter != null) {
+                buildingFilter.add(doc.getId());
+            }
+
+            DocumentExistenceFilter filter = this.existenceFilters.get(wiki);
+            if (filter != null) {
+                filter.add(doc.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the existence filter of the current wiki or null if it's disabled or not ready yet
+     */
+    private DocumentExistenceFilter getExistenceFilter(XWikiContext context)
+    {
+        if (this.existenceFilters == null) {
+            return null;
+        }
+
+        String wiki = context.getWikiId();
+        DocumentExistenceFilter filter = this.existenceFilters.get(wiki);
+
+        if ((filter == null || filter.isOverloaded()
+            || (filter.getMissingDocumentLookups() >= EXISTENCE_FILTER_MIN_LOOKUPS
+                && filter.getFalsePositiveRate() > 10 * DocumentExistenceFilter.FALSE_POSITIVE_PROBABILITY))
+            && !this.buildingExistenceFilters.containsKey(wiki)) {
+            // Don't try again and again to build a filter which just failed to be built
+            ExistenceFilterRetry retry = this.existenceFilterRetries.get(wiki);
+            if (retry == null || retry.getTime() <= System.currentTimeMillis()) {
+                rebuildExistenceFilter(wiki);
+            }
+        }
+
+        return filter;
+    }
+
+    /**
+     * Build (again) in the background the filter used to know which documents of the passed wiki don't exist without
+     * asking the underlying store. The current filter, if any, is still used until the new one is ready. Nothing is
+     * done if the filter is already being built or if the existence filter is disabled.
+     *
+     * @param wiki the identifier of the wiki
+     * @since 9.11RC1
+     */
+    public void rebuildExistenceFilter(String wiki)
+    {
+        if (this.existenceFilters == null || this.buildingExistenceFilters.containsKey(wiki)) {
+            return;
+        }
+
+        // Deleted documents are never removed from the filter so the number of added documents is an upper bound
+        DocumentExistenceFilter currentFilter = this.existenceFilters.get(wiki);
+        long expectedDocuments = this.existenceFilterSize;
+        if (currentFilter != null) {
+            expectedDocuments = Math.max(expectedDocuments, currentFilter.getDocumentCount() * 2);
+        }
+
+        DocumentExistenceFilter filter = new DocumentExistenceFilter(expectedDocuments);
+        if (this.buildingExistenceFilters.putIfAbsent(wiki, filter) == null) {
+            Thread thread = new Thread(new ExistenceFilterBuilder(wiki, filter),
+                "XWiki document existence filter builder for wiki [" + wiki + "]");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Fill an existence filter with the identifiers of all the documents of a wiki.
+     */
+    private class ExistenceFilterBuilder extends AbstractXWikiRunnable
+    {
+        private final String wiki;
+
+        private final DocumentExistenceFilter filter;
+
+        ExistenceFilterBuilder(String wiki, DocumentExistenceFilter filter)
+        {
+            this.wiki = wiki;
+            this.filter = filter;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            try {
+                LOGGER.debug("Building the document existence filter of wiki [{}]", this.wiki);
+
+                // Go through the identifiers by batches, ordered so that each batch starts after the previous one
+                List<Long> ids = null;
+                do {
+                    Query query;
+                    if (ids == null) {
+                        query = getQueryManager().createQuery("select doc.id from XWikiDocument doc order by doc.id",
+                            Query.HQL);
+                    } else {
+                        query = getQueryManager().createQuery(
+                            "select doc.id from XWikiDocument doc where doc.id > :lastId order by doc.id", Query.HQL);
+                        query.bindValue("lastId", ids.get(ids.size() - 1));
+                    }
+                    query.setWiki(this.wiki);
+                    query.setLimit(EXISTENCE_FILTER_BATCH_SIZE);
+
+                    ids = query.execute();
+                    for (Long id : ids) {
+                        this.filter.add(id);
+                    }
+                } while (ids.size() == EXISTENCE_FILTER_BATCH_SIZE);
+
+                this.filter.setReady();
+                existenceFilters.put(this.wiki, this.filter);
+                existenceFilterRetries.remove(this.wiki);
+
+                LOGGER.debug("Built the document existence filter of wiki [{}] with [{}] documents", this.wiki,
+                    this.filter.getDocumentCount());
+            } catch (Exception e) {
+                ExistenceFilterRetry retry = existenceFilterRetries.get(this.wiki);
+                retry = retry != null ? retry.next() : new ExistenceFilterRetry(EXISTENCE_FILTER_RETRY_DELAY);
+                existenceFilterRetries.put(this.wiki, retry);
+
+                LOGGER.warn("Failed to build the document existence filter of wiki [{}], retrying in [{}]s: {}",
+                    this.wiki, retry.getDelay() / 1000, ExceptionUtils.getRootCauseMessage(e));
+            } finally {
+                buildingExistenceFilters.remove(this.wiki, this.filter);
+            }
+        }
+    }
+
+    /**
+     * When to try again to build an existence filter which failed to be built.
+     */
+    private static final class ExistenceFilterRetry
+    {
+        private final long delay;
+
+        private final long time;
+
+        ExistenceFilterRetry(long delay)
+        {
+            this.delay = delay;
+            this.time = System.currentTimeMillis() + delay;
+        }
+
+        ExistenceFilterRetry next()
+        {
+            return new ExistenceFilterRetry(Math.min(this.delay * 2, EXISTENCE_FILTER_MAX_RETRY_DELAY));
+        }
+
+        long getDelay()
+        {
+            return this.delay;
+        }
+
+        long getTime()
+        {
+            return this.time;
+        }
     }
 
     /**
@@ -260,9 +583,12 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
 
         if (cachedoc != null) {
             cachedoc.setFromCache(true);
+            hit(key);
 
             LOGGER.debug("Cache: got doc {} from cache", key);
         } else {
+            this.statistics.miss();
+
             Boolean result = getPageExistCache().get(key);
 
             if (result == Boolean.FALSE) {
@@ -275,15 +601,78 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
                 // Allow writing more generic code.
                 cachedoc.setOriginalDocument(new XWikiDocument(cachedoc.getDocumentReference(), cachedoc.getLocale()));
             } else {
-                LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
+                DocumentExistenceFilter filter = getExistenceFilter(context);
 
-                cachedoc = this.store.loadXWikiDoc(doc, context);
+                if (filter != null && !filter.mightExist(doc.getId())) {
+                    LOGGER.debug("Cache: The document {} does not exist according to the existence filter", key);
 
-                LOGGER.debug("Cache: Got doc {} from storage", key);
+                    filter.negative();
+                    this.statistics.existenceFilterNegative();
 
+                    cachedoc = doc;
+                    cachedoc.setNew(true);
+                    cachedoc.setOriginalDocument(
+                        new XWikiDocument(cachedoc.getDocumentReference(), cachedoc.getLocale()));
+                } else {
+                    cachedoc = loadFromStore(key, doc, context);
+
+                    if (filter != null && cachedoc.isNew()) {
+                        filter.falsePositive();
+                        this.statistics.existenceFilterFalsePositive();
+                    }
+                }
+            }
+
+            cachedoc.setStore(this.store);
+        }
+
+        LOGGER.debug("Cache: end for doc {} in cache", key);
+
+        return cachedoc;
+    }
+
+    /**
+     * Load the document from the underlying store making sure that only one thread at a time loads a given document:
+     * the threads asking for a document which is already being loaded wait for the result instead of hitting the
+     * storage too.
+     */
+    private XWikiDocument loadFromStore(String key, XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        if (this.threadLoadingKeys.get().contains(key)) {
+            // The current thread is already loading this document, waiting for it would be waiting forever
+            return loadWithoutCoalescing(key, doc, context);
+        }
+
+        CompletableFuture<XWikiDocument> future = new CompletableFuture<>();
+        CompletableFuture<XWikiDocument> currentFuture = this.loadingDocuments.putIfAbsent(key, future);
+
+        if (currentFuture != null) {
+            this.statistics.coalescedLoad();
+
+            LOGGER.debug("Cache: Waiting for doc {} to be loaded by another thread", key);
+
+            return waitForLoad(key, doc, currentFuture, context);
+        }
+
+        this.statistics.storageLoad();
+
+        this.threadLoadingKeys.get().add(key);
+
+        try {
+            LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
+
+            XWikiDocument cachedoc = this.store.loadXWikiDoc(doc, context);
+
+            LOGGER.debug("Cache: Got doc {} from storage", key);
+
+            // Don't cache the result if the document was modified while being loaded
+            if (this.loadingDocuments.get(key) == future) {
                 if (cachedoc.isNew()) {
                     getPageExistCache().set(key, Boolean.FALSE);
                 } else {
+                    // The cached instance is shared and should never be modified, clones will copy it lazily
+                    cachedoc.setSnapshot(this.copyOnWrite);
+
                     getCache().set(key, cachedoc);
 
                     // Also update exist cache
@@ -293,12 +682,259 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
                 LOGGER.debug("Cache: put doc {} in cache", key);
             }
 
+            future.complete(cachedoc);
+
+            return cachedoc;
+        } catch (XWikiException | RuntimeException e) {
+            future.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            this.threadLoadingKeys.get().remove(key);
+            this.loadingDocuments.remove(key, future);
+        }
+    }
+
+    /**
+     * Load the document from the underlying store without registering it as being loaded and without caching it.
+     */
+    private XWikiDocument loadWithoutCoalescing(String key, XWikiDocument doc, XWikiContext context)
+        throws XWikiException
+    {
+        this.statistics.storageLoad();
+
+        LOGGER.debug("Cache: Loading doc {} from persistent storage without waiting for the other loads", key);
+
+        return this.store.loadXWikiDoc(doc, context);
+    }
+
+    private XWikiDocument waitForLoad(String key, XWikiDocument doc, CompletableFuture<XWikiDocument> future,
+        XWikiContext context) throws XWikiException
+    {
+        XWikiDocument loadedDocument = waitForLoad(key, future);
+
+        if (loadedDocument == null) {
+            LOGGER.warn("Document [{}] took more than {} ms to be loaded by another thread, loading it directly", key,
+                LOAD_WAIT_TIMEOUT);
+
+            return loadWithoutCoalescing(key, doc, context);
+        }
+
+        if (loadedDocument.isNew()) {
+            // Don't share the instance of a document which does not exist, it's generally modified to be created
+            doc.setNew(true);
+            doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+
+            return doc;
+        }
+
+        loadedDocument.setFromCache(true);
+
+        return loadedDocument;
+    }
+
+    /**
+     * @return the document loaded by another thread or {@code null} if it took more than {@link #LOAD_WAIT_TIMEOUT}
+     */
+    private XWikiDocument waitForLoad(String key, CompletableFuture<XWikiDocument> future) throws XWikiException
+    {
+        try {
+            return future.get(LOAD_WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Interrupted while waiting for document [" + key + "] to be loaded", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XWikiException) {
+                throw (XWikiException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Failed to load document [" + key + "]", e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of documents loaded from the underlying store by {@link #loadXWikiDoc}
+     * @since 9.11RC1
+     */
+    public long getStorageLoadCount()
+    {
+        return this.statistics.getStorageLoads();
+    }
+
+    /**
+     * @return the number of calls to {@link #loadXWikiDoc} which waited for the same document to be loaded by another
+     *         thread instead of loading it from the underlying store
+     * @since 9.11RC1
+     */
+    public long getCoalescedLoadCount()
+    {
+        return this.statistics.getCoalescedLoads();
+    }
+
+    private void hit(String key)
+    {
+        this.statistics.hit();
+        if (this.weightLimiter != null) {
+            this.weightLimiter.accessed(key);
+        }
+    }
+
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
+        List<String> keys = new ArrayList<>(references.size());
+
+        // Resolve what can be resolved from the cache and remember what is missing
+        List<Integer> missingPositions = new ArrayList<>();
+        List<DocumentReference> missingReferences = new ArrayList<>();
+        List<CompletableFuture<XWikiDocument>> missingFutures = new ArrayList<>();
+        Map<Integer, CompletableFuture<XWikiDocument>> waitingPositions = new LinkedHashMap<>();
+        List<Integer> reentrantPositions = new ArrayList<>();
+        for (DocumentReference reference : references) {
+            XWikiDocument doc = XWikiDocument.newDocumentToLoad(reference);
+            DocumentReference referenceWithLocale = doc.getDocumentReferenceWithLocale();
+            String key = this.uidStringEntityReferenceSerializer.serialize(referenceWithLocale, referenceWithLocale);
+
+            XWikiDocument cachedoc;
+            try {
+                cachedoc = getCache().get(key);
+            } catch (Exception e) {
+                LOGGER.error("Failed to get document from the cache", e);
+
+                cachedoc = null;
+            }
+
+            if (cachedoc != null) {
+                cachedoc.setFromCache(true);
+                hit(key);
+            } else if (getPageExistCache().get(key) == Boolean.FALSE) {
+                this.statistics.miss();
+
+                cachedoc = doc;
+                cachedoc.setNew(true);
+                cachedoc.setOriginalDocument(new XWikiDocument(cachedoc.getDocumentReference(), cachedoc.getLocale()));
+                cachedoc.setStore(this.store);
+            } else if (this.threadLoadingKeys.get().contains(key)) {
+                this.statistics.miss();
+
+                // Same as loadFromStore(): the current thread is already loading this document
+                reentrantPositions.add(documents.size());
+                cachedoc = doc;
+            } else {
+                this.statistics.miss();
+
+                // Same single-flight guard as loadFromStore(): don't load documents already being loaded
+                CompletableFuture<XWikiDocument> future = new CompletableFuture<>();
+                CompletableFuture<XWikiDocument> currentFuture = this.loadingDocuments.putIfAbsent(key, future);
+                if (currentFuture != null) {
+                    this.statistics.coalescedLoad();
+                    waitingPositions.put(documents.size(), currentFuture);
+                    cachedoc = doc;
+                } else {
+                    missingPositions.add(documents.size());
+                    missingReferences.add(reference);
+                    missingFutures.add(future);
+                    this.threadLoadingKeys.get().add(key);
+                }
+            }
+
+            documents.add(cachedoc);
+            keys.add(key);
+        }
+
+        LOGGER.debug("Cache: {} documents out of {} have to be loaded from persistent storage",
+            missingReferences.size(), references.size());
+
+        // Load all the missing documents at once
+        if (!missingReferences.isEmpty()) {
+            loadFromStore(missingReferences, missingPositions, missingFutures, keys, documents, context);
+        }
+
+        // Load directly the documents which are already being loaded by the current thread
+        for (int position : reentrantPositions) {
+            XWikiDocument cachedoc = loadWithoutCoalescing(keys.get(position), documents.get(position), context);
             cachedoc.setStore(this.store);
+            documents.set(position, cachedoc);
         }
 
-        LOGGER.debug("Cache: end for doc {} in cache", key);
+        // Get the documents which were being loaded by other threads
+        for (Map.Entry<Integer, CompletableFuture<XWikiDocument>> entry : waitingPositions.entrySet()) {
+            int position = entry.getKey();
+            XWikiDocument cachedoc =
+                waitForLoad(keys.get(position), documents.get(position), entry.getValue(), context);
+            cachedoc.setStore(this.store);
+            documents.set(position, cachedoc);
+        }
 
-        return cachedoc;
+        return documents;
+    }
+
+    /**
+     * Bulk version of {@link #loadFromStore(String, XWikiDocument, XWikiContext)}: the passed futures have been
+     * registered in {@link #loadingDocuments} by the caller and a document is cached only if it was not modified while
+     * being loaded.
+     */
+    private void loadFromStore(List<DocumentReference> references, List<Integer> positions,
+        List<CompletableFuture<XWikiDocument>> futures, List<String> keys, List<XWikiDocument> documents,
+        XWikiContext context) throws XWikiException
+    {
+        try {
+            List<XWikiDocument> loadedDocuments = this.store.loadXWikiDocs(references, context);
+
+            for (int i = 0; i < loadedDocuments.size(); ++i) {
+                int position = positions.get(i);
+                String key = keys.get(position);
+                CompletableFuture<XWikiDocument> future = futures.get(i);
+                XWikiDocument cachedoc = loadedDocuments.get(i);
+
+                this.statistics.storageLoad();
+
+                // Don't cache the result if the document was modified while being loaded
+                if (this.loadingDocuments.get(key) == future) {
+                    if (cachedoc.isNew()) {
+                        getPageExistCache().set(key, Boolean.FALSE);
+                    } else {
+                        // The cached instance is shared and should never be modified, clones will copy it lazily
+                        cachedoc.setSnapshot(this.copyOnWrite);
+
+                        getCache().set(key, cachedoc);
+                        getPageExistCache().set(key, Boolean.TRUE);
+                    }
+                }
+
+                future.complete(cachedoc);
+
+                cachedoc.setStore(this.store);
+
+                documents.set(position, cachedoc);
+            }
+        } catch (XWikiException | RuntimeException e) {
+            for (CompletableFuture<XWikiDocument> future : futures) {
+                future.completeExceptionally(e);
+            }
+
+            throw e;
+        } finally {
+            for (int i = 0; i < futures.size(); ++i) {
+                // Make sure nobody waits forever for a document the store did not return
+                futures.get(i).completeExceptionally(new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                    XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                    "Document [" + keys.get(positions.get(i)) + "] was not returned by the store"));
+                this.threadLoadingKeys.get().remove(keys.get(positions.get(i)));
+                this.loadingDocuments.remove(keys.get(positions.get(i)), futures.get(i));
+            }
+        }
     }
 
     @Override
@@ -309,6 +945,7 @@ public void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWiki
 
         this.store.deleteXWikiDoc(doc, context);
 
+        this.loadingDocuments.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
         getPageExistCache().set(key, Boolean.FALSE);
@@ -627,9 +1264,23 @@ public boolean exists(XWikiDocument doc, XWikiContext context) throws XWikiExcep
         } catch (Exception e) {
         }
 
+        DocumentExistenceFilter filter = getExistenceFilter(context);
+        if (filter != null && !filter.mightExist(doc.getId())) {
+            filter.negative();
+            this.statistics.existenceFilterNegative();
+
+            // Don't put it in the existence cache, the filter is enough to answer next time
+            return false;
+        }
+
         boolean result = this.store.exists(doc, context);
         getPageExistCache().set(key, Boolean.valueOf(result));
 
+        if (filter != null && !result) {
+            filter.falsePositive();
+            this.statistics.existenceFilterFalsePositive();
+        }
+
         return result;
     }
 
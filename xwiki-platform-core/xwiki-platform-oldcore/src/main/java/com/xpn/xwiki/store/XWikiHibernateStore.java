@@ -31,6 +31,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -88,6 +89,9 @@
 import com.xpn.xwiki.doc.XWikiLock;
 import com.xpn.xwiki.doc.XWikiSpace;
 import com.xpn.xwiki.internal.render.OldRendering;
+import com.xpn.xwiki.internal.store.DocumentElementsLoader;
+import com.xpn.xwiki.internal.store.OriginalDocumentElementsLoader;
+import com.xpn.xwiki.internal.store.hibernate.BatchedPropertiesLoader;
 import com.xpn.xwiki.monitor.api.MonitorPlugin;
 import com.xpn.xwiki.objects.BaseCollection;
 import com.xpn.xwiki.objects.BaseElement;
@@ -116,6 +120,11 @@
 @Singleton
 public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWikiStoreInterface
 {
+    /**
+     * Maximum number of documents loaded at once by {@link #loadXWikiDocs(Collection, XWikiContext)}.
+     */
+    private static final int DOCUMENTS_BATCH_SIZE = 100;
+
     @Inject
     private Logger logger;
 
@@ -177,6 +186,24 @@ public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWik
 
     private Map<String, String[]> validTypesMap = new HashMap<>();
 
+    /**
+     * Load the objects and attachments of the documents loaded without them.
+     */
+    private final DocumentElementsLoader elementsLoader = new DocumentElementsLoader()
+    {
+        @Override
+        public void loadXObjects(XWikiDocument document, XWikiContext context) throws XWikiException
+        {
+            loadLazyXWikiObjects(document, context);
+        }
+
+        @Override
+        public void loadAttachments(XWikiDocument document, XWikiContext context) throws XWikiException
+        {
+            loadAttachmentList(document, context, true);
+        }
+    };
+
     /**
      * This allows to initialize our storage engine. The hibernate config file path is taken from xwiki.cfg or directly
      * in the WEB-INF directory.
@@ -522,6 +549,23 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext, boolean
                 doc.setComment(StringUtils.abbreviate(comment, 1023));
             }
 
+            // Make sure the elements which were not loaded with the document are loaded before saving it (and outside
+            // of the session used to save it), as well as the ones of the original document which are compared to the
+            // saved ones once the document is saved
+            doc.getXObjects();
+            doc.getAttachmentList();
+            XWikiDocument originalDocument = doc.getOriginalDocument();
+            if (originalDocument != null) {
+                originalDocument.getXObjects();
+                originalDocument.getAttachmentList();
+            }
+            if (!doc.isElementLoaded(XWikiDocument.HAS_OBJECTS | XWikiDocument.HAS_ATTACHMENTS)) {
+                Object[] args = { doc.getDocumentReference() };
+                throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                    XWikiException.ERROR_XWIKI_STORE_HIBERNATE_SAVING_DOC,
+                    "Failed to load the objects and attachments of document [{0}] before saving it", null, args);
+            }
+
             if (bTransaction) {
                 checkHibernate(context);
                 SessionFactory sfactory = injectCustomMappingsInSessionFactory(doc, context);
@@ -883,12 +927,7 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
 
             try {
                 session.load(doc, Long.valueOf(doc.getId()));
-                doc.setNew(false);
-                doc.setMostRecent(true);
-                // Fix for XWIKI-1651
-                doc.setDate(new Date(doc.getDate().getTime()));
-                doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
-                doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
+                initLoadedDocument(doc);
             } catch (ObjectNotFoundException e) { // No document
                 doc.setNew(true);
 
@@ -899,114 +938,209 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
                 return doc;
             }
 
-            // Loading the attachment list
-            if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS)) {
+            // Load everything which is not stored in the document table
+            boolean lazyLoading = isLazyLoadingEnabled(context);
+            if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS) && !lazyLoading) {
                 loadAttachmentList(doc, context, false);
             }
+            BaseClass bclass = loadXClass(doc, context);
+            if (doc.hasElement(XWikiDocument.HAS_OBJECTS) && !lazyLoading) {
+                loadXWikiObjects(doc, bclass, session, context);
+            }
 
-            // TODO: handle the case where there are no xWikiClass and xWikiObject in the Database
-            BaseClass bclass = new BaseClass();
-            String cxml = doc.getXClassXML();
-            if (cxml != null) {
-                bclass.fromXML(cxml);
-                doc.setXClass(bclass);
-                bclass.setDirty(false);
+            setLoaded(doc, lazyLoading);
+
+            if (bTransaction) {
+                endTransaction(context, false);
+            }
+        } catch (Exception e) {
+            Object[] args = { doc.getDocumentReference() };
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading document [{0}]", e,
+                args);
+        } finally {
+            try {
+                if (bTransaction) {
+                    endTransaction(context, false);
+                }
+            } catch (Exception e) {
             }
 
-            // Store this XWikiClass in the context so that we can use it in case of recursive usage
-            // of classes
-            context.addBaseClass(bclass);
+            // End monitoring timer
+            if (monitor != null) {
+                monitor.endTimer(HINT);
+            }
+        }
 
-            if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
-                Query query = session
-                    .createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
-                query.setText("name", doc.getFullName());
-                @SuppressWarnings("unchecked")
-                Iterator<BaseObject> it = query.list().iterator();
+        this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
 
-                EntityReference localGroupEntityReference = new EntityReference("XWikiGroups", EntityType.DOCUMENT,
-                    new EntityReference("XWiki", EntityType.SPACE));
-                DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
-                    localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
+        return doc;
+    }
 
-                boolean hasGroups = false;
-                while (it.hasNext()) {
-                    BaseObject object = it.next();
-                    DocumentReference classReference = object.getXClassReference();
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext inputxcontext)
+        throws XWikiException
+    {
+        XWikiContext context = getXWikiContext(inputxcontext);
 
-                    if (classReference == null) {
-                        continue;
-                    }
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
 
-                    // It seems to search before is case insensitive. And this would break the loading if we get an
-                    // object which doesn't really belong to this document
-                    if (!object.getDocumentReference().equals(doc.getDocumentReference())) {
-                        continue;
-                    }
+        // Dynamic custom mappings have to be injected in the session factory document by document (see
+        // #loadXWikiDoc()) so they cannot share the same query
+        if (context.getWiki().hasDynamicCustomMappings()) {
+            String currentWiki = context.getWikiId();
+            try {
+                for (DocumentReference reference : references) {
+                    context.setWikiId(reference.getWikiReference().getName());
+                    documents.add(loadXWikiDoc(XWikiDocument.newDocumentToLoad(reference), context));
+                }
+            } finally {
+                context.setWikiId(currentWiki);
+            }
 
-                    BaseObject newobject;
-                    if (classReference.equals(doc.getDocumentReference())) {
-                        newobject = bclass.newCustomClassInstance(context);
-                    } else {
-                        newobject = BaseClass.newCustomClassInstance(classReference, context);
+            return documents;
+        }
+
+        // Each wiki has its own database so the documents are loaded wiki by wiki
+        Map<String, List<Integer>> positionsByWiki = new LinkedHashMap<>();
+        for (DocumentReference reference : references) {
+            String wiki = reference.getWikiReference().getName();
+            List<Integer> positions = positionsByWiki.get(wiki);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                positionsByWiki.put(wiki, positions);
+            }
+            positions.add(documents.size());
+            documents.add(XWikiDocument.newDocumentToLoad(reference));
+        }
+
+        String currentWiki = context.getWikiId();
+        try {
+            for (Map.Entry<String, List<Integer>> entry : positionsByWiki.entrySet()) {
+                context.setWikiId(entry.getKey());
+
+                List<Integer> positions = entry.getValue();
+                for (int i = 0; i < positions.size(); i += DOCUMENTS_BATCH_SIZE) {
+                    loadXWikiDocs(documents, positions.subList(i, Math.min(i + DOCUMENTS_BATCH_SIZE, positions.size())),
+                        context);
+                }
+            }
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        return documents;
+    }
+
+    /**
+     * Load the documents located at the passed positions. All the documents are expected to be located in the current
+     * wiki.
+     */
+    @SuppressWarnings("unchecked")
+    private void loadXWikiDocs(List<XWikiDocument> documents, List<Integer> positions, XWikiContext context)
+        throws XWikiException
+    {
+        boolean bTransaction = true;
+        MonitorPlugin monitor = Util.getMonitorPlugin(context);
+        try {
+            // Start monitoring timer
+            if (monitor != null) {
+                monitor.startTimer(HINT);
+            }
+            checkHibernate(context);
+
+            bTransaction = bTransaction && beginTransaction(context);
+            Session session = getSession(context);
+            session.setFlushMode(FlushMode.MANUAL);
+
+            // Load all the documents at once
+            List<Long> ids = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                ids.add(documents.get(position).getId());
+            }
+            Query query = session.createQuery("from XWikiDocument as doc where doc.id in (:ids)");
+            query.setParameterList("ids", ids);
+            Map<Long, XWikiDocument> storedDocuments = new HashMap<>();
+            for (XWikiDocument storedDocument : (List<XWikiDocument>) query.list()) {
+                storedDocuments.put(storedDocument.getId(), storedDocument);
+            }
+
+            boolean lazyLoading = isLazyLoadingEnabled(context);
+            List<XWikiDocument> loadedDocuments = new ArrayList<>(storedDocuments.size());
+            Map<String, XWikiDocument> documentsWithObjects = new LinkedHashMap<>();
+            Map<XWikiDocument, BaseClass> classes = new HashMap<>();
+            for (int position : positions) {
+                XWikiDocument doc = documents.get(position);
+                XWikiDocument storedDocument = storedDocuments.get(doc.getId());
+
+                if (storedDocument == null) {
+                    doc.setStore(this);
+                    doc.setNew(true);
+
+                    // Make sure to always return a document with an original version, even for one that does not
+                    // exist. Allow writing more generic code.
+                    doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+                } else {
+                    documents.set(position, storedDocument);
+                    loadedDocuments.add(storedDocument);
+
+                    storedDocument.setStore(this);
+                    initLoadedDocument(storedDocument);
+
+                    if (storedDocument.hasElement(XWikiDocument.HAS_ATTACHMENTS) && !lazyLoading) {
+                        loadAttachmentList(storedDocument, context, false);
                     }
-                    if (newobject != null) {
-                        newobject.setId(object.getId());
-                        newobject.setXClassReference(object.getRelativeXClassReference());
-                        newobject.setDocumentReference(object.getDocumentReference());
-                        newobject.setNumber(object.getNumber());
-                        newobject.setGuid(object.getGuid());
-                        object = newobject;
+                    BaseClass bclass = loadXClass(storedDocument, context);
+                    if (storedDocument.hasElement(XWikiDocument.HAS_OBJECTS) && !lazyLoading) {
+                        if (documentsWithObjects.containsKey(storedDocument.getFullName())) {
+                            // Several locales of the same document share the same objects, load them separately
+                            loadXWikiObjects(storedDocument, bclass, session, context);
+                        } else {
+                            documentsWithObjects.put(storedDocument.getFullName(), storedDocument);
+                            classes.put(storedDocument, bclass);
+                        }
                     }
+                }
+            }
 
-                    if (classReference.equals(groupsDocumentReference)) {
-                        // Groups objects are handled differently.
-                        hasGroups = true;
-                    } else {
-                        loadXWikiCollectionInternal(object, doc, context, false, true);
+            // Load the objects of all the documents at once
+            if (!documentsWithObjects.isEmpty()) {
+                Query objectsQuery = session
+                    .createQuery("from BaseObject as bobject where bobject.name in (:names) order by bobject.number");
+                objectsQuery.setParameterList("names", documentsWithObjects.keySet());
+                Map<String, List<BaseObject>> storedObjects = new HashMap<>();
+                for (BaseObject storedObject : (List<BaseObject>) objectsQuery.list()) {
+                    List<BaseObject> objects = storedObjects.get(storedObject.getName());
+                    if (objects == null) {
+                        objects = new ArrayList<>();
+                        storedObjects.put(storedObject.getName(), objects);
                     }
-                    doc.setXObject(object.getNumber(), object);
-                }
-
-                // AFAICT this was added as an emergency patch because loading of objects has proven
-                // too slow and the objects which cause the most overhead are the XWikiGroups objects
-                // as each group object (each group member) would otherwise cost 2 database queries.
-                // This will do every group member in a single query.
-                if (hasGroups) {
-                    Query query2 = session.createQuery("select bobject.number, prop.value from StringProperty as prop,"
-                        + "BaseObject as bobject where bobject.name = :name and bobject.className='XWiki.XWikiGroups' "
-                        + "and bobject.id=prop.id.id and prop.id.name='member' order by bobject.number");
-                    query2.setText("name", doc.getFullName());
-                    @SuppressWarnings("unchecked")
-                    Iterator<Object[]> it2 = query2.list().iterator();
-                    while (it2.hasNext()) {
-                        Object[] result = it2.next();
-                        Integer number = (Integer) result[0];
-                        String member = (String) result[1];
-                        BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
-                        obj.setDocumentReference(doc.getDocumentReference());
-                        obj.setXClassReference(localGroupEntityReference);
-                        obj.setNumber(number.intValue());
-                        obj.setStringValue("member", member);
-                        doc.setXObject(obj.getNumber(), obj);
+                    objects.add(storedObject);
+                }
+
+                Map<Long, BaseObject> batchedObjects = isBatchObjectLoadingEnabled(context) ? new HashMap<>() : null;
+                for (XWikiDocument doc : documentsWithObjects.values()) {
+                    List<BaseObject> objects = storedObjects.get(doc.getFullName());
+                    if (objects != null) {
+                        loadXWikiObjects(doc, classes.get(doc), objects, batchedObjects, session, context);
                     }
                 }
-            }
 
-            doc.setContentDirty(false);
-            doc.setMetaDataDirty(false);
+                if (batchedObjects != null) {
+                    loadBatchedProperties(documentsWithObjects.keySet(), batchedObjects, session, context);
+                }
+            }
 
-            // We need to ensure that the loaded document becomes the original document
-            doc.setOriginalDocument(doc.clone());
+            for (XWikiDocument doc : loadedDocuments) {
+                setLoaded(doc, lazyLoading);
+            }
 
             if (bTransaction) {
                 endTransaction(context, false);
             }
         } catch (Exception e) {
-            Object[] args = { doc.getDocumentReference() };
             throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
-                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading document [{0}]", e,
-                args);
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading documents", e);
         } finally {
             try {
                 if (bTransaction) {
@@ -1020,10 +1154,232 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
                 monitor.endTimer(HINT);
             }
         }
+    }
 
-        this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
+    private void initLoadedDocument(XWikiDocument doc)
+    {
+        doc.setNew(false);
+        doc.setMostRecent(true);
+        // Fix for XWIKI-1651
+        doc.setDate(new Date(doc.getDate().getTime()));
+        doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
+        doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
+    }
 
-        return doc;
+    /**
+     * @param lazyLoading true if the objects and attachments of the document were not loaded and should be loaded on
+     *            first access
+     */
+    private void setLoaded(XWikiDocument doc, boolean lazyLoading)
+    {
+        doc.setContentDirty(false);
+        doc.setMetaDataDirty(false);
+
+        // We need to ensure that the loaded document becomes the original document
+        XWikiDocument originalDocument = doc.clone();
+        doc.setOriginalDocument(originalDocument);
+
+        if (lazyLoading) {
+            // Only the original document reads the elements from the database, the document (and its clones) copy
+            // them so that the original document remains a snapshot of what was loaded even if the document is saved
+            // before its elements are accessed
+            int elements = doc.getElements() & (XWikiDocument.HAS_OBJECTS | XWikiDocument.HAS_ATTACHMENTS);
+            originalDocument.setElementsToLoad(elements, this.elementsLoader);
+            doc.setElementsToLoad(elements, new OriginalDocumentElementsLoader(originalDocument));
+        }
+    }
+
+    private BaseClass loadXClass(XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        // TODO: handle the case where there are no xWikiClass and xWikiObject in the Database
+        BaseClass bclass = new BaseClass();
+        String cxml = doc.getXClassXML();
+        if (cxml != null) {
+            bclass.fromXML(cxml);
+            doc.setXClass(bclass);
+            bclass.setDirty(false);
+        }
+
+        // Store this XWikiClass in the context so that we can use it in case of recursive usage
+        // of classes
+        context.addBaseClass(bclass);
+
+        return bclass;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadXWikiObjects(XWikiDocument doc, BaseClass bclass, Session session, XWikiContext context)
+        throws Exception
+    {
+        Query query =
+            session.createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
+        query.setText("name", doc.getFullName());
+
+        Map<Long, BaseObject> batchedObjects = isBatchObjectLoadingEnabled(context) ? new HashMap<>() : null;
+
+        loadXWikiObjects(doc, bclass, (List<BaseObject>) query.list(), batchedObjects, session, context);
+
+        if (batchedObjects != null) {
+            loadBatchedProperties(Collections.singletonList(doc.getFullName()), batchedObjects, session, context);
+        }
+    }
+
+    private void loadLazyXWikiObjects(XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        boolean bTransaction = true;
+        try {
+            checkHibernate(context);
+            SessionFactory sfactory = injectCustomMappingsInSessionFactory(doc, context);
+            bTransaction = beginTransaction(sfactory, context);
+            Session session = getSession(context);
+
+            // Make the class of the document available in case of recursive usage
+            BaseClass bclass = doc.getXClass();
+            context.addBaseClass(bclass);
+
+            loadXWikiObjects(doc, bclass, session, context);
+        } catch (Exception e) {
+            Object[] args = { doc.getDocumentReference() };
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Exception while reading the objects of document [{0}]", e, args);
+        } finally {
+            try {
+                if (bTransaction) {
+                    endTransaction(context, false);
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    /**
+     * @param batchedObjects where to put the objects for which the properties should be loaded in batch, {@code null}
+     *            if batch loading is disabled
+     */
+    private void loadXWikiObjects(XWikiDocument doc, BaseClass bclass, List<BaseObject> storedObjects,
+        Map<Long, BaseObject> batchedObjects, Session session, XWikiContext context) throws XWikiException
+    {
+        EntityReference localGroupEntityReference = new EntityReference("XWikiGroups", EntityType.DOCUMENT,
+            new EntityReference("XWiki", EntityType.SPACE));
+        DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
+            localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
+
+        boolean hasGroups = false;
+        for (BaseObject storedObject : storedObjects) {
+            BaseObject object = storedObject;
+            DocumentReference classReference = object.getXClassReference();
+
+            if (classReference == null) {
+                continue;
+            }
+
+            // It seems to search before is case insensitive. And this would break the loading if we get an
+            // object which doesn't really belong to this document
+            if (!object.getDocumentReference().equals(doc.getDocumentReference())) {
+                continue;
+            }
+
+            BaseObject newobject;
+            if (classReference.equals(doc.getDocumentReference())) {
+                newobject = bclass.newCustomClassInstance(context);
+            } else {
+                newobject = BaseClass.newCustomClassInstance(classReference, context);
+            }
+            if (newobject != null) {
+                newobject.setId(object.getId());
+                newobject.setXClassReference(object.getRelativeXClassReference());
+                newobject.setDocumentReference(object.getDocumentReference());
+                newobject.setNumber(object.getNumber());
+                newobject.setGuid(object.getGuid());
+                object = newobject;
+            }
+
+            if (batchedObjects != null && !hasCustomMapping(object, doc, context)) {
+                // The properties are loaded all at once after all objects are known
+                batchedObjects.put(object.getId(), object);
+            } else if (classReference.equals(groupsDocumentReference)) {
+                // Groups objects are handled differently.
+                hasGroups = true;
+            } else {
+                loadXWikiCollectionInternal(object, doc, context, false, true);
+            }
+            doc.setXObject(object.getNumber(), object);
+        }
+
+        // AFAICT this was added as an emergency patch because loading of objects has proven
+        // too slow and the objects which cause the most overhead are the XWikiGroups objects
+        // as each group object (each group member) would otherwise cost 2 database queries.
+        // This will do every group member in a single query.
+        if (hasGroups) {
+            Query query2 = session.createQuery("select bobject.number, prop.value from StringProperty as prop,"
+                + "BaseObject as bobject where bobject.name = :name and bobject.className='XWiki.XWikiGroups' "
+                + "and bobject.id=prop.id.id and prop.id.name='member' order by bobject.number");
+            query2.setText("name", doc.getFullName());
+            @SuppressWarnings("unchecked")
+            Iterator<Object[]> it2 = query2.list().iterator();
+            while (it2.hasNext()) {
+                Object[] result = it2.next();
+                Integer number = (Integer) result[0];
+                String member = (String) result[1];
+                BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
+                obj.setDocumentReference(doc.getDocumentReference());
+                obj.setXClassReference(localGroupEntityReference);
+                obj.setNumber(number.intValue());
+                obj.setStringValue("member", member);
+                doc.setXObject(obj.getNumber(), obj);
+            }
+        }
+    }
+
+    private void loadBatchedProperties(Collection<String> documentNames, Map<Long, BaseObject> batchedObjects,
+        Session session, XWikiContext context) throws Exception
+    {
+        if (!batchedObjects.isEmpty()) {
+            Collection<BaseObject> incompleteObjects =
+                new BatchedPropertiesLoader(session).load(documentNames, batchedObjects);
+
+            // Fallback on the standard loading for objects with properties which could not be batch loaded
+            for (BaseObject incompleteObject : incompleteObjects) {
+                loadXWikiCollectionInternal(incompleteObject, incompleteObject.getOwnerDocument(), context, false,
+                    true);
+            }
+        }
+    }
+
+    /**
+     * @param context the XWiki context
+     * @return true if the properties of all the objects of a document should be loaded in a constant number of queries
+     */
+    private boolean isBatchObjectLoadingEnabled(XWikiContext context)
+    {
+        return context.getWiki().ParamAsLong("xwiki.store.hibernate.batchobjectloading", 1) == 1;
+    }
+
+    /**
+     * @param context the XWiki context
+     * @return true if the objects and attachments of a document should only be loaded the first time they are accessed
+     */
+    private boolean isLazyLoadingEnabled(XWikiContext context)
+    {
+        return context.getWiki().ParamAsLong("xwiki.store.hibernate.lazyloading", 0) == 1;
+    }
+
+    private boolean hasCustomMapping(BaseObject object, XWikiDocument doc, XWikiContext context)
+    {
+        if (!context.getWiki().hasCustomMappings()) {
+            return false;
+        }
+
+        BaseClass bclass;
+        if (!object.getXClassReference().equals(object.getDocumentReference())) {
+            bclass = object.getXClass(context);
+        } else {
+            // We need to get it from the document otherwise we will go in an endless loop
+            bclass = doc.getXClass();
+        }
+
+        return bclass != null && bclass.hasCustomMapping();
     }
 
     @Override
@@ -19,6 +19,8 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -41,6 +43,37 @@
 
     XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException;
 
+    /**
+     * Load several documents at once. Implementations are free to load them in a more efficient way than calling
+     * {@link #loadXWikiDoc(XWikiDocument, XWikiContext)} for each of them.
+     *
+     * @param references the references of the documents to load, the locale of each reference indicating the
+     *            translation to load
+     * @param context the XWiki context
+     * @return the documents, in the same order as the passed references (documents which don't exist are returned as
+     *         new documents)
+     * @throws XWikiException when failing to load the documents
+     * @since 9.11RC1
+     */
+    default List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
+
+        String currentWiki = context.getWikiId();
+        try {
+            for (DocumentReference reference : references) {
+                context.setWikiId(reference.getWikiReference().getName());
+
+                documents.add(loadXWikiDoc(XWikiDocument.newDocumentToLoad(reference), context));
+            }
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        return documents;
+    }
+
     void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException;
 
     List<String> getClassList(XWikiContext context) throws XWikiException;
@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.migration.hibernate;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocumentArchive;
+import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.XWikiHibernateVersioningStore;
+import com.xpn.xwiki.store.XWikiVersioningStoreInterface;
+import com.xpn.xwiki.store.migration.DataMigrationException;
+import com.xpn.xwiki.store.migration.XWikiDBVersion;
+
+/**
+ * Store a full version every {@code xwiki.store.rcs.nodesPerFull} versions in the existing document histories, so that
+ * loading an old version never requires applying more than this number of patches.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component
+@Named("R911000RevisionCheckpoints")
+@Singleton
+public class R911000RevisionCheckpointsDataMigration extends AbstractHibernateDataMigration
+{
+    @Inject
+    private Logger logger;
+
+    @Override
+    public String getDescription()
+    {
+        return "Add regular full versions in the documents history to speed up the loading of old versions";
+    }
+
+    @Override
+    public XWikiDBVersion getVersion()
+    {
+        return new XWikiDBVersion(911000);
+    }
+
+    @Override
+    public boolean shouldExecute(XWikiDBVersion startupVersion)
+    {
+        return XWikiDocumentArchive.getNodesPerFull(getXWikiContext()) > 0;
+    }
+
+    private XWikiHibernateVersioningStore getVersioningStore() throws XWikiException
+    {
+        try {
+            return (XWikiHibernateVersioningStore) this.componentManager
+                .getInstance(XWikiVersioningStoreInterface.class, XWikiHibernateBaseStore.HINT);
+        } catch (ComponentLookupException e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE, XWikiException.ERROR_XWIKI_STORE_MIGRATION,
+                String.format("Unable to reach the versioning store for database %s", getXWikiContext().getWikiId()),
+                e);
+        }
+    }
+
+    @Override
+    public void hibernateMigrate() throws DataMigrationException, XWikiException
+    {
+        final XWikiContext context = getXWikiContext();
+        final int nodesPerFull = XWikiDocumentArchive.getNodesPerFull(context);
+        final XWikiHibernateVersioningStore versioningStore = getVersioningStore();
+
+        // Only the histories containing enough diffs can miss full versions (the ones where these diffs are not
+        // consecutive are skipped without loading the content of their versions)
+        List<Long> documentIds = getStore().executeRead(context, new HibernateCallback<List<Long>>()
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Long> doInHibernate(Session session) throws HibernateException, XWikiException
+            {
+                return session
+                    .createQuery("select node.id.docId from " + XWikiRCSNodeInfo.class.getName()
+                        + " as node where node.diff = :diff group by node.id.docId having count(*) >= :count")
+                    .setBoolean("diff", true).setLong("count", nodesPerFull).list();
+            }
+        });
+
+        // One transaction per document to not keep the whole history of the wiki in memory
+        for (final Long documentId : documentIds) {
+            getStore().executeWrite(context, new HibernateCallback<Void>()
+            {
+                @Override
+                public Void doInHibernate(Session session) throws HibernateException, XWikiException
+                {
+                    // Only the node infos are loaded, the contents are loaded when a full version is actually missing
+                    XWikiDocumentArchive archive = new XWikiDocumentArchive(documentId);
+                    versioningStore.loadXWikiDocArchive(archive, false, context);
+
+                    if (archive.addMissingFullVersions(context)) {
+                        R911000RevisionCheckpointsDataMigration.this.logger
+                            .info("Added full versions in the history of document with id [{}]", documentId);
+
+                        versioningStore.saveXWikiDocArchive(archive, false, context);
+                    }
+
+                    return null;
+                }
+            });
+        }
+    }
+}
@@ -54,6 +54,7 @@
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.store.XWikiStoreInterface;
 import com.xpn.xwiki.user.api.XWikiGroupService;
@@ -148,6 +149,8 @@ public class XWikiGroupServiceImpl implements XWikiGroupService, EventListener
     private EntityReferenceSerializer<String> localWikiEntityReferenceSerializer = Utils.getComponent(
         EntityReferenceSerializer.TYPE_STRING, "local");
 
+    private GroupClosureIndex groupClosureIndex;
+
     @Override
     public synchronized void init(XWiki xwiki, XWikiContext context) throws XWikiException
     {
@@ -187,6 +190,15 @@ public synchronized void initCache(int iCapacity, XWikiContext context) throws X
         }
     }
 
+    private GroupClosureIndex getGroupClosureIndex()
+    {
+        if (this.groupClosureIndex == null) {
+            this.groupClosureIndex = Utils.getComponent(GroupClosureIndex.class);
+        }
+
+        return this.groupClosureIndex;
+    }
+
     @Override
     public void flushCache()
     {
@@ -399,6 +411,10 @@ public void onEvent(Event event, Object source, Object data)
 
         // if there is any chance some group changed, flush the group cache
         if (document.getXObject(GROUPCLASS_REFERENCE) != null || oldDocument.getXObject(GROUPCLASS_REFERENCE) != null) {
+            // Make sure the index is up to date before the cache is filled again (the index listener might be called
+            // after this one)
+            getGroupClosureIndex().update(document);
+
             flushCache();
         }
     }
@@ -729,58 +745,72 @@ public Collection<DocumentReference> getAllGroupsReferencesForMember(DocumentRef
             }
 
             if (groupReferences == null) {
-                List<String> groupNames;
-                try {
-                    Query query;
-                    if (memberReference.getWikiReference().getName().equals(context.getWikiId())
-                        || (memberReference.getLastSpaceReference().getName().equals("XWiki") && memberReference
-                            .getName().equals(XWikiRightService.GUEST_USER))) {
-                        query =
-                            context
-                                .getWiki()
-                                .getStore()
-                                .getQueryManager()
-                                .getNamedQuery("listGroupsForUser")
-                                .bindValue("username", prefixedFullName)
-                                .bindValue("shortname",
-                                    this.localWikiEntityReferenceSerializer.serialize(memberReference))
-                                .bindValue("veryshortname", memberReference.getName());
-                    } else {
-                        query =
-                            context.getWiki().getStore().getQueryManager()
-                                .getNamedQuery("listGroupsForUserInOtherWiki")
-                                .bindValue("prefixedmembername", prefixedFullName);
-                    }
-
-                    query.setOffset(offset);
-                    query.setLimit(limit);
-
-                    groupNames = query.execute();
-                } catch (QueryException ex) {
-                    throw new XWikiException(0, 0, ex.getMessage(), ex);
+                if (supportCache) {
+                    // All the groups of the wiki are indexed so there's no need to query the database
+                    groupReferences = getGroupClosureIndex().getGroups(memberReference, context.getWikiReference());
+                } else {
+                    groupReferences = queryGroupsReferencesForMember(memberReference, prefixedFullName, limit,
+                        offset, context);
                 }
 
-                groupReferences = new HashSet<DocumentReference>(groupNames.size());
-                for (String groupName : groupNames) {
-                    groupReferences.add(this.currentMixedDocumentReferenceResolver.resolve(groupName));
+                if (supportCache) {
+                    this.memberGroupsCache.set(key, groupReferences);
                 }
+            }
+        }
 
-                // If the 'XWiki.XWikiAllGroup' is implicit, all users/groups except XWikiGuest and XWikiAllGroup
-                // itself are part of it.
-                if (isAllGroupImplicit(context)
-                    && memberReference.getWikiReference().getName().equals(context.getWikiId())
-                    && !memberReference.getName().equals(XWikiRightService.GUEST_USER)) {
-                    DocumentReference currentXWikiAllGroup =
-                        new DocumentReference(context.getWikiId(), "XWiki", XWikiRightService.ALLGROUP_GROUP);
+        return groupReferences;
+    }
 
-                    if (!currentXWikiAllGroup.equals(memberReference)) {
-                        groupReferences.add(currentXWikiAllGroup);
-                    }
-                }
+    private Collection<DocumentReference> queryGroupsReferencesForMember(DocumentReference memberReference,
+        String prefixedFullName, int limit, int offset, XWikiContext context) throws XWikiException
+    {
+        List<String> groupNames;
+        try {
+            Query query;
+            if (memberReference.getWikiReference().getName().equals(context.getWikiId())
+                || (memberReference.getLastSpaceReference().getName().equals("XWiki") && memberReference
+                    .getName().equals(XWikiRightService.GUEST_USER))) {
+                query =
+                    context
+                        .getWiki()
+                        .getStore()
+                        .getQueryManager()
+                        .getNamedQuery("listGroupsForUser")
+                        .bindValue("username", prefixedFullName)
+                        .bindValue("shortname",
+                            this.localWikiEntityReferenceSerializer.serialize(memberReference))
+                        .bindValue("veryshortname", memberReference.getName());
+            } else {
+                query =
+                    context.getWiki().getStore().getQueryManager()
+                        .getNamedQuery("listGroupsForUserInOtherWiki")
+                        .bindValue("prefixedmembername", prefixedFullName);
+            }
 
-                if (supportCache) {
-                    this.memberGroupsCache.set(key, groupReferences);
-                }
+            query.setOffset(offset);
+            query.setLimit(limit);
+
+            groupNames = query.execute();
+        } catch (QueryException ex) {
+            throw new XWikiException(0, 0, ex.getMessage(), ex);
+        }
+
+        groupReferences = new HashSet<DocumentReference>(groupNames.size());
+        for (String groupName : groupNames) {
+            groupReferences.add(this.currentMixedDocumentReferenceResolver.resolve(groupName));
+        }
+
+        // If the 'XWiki.XWikiAllGroup' is implicit, all users/groups except XWikiGuest and XWikiAllGroup
+        // itself are part of it.
+        if (isAllGroupImplicit(context)
+            && memberReference.getWikiReference().getName().equals(context.getWikiId())
+            && !memberReference.getName().equals(XWikiRightService.GUEST_USER)) {
+            DocumentReference currentXWikiAllGroup =
+                new DocumentReference(context.getWikiId(), "XWiki", XWikiRightService.ALLGROUP_GROUP);
+
+            if (!currentXWikiAllGroup.equals(memberReference)) {
+                groupReferences.add(currentXWikiAllGroup);
             }
         }
 
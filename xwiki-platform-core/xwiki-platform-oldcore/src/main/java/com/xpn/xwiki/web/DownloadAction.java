@@ -19,9 +19,14 @@
  */
 package com.xpn.xwiki.web;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.IllegalCharsetNameException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -34,7 +39,6 @@
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -263,9 +267,6 @@ private void writeByteRange(final XWikiAttachment attachment, Long start, Long e
         throws XWikiException, IOException
     {
         if (start >= 0 && start < attachment.getContentSize(context)) {
-            InputStream data = attachment.getContentInputStream(context);
-            data = new BoundedInputStream(data, end + 1);
-            data.skip(start);
             setCommonHeaders(attachment, request, response, context);
             response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
             if ((end - start + 1L) < Integer.MAX_VALUE) {
@@ -273,7 +274,7 @@ private void writeByteRange(final XWikiAttachment attachment, Long start, Long e
             }
             response.setHeader("Content-Range", "bytes " + start + "-" + end + SEPARATOR
                 + attachment.getContentSize(context));
-            IOUtils.copyLarge(data, response.getOutputStream());
+            writeContent(attachment, start, end - start + 1, response, context);
         } else {
             response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
         }
@@ -296,19 +297,53 @@ private void sendContent(final XWikiAttachment attachment,
         final XWikiContext context)
         throws XWikiException
     {
-        InputStream stream = null;
         try {
             setCommonHeaders(attachment, request, response, context);
             response.setContentLength(attachment.getContentSize(context));
-            stream = attachment.getContentInputStream(context);
-            IOUtils.copy(stream, response.getOutputStream());
+            writeContent(attachment, 0, -1, response, context);
         } catch (IOException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_APP,
                 XWikiException.ERROR_XWIKI_APP_SEND_RESPONSE_EXCEPTION,
                 "Exception while sending response", e);
-        } finally {
-            if (stream != null) {
-                IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Write a portion of the attachment content to the response. When the content is stored in a file it's transferred
+     * from the file channel, which avoids the attachment content copy in the heap. Note that it's not a zero-copy
+     * transfer: the servlet output stream is not a channel so {@link FileChannel#transferTo} still copies the content
+     * through a (small) user space buffer.
+     *
+     * @param attachment the attachment to get content from
+     * @param start the first byte to write
+     * @param length the number of bytes to write, negative to write everything after the first byte
+     * @param response the response to write to
+     * @param context the current request context
+     * @throws XWikiException if the attachment content cannot be retrieved
+     * @throws IOException if the response cannot be written
+     */
+    private void writeContent(XWikiAttachment attachment, long start, long length, XWikiResponse response,
+        XWikiContext context) throws XWikiException, IOException
+    {
+        File file = attachment.getContentFile(context);
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+                long position = start;
+                long remaining = length < 0 ? channel.size() - start : length;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, output);
+                    if (transferred <= 0) {
+                        // The file is shorter than expected
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+        } else {
+            try (InputStream stream = attachment.getContentInputStream(context)) {
+                IOUtils.copyLarge(stream, response.getOutputStream(), start, length);
             }
         }
     }
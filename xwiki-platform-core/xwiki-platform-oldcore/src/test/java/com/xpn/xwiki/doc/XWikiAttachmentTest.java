@@ -20,6 +20,8 @@
 package com.xpn.xwiki.doc;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
@@ -170,6 +172,25 @@ public void testStoreContentInDiskCache() throws Exception
             .getContentInputStream()));
     }
 
+    @Test
+    public void getContentFile() throws Exception
+    {
+        int seed = (int) System.currentTimeMillis();
+        XWikiAttachment attach = new XWikiAttachment();
+
+        // Small contents are kept in memory
+        attach.setContent(new RandomInputStream(20, seed));
+        assertNull(attach.getAttachment_content().getContentFile());
+
+        // Big contents are stored in a file which can be read directly
+        attach.setContent(new RandomInputStream(20000, seed));
+        File file = attach.getAttachment_content().getContentFile();
+        assertEquals(20000, file.length());
+        try (InputStream stream = new FileInputStream(file)) {
+            assertTrue(IOUtils.contentEquals(new RandomInputStream(20000, seed), stream));
+        }
+    }
+
     @Test
     public void testSetContentViaOutputStream() throws Exception
     {
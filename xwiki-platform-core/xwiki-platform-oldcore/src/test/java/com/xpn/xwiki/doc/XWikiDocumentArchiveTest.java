@@ -43,6 +43,8 @@ public class XWikiDocumentArchiveTest extends AbstractBridgedXWikiComponentTestC
 
     private Mock mockXWiki;
 
+    private XWikiConfig config = new XWikiConfig();
+
     @Override
     protected void setUp() throws Exception
     {
@@ -50,7 +52,7 @@ protected void setUp() throws Exception
 
         this.mockXWiki = mock(XWiki.class);
         this.mockXWiki.stubs().method("getEncoding").will(returnValue("iso-8859-1"));
-        this.mockXWiki.stubs().method("getConfig").will(returnValue(new XWikiConfig()));
+        this.mockXWiki.stubs().method("getConfig").will(returnValue(this.config));
 
         this.context = new XWikiContext();
         this.context.setWiki((XWiki) this.mockXWiki.proxy());
@@ -326,6 +328,94 @@ public void testVerifyDiffAndFullRevisionAlgorithm() throws Exception
         assertFalse(archive.getNode(new Version(6, 1)).isDiff());
     }
 
+    public void testFullVersionsAreCountedFromTheLatestFullVersion() throws Exception
+    {
+        XWikiDocument doc = new XWikiDocument(new DocumentReference("Test", "Test", "Test"));
+        XWikiDocumentArchive archive = new XWikiDocumentArchive(doc.getId());
+        doc.setDocumentArchive(archive);
+        String author = "XWiki.some author";
+
+        for (int i = 1; i <= 6; ++i) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+        assertFalse(archive.getNode(new Version(5, 1)).isDiff());
+        archive.removeVersions(new Version(3, 1), new Version(3, 1), context);
+
+        // The next full version is placed according to the number of diffs since the previous one, not the number of
+        // versions
+        for (int i = 7; i <= 11; ++i) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+        assertFalse(archive.getNode(new Version(5, 1)).isDiff());
+        for (int i = 6; i <= 9; ++i) {
+            assertTrue(archive.getNode(new Version(i, 1)).isDiff());
+        }
+        assertFalse(archive.getNode(new Version(10, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(11, 1)).isDiff());
+
+        for (int i = 1; i <= 11; ++i) {
+            if (i != 3) {
+                assertEquals("content " + i + ".1", archive.loadDocument(new Version(i, 1), context).getContent());
+            }
+        }
+    }
+
+    public void testAddMissingFullVersions() throws Exception
+    {
+        XWikiDocument doc = new XWikiDocument(new DocumentReference("Test", "Test", "Test"));
+        XWikiDocumentArchive archive = new XWikiDocumentArchive(doc.getId());
+        doc.setDocumentArchive(archive);
+        String author = "XWiki.some author";
+
+        // History created without any intermediate full version
+        this.config.setProperty("xwiki.store.rcs.nodesPerFull", "0");
+        for (int i = 1; i <= 12; ++i) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+        for (int i = 1; i < 12; ++i) {
+            assertTrue(archive.getNode(new Version(i, 1)).isDiff());
+        }
+        archive.getUpdatedNodeContents().clear();
+
+        this.config.setProperty("xwiki.store.rcs.nodesPerFull", "5");
+        assertTrue(archive.addMissingFullVersions(context));
+
+        assertFalse(archive.getNode(new Version(12, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(7, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(2, 1)).isDiff());
+        assertEquals(2, archive.getUpdatedNodeContents().size());
+        for (int i = 1; i <= 12; ++i) {
+            if (i != 2 && i != 7 && i != 12) {
+                assertTrue(archive.getNode(new Version(i, 1)).isDiff());
+            }
+            assertEquals("content " + i + ".1", archive.loadDocument(new Version(i, 1), context).getContent());
+        }
+
+        // Nothing left to do
+        assertFalse(archive.addMissingFullVersions(context));
+    }
+
+    public void testGetVersionXmlStartingFromReconstructedVersion() throws Exception
+    {
+        XWikiDocument doc = new XWikiDocument(new DocumentReference("Test", "Test", "Test"));
+        XWikiDocumentArchive archive = new XWikiDocumentArchive(doc.getId());
+        doc.setDocumentArchive(archive);
+        String author = "XWiki.some author";
+
+        for (int i = 1; i <= 4; ++i) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+
+        // Load the versions from the most recent to the oldest, each one being reconstructed from the previous one
+        for (int i = 4; i >= 1; --i) {
+            assertEquals("content " + i + ".1", archive.loadDocument(new Version(i, 1), context).getContent());
+        }
+        // And the other way around, from the cache
+        for (int i = 1; i <= 4; ++i) {
+            assertEquals("content " + i + ".1", archive.loadDocument(new Version(i, 1), context).getContent());
+        }
+    }
+
     private void addRevisionToHistory(XWikiDocumentArchive archive, XWikiDocument document, String content,
         String author, String comment) throws XWikiException
     {
@@ -55,6 +55,7 @@
 import com.xpn.xwiki.XWikiConstant;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.internal.store.DocumentElementsLoader;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.StringProperty;
 import com.xpn.xwiki.objects.classes.BaseClass;
@@ -76,9 +77,12 @@
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -533,6 +537,72 @@ public void testCloneSaveVersions()
         assertEquals(doc1.getVersion(), doc2.getVersion());
     }
 
+    @Test
+    public void cloneSnapshot() throws XWikiException
+    {
+        this.document.setSnapshot(true);
+        this.document.setMetaDataDirty(false);
+
+        XWikiDocument clonedDocument = this.document.clone();
+
+        assertFalse(clonedDocument.isSnapshot());
+        assertFalse(clonedDocument.isMetaDataDirty());
+
+        // Objects are copied on first access and don't make the clone dirty
+        BaseObject clonedObject = clonedDocument.getXObject(CLASS_REFERENCE);
+        assertNotSame(this.baseObject, clonedObject);
+        assertEquals(clonedDocument.getDocumentReference(), clonedObject.getDocumentReference());
+        assertFalse(clonedDocument.isMetaDataDirty());
+
+        clonedObject.setStringValue("string", "modified");
+        assertEquals("string", this.baseObject.getStringValue("string"));
+
+        // The class is copied on first access
+        BaseClass clonedClass = clonedDocument.getXClass();
+        assertNotSame(this.baseClass, clonedClass);
+        assertEquals(this.baseClass.getPropertyList(), clonedClass.getPropertyList());
+
+        // Attachments are copied on first access
+        clonedDocument.addAttachment("file.txt", new byte[0], this.oldcore.getXWikiContext());
+        assertTrue(this.document.getAttachmentList().isEmpty());
+        assertEquals(1, clonedDocument.getAttachmentList().size());
+    }
+
+    @Test
+    public void loadElementsOnFirstAccess() throws XWikiException
+    {
+        XWikiDocument lazyDocument = new XWikiDocument(new DocumentReference(DOCWIKI, DOCSPACE, "lazy"));
+        DocumentElementsLoader loader = mock(DocumentElementsLoader.class);
+        doAnswer(invocation -> {
+            BaseObject object = new BaseObject();
+            object.setXClassReference(CLASS_REFERENCE);
+            ((XWikiDocument) invocation.getArgument(0)).addXObject(object);
+            return null;
+        }).when(loader).loadXObjects(any(XWikiDocument.class), any(XWikiContext.class));
+        lazyDocument.setElementsToLoad(XWikiDocument.HAS_OBJECTS | XWikiDocument.HAS_ATTACHMENTS, loader);
+        lazyDocument.setMetaDataDirty(false);
+
+        // A clone made before the elements are loaded loads them itself when needed
+        XWikiDocument clonedDocument = lazyDocument.clone();
+        assertFalse(clonedDocument.isElementLoaded(XWikiDocument.HAS_OBJECTS));
+        verify(loader, never()).loadXObjects(any(XWikiDocument.class), any(XWikiContext.class));
+
+        assertNotNull(lazyDocument.getXObject(CLASS_REFERENCE));
+        assertTrue(lazyDocument.isElementLoaded(XWikiDocument.HAS_OBJECTS));
+        assertFalse(lazyDocument.isElementLoaded(XWikiDocument.HAS_ATTACHMENTS));
+        assertFalse(lazyDocument.isMetaDataDirty());
+
+        // Loaded only once
+        assertEquals(1, lazyDocument.getXObjects().get(CLASS_REFERENCE).size());
+        verify(loader).loadXObjects(same(lazyDocument), any(XWikiContext.class));
+
+        assertTrue(lazyDocument.getAttachmentList().isEmpty());
+        verify(loader).loadAttachments(same(lazyDocument), any(XWikiContext.class));
+
+        assertNotNull(clonedDocument.getXObject(CLASS_REFERENCE));
+        verify(loader).loadXObjects(same(clonedDocument), any(XWikiContext.class));
+    }
+
     @Test
     public void testAddObject() throws XWikiException
     {
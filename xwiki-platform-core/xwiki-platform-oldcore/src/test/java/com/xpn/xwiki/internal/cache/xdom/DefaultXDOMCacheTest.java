@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.xdom;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.cache.DocumentCache;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link DefaultXDOMCache}.
+ *
+ * @version $Id$
+ */
+public class DefaultXDOMCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<XDOMCache> mocker = new MockitoComponentMockingRule<>(DefaultXDOMCache.class);
+
+    private static final DocumentReference DOCUMENT_REFERENCE = new DocumentReference("wiki", "space", "page");
+
+    private DocumentCache<XDOM> cache;
+
+    private XWikiDocument document;
+
+    @BeforeComponent
+    public void beforeComponent() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.registerMockComponent(ConfigurationSource.class,
+            "xwikiproperties");
+        when(configuration.getProperty("core.xdomcache.enabled", true)).thenReturn(true);
+        when(configuration.getProperty("core.xdomcache.size", 500)).thenReturn(500);
+    }
+
+    @Before
+    public void before() throws Exception
+    {
+        // DocumentCache is a ComponentRole so generics are not taken into account
+        this.cache = this.mocker.getInstance(DocumentCache.class);
+
+        this.document = mock(XWikiDocument.class);
+        when(this.document.getDocumentReference()).thenReturn(DOCUMENT_REFERENCE);
+        when(this.document.getSyntax()).thenReturn(Syntax.XWIKI_2_1);
+        when(this.document.getContent()).thenReturn("content");
+        when(this.document.getVersion()).thenReturn("2.1");
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        XDOM xdom = new XDOM(Collections.emptyList());
+
+        this.mocker.getComponentUnderTest().set(this.document, xdom);
+
+        verify(this.cache).set(xdom, DOCUMENT_REFERENCE, null, "2.1", Syntax.XWIKI_2_1, 7, "content".hashCode());
+
+        when(this.cache.get(DOCUMENT_REFERENCE, null, "2.1", Syntax.XWIKI_2_1, 7,
+            "content".hashCode())).thenReturn(xdom);
+
+        assertSame(xdom, this.mocker.getComponentUnderTest().get(this.document));
+
+        // Another content does not match
+        when(this.document.getContent()).thenReturn("other content");
+
+        assertNull(this.mocker.getComponentUnderTest().get(this.document));
+    }
+
+    @Test
+    public void getWhenCacheFails() throws Exception
+    {
+        when(this.cache.get(DOCUMENT_REFERENCE, null, "2.1", Syntax.XWIKI_2_1, 7, "content".hashCode()))
+            .thenThrow(new RuntimeException());
+
+        assertNull(this.mocker.getComponentUnderTest().get(this.document));
+    }
+}
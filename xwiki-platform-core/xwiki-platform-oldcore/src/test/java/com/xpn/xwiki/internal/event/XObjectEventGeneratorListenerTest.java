@@ -31,13 +31,19 @@
 import org.xwiki.observation.event.Event;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.store.DocumentElementsLoader;
+import com.xpn.xwiki.internal.store.OriginalDocumentElementsLoader;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 import com.xpn.xwiki.test.reference.ReferenceComponentList;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -148,6 +154,37 @@ public void testModifiedDocumentXObjectModified() throws ComponentLookupExceptio
         verify(this.mockObservation).notify(eq(event), same(this.document), same(this.oldcore.getXWikiContext()));
     }
 
+    @Test
+    public void testModifiedLazyLoadedDocumentXObjectModified() throws Exception
+    {
+        // The objects are read from the storage the first time they are accessed
+        DocumentElementsLoader storage = mock(DocumentElementsLoader.class);
+        doAnswer(invocation -> {
+            ((XWikiDocument) invocation.getArgument(0)).addXObject(this.xobject.clone());
+            return null;
+        }).when(storage).loadXObjects(any(XWikiDocument.class), any(XWikiContext.class));
+
+        XWikiDocument lazyDocumentOrigin = new XWikiDocument(this.document.getDocumentReference());
+        lazyDocumentOrigin.setElementsToLoad(XWikiDocument.HAS_OBJECTS, storage);
+        this.document.setOriginalDocument(lazyDocumentOrigin);
+        this.document.setElementsToLoad(XWikiDocument.HAS_OBJECTS,
+            new OriginalDocumentElementsLoader(lazyDocumentOrigin));
+
+        BaseObject modifiedObject = this.document.getXObject(this.xobject.getXClassReference());
+        modifiedObject.setStringValue("newproperty", "newvalue");
+
+        // Save the document
+        this.xobject.setStringValue("newproperty", "newvalue");
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(this.document.getDocumentReference()),
+            this.document, this.oldcore.getXWikiContext());
+
+        // Make sure the listener generated a xobject updated event
+        verify(this.mockObservation).notify(eq(new XObjectUpdatedEvent(modifiedObject.getReference())),
+            same(this.document), same(this.oldcore.getXWikiContext()));
+        verify(storage).loadXObjects(same(lazyDocumentOrigin), any(XWikiContext.class));
+    }
+
     @Test
     public void testModifiedDocumentXObjectPropertyAdded() throws ComponentLookupException
     {
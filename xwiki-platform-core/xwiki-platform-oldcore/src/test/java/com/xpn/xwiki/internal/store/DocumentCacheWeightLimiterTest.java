@@ -0,0 +1,112 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheEntry;
+import org.xwiki.cache.event.CacheEntryEvent;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link DocumentCacheWeightLimiter}.
+ *
+ * @version $Id$
+ */
+public class DocumentCacheWeightLimiterTest
+{
+    private Cache<XWikiDocument> cache = mock(Cache.class);
+
+    private DocumentCacheStatistics statistics = new DocumentCacheStatistics();
+
+    private static XWikiDocument document(int contentLength)
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getContent()).thenReturn(StringUtils.repeat('a', contentLength));
+
+        return document;
+    }
+
+    private static CacheEntryEvent<XWikiDocument> event(String key, XWikiDocument document)
+    {
+        CacheEntry<XWikiDocument> entry = mock(CacheEntry.class);
+        when(entry.getKey()).thenReturn(key);
+        when(entry.getValue()).thenReturn(document);
+
+        CacheEntryEvent<XWikiDocument> event = mock(CacheEntryEvent.class);
+        when(event.getEntry()).thenReturn(entry);
+
+        return event;
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedWhenMaxWeightIsReached()
+    {
+        long documentWeight = XWikiDocumentWeigher.weigh(document(10000));
+
+        DocumentCacheWeightLimiter limiter =
+            new DocumentCacheWeightLimiter(this.cache, documentWeight * 2, this.statistics);
+        this.statistics.setWeightLimiter(limiter);
+
+        limiter.cacheEntryAdded(event("doc1", document(10000)));
+        limiter.cacheEntryAdded(event("doc2", document(10000)));
+
+        assertEquals(documentWeight * 2, this.statistics.getWeight());
+        verify(this.cache, never()).remove(anyString());
+
+        // doc1 is now the most recently used
+        limiter.accessed("doc1");
+
+        limiter.cacheEntryAdded(event("doc3", document(10000)));
+
+        verify(this.cache).remove("doc2");
+        verify(this.cache, never()).remove("doc1");
+        assertEquals(1, this.statistics.getWeightEvictions());
+        assertEquals(documentWeight * 2, this.statistics.getWeight());
+    }
+
+    @Test
+    public void removedEntriesAreNotCountedAnymore()
+    {
+        DocumentCacheWeightLimiter limiter = new DocumentCacheWeightLimiter(this.cache, Long.MAX_VALUE, this.statistics);
+
+        limiter.cacheEntryAdded(event("doc", document(100)));
+        assertTrue(limiter.getWeight() > 0);
+
+        limiter.cacheEntryRemoved(event("doc", null));
+        assertEquals(0, limiter.getWeight());
+    }
+
+    @Test
+    public void weighGrowsWithContent()
+    {
+        assertEquals(XWikiDocumentWeigher.weigh(document(0)) + 2000, XWikiDocumentWeigher.weigh(document(1000)));
+    }
+}
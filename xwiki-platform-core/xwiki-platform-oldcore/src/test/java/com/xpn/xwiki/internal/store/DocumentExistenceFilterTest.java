@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validate {@link DocumentExistenceFilter}.
+ *
+ * @version $Id$
+ */
+public class DocumentExistenceFilterTest
+{
+    @Test
+    public void mightExist()
+    {
+        DocumentExistenceFilter filter = new DocumentExistenceFilter(1000);
+        for (long id = 0; id < 1000; ++id) {
+            filter.add(id * 7919);
+        }
+
+        // Everything might exist until the filter is ready
+        assertTrue(filter.mightExist(-1));
+
+        filter.setReady();
+
+        for (long id = 0; id < 1000; ++id) {
+            assertTrue(filter.mightExist(id * 7919));
+        }
+
+        int falsePositives = 0;
+        for (long id = 1; id <= 10000; ++id) {
+            if (filter.mightExist(-id)) {
+                ++falsePositives;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 500);
+
+        assertFalse(filter.isOverloaded());
+    }
+
+    @Test
+    public void overloaded()
+    {
+        DocumentExistenceFilter filter = new DocumentExistenceFilter(10);
+        for (long id = 0; id < 100; ++id) {
+            filter.add(id);
+        }
+
+        assertTrue(filter.isOverloaded());
+    }
+
+    @Test
+    public void falsePositiveRate()
+    {
+        DocumentExistenceFilter filter = new DocumentExistenceFilter(10);
+
+        assertEquals(0, filter.getFalsePositiveRate(), 0);
+
+        filter.negative();
+        filter.negative();
+        filter.negative();
+        filter.falsePositive();
+
+        assertEquals(4, filter.getMissingDocumentLookups());
+        assertEquals(0.25, filter.getFalsePositiveRate(), 0);
+    }
+}
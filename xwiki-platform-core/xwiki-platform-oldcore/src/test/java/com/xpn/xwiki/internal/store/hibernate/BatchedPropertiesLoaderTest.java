@@ -0,0 +1,154 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.DBStringListProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.StringProperty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link BatchedPropertiesLoader}.
+ *
+ * @version $Id$
+ */
+public class BatchedPropertiesLoaderTest
+{
+    private static final List<String> DOCUMENTS = Arrays.asList("Space.Page");
+
+    private static final int OBJECT_COUNT = 200;
+
+    private Session session = mock(Session.class);
+
+    private Query propertiesQuery = mock(Query.class);
+
+    private Query stringQuery = mock(Query.class);
+
+    private Query integerQuery = mock(Query.class);
+
+    private Query listQuery = mock(Query.class);
+
+    private Map<Long, BaseObject> objects = new LinkedHashMap<>();
+
+    @Before
+    public void before()
+    {
+        when(this.session.createQuery(BatchedPropertiesLoader.PROPERTIES_QUERY)).thenReturn(this.propertiesQuery);
+        when(this.session.createQuery(startsWith("select prop.id.id, prop.id.name, prop.value from "
+            + StringProperty.class.getName()))).thenReturn(this.stringQuery);
+        when(this.session.createQuery(startsWith("select prop.id.id, prop.id.name, prop.value from "
+            + IntegerProperty.class.getName()))).thenReturn(this.integerQuery);
+        when(this.session.createQuery(startsWith("select prop.id.id, prop.id.name, item from "
+            + DBStringListProperty.class.getName()))).thenReturn(this.listQuery);
+
+        List<Object[]> properties = new ArrayList<>();
+        List<Object[]> strings = new ArrayList<>();
+        List<Object[]> integers = new ArrayList<>();
+        List<Object[]> items = new ArrayList<>();
+        for (long id = 0; id < OBJECT_COUNT; ++id) {
+            BaseObject object = mock(BaseObject.class);
+            when(object.getId()).thenReturn(id);
+            this.objects.put(id, object);
+
+            properties.add(new Object[] { id, "string", StringProperty.class.getName() });
+            properties.add(new Object[] { id, "integer", IntegerProperty.class.getName() });
+            properties.add(new Object[] { id, "list", DBStringListProperty.class.getName() });
+
+            strings.add(new Object[] { id, "string", "value" + id });
+            integers.add(new Object[] { id, "integer", (int) id });
+            items.add(new Object[] { id, "list", "item1" });
+            items.add(new Object[] { id, "list", "item2" });
+        }
+
+        when(this.propertiesQuery.list()).thenReturn(properties);
+        when(this.stringQuery.list()).thenReturn(strings);
+        when(this.integerQuery.list()).thenReturn(integers);
+        when(this.listQuery.list()).thenReturn(items);
+    }
+
+    @Test
+    public void loadUsesOneQueryPerPropertyType() throws Exception
+    {
+        Collection<BaseObject> incompleteObjects =
+            new BatchedPropertiesLoader(this.session).load(DOCUMENTS, this.objects);
+
+        assertTrue(incompleteObjects.isEmpty());
+
+        // One query to list the properties and one per property type, whatever the number of objects
+        verify(this.session, times(4)).createQuery(anyString());
+
+        verify(this.propertiesQuery).setParameterList("names", DOCUMENTS);
+        verify(this.stringQuery).setString("classType", StringProperty.class.getName());
+
+        for (BaseObject object : this.objects.values()) {
+            ArgumentCaptor<BaseProperty> captor = ArgumentCaptor.forClass(BaseProperty.class);
+            verify(object).addField(eq("string"), captor.capture());
+            assertEquals("value" + object.getId(), captor.getValue().getValue());
+
+            verify(object).addField(eq("integer"), captor.capture());
+            assertEquals((int) object.getId(), captor.getValue().getValue());
+
+            verify(object).addField(eq("list"), captor.capture());
+            assertEquals(Arrays.asList("item1", "item2"), captor.getValue().getValue());
+        }
+    }
+
+    @Test
+    public void loadWithMissingValue() throws Exception
+    {
+        // The value of the first object string property is stored in the wrong table
+        List<Object[]> strings = new ArrayList<>(this.stringQuery.list());
+        strings.remove(0);
+        when(this.stringQuery.list()).thenReturn(strings);
+
+        Collection<BaseObject> incompleteObjects =
+            new BatchedPropertiesLoader(this.session).load(DOCUMENTS, this.objects);
+
+        assertEquals(1, incompleteObjects.size());
+        assertTrue(incompleteObjects.contains(this.objects.get(0L)));
+        verify(this.objects.get(0L), never()).addField(eq("string"), any());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link GroupClosureIndex}.
+ *
+ * @version $Id$
+ */
+public class GroupClosureIndexTest
+{
+    @Rule
+    public MockitoComponentMockingRule<GroupClosureIndex> mocker =
+        new MockitoComponentMockingRule<>(GroupClosureIndex.class);
+
+    private static final WikiReference WIKI = new WikiReference("wiki");
+
+    private static final DocumentReference USER = new DocumentReference("wiki", "XWiki", "user");
+
+    private static final DocumentReference GROUP = new DocumentReference("wiki", "XWiki", "group");
+
+    private static final DocumentReference PARENT_GROUP = new DocumentReference("wiki", "XWiki", "parentGroup");
+
+    private static final DocumentReference OTHER_GROUP = new DocumentReference("wiki", "XWiki", "otherGroup");
+
+    private XWiki xwiki = mock(XWiki.class);
+
+    private Query query = mock(Query.class);
+
+    private List<Object[]> members = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = this.mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+        when(xcontext.getWiki()).thenReturn(this.xwiki);
+
+        DocumentReferenceResolver<String> resolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "explicit");
+        when(resolver.resolve(anyString(), any())).then(invocation -> {
+            String name = invocation.getArgument(0);
+            EntityReference parameter = invocation.getArgument(1);
+            String wiki = parameter.extractReference(EntityType.WIKI).getName();
+            String[] parts = name.split("\\.");
+
+            return parts.length > 1 ? new DocumentReference(wiki, parts[0], parts[1])
+                : new DocumentReference(wiki, "XWiki", name);
+        });
+
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(anyString(), any())).thenReturn(this.query);
+        when(this.query.setWiki("wiki")).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(this.members);
+
+        this.members.add(new Object[] { "XWiki.group", "XWiki.user" });
+        this.members.add(new Object[] { "XWiki.group", "" });
+        this.members.add(new Object[] { "XWiki.parentGroup", "group" });
+        this.members.add(new Object[] { "XWiki.otherGroup", "XWiki.otherUser" });
+    }
+
+    private XWikiDocument newGroup(DocumentReference reference, String... groupMembers)
+    {
+        List<BaseObject> objects = new ArrayList<>();
+        for (String member : groupMembers) {
+            BaseObject object = mock(BaseObject.class);
+            when(object.getStringValue("member")).thenReturn(member);
+            objects.add(object);
+        }
+
+        XWikiDocument group = mock(XWikiDocument.class);
+        when(group.getDocumentReference()).thenReturn(reference);
+        when(group.getXObjects(new LocalDocumentReference("XWiki", "XWikiGroups"))).thenReturn(objects);
+
+        return group;
+    }
+
+    @Test
+    public void getGroups() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP)), index.getGroups(USER, WIKI));
+        assertEquals(new HashSet<>(Arrays.asList(PARENT_GROUP)), index.getGroups(GROUP, WIKI));
+        assertEquals(new HashSet<>(), index.getGroups(PARENT_GROUP, WIKI));
+
+        // All the groups of the wiki are loaded at once
+        verify(this.query, times(1)).execute();
+    }
+
+    @Test
+    public void getAllGroups() throws Exception
+    {
+        assertEquals(new HashSet<>(Arrays.asList(GROUP, PARENT_GROUP)),
+            this.mocker.getComponentUnderTest().getAllGroups(USER, WIKI));
+    }
+
+    @Test
+    public void getAllGroupsWhenAllGroupIsImplicit() throws Exception
+    {
+        when(this.xwiki.isAllGroupImplicit()).thenReturn(true);
+        DocumentReference allGroup = new DocumentReference("wiki", "XWiki", "XWikiAllGroup");
+        this.members.add(new Object[] { "XWiki.parentGroup", "XWiki.XWikiAllGroup" });
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP, PARENT_GROUP, allGroup)),
+            this.mocker.getComponentUnderTest().getAllGroups(USER, WIKI));
+
+        // The guest user is never part of the implicit group
+        assertEquals(new HashSet<>(), this.mocker.getComponentUnderTest()
+            .getAllGroups(new DocumentReference("otherwiki", "XWiki", "XWikiGuest"), WIKI));
+    }
+
+    @Test
+    public void getAllGroupsWithCycle() throws Exception
+    {
+        this.members.add(new Object[] { "XWiki.group", "XWiki.parentGroup" });
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP, PARENT_GROUP)),
+            this.mocker.getComponentUnderTest().getAllGroups(USER, WIKI));
+    }
+
+    @Test
+    public void update() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP, PARENT_GROUP)), index.getAllGroups(USER, WIKI));
+
+        // Move the group to another parent
+        index.onEvent(null, newGroup(PARENT_GROUP), null);
+        index.onEvent(null, newGroup(OTHER_GROUP, "XWiki.otherUser", "XWiki.group"), null);
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP, OTHER_GROUP)), index.getAllGroups(USER, WIKI));
+        assertEquals(new HashSet<>(Arrays.asList(OTHER_GROUP)), index.getAllGroups(GROUP, WIKI));
+
+        // The index is not loaded again
+        verify(this.query, times(1)).execute();
+    }
+
+    @Test
+    public void updateDuringLoad() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        // The group is removed from its parent while the query is running but the query doesn't see it
+        when(this.query.execute()).then(invocation -> {
+            index.onEvent(null, newGroup(PARENT_GROUP), null);
+
+            return this.members;
+        });
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP)), index.getAllGroups(USER, WIKI));
+        assertEquals(new HashSet<>(), index.getGroups(GROUP, WIKI));
+    }
+
+    @Test
+    public void updateOncePerSave() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+        index.getAllGroups(USER, WIKI);
+
+        // One event per object of the saved group
+        XWikiDocument group = newGroup(OTHER_GROUP, "XWiki.otherUser", "XWiki.group");
+        index.onEvent(null, group, null);
+        index.onEvent(null, group, null);
+
+        assertEquals(new HashSet<>(Arrays.asList(GROUP, OTHER_GROUP, PARENT_GROUP)), index.getAllGroups(USER, WIKI));
+        verify(group, times(1)).getXObjects(new LocalDocumentReference("XWiki", "XWikiGroups"));
+    }
+}
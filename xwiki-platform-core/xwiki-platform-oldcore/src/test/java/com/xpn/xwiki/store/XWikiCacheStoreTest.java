@@ -19,6 +19,18 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -30,15 +42,20 @@
 import org.xwiki.observation.remote.RemoteObservationManagerContext;
 import org.xwiki.test.annotation.ComponentList;
 
+import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
 import static com.xpn.xwiki.test.mockito.OldcoreMatchers.isCacheConfiguration;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -115,4 +132,218 @@ public void testLoadXWikiDoc() throws Exception
         verifyNoMoreInteractions(this.cache);
         verifyNoMoreInteractions(this.existCache);
     }
+
+    @Test
+    public void loadXWikiDocsOnlyLoadsMissesFromStorage() throws Exception
+    {
+        DocumentReference cachedReference = new DocumentReference("wiki", "space", "cached");
+        DocumentReference missingReference = new DocumentReference("wiki", "space", "missing");
+        DocumentReference storedReference = new DocumentReference("wiki", "space", "stored");
+
+        XWikiDocument cachedDocument = new XWikiDocument(cachedReference);
+        when(this.cache.get("4:wiki5:space6:cached")).thenReturn(cachedDocument);
+        when(this.existCache.get("4:wiki5:space7:missing")).thenReturn(Boolean.FALSE);
+
+        XWikiDocument storedDocument = new XWikiDocument(storedReference);
+        storedDocument.setNew(false);
+        when(this.oldcore.getMockStore().loadXWikiDocs(Collections.singletonList(storedReference),
+            this.oldcore.getXWikiContext())).thenReturn(Collections.singletonList(storedDocument));
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        List<XWikiDocument> documents = store.loadXWikiDocs(
+            Arrays.asList(cachedReference, missingReference, storedReference), this.oldcore.getXWikiContext());
+
+        assertEquals(3, documents.size());
+        assertSame(cachedDocument, documents.get(0));
+        assertTrue(documents.get(1).isNew());
+        assertEquals(missingReference, documents.get(1).getDocumentReference());
+        assertSame(storedDocument, documents.get(2));
+
+        verify(this.cache).set("4:wiki5:space6:stored", storedDocument);
+        verify(this.existCache).set("4:wiki5:space6:stored", Boolean.TRUE);
+    }
+
+    @Test
+    public void loadXWikiDocsDoesNotCacheDocumentsSavedWhileLoading() throws Exception
+    {
+        DocumentReference savedReference = new DocumentReference("wiki", "space", "saved");
+        DocumentReference otherReference = new DocumentReference("wiki", "space", "other");
+        XWikiContext xcontext = this.oldcore.getXWikiContext();
+        xcontext.setWikiId("wiki");
+
+        XWikiStoreInterface backendStore = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(backendStore, xcontext);
+
+        XWikiDocument savedDocument = new XWikiDocument(savedReference);
+        savedDocument.setNew(false);
+        XWikiDocument otherDocument = new XWikiDocument(otherReference);
+        otherDocument.setNew(false);
+
+        // Save one of the documents while the bulk query is running
+        doAnswer(invocation -> {
+            store.saveXWikiDoc(new XWikiDocument(savedReference), xcontext);
+
+            return Arrays.asList(savedDocument, otherDocument);
+        }).when(backendStore).loadXWikiDocs(Arrays.asList(savedReference, otherReference), xcontext);
+
+        List<XWikiDocument> documents =
+            store.loadXWikiDocs(Arrays.asList(savedReference, otherReference), xcontext);
+
+        assertSame(savedDocument, documents.get(0));
+        assertSame(otherDocument, documents.get(1));
+
+        // The saved document is stale and should not be cached
+        verify(this.cache, never()).set(eq("4:wiki5:space5:saved"), any(XWikiDocument.class));
+        verify(this.existCache, never()).set("4:wiki5:space5:saved", Boolean.TRUE);
+        verify(this.cache).set("4:wiki5:space5:other", otherDocument);
+        verify(this.existCache).set("4:wiki5:space5:other", Boolean.TRUE);
+    }
+
+    @Test
+    public void loadXWikiDocsWaitsForDocumentsAlreadyBeingLoaded() throws Exception
+    {
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiContext xcontext = this.oldcore.getXWikiContext();
+        xcontext.setWikiId("wiki");
+
+        XWikiStoreInterface backendStore = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(backendStore, xcontext);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+
+            XWikiDocument document = invocation.getArgument(0);
+            document.setNew(false);
+
+            return document;
+        }).when(backendStore).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<XWikiDocument> single =
+                executor.submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), xcontext));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+            Future<List<XWikiDocument>> bulk =
+                executor.submit(() -> store.loadXWikiDocs(Collections.singletonList(reference), xcontext));
+
+            long timeout = System.currentTimeMillis() + 10000;
+            while (store.getCoalescedLoadCount() < 1 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertSame(single.get(20, TimeUnit.SECONDS), bulk.get(20, TimeUnit.SECONDS).get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(backendStore, never()).loadXWikiDocs(any(), any(XWikiContext.class));
+        assertEquals(1, store.getStorageLoadCount());
+        assertEquals(1, store.getCoalescedLoadCount());
+    }
+
+    @Test
+    public void concurrentLoadsOfTheSameDocumentAreCoalesced() throws Exception
+    {
+        int threads = 20;
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiContext xcontext = this.oldcore.getXWikiContext();
+        xcontext.setWikiId("wiki");
+
+        XWikiStoreInterface backendStore = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(backendStore, xcontext);
+
+        // Block the storage until all the other threads are waiting for the result
+        doAnswer(invocation -> {
+            long timeout = System.currentTimeMillis() + 10000;
+            while (store.getCoalescedLoadCount() < threads - 1 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+
+            XWikiDocument document = invocation.getArgument(0);
+            document.setNew(false);
+
+            return document;
+        }).when(backendStore).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+
+        CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<XWikiDocument>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(executor.submit((Callable<XWikiDocument>) () -> {
+                    startSignal.await();
+
+                    return store.loadXWikiDoc(new XWikiDocument(reference), xcontext);
+                }));
+            }
+
+            startSignal.countDown();
+
+            XWikiDocument document = futures.get(0).get(20, TimeUnit.SECONDS);
+            for (Future<XWikiDocument> future : futures) {
+                XWikiDocument loadedDocument = future.get(20, TimeUnit.SECONDS);
+                assertFalse(loadedDocument.isNew());
+                assertSame(document, loadedDocument);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(backendStore, times(1)).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+        assertEquals(1, store.getStorageLoadCount());
+        assertEquals(threads - 1, store.getCoalescedLoadCount());
+        verify(this.cache).set(eq("4:wiki5:space4:page"), any(XWikiDocument.class));
+    }
+
+    @Test
+    public void reentrantLoadOfTheSameDocumentDoesNotWaitForItself() throws Exception
+    {
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiContext xcontext = this.oldcore.getXWikiContext();
+        xcontext.setWikiId("wiki");
+
+        XWikiStoreInterface backendStore = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(backendStore, xcontext);
+
+        // Loading the document requires loading it again (e.g. a document holding its own class)
+        AtomicBoolean nested = new AtomicBoolean();
+        List<XWikiDocument> nestedDocuments = new ArrayList<>();
+        doAnswer(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            if (nested.compareAndSet(false, true)) {
+                nestedDocuments.add(store.loadXWikiDoc(new XWikiDocument(reference), xcontext));
+                nestedDocuments.addAll(store.loadXWikiDocs(Collections.singletonList(reference), xcontext));
+            }
+            document.setNew(false);
+
+            return document;
+        }).when(backendStore).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<XWikiDocument> future =
+                executor.submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), xcontext));
+
+            assertFalse(future.get(20, TimeUnit.SECONDS).isNew());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, nestedDocuments.size());
+        assertFalse(nestedDocuments.get(0).isNew());
+        assertFalse(nestedDocuments.get(1).isNew());
+        verify(backendStore, times(3)).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+        verify(backendStore, never()).loadXWikiDocs(any(), any(XWikiContext.class));
+        assertEquals(0, store.getCoalescedLoadCount());
+
+        // Only the outer load is cached
+        verify(this.cache, times(1)).set(eq("4:wiki5:space4:page"), any(XWikiDocument.class));
+    }
 }
@@ -20,16 +20,21 @@
 package com.xpn.xwiki.web;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Date;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentMatcher;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
@@ -46,14 +51,18 @@
 import com.xpn.xwiki.plugin.XWikiPluginManager;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -73,6 +82,9 @@
     @Rule
     public MockitoOldcoreRule oldcore = new MockitoOldcoreRule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     /** Mocked context document. */
     private XWikiDocument document;
 
@@ -590,6 +602,76 @@ public void downloadWhenEmptyRange() throws XWikiException, IOException
         verifyResponseExpectations(d.getTime(), this.fileContent.length);
     }
 
+    @Test
+    public void downloadFromFile() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createFileAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, null, -1l, DEFAULT_FILE_NAME);
+        ByteArrayOutputStream output = captureOutput();
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verifyResponseExpectations(d.getTime(), this.fileContent.length);
+        assertArrayEquals(this.fileContent, output.toByteArray());
+    }
+
+    @Test
+    public void downloadFromFileWhenValidMiddleRange() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createFileAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=3-5", -1l, DEFAULT_FILE_NAME);
+        ByteArrayOutputStream output = captureOutput();
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(this.response).setHeader("Content-Range", "bytes 3-5/" + this.fileContent.length);
+        verify(this.response).setContentLength(3);
+        assertArrayEquals(Arrays.copyOfRange(this.fileContent, 3, 6), output.toByteArray());
+    }
+
+    @Test
+    public void downloadFromFileWhenTailRange() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createFileAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=-4", -1l, DEFAULT_FILE_NAME);
+        ByteArrayOutputStream output = captureOutput();
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setHeader("Content-Range", "bytes 10-13/" + this.fileContent.length);
+        assertArrayEquals(Arrays.copyOfRange(this.fileContent, 10, 14), output.toByteArray());
+    }
+
+    /**
+     * Create an attachment which content is stored in a file, to go through the file channel transfer.
+     */
+    private void createFileAttachment(Date d, String name) throws IOException, XWikiException
+    {
+        File file = this.temporaryFolder.newFile(name);
+        FileUtils.writeByteArrayToFile(file, this.fileContent);
+
+        XWikiAttachment filetxt = spy(new XWikiAttachment(this.document, name));
+        filetxt.setContent(new ByteArrayInputStream(this.fileContent));
+        filetxt.setDate(d);
+        doReturn(file).when(filetxt).getContentFile(any(XWikiContext.class));
+        this.document.getAttachmentList().add(filetxt);
+    }
+
+    private ByteArrayOutputStream captureOutput() throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        doAnswer(invocation -> {
+            output.write(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(this.out).write(any(byte[].class), anyInt(), anyInt());
+
+        return output;
+    }
+
     private void createAttachment(Date d, String name) throws IOException
     {
         XWikiAttachment filetxt = new XWikiAttachment(this.document, name);
@@ -645,6 +645,23 @@ private void toRestPageSummary(PageSummary pageSummary, URI baseUri, Document do
         pageSummary.getLinks().add(syntaxesLink);
     }
 
+    /**
+     * Load the passed documents in one go so that the following calls to {@code getDocument()} made while generating
+     * the REST representation of each of them are served from the document cache instead of hitting the storage one
+     * document at a time.
+     *
+     * @param references the references of the documents which are about to be converted
+     * @throws XWikiException when failing to load the documents
+     * @since 9.11RC1
+     */
+    public void preloadDocuments(Collection<DocumentReference> references) throws XWikiException
+    {
+        if (!references.isEmpty()) {
+            XWikiContext xcontext = this.xcontextProvider.get();
+            xcontext.getWiki().getDocuments(references, xcontext);
+        }
+    }
+
     public PageSummary toRestPageSummary(URI baseUri, Document doc, Boolean withPrettyNames) throws XWikiException
     {
         PageSummary pageSummary = this.objectFactory.createPageSummary();
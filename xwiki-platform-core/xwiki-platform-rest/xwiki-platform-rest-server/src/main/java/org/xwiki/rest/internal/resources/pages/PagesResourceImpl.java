@@ -19,17 +19,21 @@
  */
 package org.xwiki.rest.internal.resources.pages;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryFilter;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.rest.XWikiRestException;
 import org.xwiki.rest.internal.DomainObjectFactory;
+import org.xwiki.rest.internal.ModelFactory;
 import org.xwiki.rest.internal.Utils;
 import org.xwiki.rest.model.jaxb.Pages;
 import org.xwiki.rest.resources.pages.PagesResource;
@@ -43,6 +47,9 @@
 @Named("org.xwiki.rest.internal.resources.pages.PagesResourceImpl")
 public class PagesResourceImpl extends XWikiResource implements PagesResource
 {
+    @Inject
+    private ModelFactory modelFactory;
+
     @Override
     public Pages getPages(String wikiName, String spaceName, Integer start, Integer number,
             String parentFilterExpression, String order, Boolean withPrettyNames)
@@ -75,6 +82,13 @@ public Pages getPages(String wikiName, String spaceName, Integer start, Integer
                 }
             }
 
+            // Load all the listed documents at once instead of one by one
+            List<DocumentReference> documentReferences = new ArrayList<>(pageNames.size());
+            for (String pageName : pageNames) {
+                documentReferences.add(new DocumentReference(wikiName, spaces, pageName));
+            }
+            this.modelFactory.preloadDocuments(documentReferences);
+
             for (String pageName : pageNames) {
                 String pageFullName = Utils.getPageId(wikiName, spaces, pageName);
 
@@ -110,6 +110,13 @@ public List<SearchResult> search(String partialQueryString, String wikiName, Str
 
         WikiReference wikiReference = new WikiReference(wikiName);
 
+        // Load all the found documents at once instead of one by one
+        List<DocumentReference> documentReferences = new ArrayList<>(queryResult.size());
+        for (Object object : queryResult) {
+            documentReferences.add(this.resolver.resolve((String) ((Object[]) object)[0], wikiReference));
+        }
+        this.modelFactory.preloadDocuments(documentReferences);
+
         /* Build the result. */
         List<SearchResult> result = new ArrayList<>();
         for (Object object : queryResult) {
@@ -27,9 +27,12 @@
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.StreamingResponseCallback;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
 import org.slf4j.Logger;
 import org.xwiki.search.solr.internal.api.SolrInstance;
 
@@ -61,6 +64,14 @@ public void add(SolrInputDocument solrDocument) throws SolrServerException, IOEx
         this.server.add(solrDocument);
     }
 
+    @Override
+    public void add(SolrInputDocument solrDocument, int commitWithin) throws SolrServerException, IOException
+    {
+        this.logger.debug("Add Solr document [{}] to index within [{}] ms", solrDocument, commitWithin);
+
+        this.server.add(solrDocument, commitWithin);
+    }
+
     @Override
     public void add(List<SolrInputDocument> solrDocuments) throws SolrServerException, IOException
     {
@@ -77,6 +88,14 @@ public void delete(String id) throws SolrServerException, IOException
         this.server.deleteById(id);
     }
 
+    @Override
+    public void delete(String id, int commitWithin) throws SolrServerException, IOException
+    {
+        this.logger.debug("Delete Solr document [{}] from index within [{}] ms", id, commitWithin);
+
+        this.server.deleteById(id, commitWithin);
+    }
+
     @Override
     public void delete(List<String> ids) throws SolrServerException, IOException
     {
@@ -93,6 +112,14 @@ public void deleteByQuery(String query) throws SolrServerException, IOException
         this.server.deleteByQuery(query);
     }
 
+    @Override
+    public void deleteByQuery(String query, int commitWithin) throws SolrServerException, IOException
+    {
+        this.logger.debug("Delete Solr documents from index based on query [{}] within [{}] ms", query, commitWithin);
+
+        this.server.deleteByQuery(query, commitWithin);
+    }
+
     @Override
     public void commit() throws SolrServerException, IOException
     {
@@ -101,6 +128,17 @@ public void commit() throws SolrServerException, IOException
         this.server.commit();
     }
 
+    @Override
+    public void hardCommit() throws SolrServerException, IOException
+    {
+        this.logger.debug("Hard commit changes to Solr");
+
+        UpdateRequest request = new UpdateRequest();
+        request.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
+        request.setParam(UpdateParams.OPEN_SEARCHER, Boolean.FALSE.toString());
+        request.process(this.server);
+    }
+
     @Override
     public void rollback() throws SolrServerException, IOException
     {
@@ -104,6 +104,94 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final int SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT = 100000;
 
+    /**
+     * The name of the configuration property containing the number of threads used to extract the metadata of the
+     * entities to index.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_THREADS_PROPERTY = "solr.indexer.threads";
+
+    /**
+     * The default number of threads used to extract the metadata of the entities to index.
+     *
+     * @since 9.11RC1
+     */
+    public static final int SOLR_INDEXER_THREADS_DEFAULT = 1;
+
+    /**
+     * The name of the configuration property containing the commit within delay used in near real time mode.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_COMMITWITHIN_PROPERTY = "solr.indexer.commitWithin";
+
+    /**
+     * The near real time mode is disabled by default.
+     *
+     * @since 9.11RC1
+     */
+    public static final int SOLR_INDEXER_COMMITWITHIN_DEFAULT = -1;
+
+    /**
+     * The name of the configuration property containing the maximum time between two hard commits in near real time
+     * mode.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_HARDCOMMITINTERVAL_PROPERTY = "solr.indexer.hardCommitInterval";
+
+    /**
+     * The default maximum time (in milliseconds) between two hard commits in near real time mode.
+     *
+     * @since 9.11RC1
+     */
+    public static final long SOLR_INDEXER_HARDCOMMITINTERVAL_DEFAULT = 60000;
+
+    /**
+     * The name of the configuration property containing the maximum size of the attachments whose text content is
+     * extracted.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_MAXSIZE_PROPERTY = "solr.indexer.attachment.maxSize";
+
+    /**
+     * The text content of all the attachments is extracted by default.
+     *
+     * @since 9.11RC1
+     */
+    public static final long SOLR_INDEXER_ATTACHMENT_MAXSIZE_DEFAULT = -1;
+
+    /**
+     * The name of the configuration property containing the maximum time spent extracting the text content of an
+     * attachment.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_TIMEOUT_PROPERTY = "solr.indexer.attachment.timeout";
+
+    /**
+     * The default maximum time (in seconds) spent extracting the text content of an attachment.
+     *
+     * @since 9.11RC1
+     */
+    public static final int SOLR_INDEXER_ATTACHMENT_TIMEOUT_DEFAULT = 120;
+
+    /**
+     * The name of the configuration property containing the maximum size of the cache of extracted attachment texts.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_CACHEMAXSIZE_PROPERTY = "solr.indexer.attachment.cacheMaxSize";
+
+    /**
+     * The default maximum size (in bytes) of the cache of extracted attachment texts.
+     *
+     * @since 9.11RC1
+     */
+    public static final long SOLR_INDEXER_ATTACHMENT_CACHEMAXSIZE_DEFAULT = 1073741824;
+
     /**
      * The name of the configuration property indicating if a synchronization should be run at startup.
      */
@@ -114,6 +202,34 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final boolean SOLR_SYNCHRONIZE_AT_STARTUP_DEFAULT = true;
 
+    /**
+     * The name of the configuration property indicating if the synchronization run at startup should be incremental.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_SYNCHRONIZE_INCREMENTALLY = "solr.synchronizeIncrementally";
+
+    /**
+     * Indicate if the synchronization run at startup is incremental by default.
+     *
+     * @since 9.11RC1
+     */
+    public static final boolean SOLR_SYNCHRONIZE_INCREMENTALLY_DEFAULT = false;
+
+    /**
+     * The name of the configuration property indicating if the view rights should be indexed.
+     *
+     * @since 9.11RC1
+     */
+    public static final String SOLR_INDEXER_VIEWRIGHTS_PROPERTY = "solr.indexer.viewRights";
+
+    /**
+     * Indicate if the view rights are indexed by default.
+     *
+     * @since 9.11RC1
+     */
+    public static final boolean SOLR_INDEXER_VIEWRIGHTS_DEFAULT = false;
+
     /**
      * The Solr configuration source.
      */
@@ -160,9 +276,61 @@ public int getIndexerQueueCapacity()
             .getProperty(SOLR_INDEXER_QUEUE_CAPACITY_PROPERTY, SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT);
     }
 
+    @Override
+    public int getIndexerThreads()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_THREADS_PROPERTY, SOLR_INDEXER_THREADS_DEFAULT);
+    }
+
+    @Override
+    public int getIndexerCommitWithin()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_COMMITWITHIN_PROPERTY, SOLR_INDEXER_COMMITWITHIN_DEFAULT);
+    }
+
+    @Override
+    public long getIndexerHardCommitInterval()
+    {
+        return this.configuration
+            .getProperty(SOLR_INDEXER_HARDCOMMITINTERVAL_PROPERTY, SOLR_INDEXER_HARDCOMMITINTERVAL_DEFAULT);
+    }
+
+    @Override
+    public long getAttachmentTextMaxSize()
+    {
+        return this.configuration
+            .getProperty(SOLR_INDEXER_ATTACHMENT_MAXSIZE_PROPERTY, SOLR_INDEXER_ATTACHMENT_MAXSIZE_DEFAULT);
+    }
+
+    @Override
+    public int getAttachmentTextTimeout()
+    {
+        return this.configuration
+            .getProperty(SOLR_INDEXER_ATTACHMENT_TIMEOUT_PROPERTY, SOLR_INDEXER_ATTACHMENT_TIMEOUT_DEFAULT);
+    }
+
+    @Override
+    public long getAttachmentTextCacheMaxSize()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_ATTACHMENT_CACHEMAXSIZE_PROPERTY,
+            SOLR_INDEXER_ATTACHMENT_CACHEMAXSIZE_DEFAULT);
+    }
+
     @Override
     public boolean synchronizeAtStartup()
     {
         return this.configuration.getProperty(SOLR_SYNCHRONIZE_AT_STARTUP, SOLR_SYNCHRONIZE_AT_STARTUP_DEFAULT);
     }
+
+    @Override
+    public boolean synchronizeIncrementally()
+    {
+        return this.configuration.getProperty(SOLR_SYNCHRONIZE_INCREMENTALLY, SOLR_SYNCHRONIZE_INCREMENTALLY_DEFAULT);
+    }
+
+    @Override
+    public boolean isViewRightsIndexed()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_VIEWRIGHTS_PROPERTY, SOLR_INDEXER_VIEWRIGHTS_DEFAULT);
+    }
 }
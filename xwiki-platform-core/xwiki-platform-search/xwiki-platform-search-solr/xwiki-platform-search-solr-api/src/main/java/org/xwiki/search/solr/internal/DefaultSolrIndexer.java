@@ -19,14 +19,26 @@
  */
 package org.xwiki.search.solr.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
@@ -61,8 +73,10 @@
  * Default implementation of {@link SolrIndexer}.
  * <p>
  * This implementation does not directly process the given leaf-references, but adds them to a processing queue, in the
- * order they were received. The {@link Runnable} part of this implementation is the one that sequentially reads and
- * processes the queue.
+ * order they were received. The metadata of the entities to index are extracted in parallel by a pool of threads as
+ * soon as they are added to the queue, the number of extractions not yet consumed being limited to the size of the
+ * pool. The {@link Runnable} part of this implementation is the one that sequentially
+ * reads the queue and sends the extracted documents to Solr, in the order of the queue.
  * 
  * @version $Id$
  * @since 5.1M2
@@ -97,6 +111,16 @@ public class DefaultSolrIndexer implements SolrIndexer, Initializable, Disposabl
          */
         public IndexOperation operation;
 
+        /**
+         * The Solr document being extracted from the entity to index.
+         */
+        public Future<LengthSolrInputDocument> solrDocument;
+
+        /**
+         * The future to complete once the operations queued before a flush are committed.
+         */
+        public CompletableFuture<Void> flushed;
+
         /**
          * @param indexReference the reference of the entity to index.
          * @param operation the indexing operation to perform.
@@ -129,6 +153,9 @@ public String toString()
                 case DELETE:
                     str = "DELETE " + this.deleteQuery;
                     break;
+                case FLUSH:
+                    str = "FLUSH";
+                    break;
                 case STOP:
                     str = "STOP";
                     break;
@@ -163,6 +190,11 @@ public String toString()
          */
         public IndexOperation operation;
 
+        /**
+         * The future to complete once the operations queued before a flush are committed.
+         */
+        public CompletableFuture<Void> flushed;
+
         /**
          * @param reference the reference of the entity to index.
          * @param recurse also apply operation to reference children.
@@ -199,13 +231,17 @@ public void runInternal()
 
                 if (queueEntry == RESOLVE_QUEUE_ENTRY_STOP) {
                     // Stop the index thread: clear the queue and send the stop signal without blocking.
-                    indexQueue.clear();
+                    clearIndexQueue();
                     indexQueue.offer(INDEX_QUEUE_ENTRY_STOP);
                     break;
                 }
 
                 try {
-                    if (queueEntry.operation == IndexOperation.INDEX) {
+                    if (queueEntry.operation == IndexOperation.FLUSH) {
+                        IndexQueueEntry indexEntry = new IndexQueueEntry((String) null, IndexOperation.FLUSH);
+                        indexEntry.flushed = queueEntry.flushed;
+                        indexQueue.put(indexEntry);
+                    } else if (queueEntry.operation == IndexOperation.INDEX) {
                         Iterable<EntityReference> references;
                         if (queueEntry.recurse) {
                             references = solrRefereceResolver.getReferences(queueEntry.reference);
@@ -214,7 +250,7 @@ public void runInternal()
                         }
 
                         for (EntityReference reference : references) {
-                            indexQueue.put(new IndexQueueEntry(reference, queueEntry.operation));
+                            addExtractionToIndexQueue(reference);
                         }
                     } else {
                         if (queueEntry.recurse) {
@@ -232,6 +268,65 @@ public void runInternal()
 
             logger.debug("Stop SOLR resolver thread");
         }
+
+        /**
+         * Start extracting the metadata of the passed entity right away and add it to the index queue. Block as long
+         * as there are as many extractions not yet consumed by the index thread as extractor threads so that the
+         * extracted documents waiting to be sent to Solr don't fill the memory.
+         * 
+         * @param reference the reference of the entity to index
+         * @throws InterruptedException if interrupted while waiting
+         */
+        private void addExtractionToIndexQueue(EntityReference reference) throws InterruptedException
+        {
+            extractionPermits.acquire();
+
+            IndexQueueEntry indexEntry = new IndexQueueEntry(reference, IndexOperation.INDEX);
+            boolean queued = false;
+            try {
+                indexEntry.solrDocument = extractorPool.submit(new Extractor(reference));
+                indexQueue.put(indexEntry);
+                queued = true;
+            } finally {
+                if (!queued) {
+                    // Nobody will consume the extraction
+                    if (indexEntry.solrDocument != null) {
+                        indexEntry.solrDocument.cancel(false);
+                    }
+                    extractionPermits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract the Solr document of an entity in one of the threads of the extractor pool.
+     * 
+     * @version $Id$
+     */
+    private class Extractor implements Callable<LengthSolrInputDocument>
+    {
+        private final EntityReference reference;
+
+        /**
+         * @param reference the reference of the entity to extract
+         */
+        Extractor(EntityReference reference)
+        {
+            this.reference = reference;
+        }
+
+        @Override
+        public LengthSolrInputDocument call() throws Exception
+        {
+            ecim.initialize(new ExecutionContext());
+
+            try {
+                return getSolrDocument(this.reference);
+            } finally {
+                execution.removeContext();
+            }
+        }
     }
 
     /**
@@ -246,6 +341,11 @@ public void runInternal()
     private static final IndexQueueEntry INDEX_QUEUE_ENTRY_STOP =
         new IndexQueueEntry((String) null, IndexOperation.STOP);
 
+    /**
+     * The maximum time (in milliseconds) to wait for the index thread to stop when the component is disposed.
+     */
+    private static final long INDEX_THREAD_STOP_TIMEOUT = 60000;
+
     /**
      * Logging framework.
      */
@@ -305,6 +405,16 @@ public void runInternal()
      */
     private Thread resolveThread;
 
+    /**
+     * Threads in which the metadata of the entities to index are extracted.
+     */
+    private ExecutorService extractorPool;
+
+    /**
+     * The permits for the extractions submitted to the pool and not yet consumed by the index thread (or cancelled).
+     */
+    private Semaphore extractionPermits;
+
     /**
      * Indicate of the component has been disposed.
      */
@@ -315,6 +425,26 @@ public void runInternal()
      */
     private volatile int batchSize;
 
+    /**
+     * Indicate if some changes sent with a commit within delay (near real time mode) have not been hard committed yet.
+     */
+    private boolean hardCommitPending;
+
+    /**
+     * The time of the oldest change not hard committed yet in near real time mode.
+     */
+    private long oldestPendingChange;
+
+    /**
+     * The number of commits explicitly requested by the indexer.
+     */
+    private final AtomicLong commitCount = new AtomicLong();
+
+    /**
+     * The number of operations sent with a commit within delay.
+     */
+    private final AtomicLong commitWithinCount = new AtomicLong();
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -322,6 +452,14 @@ public void initialize() throws InitializationException
         this.resolveQueue = new LinkedBlockingQueue<>();
         this.indexQueue = new LinkedBlockingQueue<>(this.configuration.getIndexerQueueCapacity());
 
+        // Create the extractor threads. There's no need to limit the size of the pool queue since the number of
+        // submitted extractions is already limited by the extraction permits.
+        int threads = Math.max(1, this.configuration.getIndexerThreads());
+        BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("XWiki Solr extractor thread %d")
+            .daemon(true).priority(Thread.NORM_PRIORITY - 1).build();
+        this.extractorPool = Executors.newFixedThreadPool(threads, factory);
+        this.extractionPermits = new Semaphore(threads);
+
         // Launch the resolve thread
         this.resolveThread = new Thread(new Resolver());
         this.resolveThread.setName("XWiki Solr resolve thread");
@@ -345,15 +483,51 @@ public void dispose() throws ComponentLifecycleException
 
         // Stop the resolve thread. Clear the queue and send the stop signal without blocking. We know that the resolve
         // queue will remain empty after the clear call because we set the disposed flag above.
-        this.resolveQueue.clear();
+        List<ResolveQueueEntry> resolveEntries = new ArrayList<>();
+        this.resolveQueue.drainTo(resolveEntries);
+        for (ResolveQueueEntry entry : resolveEntries) {
+            if (entry.flushed != null) {
+                entry.flushed.cancel(false);
+            }
+        }
         this.resolveQueue.offer(RESOLVE_QUEUE_ENTRY_STOP);
 
         // Stop the index thread. Clear the queue and send the stop signal without blocking. There should be enough
         // space in the index queue before the special stop entry is added as long the the index queue capacity is
         // greater than 1. In the worse case, the clear call will unblock the resolve thread (which was waiting because
         // the index queue was full) and just one entry will be added to the queue before the special stop entry.
-        this.indexQueue.clear();
+        clearIndexQueue();
         this.indexQueue.offer(INDEX_QUEUE_ENTRY_STOP);
+
+        // Let the extraction currently waited for by the index thread finish (the others have been cancelled)
+        this.extractorPool.shutdown();
+
+        // Wait for the index thread to make the changes sent in near real time mode durable before the Solr client is
+        // shutdown
+        try {
+            this.indexThread.join(INDEX_THREAD_STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            this.logger.warn("Interrupted while waiting for the SOLR index thread to stop");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Remove all the entries from the index queue and cancel their pending extractions and flushes.
+     */
+    private void clearIndexQueue()
+    {
+        List<IndexQueueEntry> entries = new ArrayList<>();
+        this.indexQueue.drainTo(entries);
+        for (IndexQueueEntry entry : entries) {
+            if (entry.solrDocument != null) {
+                entry.solrDocument.cancel(false);
+                this.extractionPermits.release();
+            }
+            if (entry.flushed != null) {
+                entry.flushed.cancel(false);
+            }
+        }
     }
 
     @Override
@@ -365,7 +539,16 @@ public void run()
             // Block until there is at least one entry in the queue
             IndexQueueEntry queueEntry = null;
             try {
-                queueEntry = this.indexQueue.take();
+                if (this.hardCommitPending) {
+                    // Don't wait more than the hard commit interval to make the pending changes durable
+                    queueEntry = this.indexQueue.poll(getHardCommitDelay(), TimeUnit.MILLISECONDS);
+                    if (queueEntry == null) {
+                        hardCommit();
+                        continue;
+                    }
+                } else {
+                    queueEntry = this.indexQueue.take();
+                }
             } catch (InterruptedException e) {
                 this.logger.warn("The SOLR index thread has been interrupted", e);
 
@@ -379,6 +562,14 @@ public void run()
             }
         }
 
+        // Don't lose the changes already sent in near real time mode
+        if (this.hardCommitPending) {
+            hardCommit();
+        }
+
+        // Nobody will process the remaining entries
+        clearIndexQueue();
+
         this.logger.debug("Stop SOLR indexer thread");
     }
 
@@ -393,6 +584,9 @@ private boolean processBatch(IndexQueueEntry queueEntry)
     {
         SolrInstance solrInstance = this.solrInstanceProvider.get();
 
+        // A positive delay enables the near real time mode
+        int commitWithin = this.configuration.getIndexerCommitWithin();
+
         int length = 0;
 
         for (IndexQueueEntry batchEntry = queueEntry; batchEntry != null; batchEntry = this.indexQueue.poll()) {
@@ -403,25 +597,41 @@ private boolean processBatch(IndexQueueEntry queueEntry)
 
             IndexOperation operation = batchEntry.operation;
 
+            if (IndexOperation.FLUSH.equals(operation)) {
+                flush(batchEntry);
+                length = 0;
+                continue;
+            }
+
             // For the current contiguous operations queue, group the changes
             try {
                 this.ecim.initialize(new ExecutionContext());
 
                 if (IndexOperation.INDEX.equals(operation)) {
-                    LengthSolrInputDocument solrDocument = getSolrDocument(batchEntry.reference);
+                    LengthSolrInputDocument solrDocument = getExtractedSolrDocument(batchEntry);
                     if (solrDocument != null) {
-                        solrInstance.add(solrDocument);
-                        length += solrDocument.getLength();
-                        ++this.batchSize;
+                        if (commitWithin > 0) {
+                            solrInstance.add(solrDocument, commitWithin);
+                            sentWithin();
+                        } else {
+                            solrInstance.add(solrDocument);
+                            length += solrDocument.getLength();
+                            ++this.batchSize;
+                        }
                     }
                 } else if (IndexOperation.DELETE.equals(operation)) {
-                    if (batchEntry.reference == null) {
-                        solrInstance.deleteByQuery(batchEntry.deleteQuery);
+                    if (commitWithin > 0) {
+                        delete(batchEntry, commitWithin, solrInstance);
+                        sentWithin();
                     } else {
-                        solrInstance.delete(this.solrRefereceResolver.getId(batchEntry.reference));
-                    }
+                        if (batchEntry.reference == null) {
+                            solrInstance.deleteByQuery(batchEntry.deleteQuery);
+                        } else {
+                            solrInstance.delete(this.solrRefereceResolver.getId(batchEntry.reference));
+                        }
 
-                    ++this.batchSize;
+                        ++this.batchSize;
+                    }
                 }
             } catch (Throwable e) {
                 this.logger.error("Failed to process entry [{}]", batchEntry, e);
@@ -442,18 +652,127 @@ private boolean processBatch(IndexQueueEntry queueEntry)
             commit();
         }
 
+        // Make the changes durable if the last hard commit is too old
+        if (this.hardCommitPending && getHardCommitDelay() <= 0) {
+            hardCommit();
+        }
+
         return true;
     }
 
+    /**
+     * Commit the operations sent to Solr so far (including the ones sent in near real time mode) and notify the
+     * waiting flush.
+     * 
+     * @param entry the flush entry
+     */
+    private void flush(IndexQueueEntry entry)
+    {
+        boolean committed = this.batchSize <= 0 || commit();
+        if (this.hardCommitPending) {
+            committed &= hardCommit();
+        }
+
+        if (committed) {
+            entry.flushed.complete(null);
+        } else {
+            entry.flushed.completeExceptionally(
+                new SolrIndexerException("Failed to commit the index changes queued before the flush"));
+        }
+    }
+
+    private void delete(IndexQueueEntry entry, int commitWithin, SolrInstance solrInstance) throws Exception
+    {
+        if (entry.reference == null) {
+            solrInstance.deleteByQuery(entry.deleteQuery, commitWithin);
+        } else {
+            solrInstance.delete(this.solrRefereceResolver.getId(entry.reference), commitWithin);
+        }
+    }
+
+    private void sentWithin()
+    {
+        this.commitWithinCount.incrementAndGet();
+
+        if (!this.hardCommitPending) {
+            this.hardCommitPending = true;
+            this.oldestPendingChange = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the time (in milliseconds) before the pending changes need to be hard committed
+     */
+    private long getHardCommitDelay()
+    {
+        return this.oldestPendingChange + this.configuration.getIndexerHardCommitInterval()
+            - System.currentTimeMillis();
+    }
+
+    /**
+     * Make the changes sent in near real time mode durable, without opening a new searcher (Solr takes care of making
+     * them visible according to the commit within delay).
+     * 
+     * @return {@code true} if the changes have been committed
+     */
+    private boolean hardCommit()
+    {
+        boolean committed = false;
+        try {
+            this.solrInstanceProvider.get().hardCommit();
+            this.commitCount.incrementAndGet();
+            committed = true;
+        } catch (Exception e) {
+            this.logger.error("Failed to hard commit index changes to the Solr server.", e);
+        }
+
+        this.hardCommitPending = false;
+
+        this.logger.debug("[{}] commits and [{}] commit within operations sent to the Solr server so far",
+            this.commitCount.get(), this.commitWithinCount.get());
+
+        return committed;
+    }
+
+    /**
+     * Wait for the extraction of the Solr document of the passed entry, the index thread waiting for the entries in
+     * the queue order so that the operations on the same entity are always sent to Solr in the order they were
+     * requested.
+     * 
+     * @param entry the index queue entry
+     * @return the extracted Solr document, {@code null} if the reference type is not supported
+     * @throws Exception when failing to extract the Solr document
+     */
+    private LengthSolrInputDocument getExtractedSolrDocument(IndexQueueEntry entry) throws Exception
+    {
+        if (entry.solrDocument == null) {
+            return getSolrDocument(entry.reference);
+        }
+
+        try {
+            return entry.solrDocument.get();
+        } catch (ExecutionException e) {
+            throw (Exception) (e.getCause() instanceof Exception ? e.getCause() : e);
+        } finally {
+            // The extracted document is now owned by the index thread, let the resolver submit another extraction
+            this.extractionPermits.release();
+        }
+    }
+
     /**
      * Commit.
+     * 
+     * @return {@code true} if the changes have been committed
      */
-    private void commit()
+    private boolean commit()
     {
         SolrInstance solrInstance = this.solrInstanceProvider.get();
 
+        boolean committed = false;
         try {
             solrInstance.commit();
+            this.commitCount.incrementAndGet();
+            committed = true;
         } catch (Exception e) {
             this.logger.error("Failed to commit index changes to the Solr server. Rolling back.", e);
 
@@ -466,6 +785,8 @@ private void commit()
         }
 
         this.batchSize = 0;
+
+        return committed;
     }
 
     /**
@@ -560,6 +881,37 @@ public int getQueueSize()
         return this.indexQueue.size() + this.resolveQueue.size() + this.batchSize;
     }
 
+    @Override
+    public Future<Void> flush()
+    {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        if (this.disposed) {
+            flushed.cancel(false);
+        } else {
+            ResolveQueueEntry entry = new ResolveQueueEntry(null, false, IndexOperation.FLUSH);
+            entry.flushed = flushed;
+            // Don't block because the capacity of the resolver queue is not limited.
+            if (!this.resolveQueue.offer(entry)) {
+                flushed.cancel(false);
+            }
+        }
+
+        return flushed;
+    }
+
+    @Override
+    public long getCommitCount()
+    {
+        return this.commitCount.get();
+    }
+
+    @Override
+    public long getCommitWithinCount()
+    {
+        return this.commitWithinCount.get();
+    }
+
     @Override
     public IndexerJob startIndex(IndexerRequest request) throws SolrIndexerException
     {
@@ -39,6 +39,13 @@
 
     // General operations
 
+    /**
+     * Commit the operations queued before and notify when it's done.
+     *
+     * @since 9.11RC1
+     */
+    FLUSH,
+
     /**
      * Stop indexing thread.
      */
@@ -35,10 +35,13 @@
 import org.xwiki.bridge.event.WikiDeletedEvent;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.event.Event;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.wiki.manager.WikiManagerException;
 
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -88,6 +91,15 @@ public class SolrIndexEventListener implements EventListener
     @Inject
     private Provider<SolrIndexer> solrIndexer;
 
+    @Inject
+    private SolrConfiguration configuration;
+
+    /**
+     * Lazily initialized since it's only needed when the view rights are indexed.
+     */
+    @Inject
+    private Provider<SolrViewRightsHelper> viewRights;
+
     @Override
     public List<Event> getEvents()
     {
@@ -108,6 +120,8 @@ public void onEvent(Event event, Object source, Object data)
                 XWikiDocument document = (XWikiDocument) source;
 
                 this.solrIndexer.get().index(document.getDocumentReferenceWithLocale(), false);
+
+                indexImpactedByRights(document);
             } else if (event instanceof DocumentCreatedEvent) {
                 XWikiDocument document = (XWikiDocument) source;
 
@@ -118,6 +132,8 @@ public void onEvent(Event event, Object source, Object data)
                     this.solrIndexer.get().index(new DocumentReference(document.getDocumentReference(), null), true);
                 } else {
                     this.solrIndexer.get().index(document.getDocumentReferenceWithLocale(), false);
+
+                    indexImpactedByRights(document);
                 }
             } else if (event instanceof DocumentDeletedEvent) {
                 XWikiDocument document = ((XWikiDocument) source).getOriginalDocument();
@@ -133,6 +149,8 @@ public void onEvent(Event event, Object source, Object data)
                 // See XWIKI-10003: Cache problem with Solr facet filter results count
                 this.solrIndexer.get().delete(
                     new DocumentReference(document.getDocumentReference(), document.getRealLocale()), false);
+
+                indexImpactedByRights((XWikiDocument) source);
             } else if (event instanceof AttachmentUpdatedEvent || event instanceof AttachmentAddedEvent) {
                 XWikiDocument document = (XWikiDocument) source;
                 String fileName = ((AbstractAttachmentEvent) event).getName();
@@ -171,4 +189,19 @@ public void onEvent(Event event, Object source, Object data)
             this.logger.error("Failed to handle event [{}] with source [{}]", event, source, e);
         }
     }
+
+    /**
+     * When the view rights are indexed, index again the documents whose rights are defined by the passed document.
+     *
+     * @param document the created or updated document
+     * @throws WikiManagerException when failing to get the wikis impacted by a modification of the main wiki
+     */
+    private void indexImpactedByRights(XWikiDocument document) throws WikiManagerException
+    {
+        if (this.configuration.isViewRightsIndexed()) {
+            for (EntityReference impactedEntity : this.viewRights.get().getImpactedEntities(document)) {
+                this.solrIndexer.get().index(impactedEntity, true);
+            }
+        }
+    }
 }
@@ -0,0 +1,384 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.search.solr.internal.api.FieldUtils;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.classes.GroupsClass;
+import com.xpn.xwiki.objects.classes.LevelsClass;
+import com.xpn.xwiki.objects.classes.UsersClass;
+import com.xpn.xwiki.user.api.XWikiRightService;
+
+/**
+ * Compute the users and groups allowed to view a document, as indexed in the {@link FieldUtils#VIEW_ALLOWED} field,
+ * and the filter query matching the documents a user is allowed to view.
+ * <p>
+ * The indexed users and groups are a superset of the ones really allowed to view the document: the deny rules are
+ * ignored, the users and groups with a right implying view (e.g. edit) are included and the ones with the admin or
+ * programming right are always included. The search results still
+ * need to be checked with the authorization manager but they are (almost) all going to be kept.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = SolrViewRightsHelper.class)
+@Singleton
+public class SolrViewRightsHelper
+{
+    private static final String XWIKI_SPACE = "XWiki";
+
+    private static final LocalDocumentReference RIGHTS_CLASS = new LocalDocumentReference(XWIKI_SPACE, "XWikiRights");
+
+    private static final LocalDocumentReference GLOBAL_RIGHTS_CLASS =
+        new LocalDocumentReference(XWIKI_SPACE, "XWikiGlobalRights");
+
+    private static final LocalDocumentReference WIKI_PREFERENCES =
+        new LocalDocumentReference(XWIKI_SPACE, "XWikiPreferences");
+
+    private static final String SPACE_PREFERENCES = "WebPreferences";
+
+    private static final String WIKI_DESCRIPTOR_PREFIX = "XWikiServer";
+
+    private static final LocalDocumentReference WIKI_DESCRIPTOR_CLASS =
+        new LocalDocumentReference(XWIKI_SPACE, "XWikiServerClass");
+
+    private static final String OWNER = "owner";
+
+    private static final String ALLOW = "allow";
+
+    private static final String LEVELS = "levels";
+
+    private static final String VIEW = "view";
+
+    private static final List<String> ADMIN_RIGHTS = Arrays.asList("admin", "programming");
+
+    private static final String OR = " OR ";
+
+    @Inject
+    @Named("user")
+    private DocumentReferenceResolver<String> userResolver;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private GroupClosureIndex groupClosureIndex;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @param documentReference the reference of the document
+     * @return the values to index in the {@link FieldUtils#VIEW_ALLOWED} field for the document and its elements
+     * @throws XWikiException when failing to load the documents holding the rights
+     */
+    public Set<String> getViewAllowed(DocumentReference documentReference) throws XWikiException
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        // The rights are always stored in the default translation
+        DocumentReference reference = new DocumentReference(documentReference, (Locale) null);
+        WikiReference wikiReference = reference.getWikiReference();
+
+        Set<String> principals = new LinkedHashSet<>();
+
+        // The most specific level holding view rules decides who can view the document (the others being implicitly
+        // denied) but the admins of any level can view it too
+        boolean restricted = addPrincipals(reference, RIGHTS_CLASS, false, principals, xcontext);
+        for (EntityReference space = reference.getParent(); space.getType() == EntityType.SPACE;
+            space = space.getParent()) {
+            DocumentReference preferences = new DocumentReference(SPACE_PREFERENCES, new SpaceReference(space));
+            restricted |= addPrincipals(preferences, GLOBAL_RIGHTS_CLASS, restricted, principals, xcontext);
+        }
+        restricted |= addPrincipals(new DocumentReference(WIKI_PREFERENCES, wikiReference), GLOBAL_RIGHTS_CLASS,
+            restricted, principals, xcontext);
+        addOwner(wikiReference, principals, xcontext);
+
+        // The rules of the main wiki apply to the sub wikis too
+        WikiReference mainWikiReference = new WikiReference(xcontext.getMainXWiki());
+        if (!mainWikiReference.equals(wikiReference)) {
+            restricted |= addPrincipals(new DocumentReference(WIKI_PREFERENCES, mainWikiReference),
+                GLOBAL_RIGHTS_CLASS, restricted, principals, xcontext);
+            addOwner(mainWikiReference, principals, xcontext);
+        }
+
+        if (!restricted) {
+            principals.add(FieldUtils.VIEW_ALLOWED_ANYONE);
+        }
+
+        return principals;
+    }
+
+    private boolean addPrincipals(DocumentReference rightsReference, LocalDocumentReference classReference,
+        boolean restricted, Set<String> principals, XWikiContext xcontext) throws XWikiException
+    {
+        XWikiDocument rightsDocument = xcontext.getWiki().getDocument(rightsReference, xcontext);
+        List<BaseObject> rightsObjects = rightsDocument.getXObjects(classReference);
+        if (rightsObjects == null) {
+            return false;
+        }
+
+        boolean viewRules = false;
+        for (BaseObject rightsObject : rightsObjects) {
+            if (rightsObject != null && rightsObject.getIntValue(ALLOW, 1) == 1) {
+                List<String> levels = LevelsClass.getListFromString(rightsObject.getStringValue(LEVELS));
+                boolean view = levels.contains(VIEW);
+                viewRules |= view;
+                // Only the view rules restrict who can view the document but the rights implying view grant it too
+                if (((view || impliesView(levels)) && !restricted) || !Collections.disjoint(levels, ADMIN_RIGHTS)) {
+                    addPrincipals(rightsObject, rightsReference.getWikiReference(), principals);
+                }
+            }
+        }
+
+        return viewRules;
+    }
+
+    private boolean impliesView(List<String> levels)
+    {
+        for (String level : levels) {
+            Set<Right> impliedRights = Right.toRight(level).getImpliedRights();
+            if (impliedRights != null && impliedRights.contains(Right.VIEW)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void addPrincipals(BaseObject rightsObject, WikiReference wikiReference, Set<String> principals)
+    {
+        for (String user : UsersClass.getListFromString(rightsObject.getStringValue("users"))) {
+            DocumentReference userReference = this.userResolver.resolve(user, wikiReference);
+            if (XWikiRightService.isGuest(userReference)) {
+                principals.add(FieldUtils.VIEW_ALLOWED_GUEST);
+            } else {
+                principals.add(this.serializer.serialize(userReference));
+            }
+        }
+        for (String group : GroupsClass.getListFromString(rightsObject.getStringValue("groups"))) {
+            principals.add(this.serializer.serialize(this.userResolver.resolve(group, wikiReference)));
+        }
+    }
+
+    private void addOwner(WikiReference wikiReference, Set<String> principals, XWikiContext xcontext)
+        throws XWikiException
+    {
+        String owner = xcontext.getWiki().getWikiOwner(wikiReference.getName(), xcontext);
+        if (owner != null) {
+            principals.add(this.serializer.serialize(this.userResolver.resolve(owner, wikiReference)));
+        }
+    }
+
+    /**
+     * @param userReference the reference of the user, null for the guest user
+     * @return the filter query matching the documents the user may be allowed to view, null if the user is allowed to
+     *         view everything
+     * @throws XWikiException when failing to get the groups of the user
+     */
+    public String getFilterQuery(DocumentReference userReference) throws XWikiException
+    {
+        if (XWikiRightService.isSuperAdmin(userReference)) {
+            return null;
+        }
+
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        Set<String> principals = new LinkedHashSet<>();
+        principals.add(FieldUtils.VIEW_ALLOWED_ANYONE);
+
+        // The groups are only resolved in the current wiki and the wiki of the user so the documents from the other
+        // wikis are left to the authorization manager
+        Set<WikiReference> wikis = new LinkedHashSet<>();
+        wikis.add(xcontext.getWikiReference());
+
+        if (userReference == null || XWikiRightService.isGuest(userReference)) {
+            principals.add(FieldUtils.VIEW_ALLOWED_GUEST);
+        } else {
+            wikis.add(userReference.getWikiReference());
+            principals.add(this.serializer.serialize(userReference));
+            for (DocumentReference group : getGroups(userReference, wikis)) {
+                principals.add(this.serializer.serialize(group));
+            }
+        }
+
+        StringBuilder filterQuery = new StringBuilder(FieldUtils.VIEW_ALLOWED).append(":(");
+        appendDisjunction(principals, filterQuery);
+        filterQuery.append(") OR (*:* -").append(FieldUtils.WIKI).append(":(");
+        List<String> wikiNames = new ArrayList<>(wikis.size());
+        for (WikiReference wiki : wikis) {
+            wikiNames.add(wiki.getName());
+        }
+        appendDisjunction(wikiNames, filterQuery);
+        filterQuery.append("))");
+
+        return filterQuery.toString();
+    }
+
+    private void appendDisjunction(Iterable<String> values, StringBuilder builder)
+    {
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                builder.append(OR);
+            }
+            builder.append(ClientUtils.escapeQueryChars(value));
+            first = false;
+        }
+    }
+
+    private Set<DocumentReference> getGroups(DocumentReference userReference, Set<WikiReference> wikis)
+        throws XWikiException
+    {
+        Set<DocumentReference> groups = new HashSet<>();
+
+        for (WikiReference wiki : wikis) {
+            // The implicit group of all the users
+            DocumentReference allGroup = new DocumentReference(wiki.getName(), XWIKI_SPACE,
+                XWikiRightService.ALLGROUP_GROUP);
+            groups.add(allGroup);
+            groups.addAll(this.groupClosureIndex.getAllGroups(allGroup, wiki));
+
+            // Groups can be members of other groups
+            groups.addAll(this.groupClosureIndex.getAllGroups(userReference, wiki));
+        }
+
+        this.logger.debug("Groups of user [{}] in wikis {}: {}", userReference, wikis, groups);
+
+        return groups;
+    }
+
+    /**
+     * @param document the modified document
+     * @return the entities whose documents need to be indexed again because the modification of the passed document
+     *         changed who can view them, empty if no other document than the passed one is impacted
+     * @throws WikiManagerException when failing to get the wikis impacted by a modification of the main wiki
+     */
+    public Collection<EntityReference> getImpactedEntities(XWikiDocument document) throws WikiManagerException
+    {
+        DocumentReference reference = document.getDocumentReference();
+        WikiReference mainWikiReference = new WikiReference(this.xcontextProvider.get().getMainXWiki());
+        boolean mainWiki = reference.getWikiReference().equals(mainWikiReference);
+
+        if (reference.getName().equals(SPACE_PREFERENCES)) {
+            if (isGlobalRightsModified(document)) {
+                return Collections.singletonList(reference.getParent());
+            }
+        } else if (reference.getLocalDocumentReference().equals(WIKI_PREFERENCES)) {
+            if (isGlobalRightsModified(document)) {
+                // The rules of the main wiki apply to the sub wikis too
+                return mainWiki ? getWikis() : Collections.singletonList(reference.getWikiReference());
+            }
+        } else if (mainWiki && reference.getParent().getName().equals(XWIKI_SPACE)
+            && reference.getName().startsWith(WIKI_DESCRIPTOR_PREFIX)) {
+            if (isWikiOwnerModified(document)) {
+                // The owner of the main wiki can view the documents of the sub wikis too
+                WikiReference wikiReference = new WikiReference(
+                    reference.getName().substring(WIKI_DESCRIPTOR_PREFIX.length()).toLowerCase());
+                return wikiReference.equals(mainWikiReference) ? getWikis()
+                    : Collections.singletonList(wikiReference);
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    private boolean isGlobalRightsModified(XWikiDocument document)
+    {
+        XWikiDocument originalDocument = document.getOriginalDocument();
+        List<BaseObject> rightsObjects = document.getXObjects(GLOBAL_RIGHTS_CLASS);
+        List<BaseObject> originalRightsObjects =
+            originalDocument != null ? originalDocument.getXObjects(GLOBAL_RIGHTS_CLASS) : null;
+
+        return !Objects.equals(nullIfEmpty(rightsObjects), nullIfEmpty(originalRightsObjects));
+    }
+
+    private boolean isWikiOwnerModified(XWikiDocument document)
+    {
+        XWikiDocument originalDocument = document.getOriginalDocument();
+
+        String originalOwner = originalDocument != null ? getWikiOwner(originalDocument) : null;
+
+        return !Objects.equals(getWikiOwner(document), originalOwner);
+    }
+
+    private String getWikiOwner(XWikiDocument wikiDescriptor)
+    {
+        BaseObject descriptorObject = wikiDescriptor.getXObject(WIKI_DESCRIPTOR_CLASS);
+
+        return descriptorObject != null ? descriptorObject.getStringValue(OWNER) : null;
+    }
+
+    private List<EntityReference> getWikis() throws WikiManagerException
+    {
+        List<EntityReference> wikis = new ArrayList<>();
+        for (String wiki : this.wikiDescriptorManager.getAllIds()) {
+            wikis.add(new WikiReference(wiki));
+        }
+
+        return wikis;
+    }
+
+    private List<BaseObject> nullIfEmpty(List<BaseObject> objects)
+    {
+        return objects == null || objects.isEmpty() ? null : objects;
+    }
+}
@@ -227,6 +227,29 @@
      */
     public static final String HIDDEN = "hidden";
 
+    /**
+     * The users and groups (serialized as full references) allowed to view the entity, or {@link #VIEW_ALLOWED_ANYONE}
+     * and {@link #VIEW_ALLOWED_GUEST}. Only indexed when the view rights indexing is enabled, it's used to filter the
+     * search results according to the view right directly in the query.
+     *
+     * @since 9.11RC1
+     */
+    public static final String VIEW_ALLOWED = "view_allowed";
+
+    /**
+     * The value of {@link #VIEW_ALLOWED} indicating that the view right is not restricted to some users or groups.
+     *
+     * @since 9.11RC1
+     */
+    public static final String VIEW_ALLOWED_ANYONE = "anyone";
+
+    /**
+     * The value of {@link #VIEW_ALLOWED} indicating that the view right is explicitly given to the guest user.
+     *
+     * @since 9.11RC1
+     */
+    public static final String VIEW_ALLOWED_GUEST = "guest";
+
     /**
      * Document score, not an actual field. It's only computed at query time.
      */
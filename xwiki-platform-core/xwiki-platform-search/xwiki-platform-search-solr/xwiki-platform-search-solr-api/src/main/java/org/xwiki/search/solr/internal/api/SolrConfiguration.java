@@ -73,9 +73,63 @@
      */
     int getIndexerQueueCapacity();
 
+    /**
+     * @return the number of threads used to extract the metadata of the entities to index
+     * @since 9.11RC1
+     */
+    int getIndexerThreads();
+
+    /**
+     * @return the maximum time (in milliseconds) before the indexed changes become visible to queries when the near
+     *         real time mode is enabled, or a negative value to disable the near real time mode and explicitly commit
+     *         each batch of changes
+     * @since 9.11RC1
+     */
+    int getIndexerCommitWithin();
+
+    /**
+     * @return the maximum time (in milliseconds) between two hard commits (which make the changes durable) when the
+     *         near real time mode is enabled
+     * @since 9.11RC1
+     */
+    long getIndexerHardCommitInterval();
+
+    /**
+     * @return the maximum size (in bytes) of the attachments whose text content is extracted and indexed, -1 for no
+     *         limit
+     * @since 9.11RC1
+     */
+    long getAttachmentTextMaxSize();
+
+    /**
+     * @return the maximum time (in seconds) spent extracting the text content of an attachment
+     * @since 9.11RC1
+     */
+    int getAttachmentTextTimeout();
+
+    /**
+     * @return the maximum size (in bytes) of the cache of extracted attachment texts, -1 for no limit
+     * @since 9.11RC1
+     */
+    long getAttachmentTextCacheMaxSize();
+
     /**
      * @return true if a full synchronization job between the database and SOLR index should be run when XWiki starts
      * @since 6.1M2
      */
     boolean synchronizeAtStartup();
+
+    /**
+     * @return true if the synchronization run when XWiki starts should only check the documents modified since the
+     *         start of the last complete synchronization
+     * @since 9.11RC1
+     */
+    boolean synchronizeIncrementally();
+
+    /**
+     * @return true if the users and groups allowed to view each entity should be indexed so that the search results
+     *         are filtered according to the view right directly in the Solr query
+     * @since 9.11RC1
+     */
+    boolean isViewRightsIndexed();
 }
@@ -19,6 +19,8 @@
  */
 package org.xwiki.search.solr.internal.api;
 
+import java.util.concurrent.Future;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.search.solr.internal.job.IndexerJob;
@@ -60,6 +62,29 @@
      */
     int getQueueSize();
 
+    /**
+     * Wait for the entities currently queued to be indexed or deleted.
+     *
+     * @return a future completed once all the operations queued before the call have been sent to Solr and committed,
+     *         cancelled if the indexer is stopped before
+     * @since 9.11RC1
+     */
+    Future<Void> flush();
+
+    /**
+     * @return the number of commits sent to the Solr server by the indexer since it was started, a high rate of commits
+     *         generally indicating that the near real time mode should be enabled
+     * @since 9.11RC1
+     */
+    long getCommitCount();
+
+    /**
+     * @return the number of operations sent to the Solr server in near real time mode (i.e. with a commit within delay
+     *         instead of an explicit commit) since the indexer was started
+     * @since 9.11RC1
+     */
+    long getCommitWithinCount();
+
     /**
      * Start an indexing with specific criteria.
      * 
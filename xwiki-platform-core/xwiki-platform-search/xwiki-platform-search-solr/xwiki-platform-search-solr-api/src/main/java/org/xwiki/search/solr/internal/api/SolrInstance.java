@@ -54,6 +54,18 @@ public interface SolrInstance extends Initializable
      */
     void add(SolrInputDocument solrDocument) throws SolrServerException, IOException;
 
+    /**
+     * Add a {@link SolrInputDocument} to the Solr index and let Solr make it visible to queries within the passed
+     * delay, without any explicit commit.
+     * 
+     * @param solrDocument the document.
+     * @param commitWithin the maximum time (in milliseconds) before the document becomes visible to queries
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.11RC1
+     */
+    void add(SolrInputDocument solrDocument, int commitWithin) throws SolrServerException, IOException;
+
     /**
      * Add a list of {@link SolrInputDocument} to the Solr index. This is a batch operation.
      * <p>
@@ -76,6 +88,18 @@ public interface SolrInstance extends Initializable
      */
     void delete(String id) throws SolrServerException, IOException;
 
+    /**
+     * Delete a single entry from the Solr index and let Solr apply the deletion within the passed delay, without any
+     * explicit commit.
+     * 
+     * @param id the ID of the entry.
+     * @param commitWithin the maximum time (in milliseconds) before the deletion becomes visible to queries
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.11RC1
+     */
+    void delete(String id, int commitWithin) throws SolrServerException, IOException;
+
     /**
      * Delete a list of entries from the Solr index. This is a batch operation.
      * <p>
@@ -98,6 +122,18 @@ public interface SolrInstance extends Initializable
      */
     void deleteByQuery(String query) throws SolrServerException, IOException;
 
+    /**
+     * Delete entries from the index based on the result of the given query and let Solr apply the deletion within the
+     * passed delay, without any explicit commit.
+     * 
+     * @param query the Solr query.
+     * @param commitWithin the maximum time (in milliseconds) before the deletion becomes visible to queries
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.11RC1
+     */
+    void deleteByQuery(String query, int commitWithin) throws SolrServerException, IOException;
+
     /**
      * Commit the recent (uncommitted) changes to the Solr server.
      * 
@@ -106,6 +142,16 @@ public interface SolrInstance extends Initializable
      */
     void commit() throws SolrServerException, IOException;
 
+    /**
+     * Commit the recent changes to the Solr server storage without opening a new searcher, the changes being made
+     * visible to queries by other means (e.g. soft commits).
+     * 
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.11RC1
+     */
+    void hardCommit() throws SolrServerException, IOException;
+
     /**
      * Cancel the local uncommitted changes that were not yet pushed to the Solr server.
      * 
@@ -19,6 +19,8 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.util.Date;
+
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
@@ -49,6 +51,13 @@
      */
     protected EntityReference rootReference;
 
+    /**
+     * Only the documents modified after this date are iterated. If {@code null} then all the documents are iterated.
+     *
+     * @since 9.11RC1
+     */
+    protected Date modifiedSince;
+
     @Override
     public void remove()
     {
@@ -60,4 +69,10 @@ public void setRootReference(EntityReference rootReference)
     {
         this.rootReference = rootReference;
     }
+
+    @Override
+    public void setModifiedSince(Date modifiedSince)
+    {
+        this.modifiedSince = modifiedSince;
+    }
 }
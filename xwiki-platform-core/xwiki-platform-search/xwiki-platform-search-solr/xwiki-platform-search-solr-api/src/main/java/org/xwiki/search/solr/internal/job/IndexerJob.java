@@ -19,27 +19,68 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.FacetField.Count;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.job.AbstractJob;
-import org.xwiki.job.DefaultJobStatus;
 import org.xwiki.job.GroupedJob;
 import org.xwiki.job.JobGroupPath;
 import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.search.solr.internal.api.FieldUtils;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
 import org.xwiki.search.solr.internal.job.DiffDocumentIterator.Action;
+import org.xwiki.search.solr.internal.reference.SolrReferenceResolver;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
 
 /**
  * Provide progress information and store logging of an advanced indexing.
+ * <p>
+ * When synchronizing one or all the wikis the database and the Solr index are compared space by space, in parallel,
+ * and the last space whose synchronization is complete (along with all the spaces before it) is saved in the job
+ * status so that an interrupted synchronization can resume from there. Since the documents to synchronize are only
+ * queued, a space is saved as the checkpoint (and the date of the synchronization as the watermark) only once the
+ * documents queued before have been indexed (see {@link SolrIndexer#flush()}).
  * 
  * @version $Id$
  * @since 5.1RC1
@@ -47,7 +88,7 @@
 @Component
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
 @Named(IndexerJob.JOBTYPE)
-public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<IndexerRequest>> implements GroupedJob
+public class IndexerJob extends AbstractJob<IndexerRequest, IndexerJobStatus> implements GroupedJob
 {
     /**
      * The id of the job.
@@ -60,6 +101,14 @@ public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<Ind
     // TODO: group indexers based on the IndexerRequest root entity
     private static final JobGroupPath GROUP = new JobGroupPath(Arrays.asList("solr", "indexer"));
 
+    private static final Type DOCUMENT_ITERATOR_TYPE =
+        new DefaultParameterizedType(null, DocumentIterator.class, String.class);
+
+    /**
+     * The minimum time (in milliseconds) between two flushes of the indexer to save the checkpoint.
+     */
+    private static final long CHECKPOINT_INTERVAL = 10000L;
+
     /**
      * Used to send documents to index or delete to/from Solr index.
      */
@@ -74,6 +123,101 @@ public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<Ind
     @Named("solr")
     private transient DocumentIterator<String> solrIterator;
 
+    @Inject
+    private transient ComponentManager componentManager;
+
+    @Inject
+    private transient SolrConfiguration configuration;
+
+    @Inject
+    private transient Provider<SolrInstance> solrInstanceProvider;
+
+    @Inject
+    private transient SolrReferenceResolver solrReferenceResolver;
+
+    @Inject
+    private transient QueryManager queryManager;
+
+    @Inject
+    private transient WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    @Named("explicit")
+    private transient EntityReferenceResolver<String> explicitEntityReferenceResolver;
+
+    @Inject
+    private transient Execution execution;
+
+    @Inject
+    private transient ExecutionContextManager ecim;
+
+    private long lastCheckpointRequest;
+
+    /**
+     * The last synchronized space waiting for its documents to be indexed to become the checkpoint.
+     */
+    private PendingCheckpoint pendingCheckpoint;
+
+    /**
+     * A space waiting for the documents queued before a flush of the indexer to be indexed.
+     */
+    private static class PendingCheckpoint
+    {
+        private final String wiki;
+
+        private final String space;
+
+        private final Date date;
+
+        private final Future<Void> flushed;
+
+        PendingCheckpoint(String wiki, String space, Date date, Future<Void> flushed)
+        {
+            this.wiki = wiki;
+            this.space = space;
+            this.date = date;
+            this.flushed = flushed;
+        }
+    }
+
+    /**
+     * Synchronize the documents of a space.
+     */
+    private class SpaceSynchronizer implements Callable<Void>
+    {
+        private final SpaceReference spaceReference;
+
+        private final Date modifiedSince;
+
+        SpaceSynchronizer(SpaceReference spaceReference, Date modifiedSince)
+        {
+            this.spaceReference = spaceReference;
+            this.modifiedSince = modifiedSince;
+        }
+
+        @Override
+        public Void call() throws Exception
+        {
+            ecim.initialize(new ExecutionContext());
+
+            try {
+                DiffDocumentIterator<String> iterator = new DiffDocumentIterator<>(
+                    componentManager.<DocumentIterator<String>>getInstance(DOCUMENT_ITERATOR_TYPE, "solr"),
+                    componentManager.<DocumentIterator<String>>getInstance(DOCUMENT_ITERATOR_TYPE, "database"));
+                iterator.setRootReference(this.spaceReference);
+                iterator.setModifiedSince(this.modifiedSince);
+
+                while (iterator.hasNext()) {
+                    apply(iterator.next());
+                }
+            } finally {
+                execution.removeContext();
+            }
+
+            return null;
+        }
+    }
+
     @Override
     public String getType()
     {
@@ -99,6 +243,12 @@ protected IndexerRequest castRequest(Request request)
         return indexerRequest;
     }
 
+    @Override
+    protected IndexerJobStatus createNewStatus(IndexerRequest request)
+    {
+        return new IndexerJobStatus(request, this.indexer, this.observationManager, this.loggerManager);
+    }
+
     @Override
     protected void runInternal() throws Exception
     {
@@ -113,12 +263,263 @@ protected void runInternal() throws Exception
 
     /**
      * Update the Solr index to match the current state of the database.
+     * 
+     * @throws Exception when failing to synchronize the index
+     */
+    private void updateSolrIndex() throws Exception
+    {
+        IndexerJobStatus previousStatus = getPreviousStatus();
+
+        Date startDate = new Date();
+        Date modifiedSince = null;
+        String checkpointWiki = null;
+        String checkpointSpace = null;
+        if (previousStatus != null) {
+            getStatus().setWatermark(previousStatus.getWatermark());
+            if (getRequest().isIncremental()) {
+                modifiedSince = previousStatus.getWatermark();
+            }
+            if (previousStatus.getCheckpointWiki() != null) {
+                checkpointWiki = previousStatus.getCheckpointWiki();
+                checkpointSpace = previousStatus.getCheckpointSpace();
+                startDate = previousStatus.getCheckpointDate();
+                this.logger.info("Resume the synchronization of the Solr index after space [{}] in wiki [{}].",
+                    checkpointSpace, checkpointWiki);
+            }
+        }
+
+        EntityReference rootReference = getRequest().getRootReference();
+        if (rootReference == null || rootReference.getType() == EntityType.WIKI) {
+            updateSolrIndex(getWikis(rootReference), modifiedSince, startDate, checkpointWiki, checkpointSpace);
+        } else {
+            DiffDocumentIterator<String> iterator =
+                new DiffDocumentIterator<>(this.solrIterator, this.databaseIterator);
+            iterator.setRootReference(rootReference);
+            iterator.setModifiedSince(modifiedSince);
+
+            updateSolrIndex(iterator);
+        }
+
+        this.logger.info("{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
+            getStatus().getAdded(), getStatus().getDeleted(), getStatus().getUpdated());
+
+        // The documents are only queued, wait for them to be indexed before moving the watermark
+        waitForIndexer(this.indexer.flush());
+        this.pendingCheckpoint = null;
+
+        // The synchronization is complete
+        getStatus().setCheckpoint(null, null, null);
+        getStatus().setWatermark(startDate);
+    }
+
+    /**
+     * @return the status of the previous synchronization of the same entity, {@code null} if none
+     */
+    private IndexerJobStatus getPreviousStatus()
+    {
+        if (getRequest().getId() != null) {
+            JobStatus status = this.store.getJobStatus(getRequest().getId());
+            if (status instanceof IndexerJobStatus) {
+                IndexerRequest previousRequest = ((IndexerJobStatus) status).getRequest();
+                // A checkpoint or a watermark is only meaningful for the same scope of documents
+                if (Objects.equals(previousRequest.getRootReference(), getRequest().getRootReference())
+                    && previousRequest.isIncremental() == getRequest().isIncremental()) {
+                    return (IndexerJobStatus) status;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private List<String> getWikis(EntityReference rootReference) throws Exception
+    {
+        List<String> wikis;
+        if (rootReference == null) {
+            wikis = new ArrayList<>(this.wikiDescriptorManager.getAllIds());
+            Collections.sort(wikis);
+        } else {
+            wikis = Arrays.asList(rootReference.getName());
+        }
+
+        return wikis;
+    }
+
+    private void updateSolrIndex(List<String> wikis, Date modifiedSince, Date startDate, String checkpointWiki,
+        String checkpointSpace) throws Exception
+    {
+        BasicThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("XWiki Solr synchronization thread %d").daemon(true).build();
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.max(1, this.configuration.getIndexerThreads()), factory);
+
+        this.progressManager.pushLevelProgress(wikis.size(), this);
+
+        try {
+            for (String wiki : wikis) {
+                this.progressManager.startStep(this);
+
+                if (checkpointWiki == null || wiki.compareTo(checkpointWiki) > 0) {
+                    updateSolrIndex(wiki, null, modifiedSince, startDate, pool);
+                } else if (wiki.equals(checkpointWiki)) {
+                    updateSolrIndex(wiki, checkpointSpace, modifiedSince, startDate, pool);
+                }
+
+                this.progressManager.endStep(this);
+            }
+        } finally {
+            pool.shutdownNow();
+
+            this.progressManager.popLevelProgress(this);
+        }
+    }
+
+    private void updateSolrIndex(String wiki, String checkpointSpace, Date modifiedSince, Date startDate,
+        ExecutorService pool) throws Exception
+    {
+        WikiReference wikiReference = new WikiReference(wiki);
+
+        List<String> spaces = new ArrayList<>(getSpaces(wikiReference, modifiedSince));
+        if (checkpointSpace != null) {
+            spaces.removeIf(space -> space.compareTo(checkpointSpace) <= 0);
+        }
+
+        List<Future<Void>> futures = new ArrayList<>(spaces.size());
+        for (String space : spaces) {
+            SpaceReference spaceReference = new SpaceReference(
+                this.explicitEntityReferenceResolver.resolve(space, EntityType.SPACE, wikiReference));
+            futures.add(pool.submit(new SpaceSynchronizer(spaceReference, modifiedSince)));
+        }
+
+        this.progressManager.pushLevelProgress(spaces.size(), this);
+
+        try {
+            // Wait for the spaces in order so that the checkpoint never skips a space which is not synchronized yet
+            for (int i = 0; i < spaces.size(); ++i) {
+                this.progressManager.startStep(this);
+
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // Keep the spaces synchronized before, if already indexed
+                    try {
+                        savePendingCheckpoint();
+                    } catch (Exception checkpointException) {
+                        this.logger.warn("Failed to save the checkpoint of the Solr index synchronization",
+                            checkpointException);
+                    }
+
+                    throw new Exception(
+                        String.format("Failed to synchronize space [%s] in wiki [%s]", spaces.get(i), wiki),
+                        e.getCause());
+                }
+
+                checkpoint(wiki, spaces.get(i), startDate);
+
+                this.progressManager.endStep(this);
+            }
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+    }
+
+    /**
+     * @param wikiReference the wiki
+     * @param modifiedSince only the spaces containing documents modified after this date are returned, all the spaces
+     *            if {@code null}
+     * @return the spaces containing documents either in the database or in the Solr index, in alphabetical order
+     * @throws Exception when failing to list the spaces
      */
-    private void updateSolrIndex()
+    private SortedSet<String> getSpaces(WikiReference wikiReference, Date modifiedSince) throws Exception
     {
-        DiffDocumentIterator<String> iterator = new DiffDocumentIterator<>(this.solrIterator, this.databaseIterator);
-        iterator.setRootReference(getRequest().getRootReference());
+        SortedSet<String> spaces = new TreeSet<>();
 
+        // Spaces from the database
+        String statement = "select distinct doc.space from XWikiDocument doc";
+        if (modifiedSince != null) {
+            statement += " where doc.date >= :modifiedSince";
+        }
+        Query query = this.queryManager.createQuery(statement, Query.HQL).setWiki(wikiReference.getName());
+        if (modifiedSince != null) {
+            query.bindValue("modifiedSince", modifiedSince);
+        }
+        for (Object space : query.execute()) {
+            spaces.add((String) space);
+        }
+
+        // Spaces from the Solr index (which may not exist anymore in the database)
+        SolrQuery solrQuery = new SolrQuery(this.solrReferenceResolver.getQuery(wikiReference));
+        solrQuery.addFilterQuery(FieldUtils.TYPE + ':' + EntityType.DOCUMENT.name());
+        if (modifiedSince != null) {
+            solrQuery.addFilterQuery(SolrDocumentIterator.getModifiedSinceFilter(modifiedSince));
+        }
+        solrQuery.setRows(0);
+        solrQuery.setFacet(true);
+        solrQuery.addFacetField(FieldUtils.SPACE_EXACT);
+        solrQuery.setFacetLimit(-1);
+        solrQuery.setFacetMinCount(1);
+        FacetField facet = this.solrInstanceProvider.get().query(solrQuery).getFacetField(FieldUtils.SPACE_EXACT);
+        if (facet != null && facet.getValues() != null) {
+            for (Count count : facet.getValues()) {
+                spaces.add(count.getName());
+            }
+        }
+
+        return spaces;
+    }
+
+    /**
+     * Remember that a space has been synchronized. It becomes the checkpoint once its documents have been indexed.
+     *
+     * @param wiki the wiki of the space
+     * @param space the synchronized space
+     * @param startDate the date when the synchronization started
+     * @throws Exception when the documents queued before the previous checkpoint could not be indexed
+     */
+    private void checkpoint(String wiki, String space, Date startDate) throws Exception
+    {
+        savePendingCheckpoint();
+
+        long now = System.currentTimeMillis();
+        if (this.pendingCheckpoint == null && now - this.lastCheckpointRequest >= CHECKPOINT_INTERVAL) {
+            this.lastCheckpointRequest = now;
+            this.pendingCheckpoint = new PendingCheckpoint(wiki, space, startDate, this.indexer.flush());
+        }
+    }
+
+    /**
+     * Save the pending checkpoint if the documents queued before it have been indexed, without waiting.
+     *
+     * @throws Exception when the documents queued before the pending checkpoint could not be indexed
+     */
+    private void savePendingCheckpoint() throws Exception
+    {
+        if (this.pendingCheckpoint != null && this.pendingCheckpoint.flushed.isDone()) {
+            PendingCheckpoint checkpoint = this.pendingCheckpoint;
+            this.pendingCheckpoint = null;
+
+            waitForIndexer(checkpoint.flushed);
+
+            getStatus().setCheckpoint(checkpoint.wiki, checkpoint.space, checkpoint.date);
+            if (getRequest().getId() != null) {
+                this.store.storeAsync(getStatus());
+            }
+        }
+    }
+
+    private void waitForIndexer(Future<Void> flushed) throws Exception
+    {
+        try {
+            flushed.get();
+        } catch (CancellationException e) {
+            throw new Exception("The Solr indexer has been stopped before indexing the synchronized documents", e);
+        } catch (ExecutionException e) {
+            throw new Exception("Failed to index the synchronized documents", e.getCause());
+        }
+    }
+
+    private void updateSolrIndex(DiffDocumentIterator<String> iterator)
+    {
         this.progressManager.pushLevelProgress(2, this);
 
         try {
@@ -143,32 +544,29 @@ private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iter
         this.progressManager.pushLevelProgress(progressSize, this);
 
         try {
-            long[] counter = new long[Action.values().length];
-
             while (iterator.hasNext()) {
                 this.progressManager.startStep(this);
 
-                Pair<DocumentReference, Action> entry = iterator.next();
-                if (entry.getValue() == Action.ADD || entry.getValue() == Action.UPDATE) {
-                    // The database entry has not been indexed or the indexed version doesn't match the latest
-                    // version
-                    // from the database.
-                    this.indexer.index(entry.getKey(), true);
-                } else if (entry.getValue() == Action.DELETE && getRequest().isRemoveMissing()) {
-                    // The index entry doesn't exist anymore in the database.
-                    this.indexer.delete(entry.getKey(), true);
-                }
-
-                counter[entry.getValue().ordinal()]++;
+                apply(iterator.next());
 
                 this.progressManager.endStep(this);
             }
-
-            this.logger.info(
-                "{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
-                counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
         } finally {
             this.progressManager.popLevelProgress(this);
         }
     }
+
+    private void apply(Pair<DocumentReference, Action> entry)
+    {
+        if (entry.getValue() == Action.ADD || entry.getValue() == Action.UPDATE) {
+            // The database entry has not been indexed or the indexed version doesn't match the latest version from
+            // the database.
+            this.indexer.index(entry.getKey(), true);
+        } else if (entry.getValue() == Action.DELETE && getRequest().isRemoveMissing()) {
+            // The index entry doesn't exist anymore in the database.
+            this.indexer.delete(entry.getKey(), true);
+        }
+
+        getStatus().increment(entry.getValue());
+    }
 }
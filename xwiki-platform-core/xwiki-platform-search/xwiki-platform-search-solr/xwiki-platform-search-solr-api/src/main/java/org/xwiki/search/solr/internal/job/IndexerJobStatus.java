@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xwiki.job.DefaultJobStatus;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.job.DiffDocumentIterator.Action;
+
+/**
+ * The status of the {@link IndexerJob}, exposing the number of documents queued for each action and the progress of
+ * the indexer, which keeps processing the queued documents after the job is finished.
+ * <p>
+ * The status is also used to remember where an interrupted synchronization should resume and when the last complete
+ * synchronization started.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class IndexerJobStatus extends DefaultJobStatus<IndexerRequest>
+{
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicLongArray counters = new AtomicLongArray(Action.values().length);
+
+    private final transient SolrIndexer indexer;
+
+    private String checkpointWiki;
+
+    private String checkpointSpace;
+
+    private Date checkpointDate;
+
+    private Date watermark;
+
+    /**
+     * @param request the request provided when the job was started
+     * @param indexer the indexer processing the queued documents
+     * @param observationManager the observation manager
+     * @param loggerManager the logger manager
+     */
+    public IndexerJobStatus(IndexerRequest request, SolrIndexer indexer, ObservationManager observationManager,
+        LoggerManager loggerManager)
+    {
+        super(IndexerJob.JOBTYPE, request, null, observationManager, loggerManager);
+
+        this.indexer = indexer;
+    }
+
+    /**
+     * @param action the action applied to a document
+     */
+    void increment(Action action)
+    {
+        this.counters.incrementAndGet(action.ordinal());
+    }
+
+    /**
+     * @return the number of documents missing from the index and queued for indexing
+     */
+    public long getAdded()
+    {
+        return this.counters.get(Action.ADD.ordinal());
+    }
+
+    /**
+     * @return the number of outdated documents queued for indexing
+     */
+    public long getUpdated()
+    {
+        return this.counters.get(Action.UPDATE.ordinal());
+    }
+
+    /**
+     * @return the number of documents missing from the database and queued for deletion from the index
+     */
+    public long getDeleted()
+    {
+        return this.counters.get(Action.DELETE.ordinal());
+    }
+
+    /**
+     * @return the number of entities still waiting to be indexed or deleted, -1 if unknown (when the status has been
+     *         loaded from the store)
+     */
+    public int getIndexerQueueSize()
+    {
+        return this.indexer != null ? this.indexer.getQueueSize() : -1;
+    }
+
+    /**
+     * @return the wiki of the last synchronized space, {@code null} if the synchronization is complete
+     */
+    public String getCheckpointWiki()
+    {
+        return this.checkpointWiki;
+    }
+
+    /**
+     * @return the last synchronized space (all the spaces before it, in alphabetical order, are also synchronized),
+     *         {@code null} if the synchronization is complete
+     */
+    public String getCheckpointSpace()
+    {
+        return this.checkpointSpace;
+    }
+
+    /**
+     * @return the date when the synchronization reaching the checkpoint started, {@code null} if the synchronization
+     *         is complete
+     */
+    public Date getCheckpointDate()
+    {
+        return this.checkpointDate;
+    }
+
+    /**
+     * @param wiki the wiki of the last synchronized space
+     * @param space the last synchronized space
+     * @param date the date when the synchronization started
+     */
+    void setCheckpoint(String wiki, String space, Date date)
+    {
+        this.checkpointWiki = wiki;
+        this.checkpointSpace = space;
+        this.checkpointDate = date;
+    }
+
+    /**
+     * @return the date when the last complete synchronization started, {@code null} if none
+     */
+    public Date getWatermark()
+    {
+        return this.watermark;
+    }
+
+    /**
+     * @param watermark the date when the last complete synchronization started
+     */
+    void setWatermark(Date watermark)
+    {
+        this.watermark = watermark;
+    }
+}
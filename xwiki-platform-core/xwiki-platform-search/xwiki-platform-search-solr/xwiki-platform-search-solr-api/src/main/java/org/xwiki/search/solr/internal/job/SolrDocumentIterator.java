@@ -19,7 +19,9 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.time.format.DateTimeFormatter;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -146,6 +148,9 @@ private SolrQuery getQuery() throws SolrIndexerException
             query.setFields(FieldUtils.WIKI, FieldUtils.SPACES, FieldUtils.NAME, FieldUtils.DOCUMENT_LOCALE,
                 FieldUtils.VERSION);
             query.addFilterQuery(FieldUtils.TYPE + ':' + EntityType.DOCUMENT.name());
+            if (this.modifiedSince != null) {
+                query.addFilterQuery(getModifiedSinceFilter(this.modifiedSince));
+            }
             // This iterator must have the same order as the database iterator, otherwise the synchronization fails.
             // Note that we had two options:
             // (A) Sort the Solr index only by id and enable docValues on the id field to improve the speed. But then we
@@ -171,4 +176,16 @@ private SolrQuery getQuery() throws SolrIndexerException
         }
         return query;
     }
+
+    /**
+     * @param modifiedSince the date after which the documents have been modified
+     * @return the filter query matching the documents modified after the passed date
+     * @since 9.11RC1
+     */
+    static String getModifiedSinceFilter(Date modifiedSince)
+    {
+        // Only the content update date is indexed. It's never after the modification date of the document so a
+        // document matched in the index is also matched in the database, unless it has been deleted.
+        return FieldUtils.DATE + ":[" + DateTimeFormatter.ISO_INSTANT.format(modifiedSince.toInstant()) + " TO *]";
+    }
 }
@@ -0,0 +1,315 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaMetadataKeys;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Extract the text content of attachments with Tika.
+ * <p>
+ * The parsing is done in a separate thread so that it can be abandoned when it takes too long, and its result is kept
+ * on disk, in the permanent directory, so that an attachment is not parsed again as long as it's not modified (the
+ * attachment and the document holding it are indexed again each time the document is saved). The least recently used
+ * texts are removed from the disk when the cache gets bigger than the configured limit.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component(roles = AttachmentTextExtractor.class)
+@Singleton
+public class AttachmentTextExtractor implements Initializable, Disposable
+{
+    /**
+     * The directory, relative to the permanent directory, where the extracted texts are stored.
+     */
+    private static final String CACHE_DIRECTORY = "cache/solr/attachments";
+
+    /**
+     * The extension of the files being written in the cache directory.
+     */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private SolrConfiguration configuration;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private Logger logger;
+
+    private File cacheDirectory;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The current size (in bytes) of the cached texts.
+     */
+    private final AtomicLong cacheSize = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.cacheDirectory = new File(this.environment.getPermanentDirectory(), CACHE_DIRECTORY);
+        if (this.cacheDirectory.isDirectory()) {
+            this.cacheSize.set(FileUtils.sizeOfDirectory(this.cacheDirectory));
+        }
+
+        // The texts are extracted on behalf of the Solr extractor threads so there's no need for more threads. The
+        // parsing which timed out is interrupted and its input closed but if Tika still does not give up, the next
+        // extractions wait in the pool queue and time out too instead of piling up threads.
+        int threads = Math.max(1, this.configuration.getIndexerThreads());
+        BasicThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("XWiki Solr attachment text extraction thread %d").daemon(true)
+            .priority(Thread.NORM_PRIORITY - 1).build();
+        this.executor =
+            new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @param attachment the attachment
+     * @return the text content of the attachment, {@code null} if it could not be extracted
+     */
+    public String getText(XWikiAttachment attachment)
+    {
+        long maxSize = this.configuration.getAttachmentTextMaxSize();
+        if (maxSize >= 0 && attachment.getLongSize() > maxSize) {
+            this.logger.debug("Skipping the text content of attachment [{}] because it's bigger than [{}] bytes",
+                attachment.getReference(), maxSize);
+
+            return null;
+        }
+
+        File cacheFile = getCacheFile(attachment);
+        if (cacheFile.exists()) {
+            try {
+                String text = FileUtils.readFileToString(cacheFile, StandardCharsets.UTF_8);
+
+                // Remember that the text was used recently
+                cacheFile.setLastModified(System.currentTimeMillis());
+
+                return text;
+            } catch (IOException e) {
+                this.logger.warn("Failed to read the cached text content of attachment [{}]: {}",
+                    attachment.getReference(), e.getMessage());
+            }
+        }
+
+        String text = extract(attachment);
+
+        if (text != null) {
+            store(text, cacheFile);
+        }
+
+        return text;
+    }
+
+    private String extract(XWikiAttachment attachment)
+    {
+        InputStream in;
+        try {
+            in = attachment.getContentInputStream(this.xcontextProvider.get());
+        } catch (Exception e) {
+            this.logger.error("Failed to retrieve the content of attachment [{}]", attachment.getReference(), e);
+
+            return null;
+        }
+
+        Future<String> future = this.executor.submit(() -> {
+            try {
+                return parse(in, attachment.getFilename());
+            } finally {
+                in.close();
+            }
+        });
+
+        int timeout = this.configuration.getAttachmentTextTimeout();
+        try {
+            return future.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            abandon(future, in);
+
+            this.logger.warn("Gave up extracting the text content of attachment [{}] after [{}] seconds",
+                attachment.getReference(), timeout);
+
+            // Don't remember the failure since the extraction might have been slow only because the server was busy
+            return null;
+        } catch (ExecutionException e) {
+            this.logger.error("Failed to extract the text content of attachment [{}]", attachment.getReference(),
+                e.getCause());
+
+            // Parsing the same content again would fail again
+            return e.getCause() instanceof TikaException ? "" : null;
+        } catch (InterruptedException e) {
+            abandon(future, in);
+            Thread.currentThread().interrupt();
+
+            return null;
+        }
+    }
+
+    private void abandon(Future<String> future, InputStream in)
+    {
+        future.cancel(true);
+
+        // Closing the content also makes fail the parsers which don't support interruption, and it would not be closed
+        // otherwise if the parsing did not start yet
+        IOUtils.closeQuietly(in);
+    }
+
+    /**
+     * @param in the content to parse
+     * @param fileName the name of the file, used to detect the type of content
+     * @return the text representation of the content
+     * @throws IOException when failing to read the content
+     * @throws TikaException when failing to parse the content
+     */
+    static String parse(InputStream in, String fileName) throws IOException, TikaException
+    {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaMetadataKeys.RESOURCE_NAME_KEY, fileName);
+
+        return new Tika().parseToString(in, metadata);
+    }
+
+    private File getCacheFile(XWikiAttachment attachment)
+    {
+        // The version of the attachment is incremented each time its content is modified, the size and the date are
+        // used to not reuse the text of a deleted attachment for a new attachment with the same name
+        String key = DigestUtils.sha256Hex(this.serializer.serialize(attachment.getReference()) + '/'
+            + attachment.getVersion() + '/' + attachment.getLongSize() + '/'
+            + (attachment.getDate() != null ? attachment.getDate().getTime() : 0));
+
+        return new File(new File(this.cacheDirectory, key.substring(0, 2)), key);
+    }
+
+    private void store(String text, File cacheFile)
+    {
+        try {
+            // Write the text in a temporary file first so that a partial text is never read by another indexer thread
+            cacheFile.getParentFile().mkdirs();
+            File temporaryFile =
+                File.createTempFile(cacheFile.getName(), TEMPORARY_EXTENSION, cacheFile.getParentFile());
+            FileUtils.writeStringToFile(temporaryFile, text, StandardCharsets.UTF_8);
+            long replacedSize = cacheFile.length();
+            Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            this.cacheSize.addAndGet(cacheFile.length() - replacedSize);
+        } catch (IOException e) {
+            this.logger.warn("Failed to cache the text content extracted from [{}]: {}", cacheFile, e.getMessage());
+        }
+
+        long maxSize = this.configuration.getAttachmentTextCacheMaxSize();
+        if (maxSize >= 0 && this.cacheSize.get() > maxSize) {
+            evict(maxSize, cacheFile);
+        }
+    }
+
+    /**
+     * Remove the least recently used texts from the cache until its size goes back under three quarters of the
+     * maximum size, so that the eviction does not happen again on the next extraction.
+     *
+     * @param maxSize the maximum size of the cache
+     * @param keptFile the text which was just stored and must be kept
+     */
+    private synchronized void evict(long maxSize, File keptFile)
+    {
+        // The size might have been reduced by another thread in the meantime
+        if (this.cacheSize.get() <= maxSize) {
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        long size = 0;
+        for (File file : FileUtils.listFiles(this.cacheDirectory, null, true)) {
+            if (!file.getName().endsWith(TEMPORARY_EXTENSION) && !file.equals(keptFile)) {
+                files.add(file);
+            }
+            size += file.length();
+        }
+        files.sort(Comparator.comparingLong(File::lastModified));
+
+        long targetSize = maxSize / 4 * 3;
+        for (int i = 0; i < files.size() && size > targetSize; ++i) {
+            File file = files.get(i);
+            long fileSize = file.length();
+            if (file.delete()) {
+                size -= fileSize;
+            }
+        }
+
+        this.cacheSize.set(size);
+
+        this.logger.debug("Reduced the size of the attachment text cache to [{}] bytes", size);
+    }
+}
@@ -20,13 +20,27 @@
 package org.xwiki.search.solr.internal;
 
 import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
+import org.xwiki.search.solr.internal.metadata.LengthSolrInputDocument;
+import org.xwiki.search.solr.internal.metadata.SolrMetadataExtractor;
+import org.xwiki.search.solr.internal.reference.SolrReferenceResolver;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.XWiki;
@@ -34,9 +48,16 @@
 import com.xpn.xwiki.test.reference.ReferenceComponentList;
 import com.xpn.xwiki.web.Utils;
 
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -57,6 +78,12 @@
 
     private SolrConfiguration mockConfig;
 
+    private SolrInstance solrInstance;
+
+    private SolrMetadataExtractor documentExtractor;
+
+    private SolrReferenceResolver referenceResolver;
+
     @Before
     public void configure() throws Exception
     {
@@ -78,6 +105,31 @@ public void configure() throws Exception
         this.mockConfig = this.mocker.getInstance(SolrConfiguration.class);
         when(this.mockConfig.getInstanceConfiguration(eq(EmbeddedSolrInstance.TYPE), eq("home"), any()))
             .thenReturn(url.getPath());
+        when(this.mockConfig.getIndexerQueueCapacity()).thenReturn(100);
+        when(this.mockConfig.getIndexerThreads()).thenReturn(1);
+        when(this.mockConfig.getIndexerBatchSize()).thenReturn(1);
+        when(this.mockConfig.getIndexerBatchMaxLengh()).thenReturn(10000);
+
+        // Solr instance
+
+        this.solrInstance = mock(SolrInstance.class);
+        Provider<SolrInstance> solrInstanceProvider =
+            this.mocker.getInstance(new DefaultParameterizedType(null, Provider.class, SolrInstance.class));
+        when(solrInstanceProvider.get()).thenReturn(this.solrInstance);
+
+        // Extraction
+
+        this.documentExtractor = this.mocker.registerMockComponent(SolrMetadataExtractor.class, "document");
+        this.referenceResolver = this.mocker.getInstance(SolrReferenceResolver.class);
+    }
+
+    private LengthSolrInputDocument mockExtraction(DocumentReference reference) throws Exception
+    {
+        LengthSolrInputDocument solrDocument = new LengthSolrInputDocument();
+        when(this.documentExtractor.getSolrDocument(reference)).thenReturn(solrDocument);
+        when(this.referenceResolver.getId(reference)).thenReturn(reference.toString());
+
+        return solrDocument;
     }
 
     @Test
@@ -91,4 +143,131 @@ public void testIndexEmptyWiki() throws Exception
 
         // index.index(wikiReference);
     }
+
+    @Test
+    public void deleteWaitsForPendingExtractions() throws Exception
+    {
+        when(this.mockConfig.getIndexerThreads()).thenReturn(2);
+
+        DocumentReference documentA = new DocumentReference("wiki", "Space", "A");
+        DocumentReference documentB = new DocumentReference("wiki", "Space", "B");
+        LengthSolrInputDocument solrDocumentA = mockExtraction(documentA);
+        LengthSolrInputDocument solrDocumentB = mockExtraction(documentB);
+
+        // Block the extraction of the first document
+        CountDownLatch extractingA = new CountDownLatch(1);
+        CountDownLatch extractedA = new CountDownLatch(1);
+        when(this.documentExtractor.getSolrDocument(documentA)).then(invocation -> {
+            extractingA.countDown();
+            extractedA.await(10, TimeUnit.SECONDS);
+            return solrDocumentA;
+        });
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(documentA, false);
+        indexer.delete(documentA, false);
+        indexer.index(documentB, false);
+
+        // The second document is extracted while the first one is still being extracted
+        extractingA.await(10, TimeUnit.SECONDS);
+        verify(this.documentExtractor, timeout(10000)).getSolrDocument(documentB);
+        verify(this.solrInstance, after(200).never()).add(solrDocumentB);
+
+        extractedA.countDown();
+
+        // The operations are sent to Solr in the order they were requested
+        verify(this.solrInstance, timeout(10000)).add(solrDocumentB);
+        InOrder inOrder = inOrder(this.solrInstance);
+        inOrder.verify(this.solrInstance).add(solrDocumentA);
+        inOrder.verify(this.solrInstance).delete(documentA.toString());
+        inOrder.verify(this.solrInstance).add(solrDocumentB);
+    }
+
+    @Test
+    public void extractionsNotYetSentAreLimitedToThePoolSize() throws Exception
+    {
+        DocumentReference documentA = new DocumentReference("wiki", "Space", "A");
+        DocumentReference documentB = new DocumentReference("wiki", "Space", "B");
+        DocumentReference documentC = new DocumentReference("wiki", "Space", "C");
+        LengthSolrInputDocument solrDocumentA = mockExtraction(documentA);
+        mockExtraction(documentB);
+        LengthSolrInputDocument solrDocumentC = mockExtraction(documentC);
+
+        // Block the index thread while it sends the first document
+        CountDownLatch sent = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sent.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(this.solrInstance).add(solrDocumentA);
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(documentA, false);
+        indexer.index(documentB, false);
+        indexer.index(documentC, false);
+
+        // With one extractor thread, only the document following the one being sent is extracted in advance
+        verify(this.documentExtractor, timeout(10000)).getSolrDocument(documentB);
+        verify(this.documentExtractor, after(200).never()).getSolrDocument(documentC);
+
+        sent.countDown();
+
+        verify(this.solrInstance, timeout(10000)).add(solrDocumentC);
+    }
+
+    @Test
+    public void nearRealTimeMode() throws Exception
+    {
+        when(this.mockConfig.getIndexerCommitWithin()).thenReturn(1000);
+        when(this.mockConfig.getIndexerHardCommitInterval()).thenReturn(60000L);
+
+        DocumentReference documentA = new DocumentReference("wiki", "Space", "A");
+        DocumentReference documentB = new DocumentReference("wiki", "Space", "B");
+        SpaceReference otherSpace = new SpaceReference("wiki", "Other");
+        LengthSolrInputDocument solrDocumentA = mockExtraction(documentA);
+        mockExtraction(documentB);
+        when(this.referenceResolver.getQuery(otherSpace)).thenReturn("space:Other");
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(documentA, false);
+        indexer.delete(documentB, false);
+        indexer.delete(otherSpace, true);
+
+        // The changes are sent with the commit within delay and are not explicitly committed
+        verify(this.solrInstance, timeout(10000)).add(solrDocumentA, 1000);
+        verify(this.solrInstance, timeout(10000)).delete(documentB.toString(), 1000);
+        verify(this.solrInstance, timeout(10000)).deleteByQuery("space:Other", 1000);
+        verify(this.solrInstance, never()).add(solrDocumentA);
+        verify(this.solrInstance, never()).commit();
+        verify(this.solrInstance, never()).hardCommit();
+
+        // The pending changes are made durable when the indexer is stopped
+        ((Disposable) indexer).dispose();
+
+        verify(this.solrInstance).hardCommit();
+    }
+
+    @Test
+    public void flushWaitsForQueuedOperations() throws Exception
+    {
+        when(this.mockConfig.getIndexerCommitWithin()).thenReturn(1000);
+        when(this.mockConfig.getIndexerHardCommitInterval()).thenReturn(60000L);
+
+        DocumentReference documentA = new DocumentReference("wiki", "Space", "A");
+        LengthSolrInputDocument solrDocumentA = mockExtraction(documentA);
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(documentA, false);
+        Future<Void> flushed = indexer.flush();
+
+        // The flush is done once the operations queued before it are sent and made durable
+        flushed.get(10, TimeUnit.SECONDS);
+        InOrder inOrder = inOrder(this.solrInstance);
+        inOrder.verify(this.solrInstance).add(solrDocumentA, 1000);
+        inOrder.verify(this.solrInstance).hardCommit();
+
+        // The pending flushes are cancelled when the indexer is stopped
+        ((Disposable) indexer).dispose();
+
+        assertTrue(indexer.flush().isCancelled());
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link SolrViewRightsHelper}.
+ *
+ * @version $Id$
+ */
+public class SolrViewRightsHelperTest
+{
+    @Rule
+    public MockitoComponentMockingRule<SolrViewRightsHelper> mocker =
+        new MockitoComponentMockingRule<>(SolrViewRightsHelper.class);
+
+    private XWikiContext xcontext = mock(XWikiContext.class);
+
+    private XWiki xwiki = mock(XWiki.class);
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+
+    @Before
+    public void before() throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = this.mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
+        when(this.xcontext.getMainXWiki()).thenReturn("wiki");
+        when(this.xcontext.getWikiReference()).thenReturn(new WikiReference("wiki"));
+        when(this.xwiki.getDocument(any(DocumentReference.class), same(this.xcontext)))
+            .thenReturn(mock(XWikiDocument.class));
+
+        DocumentReferenceResolver<String> userResolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "user");
+        when(userResolver.resolve(anyString(), any(WikiReference.class))).then(invocation -> {
+            String[] parts = ((String) invocation.getArgument(0)).split("\\.");
+            return new DocumentReference(((WikiReference) invocation.getArgument(1)).getName(), parts[0], parts[1]);
+        });
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(any())).then(invocation -> {
+            EntityReference reference = invocation.getArgument(0);
+            return reference.extractReference(EntityType.WIKI).getName() + ':'
+                + reference.getParent().getName() + '.' + reference.getName();
+        });
+    }
+
+    private void setRights(DocumentReference rightsReference, String className, BaseObject... rightsObjects)
+        throws Exception
+    {
+        XWikiDocument rightsDocument = mock(XWikiDocument.class);
+        when(rightsDocument.getXObjects(eq(new LocalDocumentReference("XWiki", className))))
+            .thenReturn(Arrays.asList(rightsObjects));
+        when(this.xwiki.getDocument(rightsReference, this.xcontext)).thenReturn(rightsDocument);
+    }
+
+    private BaseObject newRule(String levels, String users, String groups, boolean allow)
+    {
+        BaseObject rule = mock(BaseObject.class);
+        when(rule.getIntValue("allow", 1)).thenReturn(allow ? 1 : 0);
+        when(rule.getStringValue("levels")).thenReturn(levels);
+        when(rule.getStringValue("users")).thenReturn(users);
+        when(rule.getStringValue("groups")).thenReturn(groups);
+        return rule;
+    }
+
+    @Test
+    public void getViewAllowedWithoutRules() throws Exception
+    {
+        assertEquals(Collections.singleton("anyone"),
+            this.mocker.getComponentUnderTest().getViewAllowed(this.documentReference));
+    }
+
+    @Test
+    public void getViewAllowedWithInheritedRules() throws Exception
+    {
+        setRights(new DocumentReference("WebPreferences", new SpaceReference("Space", new WikiReference("wiki"))),
+            "XWikiGlobalRights", newRule("view,edit", "", "XWiki.Readers", true),
+            newRule("view", "XWiki.Denied", "", false));
+        setRights(new DocumentReference("wiki", "XWiki", "XWikiPreferences"), "XWikiGlobalRights",
+            newRule("view", "XWiki.Others", "", true), newRule("admin", "", "XWiki.XWikiAdminGroup", true));
+        when(this.xwiki.getWikiOwner("wiki", this.xcontext)).thenReturn("XWiki.Owner");
+
+        // The view rules of the wiki are overwritten by the ones of the space but the admins can still view the page
+        assertEquals(new LinkedHashSet<>(Arrays.asList("wiki:XWiki.Readers", "wiki:XWiki.XWikiAdminGroup",
+            "wiki:XWiki.Owner")), this.mocker.getComponentUnderTest().getViewAllowed(this.documentReference));
+    }
+
+    @Test
+    public void getViewAllowedWithGuestRule() throws Exception
+    {
+        setRights(this.documentReference, "XWikiRights", newRule("view", "XWiki.XWikiGuest,XWiki.User", "", true));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("guest", "wiki:XWiki.User")),
+            this.mocker.getComponentUnderTest().getViewAllowed(this.documentReference));
+    }
+
+    @Test
+    public void getViewAllowedWithRightImplyingView() throws Exception
+    {
+        setRights(this.documentReference, "XWikiRights", newRule("edit", "XWiki.UserA", "", true));
+        setRights(new DocumentReference("WebPreferences", new SpaceReference("Space", new WikiReference("wiki"))),
+            "XWikiGlobalRights", newRule("view", "", "XWiki.GroupB", true));
+
+        // The edit right implies the view right but doesn't restrict who can view the document
+        assertEquals(new LinkedHashSet<>(Arrays.asList("wiki:XWiki.UserA", "wiki:XWiki.GroupB")),
+            this.mocker.getComponentUnderTest().getViewAllowed(this.documentReference));
+    }
+
+    @Test
+    public void getFilterQuery() throws Exception
+    {
+        GroupClosureIndex groupClosureIndex = this.mocker.getInstance(GroupClosureIndex.class);
+        DocumentReference user = new DocumentReference("wiki", "XWiki", "User");
+        DocumentReference group = new DocumentReference("wiki", "XWiki", "Group");
+        DocumentReference parentGroup = new DocumentReference("wiki", "XWiki", "ParentGroup");
+        when(groupClosureIndex.getAllGroups(user, new WikiReference("wiki")))
+            .thenReturn(Arrays.asList(group, parentGroup));
+
+        String filterQuery = this.mocker.getComponentUnderTest().getFilterQuery(user);
+
+        assertTrue(filterQuery.startsWith("view_allowed:(anyone OR wiki\\:XWiki.User OR "));
+        assertTrue(filterQuery.contains("wiki\\:XWiki.Group"));
+        assertTrue(filterQuery.contains("wiki\\:XWiki.ParentGroup"));
+        assertTrue(filterQuery.contains("wiki\\:XWiki.XWikiAllGroup"));
+        assertTrue(filterQuery.endsWith(") OR (*:* -wiki:(wiki))"));
+    }
+
+    private XWikiDocument modifiedDocument(DocumentReference reference, LocalDocumentReference classReference,
+        BaseObject object, BaseObject originalObject)
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        XWikiDocument originalDocument = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(reference);
+        when(document.getOriginalDocument()).thenReturn(originalDocument);
+        when(document.getXObjects(classReference)).thenReturn(Arrays.asList(object));
+        when(document.getXObject(classReference)).thenReturn(object);
+        when(originalDocument.getXObjects(classReference)).thenReturn(Arrays.asList(originalObject));
+        when(originalDocument.getXObject(classReference)).thenReturn(originalObject);
+
+        return document;
+    }
+
+    @Test
+    public void getImpactedEntitiesWhenGlobalRightsModified() throws Exception
+    {
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getAllIds()).thenReturn(Arrays.asList("wiki", "subwiki"));
+        LocalDocumentReference rightsClass = new LocalDocumentReference("XWiki", "XWikiGlobalRights");
+
+        // The rules of the main wiki apply to all the wikis
+        XWikiDocument mainPreferences = modifiedDocument(new DocumentReference("wiki", "XWiki", "XWikiPreferences"),
+            rightsClass, newRule("view", "XWiki.User", "", true), newRule("view", "", "", true));
+        assertEquals(Arrays.asList(new WikiReference("wiki"), new WikiReference("subwiki")),
+            this.mocker.getComponentUnderTest().getImpactedEntities(mainPreferences));
+
+        DocumentReference subwikiPreferencesReference = new DocumentReference("subwiki", "XWiki", "XWikiPreferences");
+        XWikiDocument subwikiPreferences = modifiedDocument(subwikiPreferencesReference, rightsClass,
+            newRule("view", "XWiki.User", "", true), newRule("view", "", "", true));
+        assertEquals(Arrays.asList(new WikiReference("subwiki")),
+            this.mocker.getComponentUnderTest().getImpactedEntities(subwikiPreferences));
+
+        DocumentReference spacePreferencesReference = new DocumentReference("subwiki", "Space", "WebPreferences");
+        XWikiDocument spacePreferences = modifiedDocument(spacePreferencesReference, rightsClass,
+            newRule("view", "XWiki.User", "", true), newRule("view", "", "", true));
+        assertEquals(Arrays.asList(spacePreferencesReference.getParent()),
+            this.mocker.getComponentUnderTest().getImpactedEntities(spacePreferences));
+
+        // Nothing to index again when the rights are not modified
+        BaseObject rule = newRule("view", "XWiki.User", "", true);
+        XWikiDocument unmodifiedPreferences = modifiedDocument(subwikiPreferencesReference, rightsClass, rule, rule);
+        assertTrue(this.mocker.getComponentUnderTest().getImpactedEntities(unmodifiedPreferences).isEmpty());
+    }
+
+    @Test
+    public void getImpactedEntitiesWhenWikiOwnerModified() throws Exception
+    {
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getAllIds()).thenReturn(Arrays.asList("wiki", "subwiki"));
+        LocalDocumentReference descriptorClass = new LocalDocumentReference("XWiki", "XWikiServerClass");
+
+        BaseObject descriptor = mock(BaseObject.class);
+        when(descriptor.getStringValue("owner")).thenReturn("XWiki.NewOwner");
+        BaseObject originalDescriptor = mock(BaseObject.class);
+        when(originalDescriptor.getStringValue("owner")).thenReturn("XWiki.Owner");
+
+        XWikiDocument subwikiDescriptor = modifiedDocument(new DocumentReference("wiki", "XWiki", "XWikiServerSubwiki"),
+            descriptorClass, descriptor, originalDescriptor);
+        assertEquals(Arrays.asList(new WikiReference("subwiki")),
+            this.mocker.getComponentUnderTest().getImpactedEntities(subwikiDescriptor));
+
+        // The owner of the main wiki can view the documents of all the wikis
+        XWikiDocument mainDescriptor = modifiedDocument(new DocumentReference("wiki", "XWiki", "XWikiServerWiki"),
+            descriptorClass, descriptor, originalDescriptor);
+        assertEquals(Arrays.asList(new WikiReference("wiki"), new WikiReference("subwiki")),
+            this.mocker.getComponentUnderTest().getImpactedEntities(mainDescriptor));
+    }
+
+    @Test
+    public void getFilterQueryForGuestAndSuperAdmin() throws Exception
+    {
+        assertEquals("view_allowed:(anyone OR guest) OR (*:* -wiki:(wiki))",
+            this.mocker.getComponentUnderTest().getFilterQuery(null));
+        assertNull(this.mocker.getComponentUnderTest()
+            .getFilterQuery(new DocumentReference("wiki", "XWiki", "superadmin")));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.inject.Provider;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobStatusStore;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link IndexerJob}.
+ *
+ * @version $Id$
+ */
+public class IndexerJobTest
+{
+    // The real component manager is needed to look up the document iterators used for each space
+    @Rule
+    public final MockitoComponentMockingRule<Job> mocker =
+        new MockitoComponentMockingRule<>(IndexerJob.class, Arrays.asList(ComponentManager.class));
+
+    private WikiReference wikiReference = new WikiReference("wiki");
+
+    private SolrIndexer indexer;
+
+    private JobStatusStore store;
+
+    private IndexerRequest request = new IndexerRequest();
+
+    /**
+     * The spaces synchronized by the job, in the order they were synchronized.
+     */
+    private List<EntityReference> synchronizedSpaces = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The space whose synchronization fails, if any.
+     */
+    private String failingSpace;
+
+    @Before
+    public void configure() throws Exception
+    {
+        Execution execution = this.mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(mock(ExecutionContext.class));
+
+        this.store = this.mocker.getInstance(JobStatusStore.class);
+
+        this.indexer = this.mocker.getInstance(SolrIndexer.class);
+        when(this.indexer.flush()).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Spaces from the database
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        Query query = mock(Query.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(query);
+        when(query.setWiki("wiki")).thenReturn(query);
+        when(query.execute()).thenReturn(Arrays.<Object>asList("A", "B", "C"));
+
+        // No space from the Solr index
+        SolrInstance solrInstance = mock(SolrInstance.class);
+        Provider<SolrInstance> solrInstanceProvider =
+            this.mocker.getInstance(new DefaultParameterizedType(null, Provider.class, SolrInstance.class));
+        when(solrInstanceProvider.get()).thenReturn(solrInstance);
+        when(solrInstance.query(any())).thenReturn(mock(QueryResponse.class));
+
+        EntityReferenceResolver<String> resolver = this.mocker.getInstance(
+            new DefaultParameterizedType(null, EntityReferenceResolver.class, String.class), "explicit");
+        when(resolver.resolve(anyString(), eq(EntityType.SPACE), eq(this.wikiReference))).then(
+            invocation -> new EntityReference(invocation.getArgument(0), EntityType.SPACE, this.wikiReference));
+
+        // The spaces are empty, both in the database and in the Solr index
+        DocumentIterator<String> databaseIterator = this.mocker.getInstance(
+            new DefaultParameterizedType(null, DocumentIterator.class, String.class), "database");
+        doAnswer(invocation -> {
+            EntityReference space = invocation.getArgument(0);
+            this.synchronizedSpaces.add(space);
+            if (space.getName().equals(this.failingSpace)) {
+                throw new RuntimeException("Failed to iterate space " + space.getName());
+            }
+            return null;
+        }).when(databaseIterator).setRootReference(any());
+
+        this.request.setId(Arrays.asList("solr", "indexer"));
+        this.request.setRootReference(this.wikiReference);
+    }
+
+    private IndexerJobStatus run() throws Exception
+    {
+        Job job = this.mocker.getComponentUnderTest();
+        job.initialize(this.request);
+        job.run();
+
+        return (IndexerJobStatus) job.getStatus();
+    }
+
+    private IndexerJobStatus mockPreviousStatus(EntityReference rootReference, String checkpointSpace,
+        Date checkpointDate)
+    {
+        IndexerRequest previousRequest = new IndexerRequest();
+        previousRequest.setId(this.request.getId());
+        previousRequest.setRootReference(rootReference);
+        IndexerJobStatus previousStatus = new IndexerJobStatus(previousRequest, null, null, null);
+        previousStatus.setCheckpoint("wiki", checkpointSpace, checkpointDate);
+        when(this.store.getJobStatus(this.request.getId())).thenReturn(previousStatus);
+
+        return previousStatus;
+    }
+
+    private SpaceReference space(String name)
+    {
+        return new SpaceReference(name, this.wikiReference);
+    }
+
+    @Test
+    public void synchronize() throws Exception
+    {
+        IndexerJobStatus status = run();
+
+        assertEquals(Arrays.asList(space("A"), space("B"), space("C")), this.synchronizedSpaces);
+
+        // The synchronization is complete
+        assertNull(status.getCheckpointSpace());
+        assertNull(status.getCheckpointWiki());
+        assertNotNull(status.getWatermark());
+    }
+
+    @Test
+    public void resumeAfterCheckpoint() throws Exception
+    {
+        Date checkpointDate = new Date(1000);
+        mockPreviousStatus(this.wikiReference, "B", checkpointDate);
+
+        IndexerJobStatus status = run();
+
+        // The spaces at or before the checkpoint are skipped
+        assertEquals(Arrays.asList(space("C")), this.synchronizedSpaces);
+
+        // The watermark is the start of the interrupted synchronization
+        assertNull(status.getCheckpointSpace());
+        assertEquals(checkpointDate, status.getWatermark());
+    }
+
+    @Test
+    public void ignoreCheckpointOfDifferentScope() throws Exception
+    {
+        mockPreviousStatus(new WikiReference("otherwiki"), "B", new Date(1000));
+
+        run();
+
+        assertEquals(Arrays.asList(space("A"), space("B"), space("C")), this.synchronizedSpaces);
+    }
+
+    @Test
+    public void ignoreCheckpointOfDifferentMode() throws Exception
+    {
+        mockPreviousStatus(this.wikiReference, "B", new Date(1000));
+        this.request.setIncremental(true);
+
+        run();
+
+        assertEquals(Arrays.asList(space("A"), space("B"), space("C")), this.synchronizedSpaces);
+    }
+
+    @Test
+    public void failedSpaceDoesNotMoveCheckpoint() throws Exception
+    {
+        this.failingSpace = "B";
+
+        IndexerJobStatus status = run();
+
+        // The documents of the space before the failing one have been indexed
+        assertEquals("wiki", status.getCheckpointWiki());
+        assertEquals("A", status.getCheckpointSpace());
+        assertNull(status.getWatermark());
+    }
+
+    @Test
+    public void checkpointWaitsForIndexer() throws Exception
+    {
+        // The documents queued for the synchronized spaces are not indexed yet
+        when(this.indexer.flush()).thenReturn(new CompletableFuture<>());
+        this.failingSpace = "B";
+
+        IndexerJobStatus status = run();
+
+        assertNull(status.getCheckpointSpace());
+        assertNull(status.getWatermark());
+    }
+}
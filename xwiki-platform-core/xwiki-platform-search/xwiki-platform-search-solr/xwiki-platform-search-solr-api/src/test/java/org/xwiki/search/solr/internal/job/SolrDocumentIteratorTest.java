@@ -21,6 +21,7 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -33,9 +34,11 @@
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.localization.LocaleUtils;
 import org.xwiki.model.reference.DocumentReference;
@@ -102,6 +105,25 @@ public void size() throws Exception
         verify(resolver).getQuery(rootReference);
     }
 
+    @Test
+    public void iterateModifiedSince() throws Exception
+    {
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getNextCursorMark()).thenReturn(CursorMarkParams.CURSOR_MARK_START);
+        when(solr.query(any(SolrQuery.class))).thenReturn(response);
+
+        DocumentIterator<String> iterator = mocker.getComponentUnderTest();
+        iterator.setRootReference(new WikiReference("wiki"));
+        iterator.setModifiedSince(new Date(1000L));
+
+        assertFalse(iterator.hasNext());
+
+        ArgumentCaptor<SolrQuery> captor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solr).query(captor.capture());
+        assertTrue(Arrays.asList(captor.getValue().getFilterQueries())
+            .contains("date:[1970-01-01T00:00:01Z TO *]"));
+    }
+
     @Test
     public void sizeWithException() throws Exception
     {
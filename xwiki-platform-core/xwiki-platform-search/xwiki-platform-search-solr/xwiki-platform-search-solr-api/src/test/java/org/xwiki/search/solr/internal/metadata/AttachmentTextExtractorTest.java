@@ -0,0 +1,177 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link AttachmentTextExtractor}.
+ *
+ * @version $Id$
+ */
+public class AttachmentTextExtractorTest
+{
+    @Rule
+    public MockitoComponentMockingRule<AttachmentTextExtractor> mocker =
+        new MockitoComponentMockingRule<>(AttachmentTextExtractor.class);
+
+    private File permanentDirectory = new File("target/test-" + new Date().getTime());
+
+    private SolrConfiguration configuration;
+
+    private XWikiAttachment attachment = mock(XWikiAttachment.class);
+
+    @Before
+    public void before() throws Exception
+    {
+        FileUtils.deleteDirectory(this.permanentDirectory);
+
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory);
+
+        this.configuration = this.mocker.getInstance(SolrConfiguration.class);
+        when(this.configuration.getAttachmentTextMaxSize()).thenReturn(-1L);
+        when(this.configuration.getAttachmentTextTimeout()).thenReturn(10);
+        when(this.configuration.getAttachmentTextCacheMaxSize()).thenReturn(-1L);
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(any())).thenReturn("wiki:Space.Page@file.txt");
+
+        when(this.attachment.getReference())
+            .thenReturn(new AttachmentReference("file.txt", new DocumentReference("wiki", "Space", "Page")));
+        when(this.attachment.getFilename()).thenReturn("file.txt");
+        when(this.attachment.getVersion()).thenReturn("1.1");
+        when(this.attachment.getLongSize()).thenReturn(12L);
+        when(this.attachment.getContentInputStream(any()))
+            .then(invocation -> new ByteArrayInputStream("text content".getBytes()));
+    }
+
+    @Test
+    public void getTextIsCached() throws Exception
+    {
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        verify(this.attachment, times(1)).getContentInputStream(any(XWikiContext.class));
+
+        // A new version of the attachment is parsed again
+        when(this.attachment.getVersion()).thenReturn("2.1");
+
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        verify(this.attachment, times(2)).getContentInputStream(any(XWikiContext.class));
+    }
+
+    @Test
+    public void getTextOfTooBigAttachment() throws Exception
+    {
+        when(this.configuration.getAttachmentTextMaxSize()).thenReturn(10L);
+
+        assertNull(this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        verify(this.attachment, never()).getContentInputStream(any(XWikiContext.class));
+    }
+
+    @Test
+    public void getTextTimeoutIsNotCached() throws Exception
+    {
+        when(this.configuration.getAttachmentTextTimeout()).thenReturn(1);
+        when(this.attachment.getContentInputStream(any())).thenReturn(new InputStream()
+        {
+            private boolean interrupted;
+
+            @Override
+            public int read() throws IOException
+            {
+                // Simulate a slow parsing which stops when interrupted
+                if (!this.interrupted) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        this.interrupted = true;
+
+                        throw new InterruptedIOException();
+                    }
+                }
+
+                return -1;
+            }
+        }).then(invocation -> new ByteArrayInputStream("text content".getBytes()));
+
+        assertNull(this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        // The attachment is parsed again
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        verify(this.attachment, times(2)).getContentInputStream(any(XWikiContext.class));
+    }
+
+    @Test
+    public void getTextWhenCacheIsFull() throws Exception
+    {
+        // Enough for one text only
+        when(this.configuration.getAttachmentTextCacheMaxSize()).thenReturn(20L);
+
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        when(this.attachment.getVersion()).thenReturn("2.1");
+
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        // The last stored text is kept
+        verify(this.attachment, times(2)).getContentInputStream(any(XWikiContext.class));
+
+        // The oldest one has been removed
+        when(this.attachment.getVersion()).thenReturn("1.1");
+
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment));
+
+        verify(this.attachment, times(3)).getContentInputStream(any(XWikiContext.class));
+    }
+}
@@ -158,6 +158,14 @@ public String answer(InvocationOnMock invocation) throws Throwable
         // Field Name Encoder
         SolrFieldNameEncoder fieldNameEncoder = this.mocker.getInstance(SolrFieldNameEncoder.class);
         when(fieldNameEncoder.encode(any())).then(AdditionalAnswers.returnsFirstArg());
+
+        // Attachment text content (without cache)
+        AttachmentTextExtractor textExtractor = this.mocker.getInstance(AttachmentTextExtractor.class);
+        when(textExtractor.getText(any(XWikiAttachment.class))).then(invocation -> {
+            XWikiAttachment attachment = invocation.getArgument(0);
+            return AttachmentTextExtractor.parse(attachment.getContentInputStream(this.xcontext),
+                attachment.getFilename());
+        });
     }
 
     @Test
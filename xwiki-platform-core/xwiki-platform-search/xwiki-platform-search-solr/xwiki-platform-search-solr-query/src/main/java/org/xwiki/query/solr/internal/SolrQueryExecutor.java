@@ -22,8 +22,14 @@
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -31,6 +37,7 @@
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
@@ -44,11 +51,14 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.SecureQuery;
+import org.xwiki.search.solr.internal.SolrViewRightsHelper;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrInstance;
 import org.xwiki.security.authorization.AuthorizationManager;
 import org.xwiki.security.authorization.Right;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
 
 /**
  * Executes Solr queries.
@@ -105,6 +115,12 @@ public class SolrQueryExecutor implements QueryExecutor
     @Inject
     private JobProgressManager progress;
 
+    @Inject
+    private SolrConfiguration configuration;
+
+    @Inject
+    private SolrViewRightsHelper viewRights;
+
     @Override
     public <T> List<T> execute(Query query) throws QueryException
     {
@@ -114,9 +130,28 @@ public <T> List<T> execute(Query query) throws QueryException
         try {
             this.progress.startStep(query, "query.solr.progress.execute.prepare", "Prepare");
 
+            List<DocumentReference> usersToCheck = new ArrayList<>(2);
+            if (query instanceof SecureQuery) {
+                if (((SecureQuery) query).isCurrentUserChecked()) {
+                    usersToCheck.add(xcontextProvider.get().getUserReference());
+                }
+                if (((SecureQuery) query).isCurrentAuthorChecked()) {
+                    usersToCheck.add(xcontextProvider.get().getAuthorReference());
+                }
+            } else {
+                usersToCheck.add(xcontextProvider.get().getUserReference());
+                usersToCheck.add(xcontextProvider.get().getAuthorReference());
+            }
+
             SolrInstance solrInstance = solrInstanceProvider.get();
             SolrQuery solrQuery = createSolrQuery(query);
 
+            // When the view rights are indexed most of the documents the users are not allowed to view are excluded
+            // by the query itself so that the number of results, the paging and the facets stay consistent.
+            if (this.configuration.isViewRightsIndexed()) {
+                addViewRightsFilterQueries(solrQuery, usersToCheck);
+            }
+
             this.progress.startStep(query, "query.solr.progress.execute.execute", "Execute");
 
             QueryResponse response = solrInstance.query(solrQuery);
@@ -130,18 +165,7 @@ public <T> List<T> execute(Query query) throws QueryException
             // A better way would be using a PostFilter as described in this article:
             // http://java.dzone.com/articles/custom-security-filtering-solr
             // Basically, we would be asking
-            List<DocumentReference> usersToCheck = new ArrayList<>(2);
-            if (query instanceof SecureQuery) {
-                if (((SecureQuery) query).isCurrentUserChecked()) {
-                    usersToCheck.add(xcontextProvider.get().getUserReference());
-                }
-                if (((SecureQuery) query).isCurrentAuthorChecked()) {
-                    usersToCheck.add(xcontextProvider.get().getAuthorReference());
-                }
-            } else {
-                usersToCheck.add(xcontextProvider.get().getUserReference());
-                usersToCheck.add(xcontextProvider.get().getAuthorReference());
-            }
+            // Note that the indexed view rights ignore the deny rules so the results still need to be checked.
             if (!usersToCheck.isEmpty()) {
                 filterResponse(response, usersToCheck);
             }
@@ -155,6 +179,27 @@ public <T> List<T> execute(Query query) throws QueryException
         }
     }
 
+    private void addViewRightsFilterQueries(SolrQuery solrQuery, List<DocumentReference> usersToCheck)
+    {
+        for (DocumentReference user : new LinkedHashSet<>(usersToCheck)) {
+            String filterQuery;
+            try {
+                filterQuery = this.viewRights.getFilterQuery(user);
+            } catch (XWikiException e) {
+                // The results are checked with the authorization manager anyway, only the paging and the facets are
+                // less accurate
+                this.logger.warn("Failed to compute the view rights filter query for user [{}], the results are only "
+                    + "filtered after the search: {}", user, ExceptionUtils.getRootCauseMessage(e));
+
+                continue;
+            }
+
+            if (filterQuery != null) {
+                solrQuery.addFilterQuery(filterQuery);
+            }
+        }
+    }
+
     private SolrQuery createSolrQuery(Query query)
     {
         SolrQuery solrQuery = new SolrQuery(query.getStatement());
@@ -236,26 +281,31 @@ protected void filterResponse(QueryResponse response, List<DocumentReference> us
         SolrDocumentList results = response.getResults();
         long numFound = results.getNumFound();
 
-        // Since we are modifying the results collection, we need to iterate over its copy.
-        for (SolrDocument result : new ArrayList<SolrDocument>(results)) {
+        // Resolve all the results first in order to check the rights of each user on all of them at once.
+        Map<SolrDocument, DocumentReference> resultReferences = new IdentityHashMap<>();
+        for (SolrDocument result : results) {
             try {
-                DocumentReference resultDocumentReference = this.solrDocumentReferenceResolver.resolve(result);
+                resultReferences.put(result, this.solrDocumentReferenceResolver.resolve(result));
+            } catch (Exception e) {
+                this.logger.warn("Skipping bad result: {}", result, e);
+            }
+        }
 
-                if (!isAllowed(resultDocumentReference, usersToCheck)) {
+        Set<DocumentReference> allowedReferences = getAllowed(resultReferences.values(), usersToCheck);
 
-                    // Remove the current incompatible result.
-                    results.remove(result);
+        // Since we are modifying the results collection, we need to iterate over its copy.
+        for (SolrDocument result : new ArrayList<SolrDocument>(results)) {
+            if (resultReferences.containsKey(result) && !allowedReferences.contains(resultReferences.get(result))) {
+                // Remove the current incompatible result.
+                results.remove(result);
 
-                    // Decrement the number of results.
-                    numFound--;
+                // Decrement the number of results.
+                numFound--;
 
-                    // FIXME: We should update maxScore as well when removing the top scored item. How do we do that?
-                    // Sorting based on score might be a not so expensive option.
+                // FIXME: We should update maxScore as well when removing the top scored item. How do we do that?
+                // Sorting based on score might be a not so expensive option.
 
-                    // FIXME: What about highlighting, facets and all the other data inside the QueryResponse?
-                }
-            } catch (Exception e) {
-                this.logger.warn("Skipping bad result: {}", result, e);
+                // FIXME: What about highlighting, facets and all the other data inside the QueryResponse?
             }
         }
 
@@ -267,14 +317,20 @@ protected void filterResponse(QueryResponse response, List<DocumentReference> us
         results.setNumFound(numFound);
     }
 
-    protected boolean isAllowed(DocumentReference resultDocumentReference, List<DocumentReference> usersToCheck)
+    /**
+     * @param resultReferences the references of the results
+     * @param usersToCheck the users who need to be able to view the results
+     * @return the references of the results that all the passed users are allowed to view
+     * @since 9.11RC1
+     */
+    protected Set<DocumentReference> getAllowed(Collection<DocumentReference> resultReferences,
+        List<DocumentReference> usersToCheck)
     {
+        Collection<DocumentReference> allowedReferences = new HashSet<>(resultReferences);
         for (DocumentReference user : usersToCheck) {
-            if (!this.authorization.hasAccess(Right.VIEW, user, resultDocumentReference)) {
-                return false;
-            }
+            allowedReferences = this.authorization.filterAccessible(Right.VIEW, user, allowedReferences);
         }
 
-        return true;
+        return new HashSet<>(allowedReferences);
     }
 }
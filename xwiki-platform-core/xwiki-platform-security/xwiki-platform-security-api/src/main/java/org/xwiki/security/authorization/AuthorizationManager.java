@@ -19,6 +19,10 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
@@ -73,6 +77,33 @@ void checkAccess(Right right, DocumentReference userReference, EntityReference e
      */
     boolean hasAccess(Right right, DocumentReference userReference, EntityReference entityReference);
 
+    /**
+     * Filter the passed entities, keeping only the ones on which the user identified by {@code userReference} has the
+     * access identified by {@code right}. This is equivalent to calling
+     * {@link #hasAccess(Right, DocumentReference, EntityReference)} for each entity but implementations can share the
+     * work done for the common parents of the entities (wiki, spaces).
+     * This function should be used for interface matters, use {@link #checkAccess} at security checkpoints.
+     *
+     * @param <T> the type of the entity references
+     * @param right the right to check
+     * @param userReference the user to check the right for
+     * @param entityReferences the entities on which to check the right
+     * @return the entities on which the user has the specified right, in the same order as the passed collection
+     * @since 9.11RC1
+     */
+    default <T extends EntityReference> List<T> filterAccessible(Right right, DocumentReference userReference,
+        Collection<T> entityReferences)
+    {
+        List<T> accessibleReferences = new ArrayList<>(entityReferences.size());
+        for (T entityReference : entityReferences) {
+            if (hasAccess(right, userReference, entityReference)) {
+                accessibleReferences.add(entityReference);
+            }
+        }
+
+        return accessibleReferences;
+    }
+
     /**
      * Register a new custom {@link Right}.
      *
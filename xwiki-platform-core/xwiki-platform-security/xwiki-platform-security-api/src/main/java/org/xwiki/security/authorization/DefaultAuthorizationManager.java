@@ -19,12 +19,20 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
@@ -33,6 +41,7 @@
 import org.xwiki.security.UserSecurityReference;
 import org.xwiki.security.authorization.cache.SecurityCache;
 import org.xwiki.security.authorization.cache.SecurityCacheLoader;
+import org.xwiki.security.authorization.internal.SecurityAccessMemo;
 import org.xwiki.security.internal.XWikiBridge;
 
 /**
@@ -69,6 +78,10 @@ public class DefaultAuthorizationManager implements AuthorizationManager
     @Inject
     private XWikiBridge xwikiBridge;
 
+    /** Used to remember the accesses during a request. */
+    @Inject
+    private Execution execution;
+
     /**
      * Check if the user is the super admin.
      *
@@ -115,6 +128,45 @@ public boolean hasAccess(Right right, DocumentReference userReference, EntityRef
         }
     }
 
+    @Override
+    public <T extends EntityReference> List<T> filterAccessible(Right right, DocumentReference userReference,
+        Collection<T> entityReferences)
+    {
+        List<T> accessibleReferences = new ArrayList<>(entityReferences.size());
+
+        Boolean preAccess = getPreAccess(right, userReference, null, false);
+        if (preAccess != null) {
+            if (preAccess) {
+                accessibleReferences.addAll(entityReferences);
+            }
+            return accessibleReferences;
+        }
+
+        UserSecurityReference user = securityReferenceFactory.newUserReference(userReference);
+
+        // The access of the user on the entities sharing the same parent rules (wiki, spaces) is evaluated only once
+        Map<SecurityReference, SecurityAccess> accesses = new HashMap<>();
+
+        for (T entityReference : entityReferences) {
+            try {
+                SecurityAccess securityAccess =
+                    getAccess(user, securityReferenceFactory.newEntityReference(entityReference), accesses);
+
+                RuleState access = securityAccess.get(right);
+                logAccess(access, userReference, entityReference, right, "access inquiry", true);
+                if (access == RuleState.ALLOW) {
+                    accessibleReferences.add(entityReference);
+                }
+            } catch (Exception e) {
+                this.logger.error(String.format("Failed to load rights for user [%s] on [%s].",
+                    (userReference == null) ? AuthorizationException.NULL_USER : userReference,
+                    (entityReference == null) ? AuthorizationException.NULL_ENTITY : entityReference), e);
+            }
+        }
+
+        return accessibleReferences;
+    }
+
     /**
      * Verifies if the user identified by {@code userReference} has the access identified by {@code right} on the
      * entity identified by {@code entityReference}. Note that some rights may be checked higher in hierarchy of the
@@ -132,34 +184,51 @@ public boolean hasAccess(Right right, DocumentReference userReference, EntityRef
     private boolean hasSecurityAccess(Right right, DocumentReference userReference, EntityReference entityReference,
         boolean check)
         throws AuthorizationException
+    {
+        Boolean preAccess = getPreAccess(right, userReference, entityReference, check);
+        if (preAccess != null) {
+            return preAccess;
+        }
+
+        return evaluateSecurityAccess(right, userReference, entityReference, check);
+    }
+
+    /**
+     * Settle the access which does not depend on the entity (super admin, invalid right, read only wiki, etc.).
+     *
+     * @param right the right to check .
+     * @param userReference the user to check the right for
+     * @param entityReference the entity on which to check the right (only used for logging)
+     * @param check if true logging of denied access are made through {@link #logDeny} (at info level)
+     * @return {@code true} or {@code false} if the access is settled, {@code null} if it depends on the entity
+     */
+    private Boolean getPreAccess(Right right, DocumentReference userReference, EntityReference entityReference,
+        boolean check)
     {
         if (isSuperAdmin(userReference)) {
-            return true;
+            return Boolean.TRUE;
         }
 
         if (right == null || right == Right.ILLEGAL) {
             if (check) {
                 logDeny(userReference, entityReference, right, "no such right");
             }
-            return false;
+            return Boolean.FALSE;
         }
 
         if ((!right.isReadOnly() && xwikiBridge.isWikiReadOnly())
             || (userReference == null && xwikiBridge.needsAuthentication(right))) {
-            return false;
+            return Boolean.FALSE;
         }
 
-        return evaluateSecurityAccess(right, userReference, entityReference, check);
+        return null;
     }
 
     private boolean evaluateSecurityAccess(Right right, DocumentReference userReference,
         EntityReference entityReference, boolean check)
         throws AuthorizationException
     {
-        SecurityAccess securityAccess = getAccess(
-            securityReferenceFactory.newUserReference(userReference),
-            securityReferenceFactory.newEntityReference(entityReference)
-        );
+        SecurityAccess securityAccess = getMemoizedAccess(userReference, entityReference);
 
         RuleState access = securityAccess.get(right);
         String info = check ? "security checkpoint" : "access inquiry";
@@ -188,6 +257,54 @@ public Right register(RightDescription rightDescription) throws UnableToRegister
         }
     }
 
+    /**
+     * Obtain the access for the user on the given entity, first from the accesses already obtained during the current
+     * request and then from the cache.
+     *
+     * @param userReference The user identity.
+     * @param entityReference The entity.
+     * @return the access entry.
+     * @exception org.xwiki.security.authorization.AuthorizationException if an error occurs
+     */
+    private SecurityAccess getMemoizedAccess(DocumentReference userReference, EntityReference entityReference)
+        throws AuthorizationException
+    {
+        long removalCount = securityCache.getRemovalCount();
+        SecurityAccessMemo memo = removalCount >= 0 ? getMemo() : null;
+
+        SecurityAccess access = memo != null ? memo.get(userReference, entityReference, removalCount) : null;
+        if (access == null) {
+            access = getAccess(securityReferenceFactory.newUserReference(userReference),
+                securityReferenceFactory.newEntityReference(entityReference));
+
+            if (memo != null) {
+                memo.put(userReference, entityReference, access);
+            }
+        }
+
+        return access;
+    }
+
+    /**
+     * @return the accesses obtained during the current request, {@code null} if there is no current request
+     */
+    private SecurityAccessMemo getMemo()
+    {
+        ExecutionContext context = this.execution.getContext();
+        if (context == null) {
+            return null;
+        }
+
+        SecurityAccessMemo memo = (SecurityAccessMemo) context.getProperty(SecurityAccessMemo.PROPERTY);
+        if (memo == null) {
+            memo = new SecurityAccessMemo();
+            // Not inherited: each request (and thread) gets its own memo
+            context.newProperty(SecurityAccessMemo.PROPERTY).initial(memo).declare();
+        }
+
+        return memo;
+    }
+
     /**
      * Obtain the access for the user on the given entity and load it into the cache if unavailable.
      *
@@ -199,7 +316,35 @@ public Right register(RightDescription rightDescription) throws UnableToRegister
     private SecurityAccess getAccess(UserSecurityReference user, SecurityReference entity)
         throws AuthorizationException
     {
+        return getAccess(user, entity, null);
+    }
+
+    /**
+     * Obtain the access for the user on the given entity and load it into the cache if unavailable.
+     *
+     * @param user The user identity.
+     * @param entity The entity.  May be of type DOCUMENT, WIKI, or SPACE.
+     * @param accesses the accesses of the user already obtained from the cache, indexed by the entity they have been
+     *            found for, and which can be reused for the entities having the same significant parent, null if
+     *            no such map should be used
+     * @return the cached access entry.
+     * @exception org.xwiki.security.authorization.AuthorizationException if an error occurs
+     */
+    private SecurityAccess getAccess(UserSecurityReference user, SecurityReference entity,
+        Map<SecurityReference, SecurityAccess> accesses) throws AuthorizationException
+    {
+        List<SecurityReference> traversedReferences = (accesses != null) ? new ArrayList<SecurityReference>() : null;
         for (SecurityReference ref = entity; ref != null; ref = ref.getParentSecurityReference()) {
+            if (accesses != null) {
+                SecurityAccess access = accesses.get(ref);
+                if (access != null) {
+                    rememberAccess(access, traversedReferences, accesses);
+
+                    return access;
+                }
+                traversedReferences.add(ref);
+            }
+
             if (Right.getEnabledRights(ref.getSecurityType()).isEmpty()) {
                 // Skip search on entity types that will obviously have empty/useless list of rules.
                 continue;
@@ -225,6 +370,8 @@ private SecurityAccess getAccess(UserSecurityReference user, SecurityReference e
 
                     logger.debug("3. Got entry for user {} on {} from cache: [{}]", user, entity, access);
 
+                    rememberAccess(access, traversedReferences, accesses);
+
                     return access;
                 }
             } 
@@ -237,6 +384,24 @@ private SecurityAccess getAccess(UserSecurityReference user, SecurityReference e
         return access;
     }
 
+    /**
+     * The access found for an entity is the same for all the entities traversed to find it (they don't have any
+     * significant rule).
+     *
+     * @param access the access found
+     * @param traversedReferences the entities traversed before finding the access
+     * @param accesses the map in which to remember the access, null if it should not be remembered
+     */
+    private void rememberAccess(SecurityAccess access, List<SecurityReference> traversedReferences,
+        Map<SecurityReference, SecurityAccess> accesses)
+    {
+        if (accesses != null) {
+            for (SecurityReference reference : traversedReferences) {
+                accesses.put(reference, access);
+            }
+        }
+    }
+
     /**
      * Log access conclusion.
      * @param access The ALLOW or DENY state
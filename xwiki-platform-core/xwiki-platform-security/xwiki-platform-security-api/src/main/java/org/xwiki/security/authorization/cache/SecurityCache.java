@@ -64,4 +64,16 @@
      * @param entity The entity which is the object of this cache entry.
      */
     void remove(SecurityReference entity);
+
+    /**
+     * The number of removals is used to detect that some access decisions taken from this cache may be outdated.
+     *
+     * @return the number of times an entry has been removed from this cache, or -1 if this information is not
+     *         available (in which case the access decisions taken from this cache should not be remembered)
+     * @since 9.11RC1
+     */
+    default long getRemovalCount()
+    {
+        return -1;
+    }
 }
@@ -25,9 +25,9 @@
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -72,14 +72,14 @@ public class DefaultSecurityCache implements SecurityCache, Initializable
     @Inject
     private Logger logger;
 
-    /** Fair read-write lock used for fair scheduling of cache access. */
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-
-    /** Fair read lock. */
-    private final Lock readLock = readWriteLock.readLock();
-
-    /** Fair write lock. */
-    private final Lock writeLock = readWriteLock.writeLock();
+    /**
+     * Lock serializing the modifications of the cache. Reads don't take any lock: the underlying cache is thread safe
+     * and the links between entries that are read (the parents) are never modified once published, only replaced.
+     * Modifications still need to be serialized since the cascaded removal of an entry can cross any subtree (through
+     * group membership) and since the removal triggered by the insertion of an entry needs to be detected (see
+     * {@link #addEntry(String, SecurityCacheEntry)}).
+     */
+    private final Lock writeLock = new ReentrantLock();
 
     /** The keys in the cache are generated from instances of {@link org.xwiki.model.reference.EntityReference}. */
     @Inject
@@ -94,6 +94,9 @@ public class DefaultSecurityCache implements SecurityCache, Initializable
 
     /** The new entry being added */
     private SecurityCacheEntry newEntry;
+
+    /** The number of calls to the remove methods. */
+    private final AtomicLong removalCount = new AtomicLong();
    
     /**
      * @return a new configured security cache
@@ -129,12 +132,13 @@ private class SecurityCacheEntry implements DisposableCacheValue
         /**
          * The cached security entry.
          */
-        private SecurityEntry entry;
+        private volatile SecurityEntry entry;
 
         /**
-         * Parents of this cached entry.
+         * Parents of this cached entry. The collection is never modified after the entry is published in the cache,
+         * it's replaced by a complete new one instead so that it can be safely traversed without locking.
          */
-        private Collection<SecurityCacheEntry> parents;
+        private volatile Collection<SecurityCacheEntry> parents;
 
         /**
          * Children of this cached entry.
@@ -262,16 +266,17 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
             this.entry = entry;
             int parentSize = groups.size() + ((parentReference == null) ? 0 : 1);
             if (parentSize > 0) {
-                this.parents = new ArrayList<SecurityCacheEntry>(parentSize);
+                Collection<SecurityCacheEntry> newParents = new ArrayList<SecurityCacheEntry>(parentSize);
                 if (parentReference != null) {
                     SecurityCacheEntry parent = DefaultSecurityCache.this.getEntry(parentReference);
                     if (parent == null) {
                         throw new ParentEntryEvictedException();
                     }
-                    this.parents.add(parent);
+                    newParents.add(parent);
                     parent.addChild(this);
                 }
-                addParentGroups(groups, parentReference);
+                addParentGroups(groups, parentReference, newParents);
+                this.parents = newParents;
                 logNewEntry();
             } else {
                 this.parents = null;
@@ -284,10 +289,12 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
          *
          * @param groups the list of groups to add.
          * @param parentReference the main parent reference to exclude.
+         * @param newParents the collection of parents to fill
          * @throws ParentEntryEvictedException if the parents required are no more available in the cache.
          */
         private void addParentGroups(Collection<GroupSecurityReference> groups,
-            SecurityReference parentReference) throws ParentEntryEvictedException
+            SecurityReference parentReference, Collection<SecurityCacheEntry> newParents)
+            throws ParentEntryEvictedException
         {
             for (GroupSecurityReference group : groups) {
                 if (group.equals(parentReference)) {
@@ -300,7 +307,7 @@ private void addParentGroups(Collection<GroupSecurityReference> groups,
                 if (parent == null) {
                     throw new ParentEntryEvictedException();
                 }
-                this.parents.add(parent);
+                newParents.add(parent);
                 parent.addChild(this);
             }
         }
@@ -319,15 +326,17 @@ boolean updateParentGroups(Collection<GroupSecurityReference> groups)
             }
 
             if (groups != null && !groups.isEmpty()) {
+                Collection<SecurityCacheEntry> newParents;
                 if (this.parents == null) {
-                    this.parents = new ArrayList<SecurityCacheEntry>(groups.size());
-                    addParentGroups(groups, null);
+                    newParents = new ArrayList<SecurityCacheEntry>(groups.size());
+                    addParentGroups(groups, null, newParents);
                 } else {
                     SecurityCacheEntry parent = this.parents.iterator().next();
-                    this.parents = new ArrayList<SecurityCacheEntry>(groups.size() + 1);
-                    this.parents.add(parent);
-                    addParentGroups(groups, parent.entry.getReference());
+                    newParents = new ArrayList<SecurityCacheEntry>(groups.size() + 1);
+                    newParents.add(parent);
+                    addParentGroups(groups, parent.entry.getReference(), newParents);
                 }
+                this.parents = newParents;
             }
 
             return true;
@@ -539,12 +548,7 @@ private String getEntryKey(SecurityAccessEntry entry)
      */
     private SecurityCacheEntry getEntry(SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(reference));
-        } finally {
-            readLock.unlock();
-        }
+        return cache.get(getEntryKey(reference));
     }
 
     /**
@@ -555,12 +559,7 @@ private SecurityCacheEntry getEntry(SecurityReference reference)
      */
     private SecurityCacheEntry getEntry(UserSecurityReference userReference, SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(userReference, reference));
-        } finally {
-            readLock.unlock();
-        }
+        return cache.get(getEntryKey(userReference, reference));
     }
 
     /**
@@ -571,12 +570,7 @@ private SecurityCacheEntry getEntry(UserSecurityReference userReference, Securit
      */
     private SecurityCacheEntry getShadowEntry(SecurityReference userReference, SecurityReference wiki)
     {
-        readLock.lock();
-        try {
-            return cache.get(getShadowEntryKey(userReference, wiki));
-        } finally {
-            readLock.unlock();
-        }
+        return cache.get(getShadowEntryKey(userReference, wiki));
     }
 
     /**
@@ -815,6 +809,9 @@ public void remove(UserSecurityReference user, SecurityReference entity)
                 this.cache.remove(entry.getKey());
             }
         } finally {
+            // Counted once the entry is removed so that an access computed after reading the new count can't come
+            // from the removed entry
+            this.removalCount.incrementAndGet();
             writeLock.unlock();
         }
     }
@@ -832,10 +829,17 @@ public void remove(SecurityReference entity)
                 this.cache.remove(entry.getKey());
             }
         } finally {
+            this.removalCount.incrementAndGet();
             writeLock.unlock();
         }
     }
 
+    @Override
+    public long getRemovalCount()
+    {
+        return this.removalCount.get();
+    }
+
     @Override
     public Collection<GroupSecurityReference> getImmediateGroupsFor(UserSecurityReference user)
     {
@@ -848,7 +852,12 @@ public Collection<GroupSecurityReference> getImmediateGroupsFor(UserSecurityRefe
             return null;
         }
 
-        for (SecurityCacheEntry parent : userEntry.parents) {
+        Collection<SecurityCacheEntry> parents = userEntry.parents;
+        if (parents == null) {
+            return groups;
+        }
+
+        for (SecurityCacheEntry parent : parents) {
             // Add the parent group (if we have not already seen it)
             SecurityReference parentRef = parent.getEntry().getReference();
             if (parentRef instanceof GroupSecurityReference) {
@@ -877,8 +886,14 @@ public Collection<GroupSecurityReference> getGroupsFor(UserSecurityReference use
         
         // Special case if the user is a shadow.
         if (entityWiki != null) {
+            SecurityCacheEntry originalEntry = getEntry(user);
+            if (originalEntry == null) {
+                // The original entry has been removed in the meantime, the ancestors are not fully loaded anymore
+                return null;
+            }
+
             // We start with the parents of the original entry, and the parent of this shadow (excluding the original)
-            addParentsWhenEntryIsShadow(userEntry, user, groups, entriesToExplore);
+            addParentsWhenEntryIsShadow(userEntry, originalEntry, groups, entriesToExplore);
         } else {
             // We start with the current user
             entriesToExplore.add(userEntry);
@@ -906,12 +921,10 @@ public Collection<GroupSecurityReference> getGroupsFor(UserSecurityReference use
         return groups;
     }
     
-    private void addParentsWhenEntryIsShadow(SecurityCacheEntry shadow, UserSecurityReference user,
+    private void addParentsWhenEntryIsShadow(SecurityCacheEntry shadow, SecurityCacheEntry originalEntry,
             Collection<GroupSecurityReference> groups,
             Deque<SecurityCacheEntry> entriesToExplore)
     {
-        SecurityCacheEntry originalEntry = getEntry(user);
-
         // We add the parents of the original (but not the original, otherwise we could have the same group twice)
         addParentsToTheListOfEntriesToExplore(originalEntry.parents, groups, entriesToExplore);
         // And we add the parent groups of the shadow
@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.security.authorization.SecurityAccess;
+
+/**
+ * Remember the accesses of the users on the entities during a request, so that checking again the same rights is a
+ * simple lookup. An instance is stored in the execution context and is thus never shared between threads.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class SecurityAccessMemo
+{
+    /**
+     * The name of the execution context property holding the memo.
+     */
+    public static final String PROPERTY = "security.authorization.accessMemo";
+
+    /**
+     * The maximum number of accesses to remember, to avoid keeping too much memory in long running contexts.
+     */
+    private static final int MAX_SIZE = 10000;
+
+    private final Map<Pair<DocumentReference, EntityReference>, SecurityAccess> accesses = new HashMap<>();
+
+    private long removalCount = -1;
+
+    private long hits;
+
+    private long misses;
+
+    private long resets;
+
+    /**
+     * @param user the user
+     * @param entity the entity
+     * @param removalCount the current number of removals from the security cache, the remembered accesses are
+     *            forgotten when it changed
+     * @return the remembered access, {@code null} if unknown
+     */
+    public SecurityAccess get(DocumentReference user, EntityReference entity, long removalCount)
+    {
+        if (removalCount != this.removalCount) {
+            // Some rules changed since the accesses were remembered
+            reset();
+            this.removalCount = removalCount;
+        }
+
+        SecurityAccess access = this.accesses.get(new ImmutablePair<>(user, entity));
+        if (access != null) {
+            ++this.hits;
+        } else {
+            ++this.misses;
+        }
+
+        return access;
+    }
+
+    /**
+     * @param user the user
+     * @param entity the entity
+     * @param access the access of the user on the entity
+     */
+    public void put(DocumentReference user, EntityReference entity, SecurityAccess access)
+    {
+        if (this.accesses.size() >= MAX_SIZE) {
+            reset();
+        }
+
+        this.accesses.put(new ImmutablePair<>(user, entity), access);
+    }
+
+    private void reset()
+    {
+        if (!this.accesses.isEmpty()) {
+            this.accesses.clear();
+            ++this.resets;
+        }
+    }
+
+    /**
+     * @return the number of accesses found in the memo
+     */
+    public long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of accesses which were not found in the memo
+     */
+    public long getMisses()
+    {
+        return this.misses;
+    }
+
+    /**
+     * @return the number of times the remembered accesses have been forgotten
+     */
+    public long getResets()
+    {
+        return this.resets;
+    }
+
+    @Override
+    public String toString()
+    {
+        long total = this.hits + this.misses;
+
+        return String.format("%d hits, %d misses (%d%% hit rate), %d resets", this.hits, this.misses,
+            total > 0 ? this.hits * 100 / total : 0, this.resets);
+    }
+}
@@ -32,6 +32,8 @@
 import org.mockito.stubbing.Answer;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.internal.DefaultModelConfiguration;
 import org.xwiki.model.internal.reference.DefaultEntityReferenceProvider;
 import org.xwiki.model.internal.reference.DefaultStringEntityReferenceResolver;
@@ -52,6 +54,7 @@
 import org.xwiki.security.authorization.cache.internal.TestCache;
 import org.xwiki.security.authorization.internal.AbstractSecurityRuleEntry;
 import org.xwiki.security.authorization.internal.DefaultAuthorizationSettler;
+import org.xwiki.security.authorization.internal.SecurityAccessMemo;
 import org.xwiki.security.authorization.testwikis.SecureTestEntity;
 import org.xwiki.security.authorization.testwikis.TestAccessRule;
 import org.xwiki.security.authorization.testwikis.TestDefinition;
@@ -70,6 +73,8 @@
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -130,6 +135,9 @@ public class DefaultAuthorizationManagerIntegrationTest extends AbstractAuthoriz
     /** Factory for security reference */
     private SecurityReferenceFactory securityReferenceFactory;
 
+    /** Mocked execution */
+    private Execution execution;
+
     @BeforeComponent
     public void initializeMocks() throws Exception {
         cache = new TestCache<Object>();
@@ -140,6 +148,7 @@ public void initializeMocks() throws Exception {
         userBridge = componentManager.registerMockComponent(UserBridge.class);
         securityEntryReader = componentManager.registerMockComponent(SecurityEntryReader.class);
         securityCacheRulesInvalidator = componentManager.registerMockComponent(SecurityCacheRulesInvalidator.class);
+        execution = componentManager.registerMockComponent(Execution.class);
     }
 
     @Before
@@ -427,6 +436,32 @@ public void testDefaultAccessOnEmptyWikis() throws Exception
 
     }
 
+    @Test
+    public void testAccessMemoizedDuringRequest() throws Exception
+    {
+        ExecutionContext context = new ExecutionContext();
+        when(execution.getContext()).thenReturn(context);
+
+        initialiseWikiMock("inheritancePolicyForGlobalFullWikiAccess");
+
+        assertAccess(null, getXUser("userA"), getXDoc("any document", "any space"));
+        assertAccess(ALL_SPACE_RIGHTS, getXUser("userA"), getXDoc("any document", "spaceAllowA"));
+
+        // The access is obtained once per user and entity, whatever the number of checked rights
+        SecurityAccessMemo memo = (SecurityAccessMemo) context.getProperty(SecurityAccessMemo.PROPERTY);
+        assertEquals(2, memo.getMisses());
+        assertTrue(memo.getHits() > 0);
+
+        // Changing the rules forget the remembered accesses
+        componentManager.<SecurityCache>getInstance(SecurityCache.class)
+            .remove(securityReferenceFactory.newEntityReference(getXDoc("any document", "spaceAllowA")));
+
+        assertAccess(ALL_SPACE_RIGHTS, getXUser("userA"), getXDoc("any document", "spaceAllowA"));
+
+        assertEquals(3, memo.getMisses());
+        assertEquals(1, memo.getResets());
+    }
+
     @Test
     public void testInheritancePolicyForFullFarmAccess() throws Exception
     {
@@ -26,6 +26,11 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -59,7 +64,9 @@
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
@@ -809,4 +816,60 @@ public boolean keepAccess(SecurityAccessEntry entry) {
             }
         });
     }
+
+    @Test
+    public void concurrentReadsDuringModifications() throws Exception
+    {
+        InsertUsers();
+        final Map<SecurityReference, SecurityEntry> entries = new HashMap<>();
+        for (SecurityEntry entry : InsertEntities().values()) {
+            entries.put(entry.getReference(), entry);
+        }
+        final Collection<GroupSecurityReference> groups = securityCache.getGroupsFor(groupUserRef, null);
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; ++i) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (!stop.get()) {
+                        for (SecurityEntry entry : entries.values()) {
+                            SecurityRuleEntry cached = securityCache.get(entry.getReference());
+                            // Either not yet reloaded or the expected entry
+                            assertTrue(cached == null || cached == entry);
+                            ++reads;
+                        }
+                        // Users and groups are not modified so they must always be found
+                        assertThat(securityCache.getGroupsFor(groupUserRef, null), is(groups));
+                    }
+                    return reads;
+                }));
+            }
+
+            // Keep removing and reloading a space while the readers are running
+            for (int i = 0; i < 500; ++i) {
+                securityCache.remove(spaceRef);
+                for (SecurityReference ref : entityRefs) {
+                    SecurityRuleEntry entry = (SecurityRuleEntry) entries.get(ref);
+                    if (entry != null && securityCache.get(ref) == null) {
+                        securityCache.add(entry);
+                    }
+                }
+            }
+            stop.set(true);
+
+            for (Future<Integer> reader : readers) {
+                assertNotNull(reader.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            stop.set(true);
+            executor.shutdownNow();
+        }
+
+        // The graph is still consistent: removing the space still cascades to the documents it contains
+        securityCache.remove(spaceRef);
+        assertThat(securityCache.get(docRef), is(nullValue()));
+    }
 }
@@ -19,8 +19,11 @@
  */
 package org.xwiki.security.authorization.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -131,6 +134,37 @@ public boolean hasAccess(Right right, EntityReference entity)
         return hasAccess(right, user, entity);
     }
 
+    @Override
+    public <T extends EntityReference> List<T> filterAccessible(Right right, Collection<T> entities)
+    {
+        if (CONTENT_AUTHOR_RIGHTS.contains(right)) {
+            // The user depends on the entity
+            return ContextualAuthorizationManager.super.filterAccessible(right, entities);
+        }
+
+        if (!checkPreAccess(right)) {
+            return new ArrayList<>();
+        }
+
+        List<EntityReference> fullReferences = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            fullReferences.add(getFullReference(entity));
+        }
+
+        Set<EntityReference> accessibleReferences = new HashSet<>(this.authorizationManager.filterAccessible(right,
+            this.xcontextProvider.get().getUserReference(), fullReferences));
+
+        List<T> accessibleEntities = new ArrayList<>(accessibleReferences.size());
+        int index = 0;
+        for (T entity : entities) {
+            if (accessibleReferences.contains(fullReferences.get(index++))) {
+                accessibleEntities.add(entity);
+            }
+        }
+
+        return accessibleEntities;
+    }
+
     private boolean hasAccess(Right right, DocumentReference user, EntityReference entity)
     {
         return checkPreAccess(right) && this.authorizationManager.hasAccess(right, user, getFullReference(entity));
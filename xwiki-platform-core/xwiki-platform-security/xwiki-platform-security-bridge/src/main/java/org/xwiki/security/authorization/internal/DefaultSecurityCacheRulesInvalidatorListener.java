@@ -22,6 +22,8 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import javax.inject.Inject;
@@ -38,6 +40,7 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.event.Event;
@@ -49,6 +52,7 @@
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.user.api.XWikiGroupService;
 
@@ -102,6 +106,16 @@ public class DefaultSecurityCacheRulesInvalidatorListener implements EventListen
     @Inject
     private Provider<XWikiContext> xcontextProvider;
 
+    /** The members of the groups, used to resolve the groups of the users when the rules are loaded again. */
+    @Inject
+    private GroupClosureIndex groupClosureIndex;
+
+    /** The number of events which lead to an invalidation of the cache. */
+    private final AtomicLong performedInvalidations = new AtomicLong();
+
+    /** The number of document updates which did not affect rights and were ignored. */
+    private final AtomicLong skippedInvalidations = new AtomicLong();
+
     @Override
     public String getName()
     {
@@ -179,10 +193,90 @@ public void invalidateGroupMembers(DocumentReference group, SecurityCache securi
         }
     }
 
+    /**
+     * @return the number of events which lead to an invalidation of the cache
+     * @since 9.11RC1
+     */
+    public long getPerformedInvalidations()
+    {
+        return this.performedInvalidations.get();
+    }
+
+    /**
+     * @return the number of document updates which did not affect rights and did not invalidate the cache
+     * @since 9.11RC1
+     */
+    public long getSkippedInvalidations()
+    {
+        return this.skippedInvalidations.get();
+    }
+
+    /**
+     * @param document an xwiki document, that has just been updated
+     * @return true if the update may have modified the rights (or the group members) defined by the document
+     */
+    private boolean isSecurityUpdate(XWikiDocument document)
+    {
+        XWikiDocument originalDocument = document.getOriginalDocument();
+        if (originalDocument == null) {
+            return true;
+        }
+
+        DocumentReference ref = document.getDocumentReference();
+
+        // The wiki descriptors also define the owner of the wiki
+        if (ref.getName().startsWith(XWikiConstants.WIKI_DESCRIPTOR_PREFIX)) {
+            return true;
+        }
+
+        // The document creator gets implied rights
+        if (!Objects.equals(document.getCreatorReference(), originalDocument.getCreatorReference())) {
+            return true;
+        }
+
+        SpaceReference xwikiSpace = new SpaceReference(XWikiConstants.XWIKI_SPACE, ref.getWikiReference());
+        return isXObjectsModified(document, originalDocument,
+            new DocumentReference(XWikiConstants.LOCAL_CLASSNAME, xwikiSpace))
+            || isXObjectsModified(document, originalDocument,
+                new DocumentReference(XWikiConstants.GLOBAL_CLASSNAME, xwikiSpace))
+            || isXObjectsModified(document, originalDocument, resolver.resolve(XWikiConstants.GROUP_CLASS, ref));
+    }
+
+    private boolean isXObjectsModified(XWikiDocument document, XWikiDocument originalDocument,
+        DocumentReference classReference)
+    {
+        List<BaseObject> objects = document.getXObjects(classReference);
+        List<BaseObject> originalObjects = originalDocument.getXObjects(classReference);
+
+        if (objects == null || objects.isEmpty()) {
+            return originalObjects != null && !originalObjects.isEmpty();
+        }
+
+        return !objects.equals(originalObjects);
+    }
+
     @Override
     public void onEvent(Event event, Object source, Object data)
     {
         DocumentReference ref = getDocumentReference(source);
+
+        if (event instanceof DocumentUpdatedEvent && !isSecurityUpdate((XWikiDocument) source)) {
+            this.skippedInvalidations.incrementAndGet();
+            this.logger.debug("Skipping security cache invalidation for document [{}] since its rights and group "
+                + "members are unchanged", ref);
+
+            return;
+        }
+
+        this.performedInvalidations.incrementAndGet();
+
+        // The group index needs to be up to date before the rules of the members are loaded again, and its own
+        // listener might be called after this one
+        XWikiDocument originalDocument = ((XWikiDocument) source).getOriginalDocument();
+        if (isGroupDocument(source) || (originalDocument != null && isGroupDocument(originalDocument))) {
+            this.groupClosureIndex.update((XWikiDocument) source);
+        }
+
         readWriteLock.writeLock().lock();
         try {
             deliverUpdateEvent(ref);
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.ActionExecutedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Log the statistics of the accesses remembered during a request, when the request action is finished.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+@Component
+@Named(SecurityAccessMemoListener.NAME)
+@Singleton
+public class SecurityAccessMemoListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.security.authorization.internal.SecurityAccessMemoListener";
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Default constructor.
+     */
+    public SecurityAccessMemoListener()
+    {
+        super(NAME, new ActionExecutedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (this.logger.isDebugEnabled()) {
+            ExecutionContext context = this.execution.getContext();
+            if (context != null) {
+                SecurityAccessMemo memo = (SecurityAccessMemo) context.getProperty(SecurityAccessMemo.PROPERTY);
+                if (memo != null) {
+                    this.logger.debug("Accesses remembered during the [{}] action: {}",
+                        ((ActionExecutedEvent) event).getActionName(), memo);
+                }
+            }
+        }
+    }
+}
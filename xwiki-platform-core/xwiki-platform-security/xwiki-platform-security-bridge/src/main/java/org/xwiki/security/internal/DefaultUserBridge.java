@@ -37,7 +37,9 @@
 import org.xwiki.security.authorization.AuthorizationException;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
 import com.xpn.xwiki.user.api.XWikiGroupService;
+import com.xpn.xwiki.user.impl.xwiki.XWikiGroupServiceImpl;
 
 /**
  * Temporary implementation of the (@link UserBridge} interface to access user information.
@@ -57,6 +59,10 @@ public class DefaultUserBridge implements UserBridge
     @Inject
     private Execution execution;
 
+    /** The members of the groups of each wiki. */
+    @Inject
+    private GroupClosureIndex groupClosureIndex;
+
     /**
      * @return the current {@code XWikiContext}
      */
@@ -104,29 +110,41 @@ private Collection<DocumentReference> getGroupsReferencesFor(WikiReference wiki,
             throw new AuthorizationException("Failed to access the group service.",  e);
         }
 
+        try {
+            // The group index is only a faithful copy of the groups handled by the default group service
+            if (groupService.getClass() == XWikiGroupServiceImpl.class) {
+                // We don't use the group service's cache because it might not have been refreshed yet (for example,
+                // it can happen when the security module is used inside a listener that reacts to the "SaveDocument"
+                // event just before the XWikiGroupService listener is called). The group index is updated by the
+                // security cache invalidator before it invalidates anything so it's always up to date when the rules
+                // are loaded again.
+                return this.groupClosureIndex.getGroups(userOrGroupDocumentReference, wiki);
+            } else {
+                return getGroupsReferencesFor(wiki, userOrGroupDocumentReference, groupService, xwikiContext);
+            }
+        } catch (Exception e) {
+            throw new AuthorizationException(String.format("Failed to get groups for user or group [%s] in wiki [%s]",
+                userOrGroupDocumentReference, wiki), e);
+        }
+    }
+
+    private Collection<DocumentReference> getGroupsReferencesFor(WikiReference wiki,
+        DocumentReference userOrGroupDocumentReference, XWikiGroupService groupService, XWikiContext xwikiContext)
+        throws Exception
+    {
         String currentWiki = xwikiContext.getWikiId();
         Collection<DocumentReference> groupReferences = new HashSet<>();
         try {
-            xwikiContext.setWikiId(wiki.getName());            
+            xwikiContext.setWikiId(wiki.getName());
             // We get the groups of the member via the group service but we make sure to not use the group service's
             // cache by calling the method with a limit and an offset.
-            //
-            // We do not use the group service's cache because it might not have been refreshed yet (for example, it can
-            // happen when the security module is used inside a listener that reacts to the "SaveDocument" event just 
-            // before the XWikiGroupService listener is called). Because of this race condition, it is not a good idea
-            // to have a cache depending on an other cache.
-            //
-            // TODO: use a proper component to retrieve the groups of a member without any cache
             final int nb = 1000;
             int i = 0;
             while (groupReferences.addAll(groupService.getAllGroupsReferencesForMember(userOrGroupDocumentReference,
                 nb, i * nb, xwikiContext))) {
                 i++;
-            }            
+            }
             return groupReferences;
-        } catch (Exception e) {
-            throw new AuthorizationException(String.format("Failed to get groups for user or group [%s] in wiki [%s]",
-                userOrGroupDocumentReference, wiki), e);
         } finally {
             xwikiContext.setWikiId(currentWiki);
         }
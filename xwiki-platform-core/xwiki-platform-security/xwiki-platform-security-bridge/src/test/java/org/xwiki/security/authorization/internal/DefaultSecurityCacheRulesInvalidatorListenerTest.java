@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.security.SecurityReferenceFactory;
+import org.xwiki.security.authorization.cache.SecurityCache;
+import org.xwiki.security.internal.XWikiConstants;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.store.DocumentElementsLoader;
+import com.xpn.xwiki.internal.store.OriginalDocumentElementsLoader;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.test.MockitoOldcoreRule;
+import com.xpn.xwiki.test.reference.ReferenceComponentList;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link DefaultSecurityCacheRulesInvalidatorListener}.
+ *
+ * @version $Id$
+ */
+@ReferenceComponentList
+public class DefaultSecurityCacheRulesInvalidatorListenerTest
+{
+    public MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<EventListener>(DefaultSecurityCacheRulesInvalidatorListener.class);
+
+    @Rule
+    public MockitoOldcoreRule oldcore = new MockitoOldcoreRule(mocker);
+
+    private static final DocumentReference DOCUMENT_REFERENCE =
+        new DocumentReference("wiki", "Space", XWikiConstants.SPACE_DOC);
+
+    private static final DocumentReference RIGHTS_CLASS =
+        new DocumentReference("wiki", XWikiConstants.XWIKI_SPACE, XWikiConstants.GLOBAL_CLASSNAME);
+
+    private SecurityCache securityCache;
+
+    private SecurityReference spaceSecurityReference;
+
+    private XWikiDocument originalDocument;
+
+    @Before
+    public void before() throws Exception
+    {
+        ReadWriteLock readWriteLock =
+            this.mocker.getInstance(ReadWriteLock.class, DefaultSecurityCacheRulesInvalidator.NAME);
+        when(readWriteLock.writeLock()).thenReturn(mock(Lock.class));
+
+        this.spaceSecurityReference = mock(SecurityReference.class);
+        SecurityReferenceFactory factory = this.mocker.getInstance(SecurityReferenceFactory.class);
+        when(factory.newEntityReference(DOCUMENT_REFERENCE.getParent())).thenReturn(this.spaceSecurityReference);
+
+        this.securityCache = this.mocker.getInstance(SecurityCache.class);
+
+        this.originalDocument = new XWikiDocument(DOCUMENT_REFERENCE);
+        BaseObject rights = new BaseObject();
+        rights.setXClassReference(RIGHTS_CLASS);
+        rights.setLargeStringValue(XWikiConstants.USERS_FIELD_NAME, "XWiki.user");
+        rights.setStringValue(XWikiConstants.LEVELS_FIELD_NAME, "view");
+        rights.setIntValue(XWikiConstants.ALLOW_FIELD_NAME, 1);
+        this.originalDocument.addXObject(rights);
+    }
+
+    private XWikiDocument update()
+    {
+        XWikiDocument document = this.originalDocument.clone();
+        document.setOriginalDocument(this.originalDocument);
+
+        return document;
+    }
+
+    @Test
+    public void updateWithoutRightsModification() throws Exception
+    {
+        XWikiDocument document = update();
+        document.setContent("new content");
+        BaseObject preferences = new BaseObject();
+        preferences.setXClassReference(new DocumentReference("wiki", XWikiConstants.XWIKI_SPACE, "XWikiPreferences"));
+        preferences.setStringValue("skin", "XWiki.MySkin");
+        document.addXObject(preferences);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(DOCUMENT_REFERENCE), document, null);
+
+        verify(this.securityCache, never()).remove(any(SecurityReference.class));
+
+        DefaultSecurityCacheRulesInvalidatorListener listener =
+            (DefaultSecurityCacheRulesInvalidatorListener) this.mocker.getComponentUnderTest();
+        assertEquals(1, listener.getSkippedInvalidations());
+        assertEquals(0, listener.getPerformedInvalidations());
+    }
+
+    @Test
+    public void updateWithRightsModification() throws Exception
+    {
+        XWikiDocument document = update();
+        document.getXObject(RIGHTS_CLASS).setStringValue(XWikiConstants.LEVELS_FIELD_NAME, "view,edit");
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(DOCUMENT_REFERENCE), document, null);
+
+        verify(this.securityCache).remove(this.spaceSecurityReference);
+
+        DefaultSecurityCacheRulesInvalidatorListener listener =
+            (DefaultSecurityCacheRulesInvalidatorListener) this.mocker.getComponentUnderTest();
+        assertEquals(0, listener.getSkippedInvalidations());
+        assertEquals(1, listener.getPerformedInvalidations());
+    }
+
+    @Test
+    public void updateOfLazyLoadedDocumentWithRightsModification() throws Exception
+    {
+        // The objects are read from the storage the first time they are accessed
+        DocumentElementsLoader storage = mock(DocumentElementsLoader.class);
+        BaseObject storedRights = this.originalDocument.getXObject(RIGHTS_CLASS);
+        doAnswer(invocation -> {
+            ((XWikiDocument) invocation.getArgument(0)).addXObject(storedRights.clone());
+            return null;
+        }).when(storage).loadXObjects(any(XWikiDocument.class), any(XWikiContext.class));
+
+        XWikiDocument lazyOriginalDocument = new XWikiDocument(DOCUMENT_REFERENCE);
+        lazyOriginalDocument.setElementsToLoad(XWikiDocument.HAS_OBJECTS, storage);
+        XWikiDocument document = new XWikiDocument(DOCUMENT_REFERENCE);
+        document.setOriginalDocument(lazyOriginalDocument);
+        document.setElementsToLoad(XWikiDocument.HAS_OBJECTS, new OriginalDocumentElementsLoader(lazyOriginalDocument));
+
+        document.getXObject(RIGHTS_CLASS).setStringValue(XWikiConstants.LEVELS_FIELD_NAME, "view,edit");
+
+        // Save the document
+        storedRights.setStringValue(XWikiConstants.LEVELS_FIELD_NAME, "view,edit");
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(DOCUMENT_REFERENCE), document, null);
+
+        verify(this.securityCache).remove(this.spaceSecurityReference);
+        verify(storage).loadXObjects(same(lazyOriginalDocument), any(XWikiContext.class));
+    }
+
+    @Test
+    public void updateWithRightsRemoval() throws Exception
+    {
+        XWikiDocument document = update();
+        document.removeXObjects(RIGHTS_CLASS);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(DOCUMENT_REFERENCE), document, null);
+
+        verify(this.securityCache).remove(this.spaceSecurityReference);
+    }
+}
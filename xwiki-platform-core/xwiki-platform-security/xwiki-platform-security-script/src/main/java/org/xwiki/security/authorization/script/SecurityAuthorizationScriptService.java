@@ -19,6 +19,9 @@
  */
 package org.xwiki.security.authorization.script;
 
+import java.util.Collection;
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -113,6 +116,21 @@ public boolean hasAccess(Right right, EntityReference entityReference)
         return contextualAuthorizationManager.hasAccess(right, entityReference);
     }
 
+    /**
+     * Filter the passed entities, keeping only the ones on which access identified by {@code right} would be allowed
+     * in the current context. This is faster than calling {@link #hasAccess(Right, EntityReference)} for each entity.
+     * This function should be used for interface matters, use {@link #checkAccess} at security checkpoints.
+     *
+     * @param right the right to check
+     * @param entityReferences the entities on which to check the right
+     * @return the entities on which access is allowed, in the same order as the passed collection
+     * @since 9.11RC1
+     */
+    public List<EntityReference> filterAccessible(Right right, Collection<EntityReference> entityReferences)
+    {
+        return contextualAuthorizationManager.filterAccessible(right, entityReferences);
+    }
+
     /**
      * Check if the user identified by {@code userReference} has the access identified by {@code right} on the
      * entity identified by {@code entityReference}. Note that some rights may be checked higher in hierarchy of the
@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.store.legacy.store.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.store.FileSerializer;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Serialize the content of an attachment to a File. When the content is already stored in a file (for example an
+ * uploaded file) it's transferred directly from file to file instead of being copied through a stream.
+ *
+ * @version $Id$
+ * @since 9.11RC1
+ */
+public class AttachmentContentFileSerializer implements FileSerializer
+{
+    /**
+     * The attachment to save content of.
+     */
+    private final XWikiAttachment attachment;
+
+    /**
+     * The XWikiContext for getting the content of the attachment.
+     */
+    private final XWikiContext context;
+
+    /**
+     * @param attachment the attachment whose content should be serialized
+     * @param context the XWikiContext needed to get the content from the attachment
+     */
+    public AttachmentContentFileSerializer(XWikiAttachment attachment, XWikiContext context)
+    {
+        this.attachment = attachment;
+        this.context = context;
+    }
+
+    @Override
+    public void serialize(File file) throws Exception
+    {
+        File contentFile = this.attachment.getContentFile(this.context);
+
+        if (contentFile != null && !contentFile.equals(file)) {
+            try (FileChannel in = FileChannel.open(contentFile.toPath(), StandardOpenOption.READ)) {
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        long transferred = in.transferTo(position, size - position, out);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                    }
+                }
+            }
+        } else {
+            try (InputStream in = this.attachment.getContentInputStream(this.context)) {
+                try (OutputStream out = new FileOutputStream(file)) {
+                    IOUtils.copy(in, out);
+                }
+            }
+        }
+    }
+}